@@ -43,6 +43,14 @@ public class Design {
   private File oligosDir;
   private File tempDir;
   private boolean start1 = false;
+  private boolean virtualOligos;
+  private boolean fusedFilters;
+  private boolean compressedOligos;
+  private boolean containerOligos;
+  private String regions;
+  private float targetTm = Float.NaN;
+  private int targetTmLengths = 1;
+  private int coarseStep;
 
   private boolean skipSequenceCreation;
   private boolean skipSequenceFilters;
@@ -54,6 +62,7 @@ public class Design {
   private List<Measurement> measurementsList;
   private List<MeasurementFilter> measurementFiltersList;
   private SequenceSelector selector;
+  private SequenceSelector coarseSelector;
   private WeightsSetter weightSetters;
   private List<Output> outputsList;
 
@@ -182,6 +191,83 @@ public class Design {
     return start1;
   }
 
+  /**
+   * Test if the oligonucleotides are generated on demand from the sequences of
+   * the chromosomes instead of being written in fasta files.
+   * @return true if the oligonucleotides are virtual
+   */
+  public boolean isVirtualOligos() {
+    return this.virtualOligos;
+  }
+
+  /**
+   * Test if the sequence filters that allow it are applied while the
+   * oligonucleotides are created.
+   * @return true if the sequence filters are fused with the creation of the
+   *         oligonucleotides
+   */
+  public boolean isFusedFilters() {
+    return this.fusedFilters;
+  }
+
+  /**
+   * Test if the fasta files of the oligonucleotides are compressed in the BGZF
+   * format.
+   * @return true if the fasta files of the oligonucleotides are compressed
+   */
+  public boolean isCompressedOligos() {
+    return this.compressedOligos;
+  }
+
+  /**
+   * Test if the oligonucleotides of all the chromosomes are written in a
+   * single container file.
+   * @return true if the oligonucleotides are written in a container file
+   */
+  public boolean isContainerOligos() {
+    return this.containerOligos;
+  }
+
+  /**
+   * Get the target regions of the design. Only the oligonucleotides inside
+   * the target regions are created.
+   * @return "orfs" to use the ORFs of the ORFs sequence filter, the path of a
+   *         BED file or null if the oligonucleotides are created on all the
+   *         genome
+   */
+  public String getRegions() {
+    return this.regions;
+  }
+
+  /**
+   * Get the target Tm of the isothermal mode. In this mode, only the lengths
+   * of oligonucleotides whose Tm are the closest to the target Tm are created
+   * for each start position.
+   * @return the target Tm or NaN if the isothermal mode is disabled
+   */
+  public float getTargetTm() {
+    return this.targetTm;
+  }
+
+  /**
+   * Get the number of lengths of oligonucleotides to create for each start
+   * position in isothermal mode.
+   * @return the number of lengths to create for each start position
+   */
+  public int getTargetTmLengths() {
+    return this.targetTmLengths;
+  }
+
+  /**
+   * Get the step between the start positions of the oligonucleotides of the
+   * coarse stage of the coarse-to-fine search.
+   * @return the step of the coarse stage or a value lower than 2 if the
+   *         coarse-to-fine search is disabled
+   */
+  public int getCoarseStep() {
+    return this.coarseStep;
+  }
+
   /**
    * Get the list of sequence filters to use for the design.
    * @return a list of sequence filters
@@ -214,6 +300,15 @@ public class Design {
     return selector;
   }
 
+  /**
+   * Get the selector to use for the coarse stage of the coarse-to-fine
+   * search.
+   * @return The selector to use for the coarse stage or null if not set
+   */
+  public SequenceSelector getCoarseSelector() {
+    return coarseSelector;
+  }
+
   /**
    * Get the weight setters to use for the selector.
    * @return A WeightSetter object
@@ -343,6 +438,90 @@ public class Design {
     this.start1 = start1;
   }
 
+  /**
+   * Set if the oligonucleotides are generated on demand from the sequences of
+   * the chromosomes instead of being written in fasta files.
+   * @param virtualOligos true if the oligonucleotides are virtual
+   */
+  public void setVirtualOligos(final boolean virtualOligos) {
+
+    this.virtualOligos = virtualOligos;
+  }
+
+  /**
+   * Set if the sequence filters that allow it are applied while the
+   * oligonucleotides are created.
+   * @param fusedFilters true if the sequence filters are fused with the
+   *          creation of the oligonucleotides
+   */
+  public void setFusedFilters(final boolean fusedFilters) {
+
+    this.fusedFilters = fusedFilters;
+  }
+
+  /**
+   * Set if the fasta files of the oligonucleotides are compressed in the BGZF
+   * format.
+   * @param compressedOligos true if the fasta files of the oligonucleotides
+   *          must be compressed
+   */
+  public void setCompressedOligos(final boolean compressedOligos) {
+
+    this.compressedOligos = compressedOligos;
+  }
+
+  /**
+   * Set if the oligonucleotides of all the chromosomes are written in a
+   * single container file.
+   * @param containerOligos true if the oligonucleotides must be written in a
+   *          container file
+   */
+  public void setContainerOligos(final boolean containerOligos) {
+
+    this.containerOligos = containerOligos;
+  }
+
+  /**
+   * Set the target regions of the design.
+   * @param regions "orfs" to use the ORFs of the ORFs sequence filter, the
+   *          path of a BED file or null to create the oligonucleotides on all
+   *          the genome
+   */
+  public void setRegions(final String regions) {
+
+    this.regions = regions;
+  }
+
+  /**
+   * Set the target Tm of the isothermal mode.
+   * @param targetTm the target Tm or NaN to disable the isothermal mode
+   */
+  public void setTargetTm(final float targetTm) {
+
+    this.targetTm = targetTm;
+  }
+
+  /**
+   * Set the number of lengths of oligonucleotides to create for each start
+   * position in isothermal mode.
+   * @param targetTmLengths the number of lengths to create
+   */
+  public void setTargetTmLengths(final int targetTmLengths) {
+
+    this.targetTmLengths = targetTmLengths;
+  }
+
+  /**
+   * Set the step between the start positions of the oligonucleotides of the
+   * coarse stage of the coarse-to-fine search.
+   * @param coarseStep the step of the coarse stage (a value lower than 2
+   *          disable the coarse-to-fine search)
+   */
+  public void setCoarseStep(final int coarseStep) {
+
+    this.coarseStep = coarseStep;
+  }
+
   /**
    * Set the directory for oligos sequences.
    * @param oligosDir The directory as a File object
@@ -408,6 +587,17 @@ public class Design {
     this.selector = selector;
   }
 
+  /**
+   * Set the selector to use for the coarse stage of the coarse-to-fine
+   * search. This selector must be another instance of the selector of the
+   * design.
+   * @param coarseSelector The selector to set
+   */
+  public void setCoarseSelector(final SequenceSelector coarseSelector) {
+
+    this.coarseSelector = coarseSelector;
+  }
+
   /**
    * Set the weightSetters for the selector.
    * @param weightSetters The weightSetters to set
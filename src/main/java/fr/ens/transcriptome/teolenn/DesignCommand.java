@@ -22,31 +22,59 @@
 
 package fr.ens.transcriptome.teolenn;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
 import fr.ens.transcriptome.teolenn.core.MeasurementCore;
+import fr.ens.transcriptome.teolenn.core.OverlapSettings;
 import fr.ens.transcriptome.teolenn.core.SequenceCore;
+import fr.ens.transcriptome.teolenn.measurement.ChromosomeMeasurement;
 import fr.ens.transcriptome.teolenn.measurement.Measurement;
+import fr.ens.transcriptome.teolenn.measurement.OligoStartMeasurement;
 import fr.ens.transcriptome.teolenn.measurement.filter.MeasurementFilter;
 import fr.ens.transcriptome.teolenn.measurement.io.MultiSequenceMeasurementWriter;
 import fr.ens.transcriptome.teolenn.measurement.io.SequenceMeasurementsIOFactory;
 import fr.ens.transcriptome.teolenn.measurement.io.SequenceMeasurementsReader;
+import fr.ens.transcriptome.teolenn.measurement.io.SequenceMeasurementsWriter;
 import fr.ens.transcriptome.teolenn.output.Output;
 import fr.ens.transcriptome.teolenn.resource.ChromosomeNameResource;
+import fr.ens.transcriptome.teolenn.resource.CompositionResource;
+import fr.ens.transcriptome.teolenn.resource.GapResource;
+import fr.ens.transcriptome.teolenn.resource.ORFResource;
 import fr.ens.transcriptome.teolenn.resource.OligoSequenceResource;
+import fr.ens.transcriptome.teolenn.resource.PackedGenomeResource;
+import fr.ens.transcriptome.teolenn.resource.RegionResource;
 import fr.ens.transcriptome.teolenn.selector.SequenceSelector;
+import fr.ens.transcriptome.teolenn.selector.TilingSelector;
+import fr.ens.transcriptome.teolenn.sequence.GenomeReader;
+import fr.ens.transcriptome.teolenn.sequence.GenomeReaderFactory;
+import fr.ens.transcriptome.teolenn.sequence.OligoContainer;
 import fr.ens.transcriptome.teolenn.sequence.SequenceIterator;
+import fr.ens.transcriptome.teolenn.sequence.SequenceMeasurements;
 import fr.ens.transcriptome.teolenn.sequence.SequenceWriter;
+import fr.ens.transcriptome.teolenn.sequence.filter.CacheableSequenceFilter;
+import fr.ens.transcriptome.teolenn.sequence.filter.CharacterClassFilter;
+import fr.ens.transcriptome.teolenn.sequence.filter.GenerationSequenceFilter;
+import fr.ens.transcriptome.teolenn.sequence.filter.ORFsFilter;
+import fr.ens.transcriptome.teolenn.sequence.filter.RemoveXSequenceFilter;
 import fr.ens.transcriptome.teolenn.sequence.filter.SequenceFilter;
+import fr.ens.transcriptome.teolenn.sequence.filter.SequenceXNFilter;
+import fr.ens.transcriptome.teolenn.sequence.filter.ThreadSafeSequenceFilter;
+import fr.ens.transcriptome.teolenn.sequence.filter.VerdictCache;
+import fr.ens.transcriptome.teolenn.util.AdaptiveFilterOrder;
 import fr.ens.transcriptome.teolenn.util.FileUtils;
+import fr.ens.transcriptome.teolenn.util.SelfLoopHandler;
 import fr.ens.transcriptome.teolenn.util.StringUtils;
 import fr.ens.transcriptome.teolenn.util.SystemUtils;
+import fr.ens.transcriptome.teolenn.util.UnSynchronizedBufferedWriter;
 
 /**
  * This class define the core class of Teolenn.
@@ -59,6 +87,9 @@ public class DesignCommand extends Design {
   private long startTimeCurrentPhase;
   private long startTimeDesign;
 
+  // Key of the oligos files for the cache of the verdicts of the filters
+  private String oligosKey;
+
   //
   // Execute method
   //
@@ -74,8 +105,27 @@ public class DesignCommand extends Design {
 
     if (!isSkipPhase1())
       phase1CreateAllOligos();
-    else
+    else {
       ChromosomeNameResource.getRessource(getOligosDir()).load();
+      this.oligosKey = loadOligosKey();
+    }
+
+    // Coarse stage of the coarse-to-fine search
+    if (isCoarseToFine()) {
+
+      if (!isSkipPhase2())
+        phase2FilterAllOligos(getSequenceFiltersList());
+
+      phase3CalcMeasurements(getMeasurementsList());
+      phase4FilterMeasurements(getMeasurementFiltersList(), true);
+
+      phase1CreateFineOligos(phase5CoarseSelect(getCoarseSelector(),
+          getWeightSetters()));
+
+      // Forget the stats of the coarse stage
+      for (Measurement m : getMeasurementsList())
+        m.clear();
+    }
 
     if (!isSkipPhase2())
       phase2FilterAllOligos(getSequenceFiltersList());
@@ -122,6 +172,12 @@ public class DesignCommand extends Design {
         getTempDir().getAbsolutePath());
     module.setInitParameter(DesignConstants.START_1_PARAMETER_NAME, Boolean
         .toString(isStart1()));
+    module.setInitParameter(DesignConstants.VIRTUAL_OLIGOS_PARAMETER_NAME,
+        Boolean.toString(isVirtualOligos()));
+    module.setInitParameter(DesignConstants.COMPRESSED_OLIGOS_PARAMETER_NAME,
+        Boolean.toString(isCompressedFiles()));
+    module.setInitParameter(DesignConstants.CONTAINER_OLIGOS_PARAMETER_NAME,
+        Boolean.toString(isContainerFiles()));
   }
 
   //
@@ -154,66 +210,267 @@ public class DesignCommand extends Design {
   }
 
   /**
-   * Filter oligos fasta files
+   * Test if the fasta files of the oligonucleotides are compressed. This is
+   * not the case for virtual oligonucleotides that have no fasta files.
+   * @return true if the fasta files of the oligonucleotides are compressed
+   */
+  private boolean isCompressedFiles() {
+
+    return isCompressedOligos() && !isVirtualOligos();
+  }
+
+  /**
+   * Test if the oligonucleotides of all the chromosomes are written in a
+   * single container file. This is not the case for virtual oligonucleotides
+   * that have no fasta files.
+   * @return true if the oligonucleotides are written in a container file
+   */
+  private boolean isContainerFiles() {
+
+    return isContainerOligos() && !isVirtualOligos();
+  }
+
+  /**
+   * Get the oligonucleotides files to process.
+   * @param suffix suffix of the files
+   * @return a list with the container file or the files of all the
+   *         chromosomes
+   * @throws TeolennException if the chromosome names resource is not
+   *           available
+   */
+  private List<File> getOligoFiles(final String suffix)
+      throws TeolennException {
+
+    final File oligoDir = getOligosDir();
+
+    if (isContainerFiles()) {
+
+      final List<File> result = new ArrayList<File>(1);
+      result.add(OligoContainer.getFile(oligoDir, suffix));
+
+      return result;
+    }
+
+    final List<String> chrNames =
+        ChromosomeNameResource.getRessource().getChromosomesNames();
+    final List<File> result = new ArrayList<File>(chrNames.size());
+
+    for (String chrName : chrNames)
+      result.add(new File(oligoDir, chrName + suffix));
+
+    return result;
+  }
+
+  /**
+   * Test if the coarse-to-fine search is enabled. In this mode, the
+   * oligonucleotides are first created, measured and selected on a coarse
+   * grid of start positions, then all the phases are executed again at full
+   * resolution only around the oligonucleotides selected in the coarse stage.
+   * @return true if the coarse-to-fine search is enabled
+   */
+  private boolean isCoarseToFine() {
+
+    return getCoarseStep() > 1
+        && getCoarseSelector() instanceof TilingSelector && !isVirtualOligos()
+        && !isSkipPhase1() && !isSkipPhase4() && !isSkipPhase5();
+  }
+
+  /**
+   * Filter oligos fasta files. The files are filtered concurrently if all the
+   * filters are thread safe.
    * @param oligoFiles input file
-   * @param sequenceFilters filters to apply
+   * @param filters filters to apply
+   * @param verdicts cache of the verdicts of the filters
+   * @param keys cache keys of the filters
+   * @param cachedFilters filters that have not been initialized because their
+   *          verdicts are in the cache
    * @param maskedFiles filter masked files too
    * @throws IOException if an error occurs while filtering
    */
   private static final void filterSequencesFiles(final List<File> oligoFiles,
-      final List<SequenceFilter> sequenceFilters, final boolean maskedFiles)
-      throws IOException {
+      final SequenceFilter[] filters, final VerdictCache verdicts,
+      final String[] keys, final boolean[] cachedFilters,
+      final boolean maskedFiles) throws IOException {
+
+    int threads = Math.min(Settings.getMaxThreads(), oligoFiles.size());
+
+    for (int i = 0; i < filters.length; i++)
+      if (!cachedFilters[i]
+          && !(filters[i] instanceof ThreadSafeSequenceFilter)) {
+        logger.fine("The "
+            + filters[i].getName() + " filter is not thread safe, "
+            + "the oligonucleotides files are filtered sequentially.");
+        threads = 1;
+      }
+
+    // The filters are executed in an adaptive order, cached or not, the
+    // filters that may modify the sequences keep their position
+    final int n = filters.length;
+    final String[] names = new String[n];
+    final boolean[] reorderable = new boolean[n];
+
+    for (int i = 0; i < n; i++) {
+      names[i] = filters[i].getName();
+      reorderable[i] =
+          filters[i] instanceof CacheableSequenceFilter
+              && ((CacheableSequenceFilter) filters[i]).getCacheKey() != null;
+    }
+
+    final AdaptiveFilterOrder order =
+        new AdaptiveFilterOrder("sequence filters", names, reorderable);
+
+    final FilterLoopHandler handler =
+        new FilterLoopHandler(oligoFiles, filters, verdicts, keys,
+            cachedFilters, order, maskedFiles, Math.max(1, threads));
+    handler.loopProcess();
+    order.end();
+
+    if (handler.ioException != null)
+      throw handler.ioException;
+    if (handler.runtimeException != null)
+      throw handler.runtimeException;
+
+    logger.info("" + handler.count + " oligonucleotides after filtering");
+  }
+
+  /**
+   * Filter an oligos fasta file. The verdicts of the cacheable filters are
+   * read from the cache if available, otherwise the filters are applied until
+   * the first rejection and their new verdicts are saved in the cache.
+   * @param oligoFile input file
+   * @param filters filters to apply
+   * @param verdicts cache of the verdicts of the filters
+   * @param keys cache keys of the filters
+   * @param cachedFilters filters that have not been initialized because their
+   *          verdicts are in the cache
+   * @param order adaptive order of the filters
+   * @param maskedFiles filter masked files too
+   * @return the number of oligonucleotides after filtering
+   * @throws IOException if an error occurs while filtering
+   * @throws TeolennException if the oligo sequence resource is not available
+   */
+  private static final int filterSequencesFile(final File oligoFile,
+      final SequenceFilter[] filters, final VerdictCache verdicts,
+      final String[] keys, final boolean[] cachedFilters,
+      final AdaptiveFilterOrder order, final boolean maskedFiles)
+      throws IOException, TeolennException {
+
+    final OligoSequenceResource osr = OligoSequenceResource.getRessource();
+    final boolean compress = osr.isCompressedOligos();
+    final boolean container = osr.isContainerOligos();
 
     int count = 0;
 
-    for (File oligoFile : oligoFiles) {
+    // The verdicts of the cache are used where the filters have already been
+    // evaluated, the filters are evaluated on the other oligonucleotides
+    final int n = filters.length;
+    final VerdictCache.Verdicts[] cache = new VerdictCache.Verdicts[n];
+    final BitSet rejected = new BitSet();
+    int cacheCount = -1;
+
+    for (int j = 0; j < n; j++)
+      if (keys[j] != null) {
+        cache[j] = verdicts.load(oligoFile, keys[j]);
+        rejected.or(cache[j].getRejected());
+        cacheCount = Math.max(cacheCount, cache[j].getCount());
+      }
+
+    for (int j = 0; j < n; j++)
+      if (cachedFilters[j]
+          && (cacheCount == -1 || !cache[j].isComplete(rejected, cacheCount)))
+        throw new IOException("The verdicts of the "
+            + filters[j].getName() + " filter are no more available for "
+            + oligoFile.getName() + ", run the design again");
 
-      final String basename = StringUtils.basename(oligoFile.getAbsolutePath());
+    final long[] times = new long[n];
+    final boolean[] accepted = new boolean[n];
 
-      final SequenceIterator si1 = new SequenceIterator(oligoFile);
-      final SequenceIterator si2 =
-          maskedFiles ? new SequenceIterator(new File(basename
-              + DesignConstants.OLIGO_MASKED_SUFFIX)) : null;
+    final String basename = StringUtils.basename(oligoFile.getAbsolutePath());
 
-      final SequenceWriter sw1 =
-          new SequenceWriter(new File(basename
-              + DesignConstants.OLIGO_FILTERED_SUFFIX));
-      final SequenceWriter sw2 =
-          maskedFiles ? new SequenceWriter(new File(basename
-              + DesignConstants.OLIGO_MASKED_FILTERED_SUFFIX)) : null;
+    final SequenceIterator si1 = osr.getSequenceIterator(oligoFile);
+    final SequenceIterator si2 =
+        maskedFiles ? osr.getSequenceIterator(new File(basename
+            + DesignConstants.OLIGO_MASKED_SUFFIX)) : null;
 
-      final SequenceFilter[] filters =
-          sequenceFilters.toArray(new SequenceFilter[0]);
+    final SequenceWriter sw1 =
+        new SequenceWriter(new File(basename
+            + DesignConstants.OLIGO_FILTERED_SUFFIX), compress, container);
+    final SequenceWriter sw2 =
+        maskedFiles ? new SequenceWriter(new File(basename
+            + DesignConstants.OLIGO_MASKED_FILTERED_SUFFIX), compress,
+            container) : null;
 
-      while (si1.hasNext()) {
+    int index = 0;
 
-        si1.next();
-        if (maskedFiles)
-          si2.next();
+    while (si1.hasNext()) {
+
+      si1.next();
+      if (maskedFiles)
+        si2.next();
+
+      // The oligonucleotides accepted by the cache are not rejected by the
+      // filters with cached verdicts
+      boolean result = !rejected.get(index);
+      final int[] filtersOrder = order.getOrder();
 
-        boolean result = true;
+      if (result && filtersOrder == null) {
 
-        for (int j = 0; j < filters.length; j++)
-          if (!filters[j].accept(si1)) {
+        // Sample the cost and the reject rate of the filters
+        for (int j = 0; j < n; j++) {
+
+          if ((!result && !order.isReorderable(j))
+              || (cache[j] != null && cache[j].isEvaluated(index))) {
+            times[j] = -1;
+            continue;
+          }
+
+          final long start = System.nanoTime();
+          accepted[j] = filters[j].accept(si1);
+          times[j] = System.nanoTime() - start;
+
+          if (cache[j] != null)
+            cache[j].set(index, accepted[j]);
+          if (!accepted[j])
+            result = false;
+        }
+
+        order.addSample(times, accepted);
+
+      } else if (result)
+        for (int j : filtersOrder) {
+
+          if (cache[j] != null && cache[j].isEvaluated(index))
+            continue;
+
+          final boolean a = filters[j].accept(si1);
+          if (cache[j] != null)
+            cache[j].set(index, a);
+
+          if (!a) {
             result = false;
             break;
           }
-
-        if (result) {
-          sw1.write(si1);
-          if (maskedFiles)
-            sw2.write(si2);
-          count++;
         }
 
+      if (result) {
+        sw1.write(si1);
+        if (maskedFiles)
+          sw2.write(si2);
+        count++;
       }
 
-      sw1.close();
-      if (maskedFiles)
-        sw2.close();
+      index++;
     }
 
-    logger.info("" + count + " oligonucleotides after filtering");
+    sw1.close();
+    if (maskedFiles)
+      sw2.close();
+
+    for (int j = 0; j < n; j++)
+      if (cache[j] != null && cache[j].isModified())
+        verdicts.save(oligoFile, keys[j], cache[j], index);
+
+    return count;
   }
 
   /**
@@ -294,6 +551,23 @@ public class DesignCommand extends Design {
     logger.info("Oligo interval length: " + getOligoIntervalLength());
     logger.info("Genome file: " + getGenomeFile());
     logger.info("Genome masked file: " + getGenomeMaskedFile());
+    logger.info("Virtual oligos: " + isVirtualOligos());
+    logger.info("Fused filters: " + isFusedFilters());
+    logger.info("Compressed oligos: " + isCompressedFiles());
+    logger.info("Container oligos: " + isContainerFiles());
+    logger.info("Target regions: " + getRegions());
+    if (!Float.isNaN(getTargetTm()))
+      logger.info("Target Tm: "
+          + getTargetTm() + " (" + getTargetTmLengths()
+          + " length(s) by position)");
+    if (getCoarseStep() > 1) {
+      if (isCoarseToFine())
+        logger.info("Coarse-to-fine step: " + getCoarseStep());
+      else
+        logger.warning("The coarse-to-fine search is only used with the "
+            + TilingSelector.SELECTOR_NAME + " selector, "
+            + "without virtual oligos and without skipped phases.");
+    }
     logger.info("Output directory: " + getOutputDir());
 
     this.startTimeDesign = System.currentTimeMillis();
@@ -312,7 +586,12 @@ public class DesignCommand extends Design {
     // Create resources
     OligoSequenceResource.getRessource(getOligosDir(),
         DesignConstants.OLIGO_SUFFIX, getOligoLength(),
-        getOligoIntervalLength(), isStart1());
+        getOligoIntervalLength(), isStart1(), isVirtualOligos(),
+        isCompressedFiles(), isContainerFiles()).setConvertXN(isRemoveX());
+    GapResource.getRessource(PackedGenomeResource
+        .getRessource(getOligosDir()), isStart1());
+    CompositionResource.getRessource(PackedGenomeResource.getRessource(),
+        isStart1());
   }
 
   /**
@@ -327,21 +606,22 @@ public class DesignCommand extends Design {
     logStartPhase("create oligos");
 
     FileUtils.removeFiles(getOligosDir().listFiles(), false);
+    setOligosKey(getOligosKey(isCoarseToFine() ? getCoarseStep() : 1));
 
     Map<String, Integer> chrOligo = null;
     Map<String, Integer> chrMasked = null;
 
     try {
-      chrOligo =
-          SequenceCore.fastaOverlap(getGenomeFile(), getOligosDir(),
-              DesignConstants.OLIGO_SUFFIX, getOligoLength(),
-              getOligoIntervalLength(), isStart1());
+
+      // Create the packed chromosomes shared by all the phases
+      chrOligo = packGenome(getGenomeFile(), false);
 
       if (isGenomeMaskedFile())
-        chrMasked =
-            SequenceCore.fastaOverlap(getGenomeMaskedFile(), getOligosDir(),
-                DesignConstants.OLIGO_MASKED_SUFFIX, getOligoLength(),
-                getOligoIntervalLength(), isStart1());
+        chrMasked = packGenome(getGenomeMaskedFile(), true);
+
+      PackedGenomeResource.getRessource().clear();
+      CompositionResource.getRessource().clear();
+
     } catch (IOException e) {
       throw new TeolennException(e);
     }
@@ -356,13 +636,390 @@ public class DesignCommand extends Design {
     // Fill chromosome names and save chromosome list file
     chromosomeNames.addChromosomesNames(chrOligo);
 
-    logger.info(""
-        + countOligosCreated(chrOligo) + " oligos created in "
-        + chrOligo.size() + " chromosomes.");
+    try {
+
+      // Virtual oligos are generated on demand from the packed chromosomes,
+      // the other oligos are created in the order of the chromosome list
+      if (!isVirtualOligos())
+        createOligos(chromosomeNames.getChromosomesNames(), initRegions(),
+            isCoarseToFine() ? getCoarseStep() : 1);
+      else if (!Float.isNaN(getTargetTm()))
+        logger.warning("The isothermal mode is not used with virtual oligos.");
+
+    } catch (IOException e) {
+      throw new TeolennException(e);
+    }
+
+    if (!isFusedGeneration())
+      logger.info(""
+          + countOligosCreated(chrOligo) + " oligos created in "
+          + chrOligo.size() + " chromosomes.");
 
     logEndPhase("create oligos");
   }
 
+  /**
+   * In the fine stage of the coarse-to-fine search, create again the oligos at
+   * full resolution in the regions around the oligos selected in the coarse
+   * stage.
+   * @param regions the regions around the oligos selected in the coarse stage
+   * @throws TeolennException if an error occurs while creating the oligos
+   */
+  private void phase1CreateFineOligos(final RegionResource regions)
+      throws TeolennException {
+
+    logStartPhase("create fine oligos");
+
+    logger.info("Length of the regions of the fine stage: "
+        + regions.getRegionsLength());
+
+    // The regions of the fine stage depend on the whole coarse stage, the
+    // verdicts of the filters on these oligos are not cached
+    setOligosKey(null);
+
+    try {
+      createOligos(ChromosomeNameResource.getRessource().getChromosomesNames(),
+          regions, 1);
+    } catch (IOException e) {
+      throw new TeolennException(e);
+    }
+
+    logEndPhase("create fine oligos");
+  }
+
+  /**
+   * Create the oligonucleotides files from the packed genome.
+   * @param chromosomes names of the chromosomes
+   * @param regions target regions (can be null)
+   * @param startStep step between the start positions of the oligos
+   * @throws IOException if an error occurs while creating the oligos
+   * @throws TeolennException if an error occurs while initializing the filters
+   */
+  private void createOligos(final List<String> chromosomes,
+      final RegionResource regions, final int startStep) throws IOException,
+      TeolennException {
+
+    // The oligos files opened by the resource will be replaced
+    OligoSequenceResource.getRessource().close();
+
+    final OverlapSettings settings =
+        new OverlapSettings(getOligoLength(), getOligoIntervalLength(),
+            isStart1(), Settings.getMaxThreads());
+    settings.setFilters(initGenerationSequenceFilters());
+    settings.setSkipGaps(isSkipGaps());
+    settings.setRegions(regions);
+    settings.setTargetTm(getTargetTm(), getTargetTmLengths());
+    settings.setStartStep(startStep);
+    settings.setCompress(isCompressedFiles());
+    settings.setContainer(isContainerFiles());
+
+    SequenceCore.packedOverlap(PackedGenomeResource.getRessource(),
+        chromosomes, getOligosDir(), DesignConstants.OLIGO_SUFFIX, settings);
+  }
+
+  /**
+   * Get the key of the oligonucleotides files created by the design. The key
+   * contains the genome files and all the parameters used to create the
+   * oligonucleotides, so the verdicts of the filters on the oligonucleotides
+   * can be reused by the next designs that create the same oligonucleotides.
+   * @param startStep step between the start positions of the oligos
+   * @return a String with the key of the oligonucleotides files or null if
+   *         the oligonucleotides files can't be identified
+   */
+  private String getOligosKey(final int startStep) {
+
+    final StringBuilder sb = new StringBuilder();
+
+    sb.append("genome=");
+    sb.append(VerdictCache.getFingerprint(getGenomeFile()));
+    sb.append(",genomemasked=");
+    sb.append(VerdictCache.getFingerprint(getGenomeMaskedFile()));
+    sb.append(",oligolength=");
+    sb.append(getOligoLength());
+    sb.append(",interval=");
+    sb.append(getOligoIntervalLength());
+    sb.append(",start1=");
+    sb.append(isStart1());
+    sb.append(",virtual=");
+    sb.append(isVirtualOligos());
+    sb.append(",skipgaps=");
+    sb.append(isSkipGaps());
+    sb.append(",targettm=");
+    sb.append(getTargetTm());
+    sb.append(",targettmlengths=");
+    sb.append(getTargetTmLengths());
+    sb.append(",step=");
+    sb.append(startStep);
+
+    final String regions = getRegions();
+    if (regions != null && !"".equals(regions)) {
+
+      sb.append(",regions=");
+      sb.append(regions);
+
+      if (!DesignConstants.ORFS_REGIONS.equals(regions.toLowerCase()))
+        sb.append("," + VerdictCache.getFingerprint(new File(regions)));
+    }
+
+    // The oligos created depend on the filters applied while creating them
+    // and on the ORFs filter that may define the regions
+    for (SequenceFilter sf : getSequenceFiltersList())
+      if ((isFusedGeneration() && sf instanceof GenerationSequenceFilter)
+          || sf instanceof ORFsFilter) {
+
+        final String key =
+            sf instanceof CacheableSequenceFilter
+                ? ((CacheableSequenceFilter) sf).getCacheKey() : null;
+
+        if (key == null)
+          return null;
+
+        sb.append('\t');
+        sb.append(key);
+      }
+
+    return sb.toString();
+  }
+
+  /**
+   * Set the key of the oligonucleotides files. The key is saved in the oligos
+   * directory for the designs that skip the creation of the oligos.
+   * @param key key of the oligonucleotides files (can be null)
+   * @throws TeolennException if an error occurs while saving the key
+   */
+  private void setOligosKey(final String key) throws TeolennException {
+
+    this.oligosKey = key;
+
+    final File file =
+        new File(getOligosDir(), DesignConstants.OLIGOS_KEY_FILE);
+
+    try {
+
+      if (key == null) {
+
+        if (file.exists() && !file.delete())
+          throw new IOException("Unable to remove the oligos key file: "
+              + file);
+        return;
+      }
+
+      final UnSynchronizedBufferedWriter writer =
+          FileUtils.createBufferedWriter(file);
+      writer.write(key);
+      writer.write('\n');
+      writer.close();
+
+    } catch (IOException e) {
+      throw new TeolennException(e);
+    }
+  }
+
+  /**
+   * Load the key of the oligonucleotides files created by a previous design.
+   * @return the key of the oligonucleotides files or null if the key is not
+   *         available
+   * @throws TeolennException if an error occurs while reading the key
+   */
+  private String loadOligosKey() throws TeolennException {
+
+    final File file =
+        new File(getOligosDir(), DesignConstants.OLIGOS_KEY_FILE);
+
+    if (!file.isFile())
+      return null;
+
+    try {
+
+      final BufferedReader reader = FileUtils.createBufferedReader(file);
+
+      try {
+        return reader.readLine();
+      } finally {
+        reader.close();
+      }
+
+    } catch (IOException e) {
+      throw new TeolennException(e);
+    }
+  }
+
+  /**
+   * Create the packed chromosomes of a genome file. Genome files that allow
+   * random access (.2bit files and indexed fasta files) are packed in
+   * parallel, other fasta files are read sequentially.
+   * @param genomeFile genome file
+   * @param mask true if the genome file is the masked genome
+   * @return a map with the length of the chromosomes
+   * @throws IOException if an error occurs while packing the genome
+   */
+  private Map<String, Integer> packGenome(final File genomeFile,
+      final boolean mask) throws IOException {
+
+    final GenomeReader reader =
+        GenomeReaderFactory.createGenomeReader(genomeFile);
+
+    if (reader == null)
+      return SequenceCore.fastaPack(genomeFile, getOligosDir(),
+          DesignConstants.PACKED_CHROMOSOME_SUFFIX, mask);
+
+    try {
+      return SequenceCore.genomePack(reader, getOligosDir(),
+          DesignConstants.PACKED_CHROMOSOME_SUFFIX, mask, Settings
+              .getMaxThreads());
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Initialize the target regions of the design. The target regions are the
+   * ORFs of the ORFs sequence filter or the regions of a BED file.
+   * @return a RegionResource object or null if the oligonucleotides are
+   *         created on all the genome
+   * @throws TeolennException if an error occurs while reading the regions
+   */
+  private RegionResource initRegions() throws TeolennException {
+
+    final String regions = getRegions();
+
+    if (regions == null || "".equals(regions))
+      return null;
+
+    if (isVirtualOligos()) {
+      logger.warning("Target regions are not used with virtual oligos.");
+      return null;
+    }
+
+    final RegionResource result;
+
+    if (DesignConstants.ORFS_REGIONS.equals(regions.toLowerCase())) {
+
+      SequenceFilter orfsFilter = null;
+      for (SequenceFilter sf : getSequenceFiltersList())
+        if (sf instanceof ORFsFilter)
+          orfsFilter = sf;
+
+      if (orfsFilter == null)
+        throw new TeolennException(
+            "The ORFs sequence filter is needed to use the ORFs as regions.");
+
+      orfsFilter.init();
+      result =
+          RegionResource.getRessource(ORFResource.getRessource(), isStart1());
+    } else
+      try {
+        result = RegionResource.getRessource(new File(regions));
+      } catch (IOException e) {
+        throw new TeolennException("Unable to read the regions file: "
+            + e.getMessage());
+      }
+
+    logger.info("Length of the target regions: " + result.getRegionsLength());
+
+    return result;
+  }
+
+  /**
+   * Test if the sequence filters that allow it are applied while the
+   * oligonucleotides are created. This is not the case for virtual
+   * oligonucleotides that are only created when they are filtered.
+   * @return true if the sequence filters are applied while the
+   *         oligonucleotides are created
+   */
+  private boolean isFusedGeneration() {
+
+    return isFusedFilters() && !isVirtualOligos() && !isSkipSequenceFilters();
+  }
+
+  /**
+   * Test if the oligonucleotides that overlap a gap (a run of 'N' or 'X'
+   * bases) are not created. This is the case when the sequence XN filter is
+   * applied while the oligonucleotides are created.
+   * @return true if the oligonucleotides that overlap a gap are not created
+   */
+  private boolean isSkipGaps() {
+
+    if (!isFusedGeneration())
+      return false;
+
+    for (SequenceFilter sf : getSequenceFiltersList())
+      if (sf instanceof SequenceXNFilter)
+        return true;
+
+    return false;
+  }
+
+  /**
+   * Test if the 'X' of the sequences of the oligonucleotides are replaced by
+   * 'N'. This is the case when the removex sequence filter is applied.
+   * @return true if the 'X' of the sequences are replaced by 'N'
+   */
+  private boolean isRemoveX() {
+
+    if (isSkipSequenceFilters())
+      return false;
+
+    for (SequenceFilter sf : getSequenceFiltersList())
+      if (sf instanceof RemoveXSequenceFilter)
+        return true;
+
+    return false;
+  }
+
+  /**
+   * Initialize the sequence filters to apply while the oligonucleotides are
+   * created.
+   * @return an array with the filters or null if the filters are not fused
+   * @throws TeolennException if an error occurs while initializing the filters
+   */
+  private GenerationSequenceFilter[] initGenerationSequenceFilters()
+      throws TeolennException {
+
+    if (!isFusedGeneration())
+      return null;
+
+    final List<GenerationSequenceFilter> result =
+        new ArrayList<GenerationSequenceFilter>();
+
+    for (SequenceFilter sf : getSequenceFiltersList())
+      if (sf instanceof GenerationSequenceFilter) {
+
+        // The oligos that overlap gaps are not created
+        if (sf instanceof SequenceXNFilter && isSkipGaps())
+          continue;
+
+        sf.init();
+        result.add((GenerationSequenceFilter) sf);
+      }
+
+    logger.info("Sequence filters applied while creating oligos: "
+        + result.size());
+
+    return result.toArray(new GenerationSequenceFilter[result.size()]);
+  }
+
+  /**
+   * Get the sequence filters that have not been applied while the
+   * oligonucleotides were created.
+   * @param listSequenceFilters list of sequence filters of the design
+   * @return a list with the filters to apply
+   */
+  private List<SequenceFilter> getRemainingSequenceFilters(
+      final List<SequenceFilter> listSequenceFilters) {
+
+    if (!isFusedGeneration())
+      return listSequenceFilters;
+
+    final List<SequenceFilter> result = new ArrayList<SequenceFilter>();
+
+    for (SequenceFilter sf : listSequenceFilters)
+      if (!(sf instanceof GenerationSequenceFilter))
+        result.add(sf);
+
+    return result;
+  }
+
   /**
    * In this phase, remove from the generated oligos all the invalid oligos.
    * @param listSequenceFilters list of sequence filters to apply
@@ -381,23 +1038,51 @@ public class DesignCommand extends Design {
     FileUtils.removeFiles(FileUtils.listFilesByExtension(getOligosDir(),
         DesignConstants.OLIGO_MASKED_FILTERED_SUFFIX), false);
 
-    // Init all the filters
-    for (SequenceFilter sf : listSequenceFilters)
-      sf.init();
+    // The character class filters are executed in a single pass
+    final SequenceFilter[] filters =
+        CharacterClassFilter.merge(
+            getRemainingSequenceFilters(listSequenceFilters)).toArray(
+            new SequenceFilter[0]);
+
+    // All the filters may have been applied while creating the oligos
+    if (isFusedGeneration() && filters.length == 0) {
+      logger.info("All the sequence filters have been applied "
+          + "while creating oligos.");
+      logEndPhase("filter oligos");
+      return;
+    }
 
     // Get the list of oligos files to process
-    final List<String> chrNames =
-        ChromosomeNameResource.getRessource().getChromosomesNames();
-    final List<File> oligoFiles = new ArrayList<File>(chrNames.size());
+    final List<File> oligoFiles =
+        getOligoFiles(isVirtualOligos()
+            ? DesignConstants.PACKED_CHROMOSOME_SUFFIX
+            : DesignConstants.OLIGO_SUFFIX);
+
+    // The verdicts of the filters of a previous design are reused
+    final VerdictCache verdicts =
+        new VerdictCache(new File(getOutputDir(),
+            DesignConstants.VERDICTS_SUBDIR), this.oligosKey);
+    final String[] keys = verdicts.getKeys(filters);
+    final boolean[] cachedFilters =
+        verdicts.getCachedFilters(oligoFiles, keys);
+
+    // Init the filters which verdicts are not in the cache for all the files
+    for (int i = 0; i < filters.length; i++) {
+
+      if (cachedFilters[i])
+        logger.info("Use the cached verdicts of the "
+            + filters[i].getName() + " filter.");
+      else
+        filters[i].init();
+    }
 
-    final File oligoDir = getOligosDir();
-    for (String chrName : chrNames)
-      oligoFiles
-          .add(new File(oligoDir, chrName + DesignConstants.OLIGO_SUFFIX));
+    // Masked oligos are only needed if the mask is not in the packed genome
+    final boolean maskedFiles =
+        isGenomeMaskedFile() && !PackedGenomeResource.getRessource().isMask();
 
     try {
-      DesignCommand.filterSequencesFiles(oligoFiles, listSequenceFilters,
-          isGenomeMaskedFile());
+      DesignCommand.filterSequencesFiles(oligoFiles, filters, verdicts, keys,
+          cachedFilters, maskedFiles);
     } catch (IOException e) {
 
       throw new TeolennException("Error while filtering sequence: "
@@ -427,18 +1112,18 @@ public class DesignCommand extends Design {
     }
 
     // Get the list of filtered oligos files to process
-    final List<String> chrNames =
-        ChromosomeNameResource.getRessource().getChromosomesNames();
-    final List<File> oligoFilteredFiles = new ArrayList<File>(chrNames.size());
+    final String suffix;
+
+    if (!isSkipSequenceFilters()
+        && !(isFusedGeneration() && getRemainingSequenceFilters(
+            getSequenceFiltersList()).size() == 0))
+      suffix = DesignConstants.OLIGO_FILTERED_SUFFIX;
+    else if (isVirtualOligos())
+      suffix = DesignConstants.PACKED_CHROMOSOME_SUFFIX;
+    else
+      suffix = DesignConstants.OLIGO_SUFFIX;
 
-    final File oligoDir = getOligosDir();
-    final String suffix =
-        isSkipSequenceFilters()
-            ? DesignConstants.OLIGO_SUFFIX
-            : DesignConstants.OLIGO_FILTERED_SUFFIX;
-
-    for (String chrName : chrNames)
-      oligoFilteredFiles.add(new File(oligoDir, chrName + suffix));
+    final List<File> oligoFilteredFiles = getOligoFiles(suffix);
 
     // Test if input files exists
     if (oligoFilteredFiles == null || oligoFilteredFiles.size() == 0) {
@@ -513,6 +1198,75 @@ public class DesignCommand extends Design {
 
     logStartPhase("select");
 
+    final File selectedOligos =
+        new File(getOutputDir(), DesignConstants.SELECTED_FILE);
+
+    // Open output file
+    final MultiSequenceMeasurementWriter measurementWriter =
+        new MultiSequenceMeasurementWriter();
+
+    // Init the outputs and add it to measurementWriter
+    for (Output o : getOutputList()) {
+      o.setInitParameter(DesignConstants.OUTPUT_DEFAULT_FILE_PARAMETER_NAME,
+          selectedOligos.getAbsolutePath());
+      o.init();
+      measurementWriter.addWriter(o);
+    }
+
+    select(selector, wSetter, measurementWriter);
+
+    // Select.select(filteredOligoMeasurementsFile, statsFile, selectedOligos,
+    // wSetter, this.windowLength, this.windowStep);
+
+    logEndPhase("select");
+    final long endTimeDesign = System.currentTimeMillis();
+    logger.info("Process the design in "
+        + StringUtils.toTimeHumanReadable(endTimeDesign - this.startTimeDesign)
+        + " ms.");
+  }
+
+  /**
+   * In the coarse stage of the coarse-to-fine search, select the oligos
+   * created on the coarse grid and get the regions around them.
+   * @param selector SequenceSelector to use
+   * @param wSetter weight of selection
+   * @return the regions around the selected oligos
+   * @throws TeolennException if an error occurs while selecting
+   */
+  private RegionResource phase5CoarseSelect(final SequenceSelector selector,
+      final WeightsSetter wSetter) throws TeolennException {
+
+    logStartPhase("coarse select");
+
+    final SelectedPositionsWriter writer =
+        new SelectedPositionsWriter(isStart1() ? 1 : 0);
+
+    select(selector, wSetter, writer);
+
+    logger.info(writer.count + " oligos selected in the coarse stage.");
+
+    final RegionResource result =
+        RegionResource.createNeighbourhoods(writer.positions, getCoarseStep(),
+            getOligoLength() + getOligoIntervalLength());
+    final RegionResource regions = initRegions();
+
+    logEndPhase("coarse select");
+
+    return regions == null ? result : result.intersect(regions);
+  }
+
+  /**
+   * Select the oligos.
+   * @param selector SequenceSelector to use
+   * @param wSetter weight of selection
+   * @param measurementWriter writer for the selected oligos
+   * @throws TeolennException if an error occurs while selecting
+   */
+  private void select(final SequenceSelector selector,
+      final WeightsSetter wSetter,
+      final SequenceMeasurementsWriter measurementWriter)
+      throws TeolennException {
+
     final File oligoMeasurementsFile =
         new File(getOutputDir(), DesignConstants.OLIGO_MEASUREMENTS_FILE);
     final File filteredOligoMeasurementsFile =
@@ -521,9 +1275,6 @@ public class DesignCommand extends Design {
     final File statsFile =
         new File(getOutputDir(),
             DesignConstants.OLIGO_MEASUREMENTS_FILTERED_STATS_FILE);
-    final File selectedOligos =
-        new File(getOutputDir(), DesignConstants.SELECTED_FILE);
-
     if (!statsFile.exists()) {
 
       logger.severe("No stats file found.");
@@ -552,33 +1303,149 @@ public class DesignCommand extends Design {
               .createSequenceMeasurementsFilteredReader(
                   filteredOligoMeasurementsFile, oligoMeasurementsFile);
 
-      // Open output file
-      final MultiSequenceMeasurementWriter measurementWriter =
-          new MultiSequenceMeasurementWriter();
-
-      // Init the outputs and add it to measurementWriter
-      for (Output o : getOutputList()) {
-        o.setInitParameter(DesignConstants.OUTPUT_DEFAULT_FILE_PARAMETER_NAME,
-            selectedOligos.getAbsolutePath());
-        o.init();
-        measurementWriter.addWriter(o);
-      }
-
       // Launch selection
       selector.select(measurementReader, measurementWriter, wSetter);
 
     } catch (IOException e) {
       throw new TeolennException(e);
     }
+  }
 
-    // Select.select(filteredOligoMeasurementsFile, statsFile, selectedOligos,
-    // wSetter, this.windowLength, this.windowStep);
+  //
+  // Internal class
+  //
 
-    logEndPhase("select");
-    final long endTimeDesign = System.currentTimeMillis();
-    logger.info("Process the design in "
-        + StringUtils.toTimeHumanReadable(endTimeDesign - this.startTimeDesign)
-        + " ms.");
+  /**
+   * This class allow to filter the oligonucleotides files in parallel.
+   */
+  private static final class FilterLoopHandler extends SelfLoopHandler {
+
+    private final List<File> oligoFiles;
+    private final SequenceFilter[] filters;
+    private final VerdictCache verdicts;
+    private final String[] keys;
+    private final boolean[] cachedFilters;
+    private final AdaptiveFilterOrder order;
+    private final boolean maskedFiles;
+    private int count;
+    private IOException ioException;
+    private RuntimeException runtimeException;
+
+    @Override
+    public void loopDoRange(final int start, final int end) {
+
+      for (int i = start; i < end; i++) {
+
+        final File oligoFile = this.oligoFiles.get(i);
+
+        try {
+
+          logger.fine("Filter "
+              + oligoFile.getName() + " (Thread "
+              + Thread.currentThread().getId() + ")");
+
+          final int n =
+              filterSequencesFile(oligoFile, this.filters, this.verdicts,
+                  this.keys, this.cachedFilters, this.order,
+                  this.maskedFiles);
+
+          synchronized (this) {
+            this.count += n;
+          }
+
+        } catch (IOException e) {
+
+          error(oligoFile, e, e);
+        } catch (TeolennException e) {
+
+          error(oligoFile, e, new IOException(e.getMessage()));
+        } catch (RuntimeException e) {
+
+          error(oligoFile, e, null);
+          synchronized (this) {
+            if (this.runtimeException == null)
+              this.runtimeException = e;
+          }
+        }
+      }
+    }
+
+    /**
+     * Log an error and keep the first exception.
+     * @param oligoFile file that was filtered
+     * @param e the error
+     * @param ioe the exception to throw at the end of the loop
+     */
+    private synchronized void error(final File oligoFile, final Exception e,
+        final IOException ioe) {
+
+      logger.severe("Unable to filter " + oligoFile + ": " + e.getMessage());
+
+      if (this.ioException == null)
+        this.ioException = ioe;
+    }
+
+    //
+    // Constructor
+    //
+
+    FilterLoopHandler(final List<File> oligoFiles,
+        final SequenceFilter[] filters, final VerdictCache verdicts,
+        final String[] keys, final boolean[] cachedFilters,
+        final AdaptiveFilterOrder order, final boolean maskedFiles,
+        final int threads) {
+
+      super(0, oligoFiles.size(), 1, threads);
+
+      this.oligoFiles = oligoFiles;
+      this.filters = filters;
+      this.verdicts = verdicts;
+      this.keys = keys;
+      this.cachedFilters = cachedFilters;
+      this.order = order;
+      this.maskedFiles = maskedFiles;
+    }
+  }
+
+  /**
+   * This class allow to collect the start positions of the selected oligos.
+   */
+  private static final class SelectedPositionsWriter implements
+      SequenceMeasurementsWriter {
+
+    private final int firstPosition;
+    private final Map<String, List<Integer>> positions =
+        new HashMap<String, List<Integer>>();
+    private int count;
+
+    public void writeSequenceMesurement(final SequenceMeasurements sm) {
+
+      final Object[] values = sm.getArrayMeasurementValues();
+      final String chr =
+          (String) values[sm
+              .getIndexMeasurment(ChromosomeMeasurement.MEASUREMENT_NAME)];
+      final int start =
+          (Integer) values[sm
+              .getIndexMeasurment(OligoStartMeasurement.MEASUREMENT_NAME)];
+
+      List<Integer> list = this.positions.get(chr);
+
+      if (list == null) {
+        list = new ArrayList<Integer>();
+        this.positions.put(chr, list);
+      }
+
+      list.add(start - this.firstPosition);
+      this.count++;
+    }
+
+    public void close() {
+    }
+
+    SelectedPositionsWriter(final int firstPosition) {
+
+      this.firstPosition = firstPosition;
+    }
   }
 
   //
@@ -28,8 +28,13 @@ public class DesignConstants {
   public static final String OLIGO_MASKED_SUFFIX = ".masked";
   public static final String OLIGO_FILTERED_SUFFIX = ".oligo.filtered";
   public static final String OLIGO_MASKED_FILTERED_SUFFIX = ".masked.filtered";
+  public static final String PACKED_CHROMOSOME_SUFFIX = ".pck";
+  public static final String VERDICTS_SUFFIX = ".verdicts";
+  public static final String ORFS_REGIONS = "orfs";
   public static final String OLIGO_SUBDIR = "oligos";
   public static final String TEMP_SUBDIR = "tmp";
+  public static final String VERDICTS_SUBDIR = "verdicts";
+  public static final String OLIGOS_KEY_FILE = "oligos.key";
   static final String OLIGO_MEASUREMENTS_FILE = "oligo.mes";
   static final String OLIGO_MEASUREMENTS_STATS_FILE = "oligo.stats";
   static final String OLIGO_MEASUREMENTS_FILTERED_FILE = "filtered.mes";
@@ -48,6 +53,11 @@ public class DesignConstants {
   public static final String START_1_PARAMETER_NAME = "_start1";
   public static final String EXTENSION_FILTER_PARAMETER_NAME =
   "_extensionfilter";
+  public static final String VIRTUAL_OLIGOS_PARAMETER_NAME = "_virtualoligos";
+  public static final String COMPRESSED_OLIGOS_PARAMETER_NAME =
+  "_compressedoligos";
+  public static final String CONTAINER_OLIGOS_PARAMETER_NAME =
+  "_containeroligos";
   public static final String CURRENT_OLIGO_FILE_PARAMETER_NAME =
   "currentOligoFile";
   public static final String MEASUREMENT_FILE_PARAMETER_NAME = "_oriMesFile";
@@ -201,6 +201,9 @@ public class DesignReader {
         "measurementfilters"));
     d.setSkipSelector(isSkipElementEnable(designElement, "selector"));
 
+    // Set the sequence creation parameters
+    parseSequenceCreation(designElement);
+
     // Set the sequenceFilters
     d.setSequenceFiltersList(parseSequenceFilters(designElement));
 
@@ -213,6 +216,10 @@ public class DesignReader {
     // Set the selector
     d.setSelector(parseSelector(designElement));
 
+    // The coarse stage of the coarse-to-fine search needs its own selector
+    if (d.getCoarseStep() > 1)
+      d.setCoarseSelector(parseSelector(designElement));
+
     // Set the weights
     d.setWeightSetters(parseSelectWeights(designElement));
 
@@ -256,6 +263,57 @@ public class DesignReader {
     return s;
   }
 
+  /**
+   * Parse the "sequencecreation" element of the DOM.
+   * @param rootElement root element of the document
+   */
+  private void parseSequenceCreation(final Element rootElement) {
+
+    for (Iterator i = rootElement.elementIterator("sequencecreation"); i
+        .hasNext();) {
+
+      final Properties properties = getElementParameters((Element) i.next());
+
+      if (properties.containsKey("virtual"))
+        this.design.setVirtualOligos(Boolean.parseBoolean(properties
+            .getProperty("virtual").trim()));
+
+      if (properties.containsKey("fusedfilters"))
+        this.design.setFusedFilters(Boolean.parseBoolean(properties
+            .getProperty("fusedfilters").trim()));
+
+      if (properties.containsKey("compressed"))
+        this.design.setCompressedOligos(Boolean.parseBoolean(properties
+            .getProperty("compressed").trim()));
+
+      if (properties.containsKey("container"))
+        this.design.setContainerOligos(Boolean.parseBoolean(properties
+            .getProperty("container").trim()));
+
+      if (properties.containsKey("regions"))
+        this.design.setRegions(properties.getProperty("regions").trim());
+
+      if (properties.containsKey("targettm"))
+        this.design.setTargetTm(Float.parseFloat(properties.getProperty(
+            "targettm").trim()));
+
+      if (properties.containsKey("targettmlengths"))
+        this.design.setTargetTmLengths(Integer.parseInt(properties
+            .getProperty("targettmlengths").trim()));
+
+      if (properties.containsKey("coarsestep"))
+        this.design.setCoarseStep(Integer.parseInt(properties.getProperty(
+            "coarsestep").trim()));
+    }
+
+    setConstant("virtualoligos", "" + this.design.isVirtualOligos());
+    setConstant("fusedfilters", "" + this.design.isFusedFilters());
+    setConstant("compressedoligos", "" + this.design.isCompressedOligos());
+    setConstant("containeroligos", "" + this.design.isContainerOligos());
+    setConstant("regions", "" + this.design.getRegions());
+    setConstant("targettm", "" + this.design.getTargetTm());
+  }
+
   /**
    * Parse the "sequencefilters" element of the DOM.
    * @param rootElement root element of the document
@@ -35,9 +35,11 @@ import fr.ens.transcriptome.teolenn.measurement.filter.MeasurementFilter;
 import fr.ens.transcriptome.teolenn.measurement.io.SequenceMeasurementsIOFactory;
 import fr.ens.transcriptome.teolenn.measurement.io.SequenceMeasurementsReader;
 import fr.ens.transcriptome.teolenn.measurement.io.SequenceMeasurementsWriter;
+import fr.ens.transcriptome.teolenn.resource.OligoSequenceResource;
 import fr.ens.transcriptome.teolenn.sequence.SequenceIterator;
 import fr.ens.transcriptome.teolenn.sequence.SequenceMeasurements;
 import fr.ens.transcriptome.teolenn.sequence.SequenceMeasurementsStatWriter;
+import fr.ens.transcriptome.teolenn.util.AdaptiveFilterOrder;
 
 public class MeasurementCore {
 
@@ -88,7 +90,13 @@ public class MeasurementCore {
       final SequenceMeasurementsWriter smw, final SequenceMeasurements sm,
       final int idStart, final boolean addStats) throws IOException {
 
-    final SequenceIterator si = new SequenceIterator(inputFile);
+    final SequenceIterator si;
+
+    try {
+      si = OligoSequenceResource.getRessource().getSequenceIterator(inputFile);
+    } catch (TeolennException e) {
+      throw new IOException(e.getMessage());
+    }
 
     // smw.writeHeader(sm);
 
@@ -114,7 +122,9 @@ public class MeasurementCore {
   }
 
   /**
-   * Filter a measurement file.
+   * Filter a measurement file. The filters are executed in an adaptive order
+   * computed from the cost and the reject rate of the filters on the first
+   * entries of the file.
    * @param measurementsFile input file
    * @param filteredMeasurementsFile output file
    * @param statsFile statFile to create (optional)
@@ -140,6 +150,24 @@ public class MeasurementCore {
       SequenceMeasurements sm = null;
       SequenceMeasurements last = null;
 
+      // The measurement filters don't modify the entries, they can be
+      // executed in any order
+      final int n = filters.size();
+      final MeasurementFilter[] filtersArray =
+          filters.toArray(new MeasurementFilter[n]);
+      final String[] names = new String[n];
+      final boolean[] reorderable = new boolean[n];
+
+      for (int i = 0; i < n; i++) {
+        names[i] = filtersArray[i].getName();
+        reorderable[i] = true;
+      }
+
+      final AdaptiveFilterOrder order =
+          new AdaptiveFilterOrder("measurement filters", names, reorderable);
+      final long[] times = new long[n];
+      final boolean[] accepted = new boolean[n];
+
       while ((sm = smr.next(sm)) != null) {
 
         if (count == -1) {
@@ -151,13 +179,30 @@ public class MeasurementCore {
         }
 
         boolean pass = true;
+        final int[] filtersOrder = order.getOrder();
 
-        for (MeasurementFilter filter : filters)
-          if (!filter.accept(sm)) {
-            pass = false;
-            break;
+        if (filtersOrder == null) {
+
+          // Sample the cost and the reject rate of the filters
+          for (int i = 0; i < n; i++) {
+
+            final long start = System.nanoTime();
+            accepted[i] = filtersArray[i].accept(sm);
+            times[i] = System.nanoTime() - start;
+
+            if (!accepted[i])
+              pass = false;
           }
 
+          order.addSample(times, accepted);
+
+        } else
+          for (int i : filtersOrder)
+            if (!filtersArray[i].accept(sm)) {
+              pass = false;
+              break;
+            }
+
         if (pass) {
           sm.addMesurementsToStats();
           smw.writeSequenceMesurement(sm);
@@ -167,6 +212,7 @@ public class MeasurementCore {
         last = sm;
       }
 
+      order.end();
       smr.close();
       smw.close();
 
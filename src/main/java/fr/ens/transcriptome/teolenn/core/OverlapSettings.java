@@ -0,0 +1,302 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+
+package fr.ens.transcriptome.teolenn.core;
+
+import fr.ens.transcriptome.teolenn.resource.RegionResource;
+import fr.ens.transcriptome.teolenn.sequence.filter.GenerationSequenceFilter;
+
+/**
+ * This class define the settings of the creation of the oligonucleotides from
+ * the packed genome. The length of the oligonucleotides, the first position
+ * and the number of threads are mandatory, the other settings have default
+ * values that create all the oligonucleotides of the chromosomes in
+ * uncompressed files, one file by chromosome.
+ * @author Laurent Jourdren
+ */
+public class OverlapSettings {
+
+  /** Default length of the chunks of the chromosomes. */
+  static final int DEFAULT_CHUNK_LENGTH = 8000000;
+
+  private final int windowSize;
+  private final int interval;
+  private final boolean start1;
+  private final int threads;
+  private GenerationSequenceFilter[] filters;
+  private boolean skipGaps;
+  private RegionResource regions;
+  private float targetTm = Float.NaN;
+  private int targetTmLengths;
+  private int startStep = 1;
+  private boolean compress;
+  private boolean container;
+  private int chunkLength = DEFAULT_CHUNK_LENGTH;
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the size of the window.
+   * @return the size of the window
+   */
+  public int getWindowSize() {
+    return this.windowSize;
+  }
+
+  /**
+   * Get the interval of sizes.
+   * @return the interval of sizes
+   */
+  public int getInterval() {
+    return this.interval;
+  }
+
+  /**
+   * Test if the first position on sequence is 1.
+   * @return true if the first position on sequence is 1
+   */
+  public boolean isStart1() {
+    return this.start1;
+  }
+
+  /**
+   * Get the number of threads to use.
+   * @return the number of threads
+   */
+  public int getThreads() {
+    return this.threads;
+  }
+
+  /**
+   * Get the filters to apply while creating the oligonucleotides.
+   * @return the filters to apply or null if there is no filter
+   */
+  public GenerationSequenceFilter[] getFilters() {
+    return this.filters;
+  }
+
+  /**
+   * Test if the oligonucleotides that overlap a gap must not be created.
+   * @return true if the oligonucleotides that overlap a gap are skipped
+   */
+  public boolean isSkipGaps() {
+    return this.skipGaps;
+  }
+
+  /**
+   * Get the target regions.
+   * @return the target regions or null if the oligonucleotides are created
+   *         on all the chromosomes
+   */
+  public RegionResource getRegions() {
+    return this.regions;
+  }
+
+  /**
+   * Get the target Tm of the isothermal mode.
+   * @return the target Tm or NaN if the isothermal mode is disabled
+   */
+  public float getTargetTm() {
+    return this.targetTm;
+  }
+
+  /**
+   * Get the number of lengths to create for each start position in
+   * isothermal mode.
+   * @return the number of lengths to create for each start position
+   */
+  public int getTargetTmLengths() {
+    return this.targetTmLengths;
+  }
+
+  /**
+   * Get the step between the start positions of the oligonucleotides.
+   * @return the step between the start positions
+   */
+  public int getStartStep() {
+    return this.startStep;
+  }
+
+  /**
+   * Test if the output files must be compressed.
+   * @return true if the output files must be compressed
+   */
+  public boolean isCompress() {
+    return this.compress;
+  }
+
+  /**
+   * Test if the oligonucleotides must be written in a container file.
+   * @return true if the oligonucleotides must be written in a container file
+   */
+  public boolean isContainer() {
+    return this.container;
+  }
+
+  /**
+   * Get the length of the chunks of the chromosomes processed in parallel.
+   * @return the length of the chunks
+   */
+  int getChunkLength() {
+    return this.chunkLength;
+  }
+
+  /**
+   * Test if the isothermal mode is enabled.
+   * @return true if the isothermal mode is enabled
+   */
+  boolean isIsothermal() {
+    return !Float.isNaN(this.targetTm);
+  }
+
+  /**
+   * Test if some oligonucleotides are not created or if the output files are
+   * compressed. In this case the position of the records in the output files
+   * can not be computed before the creation of the oligonucleotides.
+   * @return true if the records can not be written at their place in the
+   *         output files
+   */
+  boolean isFiltered() {
+
+    return this.skipGaps
+        || this.regions != null || isIsothermal() || this.startStep > 1
+        || this.compress || this.filters != null;
+  }
+
+  //
+  // Setters
+  //
+
+  /**
+   * Set the filters to apply while creating the oligonucleotides. Only the
+   * oligonucleotides accepted by all the filters are created.
+   * @param filters the filters to apply (can be null)
+   */
+  public void setFilters(final GenerationSequenceFilter[] filters) {
+
+    this.filters = filters != null && filters.length > 0 ? filters : null;
+  }
+
+  /**
+   * Set if the oligonucleotides that overlap a gap of the chromosome (a run of
+   * 'N' or 'X' bases) must not be created.
+   * @param skipGaps true if the oligonucleotides that overlap a gap must not
+   *          be created
+   */
+  public void setSkipGaps(final boolean skipGaps) {
+
+    this.skipGaps = skipGaps;
+  }
+
+  /**
+   * Set the target regions. Only the oligonucleotides fully contained in the
+   * merged target regions are created.
+   * @param regions the target regions (can be null)
+   */
+  public void setRegions(final RegionResource regions) {
+
+    this.regions = regions;
+  }
+
+  /**
+   * Set the target Tm of the isothermal mode. In this mode, only the lengths
+   * whose Tm are the closest to the target Tm are created for each start
+   * position.
+   * @param targetTm the target Tm (NaN to disable the isothermal mode)
+   * @param targetTmLengths the number of lengths to create for each start
+   *          position
+   */
+  public void setTargetTm(final float targetTm, final int targetTmLengths) {
+
+    this.targetTm = targetTm;
+    this.targetTmLengths = Float.isNaN(targetTm) ? 0 : Math.max(1,
+        targetTmLengths);
+  }
+
+  /**
+   * Set the step between the start positions of the oligonucleotides. Only
+   * the start positions (0 based) that are multiples of the step are used.
+   * @param startStep the step between the start positions (1 to use all the
+   *          start positions)
+   */
+  public void setStartStep(final int startStep) {
+
+    this.startStep = Math.max(1, startStep);
+  }
+
+  /**
+   * Set if the output files must be compressed in the BGZF format.
+   * @param compress true if the output files must be compressed
+   */
+  public void setCompress(final boolean compress) {
+
+    this.compress = compress;
+  }
+
+  /**
+   * Set if the oligonucleotides of all the chromosomes must be written in a
+   * single container file.
+   * @param container true if the oligonucleotides must be written in a
+   *          container file
+   */
+  public void setContainer(final boolean container) {
+
+    this.container = container;
+  }
+
+  /**
+   * Set the length of the chunks of the chromosomes processed in parallel.
+   * @param chunkLength the length of the chunks
+   */
+  void setChunkLength(final int chunkLength) {
+
+    if (chunkLength < 1)
+      throw new IllegalArgumentException("Invalid chunk length: "
+          + chunkLength);
+
+    this.chunkLength = chunkLength;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Public constructor.
+   * @param windowSize size of the window
+   * @param interval interval of sizes
+   * @param start1 true if the first position on sequence is 1
+   * @param threads number of threads to use
+   */
+  public OverlapSettings(final int windowSize, final int interval,
+      final boolean start1, final int threads) {
+
+    this.windowSize = windowSize;
+    this.interval = interval;
+    this.start1 = start1;
+    this.threads = threads;
+  }
+
+}
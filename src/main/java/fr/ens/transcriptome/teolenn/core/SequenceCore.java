@@ -22,26 +22,50 @@
 
 package fr.ens.transcriptome.teolenn.core;
 
-import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
+import java.util.zip.Deflater;
 
 import fr.ens.transcriptome.teolenn.Globals;
+import fr.ens.transcriptome.teolenn.resource.PackedGenomeResource;
+import fr.ens.transcriptome.teolenn.resource.RegionResource;
+import fr.ens.transcriptome.teolenn.sequence.FastaReader;
+import fr.ens.transcriptome.teolenn.sequence.GapIndex;
+import fr.ens.transcriptome.teolenn.sequence.GenomeReader;
+import fr.ens.transcriptome.teolenn.sequence.MeltingTemp;
+import fr.ens.transcriptome.teolenn.sequence.OligoContainer;
+import fr.ens.transcriptome.teolenn.sequence.OligoFileLayout;
+import fr.ens.transcriptome.teolenn.sequence.PackedChromosome;
+import fr.ens.transcriptome.teolenn.sequence.PackedChromosomeWriter;
+import fr.ens.transcriptome.teolenn.sequence.filter.GenerationSequenceFilter;
+import fr.ens.transcriptome.teolenn.util.BgzfIndex;
+import fr.ens.transcriptome.teolenn.util.BgzfOutputStream;
 import fr.ens.transcriptome.teolenn.util.FileUtils;
+import fr.ens.transcriptome.teolenn.util.SelfLoopHandler;
 
 public class SequenceCore {
 
   private static Logger logger = Logger.getLogger(Globals.APP_NAME);
 
+  private static final String CHARSET = "ISO-8859-1";
   private static final int FASTA_MAX_LEN = 70;
   private static final int WRITE_BUFFER_LEN = 1000000;
-  private static final StringBuilder outputStringBuilder =
-      new StringBuilder(WRITE_BUFFER_LEN + 50000);
+  private static final int PACKED_BLOCK_LEN = 1000000;
 
   /**
    * Execute a fasta overlap
@@ -62,16 +86,15 @@ public class SequenceCore {
 
     final Map<String, Integer> result = new HashMap<String, Integer>();
 
-    BufferedReader br = null;
+    FastaReader reader = null;
     try {
-      br = FileUtils.createBufferedReader(inputFile);
+      reader = new FastaReader(inputFile);
     } catch (FileNotFoundException e) {
       logger.severe("Unable to read file: " + e.getMessage());
       throw e;
     }
 
     boolean first = true;
-    String line;
 
     StringBuilder sbHeader = new StringBuilder();
     String outputFilename = null;
@@ -82,21 +105,20 @@ public class SequenceCore {
     int count = 0;
 
     final StringBuilder subSeq = new StringBuilder(maxSize);
+    final StringBuilder output = new StringBuilder(WRITE_BUFFER_LEN + 50000);
 
     final int firstPosition = start1 ? 1 : 0;
 
     int offset = firstPosition;
 
-    while ((line = br.readLine()) != null) {
+    while (reader.readLine()) {
 
-      String lineTrimed = line.trim();
-
-      if (line.startsWith(">")) {
+      if (reader.isHeader()) {
 
         if (!first) {
 
-          writeAllSubSeq(subSeq, os, offset, minSize, maxSize, headerOutput,
-              true);
+          writeAllSubSeq(subSeq, output, os, offset, minSize, maxSize,
+              headerOutput, true);
           result.put(outputFilename, count);
 
           count = 0;
@@ -105,7 +127,9 @@ public class SequenceCore {
         } else
           first = false;
 
-        outputFilename = lineTrimed.substring(1).replace(' ', '_');
+        final String name = reader.getLine();
+
+        outputFilename = name.replace(' ', '_');
         try {
           os = getOutputStream(outputDir, outputFilename, extension);
         } catch (FileNotFoundException e) {
@@ -114,22 +138,28 @@ public class SequenceCore {
           throw e;
         }
 
-        sbHeader.append(lineTrimed);
+        sbHeader.append('>');
+        sbHeader.append(name);
         sbHeader.append(":subseq(");
         headerOutput = sbHeader.toString();
         sbHeader.setLength(0);
       } else {
 
-        final int lineLength = lineTrimed.length();
+        final byte[] buffer = reader.getBuffer();
+        final int lineStart = reader.getLineStart();
+        final int lineLength = reader.getLineLength();
+        final int lineEnd = lineStart + lineLength;
+
+        for (int i = lineStart; i < lineEnd; i++)
+          subSeq.append((char) (buffer[i] & 0xff));
 
-        subSeq.append(line);
         countInternal += lineLength;
         count += lineLength;
 
         if (countInternal > maxSize) {
 
           offset +=
-              writeAllSubSeq(subSeq, os, offset, minSize, maxSize,
+              writeAllSubSeq(subSeq, output, os, offset, minSize, maxSize,
                   headerOutput, false);
 
           countInternal = 0;
@@ -138,35 +168,1031 @@ public class SequenceCore {
       }
     }
 
-    writeAllSubSeq(subSeq, os, offset, minSize, maxSize, headerOutput, true);
+    writeAllSubSeq(subSeq, output, os, offset, minSize, maxSize,
+        headerOutput, true);
     result.put(outputFilename, count);
-    br.close();
+    reader.close();
 
     return result;
   }
 
+  /**
+   * Create the oligonucleotides files of chromosomes from the packed genome.
+   * The chromosomes are split in chunks that are processed in parallel.
+   * Without filter, the position of each record in the output files is
+   * computed with OligoFileLayout, so each chunk is directly written at its
+   * place in the preallocated file of its chromosome. The output files are
+   * then the same as the files created by fastaOverlap(), except for the
+   * chromosomes whose fasta header contains spaces: the names of the
+   * oligonucleotides use the name of the packed chromosome, where the spaces
+   * are replaced by '_'. If filters are set, only the oligonucleotides
+   * accepted by all the filters are written. In this case, the position of
+   * the records can not be computed before, so each chunk is written in a
+   * temporary file and the temporary files of a chromosome are concatenated at
+   * the end. The oligonucleotides that overlap a gap of the chromosome (a run
+   * of 'N' or 'X' bases) can also be skipped without being created, the gaps
+   * are jumped over using the gap index of the packed chromosome. In the same
+   * way, if target regions are set, only the oligonucleotides fully contained
+   * in the merged target regions are created. In isothermal mode, only the
+   * lengths whose Tm are the closest to the target Tm are created for each
+   * start position. Finally, the start positions can be sampled on a coarse
+   * grid: only the start positions (0 based) that are multiples of the start
+   * step are used. The output files can be compressed in the BGZF format,
+   * with the index of their blocks. Instead of a file by chromosome, the
+   * oligonucleotides of all the chromosomes can be written in a single
+   * container file, in the order of the list of the chromosomes. In this
+   * case, the small chunks of many chromosomes are processed together in the
+   * same task and the table of contents of the container is written with the
+   * container.
+   * @param genome packed genome
+   * @param chromosomes names of the chromosomes to process
+   * @param outputDir output directory
+   * @param extension Name of the extension
+   * @param settings settings of the creation of the oligonucleotides
+   * @return a map with the length of the chromosomes
+   * @throws IOException if an error occurs while creating the oligonucleotides
+   */
+  public static final Map<String, Integer> packedOverlap(
+      final PackedGenomeResource genome, final List<String> chromosomes,
+      final File outputDir, final String extension,
+      final OverlapSettings settings) throws IOException {
+
+    final boolean filter = settings.isFiltered();
+    final boolean container = settings.isContainer();
+    final Map<String, Integer> result = new HashMap<String, Integer>();
+    final File containerFile =
+        container ? OligoContainer.getFile(outputDir, extension) : null;
+    final OligoContainer toc = container ? new OligoContainer() : null;
+
+    if (container)
+      deleteOutputFile(containerFile);
+
+    for (String chr : chromosomes) {
+
+      final int len = genome.getChromosome(chr).length();
+      final File f = container ? containerFile : new File(outputDir, chr
+          + extension);
+
+      if (!container)
+        deleteOutputFile(f);
+
+      // Preallocate the output files
+      if (!filter) {
+        final OligoFileLayout layout =
+            new OligoFileLayout(chr, len, settings.getWindowSize(), settings
+                .getInterval(), settings.isStart1());
+
+        final long start = container ? toc.getSize() : 0;
+        final RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        raf.setLength(start + layout.getFileSize());
+        raf.close();
+
+        if (container)
+          toc.addSection(chr, start, start + layout.getFileSize());
+      }
+
+      result.put(chr, len);
+    }
+
+    final OverlapLoopHandler handler =
+        new OverlapLoopHandler(genome, chromosomes, outputDir, extension,
+            settings, containerFile, toc);
+
+    handler.loopProcess();
+
+    if (handler.exception != null)
+      throw handler.exception;
+    if (handler.runtimeException != null)
+      throw handler.runtimeException;
+
+    if (filter) {
+
+      if (container)
+        concatContainerFiles(handler, toc);
+      else
+        for (String chr : chromosomes) {
+
+          final List<File> parts = new ArrayList<File>();
+          final int chunks =
+              getChunkCount(genome.getChromosome(chr).length(), settings
+                  .getChunkLength());
+          for (int i = 0; i < chunks; i++)
+            parts.add(getChunkFile(outputDir, chr, extension, i));
+
+          concatFiles(parts, new File(outputDir, chr + extension), settings
+              .isCompress());
+        }
+
+      logger.info(""
+          + handler.accepted + " oligonucleotides created.");
+
+      if (settings.isSkipGaps())
+        logger.info("" + countGaps(genome, chromosomes) + " gaps skipped.");
+    }
+
+    if (container)
+      toc.write(OligoContainer.getTocFile(containerFile));
+
+    return result;
+  }
+
+  /**
+   * Count the gaps of chromosomes.
+   * @param genome packed genome
+   * @param chromosomes names of the chromosomes
+   * @return the number of gaps
+   * @throws IOException if an error occurs while reading the chromosomes
+   */
+  private static final long countGaps(final PackedGenomeResource genome,
+      final List<String> chromosomes) throws IOException {
+
+    long result = 0;
+
+    for (String chr : chromosomes)
+      result += genome.getChromosome(chr).getGapIndex().getGapCount();
+
+    return result;
+  }
+
+  /**
+   * Get the temporary file of a chunk.
+   * @param outputDir output directory
+   * @param chromosome name of the chromosome
+   * @param extension Name of the extension
+   * @param chunk index of the chunk
+   * @return the temporary file of the chunk
+   */
+  private static final File getChunkFile(final File outputDir,
+      final String chromosome, final String extension, final int chunk) {
+
+    return new File(outputDir, chromosome + extension + ".part" + chunk);
+  }
+
+  /**
+   * Concatenate the temporary files of the batches of a container and add
+   * the sections of the chromosomes to its table of contents. The size of the
+   * section of a chromosome is the sum of the sizes of its chunks.
+   * @param handler the handler that has created the temporary files
+   * @param toc the table of contents of the container
+   * @throws IOException if an error occurs while concatenating the files
+   */
+  private static final void concatContainerFiles(
+      final OverlapLoopHandler handler, final OligoContainer toc)
+      throws IOException {
+
+    final List<File> parts = new ArrayList<File>();
+    for (int i = 0; i < handler.batches.size(); i++)
+      parts.add(handler.getPartFile(i));
+
+    concatFiles(parts, handler.containerFile, handler.settings.isCompress());
+
+    long pos = 0;
+    int task = 0;
+
+    for (int i = 0; i < handler.chromosomes.size(); i++) {
+
+      final long start = pos;
+
+      while (task < handler.tasks.size() && handler.tasks.get(task)[0] == i)
+        pos += handler.taskSizes[task++];
+
+      toc.addSection(handler.chromosomes.get(i), start, pos);
+    }
+  }
+
+  /**
+   * Delete an output file and its index and table of contents files.
+   * @param file the file to delete
+   */
+  private static final void deleteOutputFile(final File file) {
+
+    final File[] files =
+        new File[] {file, BgzfIndex.getIndexFile(file),
+            OligoContainer.getTocFile(file)};
+
+    for (File f : files)
+      if (f.exists())
+        f.delete();
+  }
+
+  /**
+   * Concatenate the temporary files of the chunks. The BGZF files can be
+   * concatenated as the other files, only their indexes must be merged.
+   * @param parts the temporary files of the chunks
+   * @param outputFile the output file
+   * @param compressed true if the files of the chunks are BGZF files
+   * @throws IOException if an error occurs while concatenating the files
+   */
+  private static final void concatFiles(final List<File> parts,
+      final File outputFile, final boolean compressed) throws IOException {
+
+    final File indexFile = BgzfIndex.getIndexFile(outputFile);
+    final BgzfIndex index = compressed ? new BgzfIndex() : null;
+    final FileChannel out = new FileOutputStream(outputFile).getChannel();
+
+    if (indexFile.exists())
+      indexFile.delete();
+
+    try {
+      for (File f : parts) {
+
+        if (compressed) {
+
+          final File partIndexFile = BgzfIndex.getIndexFile(f);
+          index.append(BgzfIndex.load(partIndexFile), out.size());
+          partIndexFile.delete();
+        }
+
+        final FileChannel in = new FileInputStream(f).getChannel();
+
+        try {
+          long pos = 0;
+          final long size = in.size();
+          while (pos < size)
+            pos += in.transferTo(pos, size - pos, out);
+        } finally {
+          in.close();
+        }
+
+        f.delete();
+      }
+    } finally {
+      out.close();
+    }
+
+    if (compressed)
+      index.write(indexFile);
+  }
+
+  /**
+   * Get the number of chunks of a chromosome.
+   * @param length length of the chromosome
+   * @param chunkLength length of the chunks
+   * @return the number of chunks
+   */
+  private static final int getChunkCount(final int length,
+      final int chunkLength) {
+
+    return Math.max(1, (length + chunkLength - 1) / chunkLength);
+  }
+
+  /**
+   * Write the content of a buffer in a file at a position. If the channel is
+   * not a file channel, the content is written at the current position of the
+   * channel.
+   * @param channel output channel
+   * @param output buffer to write
+   * @param position position in the file
+   * @return the new position in the file
+   * @throws IOException if an error occurs while writing the buffer
+   */
+  private static final long writeAt(final WritableByteChannel channel,
+      final StringBuilder output, final long position) throws IOException {
+
+    final ByteBuffer bb =
+        ByteBuffer.wrap(output.toString().getBytes(CHARSET));
+    long pos = position;
+
+    if (channel instanceof FileChannel) {
+
+      final FileChannel fc = (FileChannel) channel;
+      while (bb.hasRemaining())
+        pos += fc.write(bb, pos);
+    } else
+      while (bb.hasRemaining())
+        pos += channel.write(bb);
+
+    output.setLength(0);
+
+    return pos;
+  }
+
+  /**
+   * Create the oligonucleotides of a chunk of a packed chromosome. The chunk
+   * contains the oligonucleotides that start in the chunk.
+   * @param chromosome the packed chromosome
+   * @param chunkStart the start of the chunk in the chromosome
+   * @param chunkEnd the end of the chunk in the chromosome (exclusive)
+   * @param channel output channel
+   * @param position position of the first record of the chunk in the file
+   * @param chr name of the chromosome
+   * @param minSize minimal size of the oligonucleotides
+   * @param maxSize maximal size of the oligonucleotides
+   * @param firstPosition the first position on the sequence
+   * @param filters filters to apply (can be null)
+   * @param gaps gap index of the chromosome if the oligonucleotides that
+   *          overlap a gap must be skipped (can be null)
+   * @param tmSelector selector of the lengths in isothermal mode (can be
+   *          null)
+   * @param startStep step between the start positions of the
+   *          oligonucleotides
+   * @param output buffer to use
+   * @return the position of the end of the chunk in the file and the number
+   *         of oligonucleotides written
+   * @throws IOException if an error occurs while creating the oligonucleotides
+   */
+  private static final long[] packedOverlap(final PackedChromosome chromosome,
+      final int chunkStart, final int chunkEnd,
+      final WritableByteChannel channel, final long position,
+      final String chr, final int minSize, final int maxSize,
+      final int firstPosition, final GenerationSequenceFilter[] filters,
+      final GapIndex gaps, final TmLengthSelector tmSelector,
+      final int startStep, final StringBuilder output) throws IOException {
+
+    final String header = ">" + chr + ":subseq(";
+    long pos = position;
+    long count = 0;
+
+    output.setLength(0);
+
+    for (int blockStart = chunkStart; blockStart < chunkEnd; blockStart +=
+        PACKED_BLOCK_LEN) {
+
+      // Get the bases of the block and the bases of the overlap
+      final int blockLen =
+          Math.min(PACKED_BLOCK_LEN + maxSize - 1, chromosome.length()
+              - blockStart);
+      final int endFor =
+          Math.min(Math.min(PACKED_BLOCK_LEN, chunkEnd - blockStart), blockLen
+              - minSize + 1);
+
+      // Skip the blocks where all the oligonucleotides overlap a gap
+      if (gaps != null
+          && gaps.getNextStart(blockStart, minSize) >= blockStart + endFor)
+        continue;
+
+      final String block = chromosome.getSequence(blockStart, blockLen);
+
+      for (int index = 0; index < endFor; index++) {
+
+        int maxSizeIndex = Math.min(maxSize, blockLen - index);
+        final int start = blockStart + index + firstPosition;
+
+        if (gaps != null) {
+
+          // Jump over the gap
+          final int next =
+              gaps.getNextStart(blockStart + index, minSize) - blockStart;
+          if (next != index) {
+            index = next - 1;
+            continue;
+          }
+
+          maxSizeIndex =
+              Math.min(maxSizeIndex, gaps.getNextGapStart(blockStart + index)
+                  - blockStart - index);
+        }
+
+        // Jump to the next start position of the grid
+        if (startStep > 1 && (blockStart + index) % startStep != 0) {
+          index += startStep - (blockStart + index) % startStep - 1;
+          continue;
+        }
+
+        if (tmSelector != null) {
+
+          final int n =
+              tmSelector.select(block, index, minSize, maxSizeIndex, filters,
+                  chr, start);
+
+          for (int i = 0; i < n; i++)
+            writeSeq(output, block, index, header, start, tmSelector
+                .getLength(i));
+          count += n;
+
+        } else
+          for (int size = minSize; size <= maxSizeIndex; size++)
+            if (filters == null
+                || accept(filters, chr, start, block, index, size)) {
+              writeSeq(output, block, index, header, start, size);
+              count++;
+            }
+
+        if (output.length() > WRITE_BUFFER_LEN)
+          pos = writeAt(channel, output, pos);
+      }
+    }
+
+    return new long[] {writeAt(channel, output, pos), count};
+  }
+
+  /**
+   * Test if an oligonucleotide is accepted by all the filters.
+   * @param filters filters to apply
+   * @param chr name of the chromosome
+   * @param start start position of the oligonucleotide in the chromosome
+   * @param text text that contains the sequence of the oligonucleotide
+   * @param textStart position of the oligonucleotide in the text
+   * @param length length of the oligonucleotide
+   * @return true if the oligonucleotide is accepted by all the filters
+   */
+  private static final boolean accept(final GenerationSequenceFilter[] filters,
+      final String chr, final int start, final CharSequence text,
+      final int textStart, final int length) {
+
+    for (int i = 0; i < filters.length; i++)
+      if (!filters[i].accept(chr, start, text, textStart, length))
+        return false;
+
+    return true;
+  }
+
+  /**
+   * This class allow to select for a start position the lengths of the
+   * oligonucleotides whose Tm are the closest to a target Tm. The Tm of all
+   * the lengths of a start position are computed by updating the
+   * dinucleotides counts (nearest-neighbour sums) one base at a time.
+   */
+  private static final class TmLengthSelector {
+
+    private final float targetTm;
+    private final int[] dinucleotides =
+        new int[MeltingTemp.DINUCLEOTIDES_COUNT];
+    private final int[] lengths;
+    private final float[] deltas;
+    private int count;
+
+    /**
+     * Select the lengths of the oligonucleotides of a start position. Only the
+     * lengths accepted by the filters are selected.
+     * @param text text that contains the sequence of the oligonucleotides
+     * @param index start position of the oligonucleotides in the text
+     * @param minSize minimal length of the oligonucleotides
+     * @param maxSize maximal length of the oligonucleotides
+     * @param filters filters to apply (can be null)
+     * @param chr name of the chromosome
+     * @param start start position of the oligonucleotides in the chromosome
+     * @return the number of lengths selected
+     */
+    int select(final String text, final int index, final int minSize,
+        final int maxSize, final GenerationSequenceFilter[] filters,
+        final String chr, final int start) {
+
+      this.count = 0;
+
+      if (maxSize < minSize)
+        return 0;
+
+      final int[] n = this.dinucleotides;
+      Arrays.fill(n, 0);
+      MeltingTemp.countDinucleotides(text, index + 1, index + minSize, n);
+      final char first = Character.toUpperCase(text.charAt(index));
+
+      for (int size = minSize; size <= maxSize; size++) {
+
+        if (size > minSize)
+          MeltingTemp.countDinucleotides(text, index + size - 1, index
+              + size, n);
+
+        if (filters != null
+            && !accept(filters, chr, start, text, index, size))
+          continue;
+
+        final float tm =
+            MeltingTemp.tmstalucDNA(n, first, Character.toUpperCase(text
+                .charAt(index + size - 1)), size, 50, 50);
+
+        add(size, Math.abs(tm - this.targetTm));
+      }
+
+      // Sort the selected lengths
+      Arrays.sort(this.lengths, 0, this.count);
+
+      return this.count;
+    }
+
+    /**
+     * Get a selected length.
+     * @param i index of the selected length
+     * @return the length
+     */
+    int getLength(final int i) {
+
+      return this.lengths[i];
+    }
+
+    /**
+     * Add a length to the selected lengths if its Tm is closer to the target
+     * than the Tm of the selected lengths. At equal distance, the shortest
+     * length is kept.
+     * @param length length of the oligonucleotide
+     * @param delta distance between the Tm of the oligonucleotide and the
+     *          target Tm
+     */
+    private void add(final int length, final float delta) {
+
+      int i = this.count;
+
+      if (i == this.lengths.length) {
+        if (delta >= this.deltas[i - 1])
+          return;
+        i--;
+      } else
+        this.count++;
+
+      while (i > 0 && this.deltas[i - 1] > delta) {
+        this.lengths[i] = this.lengths[i - 1];
+        this.deltas[i] = this.deltas[i - 1];
+        i--;
+      }
+
+      this.lengths[i] = length;
+      this.deltas[i] = delta;
+    }
+
+    //
+    // Constructor
+    //
+
+    /**
+     * Constructor.
+     * @param targetTm target Tm of the oligonucleotides
+     * @param lengthsCount maximal number of lengths to select
+     */
+    TmLengthSelector(final float targetTm, final int lengthsCount) {
+
+      this.targetTm = targetTm;
+      this.lengths = new int[lengthsCount];
+      this.deltas = new float[lengthsCount];
+    }
+  }
+
+  /**
+   * This class allow to create the oligonucleotides of the chunks of many
+   * chromosomes in parallel. Each task of the handler processes a batch of
+   * chunks. When the oligonucleotides are written in a container file, the
+   * batches contain the consecutive chunks of many small chromosomes.
+   */
+  private static final class OverlapLoopHandler extends SelfLoopHandler {
+
+    private final PackedGenomeResource genome;
+    private final List<String> chromosomes;
+    private final File outputDir;
+    private final String extension;
+    private final OverlapSettings settings;
+    private final int minSize;
+    private final int maxSize;
+    private final int firstPosition;
+    private final int chunkLength;
+    private final File containerFile;
+    private final OligoContainer toc;
+    private final Map<String, GapIndex> gapIndexes =
+        new HashMap<String, GapIndex>();
+    private final List<int[]> tasks = new ArrayList<int[]>();
+    private final List<int[]> batches = new ArrayList<int[]>();
+    private final long[] taskSizes;
+    private long accepted;
+    private IOException exception;
+    private RuntimeException runtimeException;
+
+    /**
+     * Get the index of the regions of a chromosome where no oligonucleotide
+     * must be created.
+     * @param chr name of the chromosome
+     * @param pc the packed chromosome
+     * @return a GapIndex object or null if all the chromosome is used
+     */
+    private GapIndex getGapIndex(final String chr, final PackedChromosome pc) {
+
+      synchronized (this.gapIndexes) {
+
+        if (this.gapIndexes.containsKey(chr))
+          return this.gapIndexes.get(chr);
+
+        GapIndex result = this.settings.isSkipGaps() ? pc.getGapIndex() : null;
+        final RegionResource regions = this.settings.getRegions();
+
+        if (regions != null) {
+
+          final GapIndex outside = regions.getGapIndex(chr);
+          result = result == null ? outside : result.union(outside);
+        }
+
+        this.gapIndexes.put(chr, result);
+
+        return result;
+      }
+    }
+
+    /**
+     * Get the temporary file of a batch.
+     * @param batch index of the batch
+     * @return the temporary file of the batch
+     */
+    private File getPartFile(final int batch) {
+
+      if (this.containerFile != null)
+        return new File(this.outputDir, this.containerFile.getName()
+            + ".part" + batch);
+
+      final int[] task = this.tasks.get(this.batches.get(batch)[0]);
+
+      return getChunkFile(this.outputDir, this.chromosomes.get(task[0]),
+          this.extension, task[1]);
+    }
+
+    @Override
+    public void loopDoRange(final int start, final int end) {
+
+      final StringBuilder output = new StringBuilder(WRITE_BUFFER_LEN + 50000);
+
+      for (int i = start; i < end; i++) {
+
+        final int[] batch = this.batches.get(i);
+
+        try {
+
+          // Without filters, the chunks are written at their place in the
+          // file
+          if (!this.settings.isFiltered())
+            writeInPlace(batch, output);
+          else
+            writeInPart(i, batch, output);
+
+        } catch (IOException e) {
+
+          error(batch, e);
+          synchronized (this) {
+            if (this.exception == null)
+              this.exception = e;
+          }
+        } catch (RuntimeException e) {
+
+          error(batch, e);
+          synchronized (this) {
+            if (this.runtimeException == null)
+              this.runtimeException = e;
+          }
+        }
+      }
+    }
+
+    /**
+     * Log an error.
+     * @param batch the batch that was processed
+     * @param e the error
+     */
+    private void error(final int[] batch, final Exception e) {
+
+      logger.severe("Unable to create oligos of "
+          + this.chromosomes.get(this.tasks.get(batch[0])[0]) + ": "
+          + e.getMessage());
+    }
+
+    /**
+     * Create the oligonucleotides of the chunks of a batch at their place in
+     * the preallocated output file.
+     * @param batch the batch to process
+     * @param output buffer to use
+     * @throws IOException if an error occurs while creating the
+     *           oligonucleotides
+     */
+    private void writeInPlace(final int[] batch, final StringBuilder output)
+        throws IOException {
+
+      final String firstChr = this.chromosomes.get(this.tasks.get(batch[0])[0]);
+      final RandomAccessFile raf =
+          new RandomAccessFile(this.containerFile != null
+              ? this.containerFile : new File(this.outputDir, firstChr
+                  + this.extension), "rw");
+
+      try {
+        for (int i = batch[0]; i < batch[1]; i++) {
+
+          final int[] task = this.tasks.get(i);
+          final String chr = this.chromosomes.get(task[0]);
+          final int chunkStart = task[1] * this.chunkLength;
+          final PackedChromosome pc = this.genome.getChromosome(chr);
+          final OligoFileLayout layout =
+              new OligoFileLayout(chr, pc.length(), this.settings
+                  .getWindowSize(), this.settings.getInterval(), this.settings
+                  .isStart1());
+
+          // The last chunk of the chromosome may contain no start position
+          if (chunkStart >= layout.getStartPositionCount())
+            continue;
+
+          logger.fine("Create oligos of "
+              + chr + " chunk " + task[1] + " (Thread "
+              + Thread.currentThread().getId() + ")");
+          final long sectionStart =
+              this.toc != null ? this.toc.getSectionStart(chr) : 0;
+          final int lastStart =
+              Math.min(chunkStart + this.chunkLength, pc.length());
+          final long startPos =
+              sectionStart + layout.getStartOffset(chunkStart);
+          final long endPos =
+              sectionStart
+                  + layout.getStartOffset(Math.min(lastStart, layout
+                      .getStartPositionCount()));
+
+          final long pos =
+              packedOverlap(pc, chunkStart, lastStart, raf.getChannel(),
+                  startPos, chr, this.minSize, this.maxSize,
+                  this.firstPosition, null, null, null, 1, output)[0];
+
+          if (pos != endPos)
+            throw new IOException("Invalid size for chunk "
+                + task[1] + " of " + chr + ": " + (pos - startPos)
+                + " bytes written, " + (endPos - startPos) + " expected");
+        }
+      } finally {
+        raf.close();
+      }
+    }
+
+    /**
+     * Create the oligonucleotides of the chunks of a batch in the temporary
+     * file of the batch.
+     * @param batchIndex index of the batch
+     * @param batch the batch to process
+     * @param output buffer to use
+     * @throws IOException if an error occurs while creating the
+     *           oligonucleotides
+     */
+    private void writeInPart(final int batchIndex, final int[] batch,
+        final StringBuilder output) throws IOException {
+
+      final OverlapSettings settings = this.settings;
+      final boolean compress = settings.isCompress();
+      final File partFile = getPartFile(batchIndex);
+      final FileOutputStream fos = new FileOutputStream(partFile);
+      final BgzfOutputStream bgzf =
+          compress ? new BgzfOutputStream(fos, settings.getThreads(),
+              Deflater.DEFAULT_COMPRESSION, '>') : null;
+      final WritableByteChannel channel =
+          compress ? Channels.newChannel(bgzf) : fos.getChannel();
+
+      long pos = 0;
+      long count = 0;
+
+      try {
+        for (int i = batch[0]; i < batch[1]; i++) {
+
+          final int[] task = this.tasks.get(i);
+          final String chr = this.chromosomes.get(task[0]);
+
+          logger.fine("Create oligos of "
+              + chr + " chunk " + task[1] + " (Thread "
+              + Thread.currentThread().getId() + ")");
+
+          final PackedChromosome pc = this.genome.getChromosome(chr);
+          final int chunkStart = task[1] * this.chunkLength;
+          final long[] r =
+              packedOverlap(pc, chunkStart, Math.min(chunkStart
+                  + this.chunkLength, pc.length()), channel, pos, chr,
+                  this.minSize, this.maxSize, this.firstPosition, settings
+                      .getFilters(), getGapIndex(chr, pc),
+                  settings.isIsothermal() ? new TmLengthSelector(settings
+                      .getTargetTm(), settings.getTargetTmLengths()) : null,
+                  settings.getStartStep(), output);
+
+          this.taskSizes[i] = r[0] - pos;
+          pos = r[0];
+          count += r[1];
+        }
+      } finally {
+        if (compress)
+          bgzf.close();
+        else
+          fos.close();
+      }
+
+      synchronized (this) {
+        this.accepted += count;
+      }
+
+      if (compress)
+        bgzf.getIndex().write(BgzfIndex.getIndexFile(partFile));
+    }
+
+    //
+    // Constructor
+    //
+
+    OverlapLoopHandler(final PackedGenomeResource genome,
+        final List<String> chromosomes, final File outputDir,
+        final String extension, final OverlapSettings settings,
+        final File containerFile, final OligoContainer toc)
+        throws IOException {
+
+      super(0, 0, 1, settings.getThreads());
+
+      final int windowSize = settings.getWindowSize();
+      final int interval = settings.getInterval();
+
+      this.genome = genome;
+      this.chromosomes = chromosomes;
+      this.outputDir = outputDir;
+      this.extension = extension;
+      this.settings = settings;
+      this.minSize = windowSize - interval <= 0 ? 1 : windowSize - interval;
+      this.maxSize = windowSize + interval;
+      this.firstPosition = settings.isStart1() ? 1 : 0;
+      this.chunkLength = settings.getChunkLength();
+      this.containerFile = containerFile;
+      this.toc = toc;
+
+      // Create a task for each chunk of each chromosome
+      int batchLength = 0;
+      for (int i = 0; i < chromosomes.size(); i++) {
+
+        final int len = genome.getChromosome(chromosomes.get(i)).length();
+        final int chunks = getChunkCount(len, this.chunkLength);
+
+        for (int j = 0; j < chunks; j++) {
+
+          // In a container, the consecutive chunks are grouped in batches
+          // of about the size of a chunk
+          final int chunkLength =
+              Math.min(this.chunkLength, len - j * this.chunkLength);
+
+          if (containerFile == null
+              || this.batches.size() == 0 || batchLength >= this.chunkLength) {
+            this.batches.add(new int[] {this.tasks.size(),
+                this.tasks.size() + 1});
+            batchLength = 0;
+          } else
+            this.batches.get(this.batches.size() - 1)[1]++;
+
+          batchLength += chunkLength;
+          this.tasks.add(new int[] {i, j});
+        }
+      }
+
+      this.taskSizes = new long[this.tasks.size()];
+
+      setRange(0, this.batches.size());
+    }
+  }
+
+  /**
+   * Create the packed chromosome files of a fasta file. In mask mode, the
+   * packed chromosome files must already exist and only their mask is set.
+   * @param inputFile input file
+   * @param outputDir output directory
+   * @param extension Name of the extension
+   * @param mask true if the input file is the masked genome
+   * @return a map with the length of the chromosomes
+   * @throws IOException if an error occurs while packing the fasta file
+   */
+  public static final Map<String, Integer> fastaPack(final File inputFile,
+      final File outputDir, final String extension, final boolean mask)
+      throws IOException {
+
+    final Map<String, Integer> result = new HashMap<String, Integer>();
+
+    FastaReader reader = null;
+    try {
+      reader = new FastaReader(inputFile);
+    } catch (FileNotFoundException e) {
+      logger.severe("Unable to read file: " + e.getMessage());
+      throw e;
+    }
+
+    String chrName = null;
+    PackedChromosomeWriter pcw = null;
+
+    while (reader.readLine()) {
+
+      if (reader.isHeader()) {
+
+        if (pcw != null) {
+          pcw.close();
+          result.put(chrName, pcw.getLength());
+        }
+
+        chrName = reader.getLine().replace(' ', '_');
+        pcw =
+            new PackedChromosomeWriter(new File(outputDir, chrName + extension),
+                mask);
+
+      } else if (pcw != null)
+        pcw.append(reader.getBuffer(), reader.getLineStart(), reader
+            .getLineLength());
+    }
+
+    if (pcw != null) {
+      pcw.close();
+      result.put(chrName, pcw.getLength());
+    }
+    reader.close();
+
+    return result;
+  }
+
+  /**
+   * Create the packed chromosome files of a genome that can be read with
+   * random access. The chromosomes are packed in parallel. In mask mode, the
+   * packed chromosome files must already exist and only their mask is set.
+   * @param reader genome reader
+   * @param outputDir output directory
+   * @param extension Name of the extension
+   * @param mask true if the genome is the masked genome
+   * @param threads number of threads to use
+   * @return a map with the length of the chromosomes
+   * @throws IOException if an error occurs while packing the genome
+   */
+  public static final Map<String, Integer> genomePack(
+      final GenomeReader reader, final File outputDir, final String extension,
+      final boolean mask, final int threads) throws IOException {
+
+    final PackLoopHandler handler =
+        new PackLoopHandler(reader, outputDir, extension, mask, threads);
+
+    handler.loopProcess();
+
+    if (handler.exception != null)
+      throw handler.exception;
+
+    return handler.result;
+  }
+
+  /**
+   * This class allow to pack the chromosomes of a genome in parallel.
+   */
+  private static final class PackLoopHandler extends SelfLoopHandler {
+
+    private final GenomeReader reader;
+    private final File outputDir;
+    private final String extension;
+    private final boolean mask;
+    private final Map<String, Integer> result = new HashMap<String, Integer>();
+    private IOException exception;
+
+    @Override
+    public void loopDoRange(final int start, final int end) {
+
+      final List<String> chromosomes = this.reader.getChromosomesNames();
+
+      for (int i = start; i < end; i++) {
+
+        final String chr = chromosomes.get(i);
+
+        try {
+
+          logger.fine("Pack chromosome "
+              + chr + " (Thread " + Thread.currentThread().getId() + ")");
+
+          final int len = this.reader.getChromosomeLength(chr);
+          final PackedChromosomeWriter pcw =
+              new PackedChromosomeWriter(new File(this.outputDir, chr
+                  + this.extension), this.mask);
+
+          for (int pos = 0; pos < len; pos += PACKED_BLOCK_LEN)
+            pcw.append(this.reader.getSequence(chr, pos, Math.min(
+                PACKED_BLOCK_LEN, len - pos)));
+
+          pcw.close();
+
+          synchronized (this) {
+            this.result.put(chr, len);
+          }
+
+        } catch (IOException e) {
+
+          logger.severe("Unable to pack chromosome "
+              + chr + ": " + e.getMessage());
+          synchronized (this) {
+            if (this.exception == null)
+              this.exception = e;
+          }
+        }
+      }
+    }
+
+    //
+    // Constructor
+    //
+
+    PackLoopHandler(final GenomeReader reader, final File outputDir,
+        final String extension, final boolean mask, final int threads) {
+
+      super(0, reader.getChromosomesNames().size(), 1, threads);
+
+      this.reader = reader;
+      this.outputDir = outputDir;
+      this.extension = extension;
+      this.mask = mask;
+    }
+  }
+
   private static final int writeAllSubSeq(final StringBuilder sb,
-      final Writer os, final int offset, final int minSize, final int maxSize,
-      final String header, final boolean flush) throws IOException {
+      final StringBuilder output, final Writer os, final int offset,
+      final int minSize, final int maxSize, final String header,
+      final boolean flush) throws IOException {
 
     final int endFor = sb.length() - maxSize + 1;
     int index = 0;
 
-    final StringBuilder output = outputStringBuilder;
-
     for (index = 0; index < endFor; index++) {
 
       // final int end = index + maxSize;
 
       // final String sequence = sb.substring(index, end);
 
-      for (int size = minSize; size <= maxSize; size++) {
-
-        final int end = index + size;
-        final String sequence = sb.substring(index, end);
-
-        writeSeq(output, sequence, header, offset + index, size);
-      }
+      for (int size = minSize; size <= maxSize; size++)
+        writeSeq(output, sb, index, header, offset + index, size);
 
       if (output.length() > WRITE_BUFFER_LEN) {
         os.write(output.toString());
@@ -182,13 +1208,8 @@ public class SequenceCore {
       int i = 0;
       for (; index < endFor2; index++) {
 
-        for (int size = minSize; size < maxSize - i && index < endFor2; size++) {
-
-          final int end = index + size;
-          final String sequence = sb.substring(index, end);
-
-          writeSeq(output, sequence, header, offset + index, size);
-        }
+        for (int size = minSize; size < maxSize - i && index < endFor2; size++)
+          writeSeq(output, sb, index, header, offset + index, size);
         i++;
       }
 
@@ -204,8 +1225,9 @@ public class SequenceCore {
     return index;
   }
 
-  private static final void writeSeq(final StringBuilder sb, String sequence,
-      final String header, final int start, final int size) throws IOException {
+  private static final void writeSeq(final StringBuilder sb,
+      final CharSequence text, final int textStart, final String header,
+      final int start, final int size) {
 
     sb.append(header);
     sb.append(start);
@@ -213,12 +1235,12 @@ public class SequenceCore {
     sb.append(size);
     sb.append(")\n");
 
-    final int seqLen = sequence.length();
+    final int textEnd = textStart + size;
 
-    for (int i = 0; i < seqLen; i += FASTA_MAX_LEN) {
+    for (int i = textStart; i < textEnd; i += FASTA_MAX_LEN) {
 
       final int endPos = i + FASTA_MAX_LEN;
-      sb.append(sequence.subSequence(i, endPos > seqLen ? seqLen : endPos));
+      sb.append(text, i, endPos > textEnd ? textEnd : endPos);
       sb.append("\n");
     }
 
@@ -236,31 +1258,101 @@ public class SequenceCore {
       final String prefix, final String suffix, final boolean convertXN,
       final boolean compress) throws IOException {
 
-    BufferedReader br = FileUtils.createBufferedReader(inputFile);
+    final FastaReader reader = new FastaReader(inputFile);
 
     Writer os = null;
     boolean first = true;
-    String line;
+    char[] line = new char[FASTA_MAX_LEN + 1];
 
-    while ((line = br.readLine()) != null) {
+    while (reader.readLine()) {
 
-      if (first || line.startsWith(">")) {
+      if (first || reader.isHeader()) {
         if (os != null)
           os.close();
 
-        final String seqName = line.substring(1, line.length()).trim();
+        final String seqName =
+            reader.isHeader() ? reader.getLine() : reader.getLine()
+                .substring(1).trim();
 
         os = getOutputStream(outputDir, prefix, seqName, suffix, compress);
         first = false;
-      } else if (convertXN)
-        line = line.replace('X', 'N');
 
-      os.write(line);
-      os.write("\n");
+        if (reader.isHeader()) {
+          os.write('>');
+          os.write(seqName);
+          os.write('\n');
+          continue;
+        }
+      }
+
+      final byte[] buffer = reader.getBuffer();
+      final int lineStart = reader.getLineStart();
+      final int lineLength = reader.getLineLength();
+
+      if (lineLength + 1 > line.length)
+        line = new char[lineLength + 1];
+
+      for (int i = 0; i < lineLength; i++) {
+
+        final char c = (char) (buffer[lineStart + i] & 0xff);
+        line[i] = convertXN && c == 'X' ? 'N' : c;
+      }
+      line[lineLength] = '\n';
+
+      os.write(line, 0, lineLength + 1);
     }
 
-    os.close();
-    br.close();
+    if (os != null)
+      os.close();
+    reader.close();
+  }
+
+  /**
+   * Create a fasta file for each chromosome of a genome that can be read with
+   * random access.
+   * @param reader genome reader
+   * @param outputDir output directory
+   * @param prefix prefix of the output files
+   * @param suffix suffix of the output files
+   * @param convertXN true if the X bases must be converted to N
+   * @param compress true if the output files must be compressed
+   * @throws IOException if an error occurs while writing the files
+   */
+  public static void fastaExplode(final GenomeReader reader,
+      final File outputDir, final String prefix, final String suffix,
+      final boolean convertXN, final boolean compress) throws IOException {
+
+    final StringBuilder sb = new StringBuilder(WRITE_BUFFER_LEN + 50000);
+
+    // Read the chromosomes by blocks of full lines
+    final int blockLen = (PACKED_BLOCK_LEN / FASTA_MAX_LEN) * FASTA_MAX_LEN;
+
+    for (String chr : reader.getChromosomesNames()) {
+
+      final Writer os =
+          getOutputStream(outputDir, prefix, chr, suffix, compress);
+      os.write(">" + chr + "\n");
+
+      final int len = reader.getChromosomeLength(chr);
+
+      for (int pos = 0; pos < len; pos += blockLen) {
+
+        String block =
+            reader.getSequence(chr, pos, Math.min(blockLen, len - pos));
+        if (convertXN)
+          block = block.replace('X', 'N');
+
+        for (int i = 0; i < block.length(); i += FASTA_MAX_LEN) {
+          sb.append(block, i, Math.min(i + FASTA_MAX_LEN, block.length()));
+          sb.append('\n');
+        }
+
+        os.write(sb.toString());
+        sb.setLength(0);
+      }
+
+      os.close();
+    }
   }
 
   private static Writer getOutputStream(final File outputDir,
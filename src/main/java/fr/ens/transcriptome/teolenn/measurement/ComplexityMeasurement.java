@@ -29,6 +29,13 @@ import java.util.regex.Pattern;
 
 import fr.ens.transcriptome.teolenn.DesignConstants;
 import fr.ens.transcriptome.teolenn.Globals;
+import fr.ens.transcriptome.teolenn.TeolennException;
+import fr.ens.transcriptome.teolenn.resource.CompositionResource;
+import fr.ens.transcriptome.teolenn.resource.OligoSequenceResource;
+import fr.ens.transcriptome.teolenn.resource.PackedGenomeResource;
+import fr.ens.transcriptome.teolenn.resource.Resources;
+import fr.ens.transcriptome.teolenn.sequence.CompositionIndex;
+import fr.ens.transcriptome.teolenn.sequence.PackedChromosome;
 import fr.ens.transcriptome.teolenn.sequence.Sequence;
 import fr.ens.transcriptome.teolenn.sequence.SequenceIterator;
 import fr.ens.transcriptome.teolenn.util.StringUtils;
@@ -38,7 +45,8 @@ import fr.ens.transcriptome.teolenn.util.StringUtils;
  * @author Stéphane Le Crom
  * @author Laurent Jourdren
  */
-public class ComplexityMeasurement extends FloatMeasurement {
+public class ComplexityMeasurement extends FloatMeasurement implements
+    LengthFamilyMeasurement {
 
   private static Logger logger = Logger.getLogger(Globals.APP_NAME);
 
@@ -50,6 +58,14 @@ public class ComplexityMeasurement extends FloatMeasurement {
       {'a', 'c', 'g', 't', 'n', 'N', 'x', 'X'};
 
   private SequenceIterator si;
+  private PackedGenomeResource packedGenome;
+  private CompositionResource composition;
+  private PackedChromosome currentChromosome;
+  private CompositionIndex currentIndex;
+  private String currentChromosomeName;
+  private int startOffset;
+  private int currentStart;
+  private int currentMaskNumber;
   private static final Pattern subseqPattern = Pattern.compile("subseq");
 
   /**
@@ -80,6 +96,9 @@ public class ComplexityMeasurement extends FloatMeasurement {
    */
   public float calcFloatMeasurement(final Sequence sequence) {
 
+    if (this.packedGenome != null)
+      return calcPackedMeasurement(sequence);
+
     if (!si.hasNext())
       throw new RuntimeException(
           "Invalid oligo masked  sequence file: no more sequences");
@@ -105,6 +124,80 @@ public class ComplexityMeasurement extends FloatMeasurement {
     return result;
   }
 
+  /**
+   * Calc the measurement of a sequence using the mask of the packed genome.
+   * @param sequence the sequence to use for the measurement
+   * @return a float value
+   */
+  private float calcPackedMeasurement(final Sequence sequence) {
+
+    final String name = sequence.getName();
+    final int subseqPos = name == null ? -1 : name.lastIndexOf(":subseq(");
+
+    if (subseqPos == -1)
+      throw new RuntimeException("Unable to parse sequence name: " + name);
+
+    final int commaPos = name.indexOf(',', subseqPos);
+    final String chr = name.substring(0, subseqPos);
+    final int start =
+        Integer.parseInt(name.substring(subseqPos + 8, commaPos))
+            - this.startOffset;
+    final int len = sequence.getSequence().length();
+
+    try {
+
+      if (!chr.equals(this.currentChromosomeName)) {
+        this.currentChromosome = this.packedGenome.getChromosome(chr);
+        this.currentChromosomeName = chr;
+
+        final CompositionIndex index =
+            this.composition == null ? null : this.composition
+                .getCompositionIndex(chr);
+        this.currentIndex = index != null && index.isMask() ? index : null;
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to read packed chromosome: " + chr);
+    }
+
+    final int maskNumber =
+        this.currentIndex != null
+            ? this.currentIndex.countMasked(start, len)
+            : this.currentChromosome.countMasked(start, len);
+    this.currentStart = start;
+    this.currentMaskNumber = maskNumber;
+
+    // Calculate a complexity score
+    return 1.0f - ((float) maskNumber / (float) len);
+  }
+
+  /**
+   * Calc the measurement of a sequence that extends the last measured
+   * sequence. With the mask of the packed genome, only the mask of the new
+   * bases is read and with the composition index, no base is read.
+   * @param sequence the sequence to use for the measurement
+   * @param previousLength length of the last measured sequence
+   * @return a float value
+   */
+  protected float calcExtendedFloatMeasurement(final Sequence sequence,
+      final int previousLength) {
+
+    if (this.packedGenome == null)
+      return calcFloatMeasurement(sequence);
+
+    final int len = sequence.getSequence().length();
+
+    if (this.currentIndex != null)
+      this.currentMaskNumber =
+          this.currentIndex.countMasked(this.currentStart, len);
+    else
+      this.currentMaskNumber +=
+          this.currentChromosome.countMasked(this.currentStart
+              + previousLength, len - previousLength);
+
+    // Calculate a complexity score
+    return 1.0f - ((float) this.currentMaskNumber / (float) len);
+  }
+
   /**
    * Test if two sequences have the same chromosome and position.
    * @param seqA Sequence A to test
@@ -154,13 +247,17 @@ public class ComplexityMeasurement extends FloatMeasurement {
     if (key == null || value == null)
       return;
 
-    // Get the current oligo file
-    if (DesignConstants.CURRENT_OLIGO_FILE_PARAMETER_NAME.equals(key)) {
+    // Get the current oligo file, not needed if the mask is in packed genome
+    if (DesignConstants.CURRENT_OLIGO_FILE_PARAMETER_NAME.equals(key)
+        && this.packedGenome == null) {
 
-      final String ext =
-          DesignConstants.OLIGO_FILTERED_SUFFIX.equals(StringUtils.extension(value))
-              ? DesignConstants.OLIGO_MASKED_FILTERED_SUFFIX
-              : DesignConstants.OLIGO_MASKED_SUFFIX;
+      final String valueExt = StringUtils.extension(value);
+      final String ext;
+
+      if (DesignConstants.OLIGO_FILTERED_SUFFIX.equals(valueExt))
+        ext = DesignConstants.OLIGO_MASKED_FILTERED_SUFFIX;
+      else
+        ext = DesignConstants.OLIGO_MASKED_SUFFIX;
 
       final File f = new File(StringUtils.basename(value) + ext);
       logger.fine("Open sequence file: "
@@ -172,10 +269,14 @@ public class ComplexityMeasurement extends FloatMeasurement {
       try {
 
         // Set the oligo masked file to read
-        this.si = new SequenceIterator(f);
+        this.si = OligoSequenceResource.getRessource().getSequenceIterator(f);
 
       } catch (IOException e) {
 
+        throw new RuntimeException(
+            "Unable to open oligo masked  sequence file: " + f.getName());
+      } catch (TeolennException e) {
+
         throw new RuntimeException(
             "Unable to open oligo masked  sequence file: " + f.getName());
       }
@@ -185,6 +286,35 @@ public class ComplexityMeasurement extends FloatMeasurement {
     super.setProperty(key, value);
   }
 
+  /**
+   * Set a parameter for the measurement.
+   * @param key key for the parameter
+   * @param value value of the parameter
+   */
+  public void setInitParameter(final String key, final String value) {
+
+    if (DesignConstants.START_1_PARAMETER_NAME.equals(key))
+      this.startOffset = Boolean.parseBoolean(value) ? 1 : 0;
+  }
+
+  /**
+   * Run the initialization phase of the measurement.
+   * @throws TeolennException if an error occurs while the initialization phase
+   */
+  public void init() throws TeolennException {
+
+    // Use the mask of the packed genome if available
+    final PackedGenomeResource pgr = PackedGenomeResource.getRessource();
+
+    if (pgr.isMask()) {
+      this.packedGenome = pgr;
+      this.composition =
+          (CompositionResource) Resources.getResources().getResource(
+              CompositionResource.RESOURCE_NAME);
+      logger.fine("Use packed genome in " + MEASUREMENT_NAME + " measurement.");
+    }
+  }
+
   /**
    * Get the score for the measurement.
    * @param value value
@@ -76,6 +76,36 @@ public abstract class FloatMeasurement implements Measurement {
     return result;
   }
 
+  /**
+   * Calc the measurement of a sequence that extends the last measured
+   * sequence. By default, the measurement is computed from scratch.
+   * @param sequence the sequence to use for the measurement
+   * @param previousLength length of the last measured sequence
+   * @return a float value
+   */
+  protected float calcExtendedFloatMeasurement(final Sequence sequence,
+      final int previousLength) {
+
+    return calcFloatMeasurement(sequence);
+  }
+
+  /**
+   * Calc the measurement of a sequence that extends the last measured
+   * sequence.
+   * @param sequence the sequence to use for the measurement
+   * @param previousLength length of the last measured sequence
+   * @return an object as result
+   */
+  public Object calcExtendedMesurement(final Sequence sequence,
+      final int previousLength) {
+
+    final Float result = calcExtendedFloatMeasurement(sequence, previousLength);
+
+    this.lastValue = result.floatValue();
+
+    return result;
+  }
+
   /**
    * Add last measurements value to the statistics.
    */
@@ -22,17 +22,28 @@
 
 package fr.ens.transcriptome.teolenn.measurement;
 
+import fr.ens.transcriptome.teolenn.resource.CompositionResource;
+import fr.ens.transcriptome.teolenn.resource.Resources;
+import fr.ens.transcriptome.teolenn.sequence.CompositionIndex;
 import fr.ens.transcriptome.teolenn.sequence.Sequence;
 
 /**
- * This class define a measurement that compute the %GC of sequences.
+ * This class define a measurement that compute the %GC of sequences. If the
+ * composition index of the chromosome is available, the sequences are not
+ * read.
  * @author Laurent Jourdren
  */
-public final class GCPencentMeasurement extends FloatMeasurement {
+public final class GCPencentMeasurement extends FloatMeasurement implements
+    LengthFamilyMeasurement {
 
   /** Measurement name. */
   public static final String MEASUREMENT_NAME = "%GC";
 
+  private int gcCount;
+  private CompositionResource composition;
+  private CompositionIndex currentIndex;
+  private String currentChromosomeName;
+
   /**
    * Calc the measurement of a sequence.
    * @param sequence the sequence to use for the measurement
@@ -40,7 +51,97 @@ public final class GCPencentMeasurement extends FloatMeasurement {
    */
   public float calcFloatMeasurement(final Sequence sequence) {
 
-    return sequence.getGCPercent();
+    final String s = sequence.getSequence();
+
+    if (s == null)
+      return Float.NaN;
+
+    final int len = s.length();
+    final int indexedCount = countIndexedGC(sequence.getName(), len);
+
+    this.gcCount = indexedCount == -1 ? countGC(s, 0, len) : indexedCount;
+
+    return (float) this.gcCount / (float) s.length();
+  }
+
+  /**
+   * Calc the measurement of a sequence that extends the last measured
+   * sequence. Only the new bases are read.
+   * @param sequence the sequence to use for the measurement
+   * @param previousLength length of the last measured sequence
+   * @return a float value
+   */
+  protected float calcExtendedFloatMeasurement(final Sequence sequence,
+      final int previousLength) {
+
+    final String s = sequence.getSequence();
+
+    final int len = s.length();
+    final int indexedCount = countIndexedGC(sequence.getName(), len);
+
+    if (indexedCount == -1)
+      this.gcCount += countGC(s, previousLength, len);
+    else
+      this.gcCount = indexedCount;
+
+    return (float) this.gcCount / (float) s.length();
+  }
+
+  /**
+   * Count the 'G' and 'C' bases of an oligonucleotide using the composition
+   * index of its chromosome.
+   * @param name name of the oligonucleotide
+   * @param len length of the oligonucleotide
+   * @return the number of 'G' and 'C' bases or -1 if the composition index is
+   *         not available
+   */
+  private int countIndexedGC(final String name, final int len) {
+
+    if (this.composition == null || name == null)
+      return -1;
+
+    final int subseqPos = name.lastIndexOf(":subseq(");
+    if (subseqPos == -1)
+      return -1;
+
+    final String chr = name.substring(0, subseqPos);
+
+    if (!chr.equals(this.currentChromosomeName)) {
+      this.currentIndex = this.composition.getCompositionIndex(chr);
+      this.currentChromosomeName = chr;
+    }
+
+    if (this.currentIndex == null)
+      return -1;
+
+    final int commaPos = name.indexOf(',', subseqPos);
+    final int start =
+        Integer.parseInt(name.substring(subseqPos + 8, commaPos))
+            - this.composition.getFirstPosition();
+
+    return this.currentIndex.countGC(start, len);
+  }
+
+  /**
+   * Count the 'G' and 'C' bases of a region of a sequence.
+   * @param s sequence
+   * @param from start of the region (inclusive)
+   * @param to end of the region (exclusive)
+   * @return the number of 'G' and 'C' bases
+   */
+  private static final int countGC(final String s, final int from,
+      final int to) {
+
+    int count = 0;
+
+    for (int i = from; i < to; i++) {
+
+      final char c = s.charAt(i);
+      if (c == 'G' || c == 'C')
+        count++;
+    }
+
+    return count;
   }
 
   /**
@@ -61,6 +162,17 @@ public final class GCPencentMeasurement extends FloatMeasurement {
     return MEASUREMENT_NAME;
   }
 
+  /**
+   * Run the initialization phase of the measurement.
+   */
+  public void init() {
+
+    // The composition index is only available if the packed genome exists
+    this.composition =
+        (CompositionResource) Resources.getResources().getResource(
+            CompositionResource.RESOURCE_NAME);
+  }
+
   /**
    * Get the type of the result of calcMeasurement.
    * @return the type of the measurement
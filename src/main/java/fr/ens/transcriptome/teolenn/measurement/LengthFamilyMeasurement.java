@@ -0,0 +1,48 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+package fr.ens.transcriptome.teolenn.measurement;
+
+import fr.ens.transcriptome.teolenn.sequence.Sequence;
+
+/**
+ * This interface define a measurement that can be computed incrementally on
+ * a length family, the oligonucleotides that share the same chromosome and
+ * the same start position. The oligonucleotides of a family are measured by
+ * increasing length and the measurement of an oligonucleotide is computed
+ * from the state left by the measurement of the previous one, so only the
+ * new bases are read.
+ * @author Laurent Jourdren
+ */
+public interface LengthFamilyMeasurement extends Measurement {
+
+  /**
+   * Calc the measurement of a sequence that extends the last measured
+   * sequence.
+   * @param sequence the sequence to use for the measurement
+   * @param previousLength length of the last measured sequence, this sequence
+   *          is a prefix of the sequence to measure
+   * @return an object as result
+   */
+  Object calcExtendedMesurement(Sequence sequence, int previousLength);
+
+}
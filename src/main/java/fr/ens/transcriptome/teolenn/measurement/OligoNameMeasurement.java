@@ -26,9 +26,12 @@ import fr.ens.transcriptome.teolenn.sequence.Sequence;
 
 /**
  * This measurement define a measurement that return the name of the sequences.
+ * This measurement is virtual, the names are not stored in the measurement
+ * files.
  * @author Laurent Jourdren
  */
-public final class OligoNameMeasurement extends StringMeasurement {
+public final class OligoNameMeasurement extends StringMeasurement implements
+    VirtualMeasurement {
 
   /** Measurement name. */
   public static final String MEASUREMENT_NAME = "OligoName";
@@ -43,6 +46,20 @@ public final class OligoNameMeasurement extends StringMeasurement {
     return sequence.getName();
   }
 
+  /**
+   * Compute the value of the measurement from the position of an
+   * oligonucleotide.
+   * @param chromosome chromosome of the oligonucleotide
+   * @param start start position of the oligonucleotide
+   * @param length length of the oligonucleotide
+   * @return an String Object
+   */
+  public Object calcVirtualMeasurement(final String chromosome,
+      final int start, final int length) {
+
+    return chromosome + ":subseq(" + start + "," + length + ")";
+  }
+
   /**
    * Get the description of the measurement.
    * @return the description of the measurement
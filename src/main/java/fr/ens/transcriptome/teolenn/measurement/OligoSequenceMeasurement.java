@@ -22,14 +22,22 @@
 
 package fr.ens.transcriptome.teolenn.measurement;
 
+import java.io.IOException;
+
+import fr.ens.transcriptome.teolenn.TeolennException;
+import fr.ens.transcriptome.teolenn.resource.OligoSequenceResource;
 import fr.ens.transcriptome.teolenn.sequence.Sequence;
 
 /**
  * This class define a measurement that returns the sequences of sequences
- * objects.
+ * objects. This measurement is virtual, the sequences are not stored in the
+ * measurement files but read from the oligonucleotides or the packed genome
+ * when needed. The 'X' of these sequences are replaced by 'N' if the removex
+ * sequence filter is used.
  * @author Laurent Jourdren
  */
-public final class OligoSequenceMeasurement extends StringMeasurement {
+public final class OligoSequenceMeasurement extends StringMeasurement
+    implements VirtualMeasurement {
 
   /** Measurement name. */
   public static final String MEASUREMENT_NAME = "OligoSequence";
@@ -44,6 +52,35 @@ public final class OligoSequenceMeasurement extends StringMeasurement {
     return sequence.getSequence();
   }
 
+  /**
+   * Compute the value of the measurement from the position of an
+   * oligonucleotide.
+   * @param chromosome chromosome of the oligonucleotide
+   * @param start start position of the oligonucleotide
+   * @param length length of the oligonucleotide
+   * @return an String Object
+   * @throws IOException if an error occurs while reading the sequence
+   */
+  public Object calcVirtualMeasurement(final String chromosome,
+      final int start, final int length) throws IOException {
+
+    try {
+      final OligoSequenceResource osr = OligoSequenceResource.getRessource();
+      final Sequence s = osr.getSequence(chromosome, start, length);
+
+      if (s == null)
+        return null;
+
+      // Apply the modification of the removex sequence filter as in the
+      // measurements of the filtered oligonucleotides
+      return osr.isConvertXN() ? s.getSequence().replace('X', 'N') : s
+          .getSequence();
+    } catch (TeolennException e) {
+      throw new IOException("Unable to retrieve the sequence of "
+          + chromosome + ":" + start + "," + length + ": " + e.getMessage());
+    }
+  }
+
   /**
    * Get the description of the measurement.
    * @return the description of the measurement
@@ -22,6 +22,8 @@
 
 package fr.ens.transcriptome.teolenn.measurement;
 
+import java.util.Arrays;
+
 import fr.ens.transcriptome.teolenn.sequence.MeltingTemp;
 import fr.ens.transcriptome.teolenn.sequence.Sequence;
 
@@ -29,11 +31,15 @@ import fr.ens.transcriptome.teolenn.sequence.Sequence;
  * This class define a measurement that returns the Tm of the sequences.
  * @author Laurent Jourdren
  */
-public class TmMeasurement extends FloatMeasurement {
+public class TmMeasurement extends FloatMeasurement implements
+    LengthFamilyMeasurement {
 
   /** Measurement name. */
   public static final String MEASUREMENT_NAME = "Tm";
 
+  private final int[] dinucleotides = new int[MeltingTemp.DINUCLEOTIDES_COUNT];
+  private char first;
+
   /**
    * Calc the measurement of a sequence.
    * @param sequence the sequence to use for the measurement
@@ -41,7 +47,45 @@ public class TmMeasurement extends FloatMeasurement {
    */
   public float calcFloatMeasurement(Sequence sequence) {
 
-    return MeltingTemp.tmstalucDNA(sequence.getSequence(), 50, 50);
+    final String s = sequence.getSequence();
+    final int len = s.length();
+
+    Arrays.fill(this.dinucleotides, 0);
+    MeltingTemp.countDinucleotides(s, 0, len, this.dinucleotides);
+    this.first = len == 0 ? 0 : Character.toUpperCase(s.charAt(0));
+
+    return calcTm(s);
+  }
+
+  /**
+   * Calc the measurement of a sequence that extends the last measured
+   * sequence. Only the dinucleotides of the new bases are counted.
+   * @param sequence the sequence to use for the measurement
+   * @param previousLength length of the last measured sequence
+   * @return a float value
+   */
+  protected float calcExtendedFloatMeasurement(final Sequence sequence,
+      final int previousLength) {
+
+    final String s = sequence.getSequence();
+
+    MeltingTemp.countDinucleotides(s, previousLength, s.length(),
+        this.dinucleotides);
+
+    return calcTm(s);
+  }
+
+  /**
+   * Compute the tm of a sequence from the current dinucleotides counts.
+   * @param s the sequence
+   * @return the tm of the sequence
+   */
+  private float calcTm(final String s) {
+
+    final int len = s.length();
+
+    return MeltingTemp.tmstalucDNA(this.dinucleotides, this.first,
+        len == 0 ? 0 : Character.toUpperCase(s.charAt(len - 1)), len, 50, 50);
   }
 
   /**
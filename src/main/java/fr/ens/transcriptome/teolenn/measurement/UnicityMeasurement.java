@@ -41,6 +41,8 @@ import fr.ens.transcriptome.teolenn.Settings;
 import fr.ens.transcriptome.teolenn.TeolennException;
 import fr.ens.transcriptome.teolenn.core.SequenceCore;
 import fr.ens.transcriptome.teolenn.resource.ChromosomeNameResource;
+import fr.ens.transcriptome.teolenn.sequence.GenomeReader;
+import fr.ens.transcriptome.teolenn.sequence.GenomeReaderFactory;
 import fr.ens.transcriptome.teolenn.sequence.Sequence;
 import fr.ens.transcriptome.teolenn.util.BinariesInstaller;
 import fr.ens.transcriptome.teolenn.util.FileUtils;
@@ -52,7 +54,8 @@ import fr.ens.transcriptome.teolenn.util.StringUtils;
  * @author Stéphane Le Crom
  * @author Laurent Jourdren
  */
-public final class UnicityMeasurement extends FloatMeasurement {
+public final class UnicityMeasurement extends FloatMeasurement implements
+    LengthFamilyMeasurement {
 
   private static Logger logger = Logger.getLogger(Globals.APP_NAME);
 
@@ -71,14 +74,17 @@ public final class UnicityMeasurement extends FloatMeasurement {
   private File genomeFile;
   private File baseDir;
   private int maxPrefixLength;
+  private boolean indexBuilt;
 
   private String currentChr;
   private Map<Integer, Integer> mupDict = new HashMap<Integer, Integer>();
   private double uniquenessMax;
   private int startOffset = 0;
 
-  /* Dictionary to store mup en positions. Here only for speed optimization */
-  private final Map<Integer, Integer> mupEnd = new HashMap<Integer, Integer>();
+  /* State of the length family of the last measured sequence */
+  private int familyStart;
+  private boolean[] familyMupEnds = new boolean[0];
+  private int familyCount;
 
   // "/home/jourdren/local/bin/gt";
 
@@ -116,7 +122,69 @@ public final class UnicityMeasurement extends FloatMeasurement {
           + e.getMessage());
     }
 
-    return uscoreCalculation(startPos + this.startOffset, len);
+    // Init the state of the length family of the sequence
+    final int maxLen =
+        Math.max(len, this.oligoLength + this.oligoIntervalLength);
+    if (this.familyMupEnds.length < maxLen)
+      this.familyMupEnds = new boolean[maxLen];
+    else
+      Arrays.fill(this.familyMupEnds, false);
+
+    this.familyStart = startPos + this.startOffset;
+    this.familyCount = 0;
+    extendFamily(0, len);
+
+    return this.familyCount;
+  }
+
+  /**
+   * Calc the measurement of a sequence that extends the last measured
+   * sequence. Only the mups that start or end in the new bases are read.
+   * @param sequence the sequence to use for the measurement
+   * @param previousLength length of the last measured sequence
+   * @return a float value
+   */
+  protected float calcExtendedFloatMeasurement(final Sequence sequence,
+      final int previousLength) {
+
+    final int len = sequence.getLengthOligo();
+
+    if (len > this.familyMupEnds.length)
+      return calcFloatMeasurement(sequence);
+
+    extendFamily(previousLength, len);
+
+    return this.familyCount;
+  }
+
+  /**
+   * Update the state of the length family with new bases. The value of the
+   * measurement (the uniqueness) is the number of distinct end positions of
+   * the mups that start and end in the sequence.
+   * @param from length of the last measured sequence
+   * @param to length of the sequence to measure
+   */
+  private void extendFamily(final int from, final int to) {
+
+    final boolean[] ends = this.familyMupEnds;
+
+    // Add the end of the mups that start in the new bases
+    for (int i = from; i < to; i++) {
+
+      final Integer mupLength = this.mupDict.get(this.familyStart + i);
+
+      if (mupLength != null) {
+
+        final int end = i + mupLength - 1;
+        if (end >= 0 && end < ends.length)
+          ends[end] = true;
+      }
+    }
+
+    // Count the mups that end in the new bases
+    for (int i = from; i < to; i++)
+      if (ends[i])
+        this.familyCount++;
   }
 
   /**
@@ -298,40 +366,6 @@ public final class UnicityMeasurement extends FloatMeasurement {
     pexec.execTasks();
   }
 
-  /**
-   * Function that calculate uniqueness
-   * @param sequenceStart sequence start position
-   */
-  private float uscoreCalculation(final int sequenceStart, final int len) {
-
-    // Oligo end position calculation
-    final int sequenceEnd = sequenceStart + len - 1;
-
-    // Clear the mupEnd hashtable (optimization)
-    this.mupEnd.clear();
-
-    for (int sequencePosition = sequenceStart; sequencePosition <= sequenceEnd; sequencePosition++) {
-
-      if (mupDict.containsKey(sequencePosition)) {
-
-        // Store the end position of the mup
-        final int temp_mup_end =
-            sequencePosition + mupDict.get(sequencePosition) - 1;
-
-        if (temp_mup_end <= sequenceEnd) {
-
-          final int val =
-              mupEnd.containsKey(temp_mup_end) ? mupEnd.get(temp_mup_end) : 0;
-
-          mupEnd.put(temp_mup_end, val + 1);
-        }
-
-      }
-    }
-
-    return mupEnd.size();
-  }
-
   /**
    * Parse a resuly file.
    * @param chromosome chromosome witch result file must be parsed
@@ -438,9 +472,24 @@ public final class UnicityMeasurement extends FloatMeasurement {
       // Reset Histogram
       this.resetHistogram(0, this.oligoLength + this.oligoIntervalLength);
 
+      // The index of the genome is only built once by design
+      if (this.indexBuilt)
+        return;
+
       // Create sequence files without X
-      SequenceCore.fastaExplode(genomeFile, this.baseDir, "",
-          SEQ_GZ_WITHOUT_X_EXTENSION, true, true);
+      final GenomeReader reader =
+          GenomeReaderFactory.createGenomeReader(genomeFile);
+
+      if (reader == null)
+        SequenceCore.fastaExplode(genomeFile, this.baseDir, "",
+            SEQ_GZ_WITHOUT_X_EXTENSION, true, true);
+      else
+        try {
+          SequenceCore.fastaExplode(reader, this.baseDir, "",
+              SEQ_GZ_WITHOUT_X_EXTENSION, true, true);
+        } finally {
+          reader.close();
+        }
 
       // Get the list of sequences files created
       final List<String> chrNames =
@@ -455,6 +504,7 @@ public final class UnicityMeasurement extends FloatMeasurement {
 
       // Build unique sub
       run_uniquesub(files, FileUtils.getPrefix(files), this.maxPrefixLength);
+      this.indexBuilt = true;
     } catch (IOException e) {
       throw new TeolennException("Unable to inittialize "
           + MEASUREMENT_NAME + " measurement: " + e.getMessage());
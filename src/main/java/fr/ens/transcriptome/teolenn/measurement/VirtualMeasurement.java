@@ -0,0 +1,48 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+
+package fr.ens.transcriptome.teolenn.measurement;
+
+import java.io.IOException;
+
+/**
+ * This interface define a virtual measurement. The values of a virtual
+ * measurement are not stored in the measurement files, they are computed on
+ * demand from the position of the oligonucleotide when an output need them.
+ * @author Laurent Jourdren
+ */
+public interface VirtualMeasurement extends Measurement {
+
+  /**
+   * Compute the value of the measurement from the position of an
+   * oligonucleotide.
+   * @param chromosome chromosome of the oligonucleotide
+   * @param start start position of the oligonucleotide
+   * @param length length of the oligonucleotide
+   * @return an object as result
+   * @throws IOException if an error occurs while computing the value
+   */
+  Object calcVirtualMeasurement(String chromosome, int start, int length)
+      throws IOException;
+
+}
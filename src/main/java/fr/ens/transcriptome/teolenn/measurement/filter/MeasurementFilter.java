@@ -32,7 +32,8 @@ import fr.ens.transcriptome.teolenn.sequence.SequenceMeasurements;
 public interface MeasurementFilter extends Module {
 
   /**
-   * Filter a SequenceMeasurements.
+   * Filter a SequenceMeasurements. The filters of a design may be executed
+   * in any order, so a filter must not modify the SequenceMeasurements.
    * @param sm SequenceMeasurements to test
    * @return true if the test allow to keep SequenceMeasurements values
    * @throws TeolennException if an error occurs while testing a
@@ -29,6 +29,7 @@ import java.util.regex.Pattern;
 
 import fr.ens.transcriptome.teolenn.measurement.Measurement;
 import fr.ens.transcriptome.teolenn.measurement.MeasurementRegistery;
+import fr.ens.transcriptome.teolenn.measurement.VirtualMeasurement;
 import fr.ens.transcriptome.teolenn.sequence.SequenceMeasurements;
 import fr.ens.transcriptome.teolenn.util.FileUtils;
 import fr.ens.transcriptome.teolenn.util.StringUtils;
@@ -109,8 +110,16 @@ public final class FileSequenceMeasurementsReader implements
     result.setId(Integer.parseInt(tokens[0]));
     final Object[] values = result.getArrayMeasurementValues();
 
-    for (int i = 0; i < this.ms.length; i++)
-      values[i] = ms[i].parse(tokens[i + 1]);
+    for (int i = 0; i < this.ms.length; i++) {
+
+      final String token = tokens[i + 1];
+
+      // The values of virtual measurements may not be in the file
+      if (token.length() == 0 && ms[i] instanceof VirtualMeasurement)
+        values[i] = null;
+      else
+        values[i] = ms[i].parse(token);
+    }
 
     return result;
   }
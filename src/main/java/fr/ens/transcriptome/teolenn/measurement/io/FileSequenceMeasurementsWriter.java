@@ -27,11 +27,16 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.Writer;
 
+import fr.ens.transcriptome.teolenn.measurement.Measurement;
+import fr.ens.transcriptome.teolenn.measurement.VirtualMeasurement;
 import fr.ens.transcriptome.teolenn.sequence.SequenceMeasurements;
 import fr.ens.transcriptome.teolenn.util.FileUtils;
 
 /**
  * This class define a sequence measurement writer based on simple text file.
+ * The values of the virtual measurements are written as empty fields, unless
+ * the writer is created for a file for the user, in this case the virtual
+ * values are computed before writing.
  * @author Laurent Jourdren
  */
 public final class FileSequenceMeasurementsWriter implements
@@ -43,6 +48,8 @@ public final class FileSequenceMeasurementsWriter implements
   private final StringBuilder buffer =
       new StringBuilder(WRITE_BUFFER_LEN + 50000);
   private boolean headerDone;
+  private final boolean writeVirtualMeasurements;
+  private boolean[] virtual;
 
   private void writeHeader(SequenceMeasurements sm) throws IOException {
 
@@ -52,9 +59,14 @@ public final class FileSequenceMeasurementsWriter implements
     buffer.append("Id");
 
     final String[] names = sm.getArrayMesurementNames();
+    this.virtual = new boolean[names.length];
 
     for (int i = 0; i < names.length; i++) {
 
+      final Measurement m = sm.getMeasurement(names[i]);
+      this.virtual[i] =
+          !this.writeVirtualMeasurements && m instanceof VirtualMeasurement;
+
       buffer.append("\t");
       buffer.append(names[i]);
     }
@@ -80,6 +92,9 @@ public final class FileSequenceMeasurementsWriter implements
     if (!headerDone)
       writeHeader(sm);
 
+    if (this.writeVirtualMeasurements)
+      sm.calcVirtualMesurements();
+
     buffer.append(sm.getId());
 
     final Object[] values = sm.getArrayMeasurementValues();
@@ -87,7 +102,8 @@ public final class FileSequenceMeasurementsWriter implements
     for (int i = 0; i < values.length; i++) {
 
       buffer.append("\t");
-      buffer.append(values[i]);
+      if (!this.virtual[i])
+        buffer.append(values[i]);
     }
     buffer.append("\n");
 
@@ -119,10 +135,23 @@ public final class FileSequenceMeasurementsWriter implements
   public FileSequenceMeasurementsWriter(final File file)
       throws FileNotFoundException {
 
+    this(file, true);
+  }
+
+  /**
+   * Public constructor.
+   * @param file file to write
+   * @param writeVirtualMeasurements true if the values of the virtual
+   *          measurements must be computed and written
+   */
+  public FileSequenceMeasurementsWriter(final File file,
+      final boolean writeVirtualMeasurements) throws FileNotFoundException {
+
     if (file == null)
       throw new NullPointerException("File is null");
 
     this.writer = FileUtils.createBufferedWriter(file);
+    this.writeVirtualMeasurements = writeVirtualMeasurements;
   }
 
 }
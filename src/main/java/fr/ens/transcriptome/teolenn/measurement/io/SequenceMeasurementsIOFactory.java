@@ -50,7 +50,8 @@ public class SequenceMeasurementsIOFactory {
   }
 
   /**
-   * Create a new SequenceMeasurementsWriter object.
+   * Create a new SequenceMeasurementsWriter object. The values of the virtual
+   * measurements are not written.
    * @param file file to create
    * @return a new SequenceMeasurementsWriter object.
    * @throws IOException if an error occurs while creating the writer.
@@ -61,7 +62,7 @@ public class SequenceMeasurementsIOFactory {
     if (Settings.isMeasurementFileSerialized())
       return new SerializedSequenceMeasurementsWriter(file);
 
-    return new FileSequenceMeasurementsWriter(file);
+    return new FileSequenceMeasurementsWriter(file, false);
   }
 
   /**
@@ -98,7 +99,8 @@ public class SequenceMeasurementsIOFactory {
   }
 
   /**
-   * Create a new SequenceMeasurementsWriter object for the select file.
+   * Create a new SequenceMeasurementsWriter object for the select file. The
+   * values of the virtual measurements are computed and written in this file.
    * @param file file to create
    * @return a new SequenceMeasurementsWriter object.
    * @throws IOException if an error occurs while creating the writer.
@@ -106,7 +108,7 @@ public class SequenceMeasurementsIOFactory {
   public static final SequenceMeasurementsWriter createSequenceMeasurementsSelectWriter(
       final File file) throws IOException {
 
-    return new FileSequenceMeasurementsWriter(file);
+    return new FileSequenceMeasurementsWriter(file, true);
   }
 
 }
@@ -34,6 +34,7 @@ import fr.ens.transcriptome.teolenn.Globals;
 import fr.ens.transcriptome.teolenn.measurement.ChromosomeMeasurement;
 import fr.ens.transcriptome.teolenn.measurement.Measurement;
 import fr.ens.transcriptome.teolenn.measurement.MeasurementRegistery;
+import fr.ens.transcriptome.teolenn.measurement.VirtualMeasurement;
 import fr.ens.transcriptome.teolenn.sequence.SequenceMeasurements;
 import fr.ens.transcriptome.teolenn.util.FileUtils;
 
@@ -46,7 +47,7 @@ public class SerializedSequenceMeasurementsReader implements
     SequenceMeasurementsReader {
 
   private static Logger logger = Logger.getLogger(Globals.APP_NAME);
-  private static final String SERIALIZED_FORMAT_VERSION = "TEOLENN_MES_2";
+  private static final String SERIALIZED_FORMAT_VERSION = "TEOLENN_MES_3";
 
   private ObjectInputStream in;
   private Measurement[] ms;
@@ -94,7 +95,10 @@ public class SerializedSequenceMeasurementsReader implements
 
         final Object objType = this.ms[i].getType();
 
-        if (Float.class == objType)
+        // The values of virtual measurements are not in the file
+        if (this.ms[i] instanceof VirtualMeasurement)
+          this.types[i] = 0;
+        else if (Float.class == objType)
           this.types[i] = 1;
         else if (Integer.class == objType)
           this.types[i] = 3;
@@ -209,6 +213,7 @@ public class SerializedSequenceMeasurementsReader implements
           values[i] = in.readUTF();
           break;
         default:
+          values[i] = null;
           break;
         }
     }
@@ -33,6 +33,8 @@ import java.util.logging.Logger;
 import fr.ens.transcriptome.teolenn.Globals;
 import fr.ens.transcriptome.teolenn.TeolennException;
 import fr.ens.transcriptome.teolenn.measurement.ChromosomeMeasurement;
+import fr.ens.transcriptome.teolenn.measurement.Measurement;
+import fr.ens.transcriptome.teolenn.measurement.VirtualMeasurement;
 import fr.ens.transcriptome.teolenn.resource.ChromosomeNameResource;
 import fr.ens.transcriptome.teolenn.sequence.SequenceMeasurements;
 import fr.ens.transcriptome.teolenn.util.FileUtils;
@@ -45,7 +47,7 @@ public class SerializedSequenceMeasurementsWriter implements
     SequenceMeasurementsWriter {
 
   private static Logger logger = Logger.getLogger(Globals.APP_NAME);
-  private static final String SERIALIZED_FORMAT_VERSION = "TEOLENN_MES_2";
+  private static final String SERIALIZED_FORMAT_VERSION = "TEOLENN_MES_3";
 
   private ObjectOutputStream out;
   private ChromosomeNameResource resource;
@@ -81,9 +83,13 @@ public class SerializedSequenceMeasurementsWriter implements
     this.types = new int[names.length];
     for (int i = 0; i < names.length; i++) {
 
-      final Object objType = sm.getMeasurement(names[i]).getType();
+      final Measurement m = sm.getMeasurement(names[i]);
+      final Object objType = m.getType();
 
-      if (Float.class == objType)
+      // The values of virtual measurements are not written
+      if (m instanceof VirtualMeasurement)
+        this.types[i] = 0;
+      else if (Float.class == objType)
         this.types[i] = 1;
       else if (Integer.class == objType)
         this.types[i] = 3;
@@ -0,0 +1,190 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+package fr.ens.transcriptome.teolenn.resource;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import fr.ens.transcriptome.teolenn.Globals;
+import fr.ens.transcriptome.teolenn.Settings;
+import fr.ens.transcriptome.teolenn.TeolennException;
+import fr.ens.transcriptome.teolenn.sequence.CompositionIndex;
+
+/**
+ * This class allow to share the composition indexes of the chromosomes. The
+ * indexes are built from the packed chromosomes when needed and only the
+ * indexes of the last used chromosomes are kept in memory, as the
+ * oligonucleotides are processed chromosome by chromosome.
+ * @author Laurent Jourdren
+ */
+public class CompositionResource {
+
+  private static Logger logger = Logger.getLogger(Globals.APP_NAME);
+
+  /** The name of the resource. */
+  public static final String RESOURCE_NAME = "composition";
+
+  private final PackedGenomeResource genome;
+  private final int firstPosition;
+  private final int maxIndexes;
+
+  private final Map<String, CompositionIndex> indexes =
+      new LinkedHashMap<String, CompositionIndex>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(
+            final Map.Entry<String, CompositionIndex> eldest) {
+
+          return size() > maxIndexes;
+        }
+      };
+
+  /**
+   * Get the composition index of a chromosome.
+   * @param chromosome name of the chromosome
+   * @return a CompositionIndex object or null if the packed chromosome is not
+   *         available
+   */
+  public CompositionIndex getCompositionIndex(final String chromosome) {
+
+    synchronized (this.indexes) {
+
+      final CompositionIndex result = this.indexes.get(chromosome);
+      if (result != null)
+        return result;
+    }
+
+    if (!this.genome.isChromosome(chromosome))
+      return null;
+
+    // The index is built outside the lock to not block the other chromosomes
+    final CompositionIndex index;
+
+    try {
+      index = new CompositionIndex(this.genome.getChromosome(chromosome));
+    } catch (IOException e) {
+
+      logger.warning("Unable to read the packed chromosome "
+          + chromosome + ": " + e.getMessage());
+      return null;
+    }
+
+    synchronized (this.indexes) {
+
+      final CompositionIndex result = this.indexes.get(chromosome);
+      if (result != null)
+        return result;
+
+      this.indexes.put(chromosome, index);
+    }
+
+    return index;
+  }
+
+  /**
+   * Get the first position on the sequences of the oligonucleotides.
+   * @return 1 if the first position on sequence is 1, otherwise 0
+   */
+  public int getFirstPosition() {
+
+    return this.firstPosition;
+  }
+
+  /**
+   * Forget the indexes already built. This method must be called when the
+   * packed chromosome files are rewritten.
+   */
+  public void clear() {
+
+    synchronized (this.indexes) {
+      this.indexes.clear();
+    }
+  }
+
+  //
+  // Static methods
+  //
+
+  /**
+   * Get the resource.
+   * @return a CompositionResource Object if it has been already created
+   * @throws TeolennException if the resource doesn't exists
+   */
+  public static CompositionResource getRessource() throws TeolennException {
+
+    final Resources rs = Resources.getResources();
+
+    if (rs.isResource(RESOURCE_NAME))
+      return (CompositionResource) rs.getResource(RESOURCE_NAME);
+
+    throw new TeolennException("CompositionResource has not been initialized.");
+  }
+
+  /**
+   * Create the resource.
+   * @param genome the packed genome
+   * @param start1 true if the first position on sequence is 1
+   * @return a CompositionResource object
+   */
+  public static CompositionResource getRessource(
+      final PackedGenomeResource genome, final boolean start1) {
+
+    final Resources rs = Resources.getResources();
+
+    if (rs.isResource(RESOURCE_NAME))
+      return (CompositionResource) rs.getResource(RESOURCE_NAME);
+
+    final CompositionResource result = new CompositionResource(genome, start1);
+
+    rs.setResource(RESOURCE_NAME, result);
+
+    return result;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Private constructor.
+   * @param genome the packed genome
+   * @param start1 true if the first position on sequence is 1
+   */
+  private CompositionResource(final PackedGenomeResource genome,
+      final boolean start1) {
+
+    if (genome == null)
+      throw new NullPointerException("The packed genome is null");
+
+    this.genome = genome;
+    this.firstPosition = start1 ? 1 : 0;
+
+    // One index per filtering thread and one for the measurements
+    this.maxIndexes = Settings.getMaxThreads() + 1;
+  }
+
+}
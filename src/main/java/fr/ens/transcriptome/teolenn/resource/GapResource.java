@@ -0,0 +1,136 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+package fr.ens.transcriptome.teolenn.resource;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import fr.ens.transcriptome.teolenn.Globals;
+import fr.ens.transcriptome.teolenn.TeolennException;
+import fr.ens.transcriptome.teolenn.sequence.GapIndex;
+
+/**
+ * This class allow to share the indexes of the gaps (runs of 'N' or 'X'
+ * bases) of the chromosomes. The indexes are built from the packed
+ * chromosomes, so they are always up to date with the packed genome.
+ * @author Laurent Jourdren
+ */
+public class GapResource {
+
+  private static Logger logger = Logger.getLogger(Globals.APP_NAME);
+
+  /** The name of the resource. */
+  public static final String RESOURCE_NAME = "gaps";
+
+  private final PackedGenomeResource genome;
+  private final int firstPosition;
+
+  /**
+   * Get the gap index of a chromosome.
+   * @param chromosome name of the chromosome
+   * @return a GapIndex object or null if the packed chromosome is not
+   *         available
+   */
+  public GapIndex getGapIndex(final String chromosome) {
+
+    if (!this.genome.isChromosome(chromosome))
+      return null;
+
+    try {
+      return this.genome.getChromosome(chromosome).getGapIndex();
+    } catch (IOException e) {
+
+      logger.warning("Unable to read the packed chromosome "
+          + chromosome + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Get the first position on the sequences of the oligonucleotides.
+   * @return 1 if the first position on sequence is 1, otherwise 0
+   */
+  public int getFirstPosition() {
+
+    return this.firstPosition;
+  }
+
+  //
+  // Static methods
+  //
+
+  /**
+   * Get the resource.
+   * @return a GapResource Object if it has been already created
+   * @throws TeolennException if the resource doesn't exists
+   */
+  public static GapResource getRessource() throws TeolennException {
+
+    final Resources rs = Resources.getResources();
+
+    if (rs.isResource(RESOURCE_NAME))
+      return (GapResource) rs.getResource(RESOURCE_NAME);
+
+    throw new TeolennException("GapResource has not been initialized.");
+  }
+
+  /**
+   * Create the resource.
+   * @param genome the packed genome
+   * @param start1 true if the first position on sequence is 1
+   * @return a GapResource object
+   */
+  public static GapResource getRessource(final PackedGenomeResource genome,
+      final boolean start1) {
+
+    final Resources rs = Resources.getResources();
+
+    if (rs.isResource(RESOURCE_NAME))
+      return (GapResource) rs.getResource(RESOURCE_NAME);
+
+    final GapResource result = new GapResource(genome, start1);
+
+    rs.setResource(RESOURCE_NAME, result);
+
+    return result;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Private constructor.
+   * @param genome the packed genome
+   * @param start1 true if the first position on sequence is 1
+   */
+  private GapResource(final PackedGenomeResource genome, final boolean start1) {
+
+    if (genome == null)
+      throw new NullPointerException("The packed genome is null");
+
+    this.genome = genome;
+    this.firstPosition = start1 ? 1 : 0;
+  }
+
+}
@@ -26,6 +26,8 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -38,6 +40,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import fr.ens.transcriptome.teolenn.Globals;
+import fr.ens.transcriptome.teolenn.TeolennException;
 import fr.ens.transcriptome.teolenn.util.FileUtils;
 
 /**
@@ -68,6 +71,26 @@ public class ORFResource {
   private String lastChromosome;
   private int lastOligoStart;
 
+  // Sorted starts of the ORFs of each chromosome and maximal end of the ORFs
+  // that start before each ORF (included)
+  private final Map<String, int[]> orfStarts = new HashMap<String, int[]>();
+  private final Map<String, int[]> orfMaxEnds = new HashMap<String, int[]>();
+
+  /**
+   * Get the resource.
+   * @return an ORFResource object if it has been already created
+   * @throws TeolennException if the resource doesn't exists
+   */
+  public static ORFResource getRessource() throws TeolennException {
+
+    final Resources rs = Resources.getResources();
+
+    if (rs.isResource(RESOURCE_NAME))
+      return (ORFResource) rs.getResource(RESOURCE_NAME);
+
+    throw new TeolennException("ORFResource has not been initialized.");
+  }
+
   /**
    * Static method to get the singleton of the ressource
    * @param properties Properties used to configure the resource
@@ -281,6 +304,66 @@ public class ORFResource {
     return null;
   }
 
+  /**
+   * Test if a sequence is inside an ORF. Unlike getORF(), this method does not
+   * depend on the previous calls and can be used by many threads.
+   * @param chromosome Chromosome
+   * @param oligoStart the start position of the sequence
+   * @param oligoLength the length of the sequence
+   * @return true if the sequence is inside an ORF
+   */
+  public boolean isOligoInsideORF(final String chromosome,
+      final int oligoStart, final int oligoLength) {
+
+    final int[] starts = this.orfStarts.get(chromosome);
+
+    if (starts == null) {
+
+      synchronized (this) {
+
+        if (this.unknownChromosomes == null)
+          this.unknownChromosomes = new HashSet<String>();
+
+        if (!this.unknownChromosomes.contains(chromosome)) {
+          this.unknownChromosomes.add(chromosome);
+          logger.warning("Unknown chromosome in annotation: " + chromosome);
+        }
+      }
+
+      return false;
+    }
+
+    // Search the last ORF that starts before the sequence
+    int index = Arrays.binarySearch(starts, oligoStart);
+    if (index < 0)
+      index = -index - 2;
+
+    return index >= 0
+        && this.orfMaxEnds.get(chromosome)[index] >= oligoStart + oligoLength;
+  }
+
+  /**
+   * Get the names of the chromosomes that contain ORFs.
+   * @return a set with the names of the chromosomes
+   */
+  public Set<String> getChromosomesNames() {
+
+    return Collections.unmodifiableSet(this.orfs.keySet());
+  }
+
+  /**
+   * Get the ORFs of a chromosome.
+   * @param chromosome Chromosome
+   * @return a set with the ORFs of the chromosome sorted by start position or
+   *         null if the chromosome contains no ORF
+   */
+  public Set<ORF> getChromosomeORFs(final String chromosome) {
+
+    final Set<ORF> result = this.orfs.get(chromosome);
+
+    return result == null ? null : Collections.unmodifiableSet(result);
+  }
+
   /**
    * Get the list of associated ORFa to a sequence.
    * @param chromosome Chromosome
@@ -437,6 +520,24 @@ public class ORFResource {
     for (String k : this.orfs.keySet())
       count += this.orfs.get(k).size();
 
+    // Create the index of the ORFs
+    for (Map.Entry<String, Set<ORF>> e : this.orfs.entrySet()) {
+
+      final int n = e.getValue().size();
+      final int[] starts = new int[n];
+      final int[] maxEnds = new int[n];
+
+      int i = 0;
+      for (ORF o : e.getValue()) {
+        starts[i] = o.start;
+        maxEnds[i] = i == 0 ? o.end : Math.max(maxEnds[i - 1], o.end);
+        i++;
+      }
+
+      this.orfStarts.put(e.getKey(), starts);
+      this.orfMaxEnds.put(e.getKey(), maxEnds);
+    }
+
     logger.fine("Orfs readed: " + count);
   }
 
@@ -23,37 +23,237 @@
 package fr.ens.transcriptome.teolenn.resource;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
 
+import fr.ens.transcriptome.teolenn.DesignConstants;
+import fr.ens.transcriptome.teolenn.Globals;
 import fr.ens.transcriptome.teolenn.TeolennException;
+import fr.ens.transcriptome.teolenn.sequence.OligoContainer;
+import fr.ens.transcriptome.teolenn.sequence.OligoFileLayout;
+import fr.ens.transcriptome.teolenn.sequence.PackedChromosome;
 import fr.ens.transcriptome.teolenn.sequence.Sequence;
+import fr.ens.transcriptome.teolenn.sequence.SequenceIterator;
+import fr.ens.transcriptome.teolenn.sequence.VirtualOligoIterator;
+import fr.ens.transcriptome.teolenn.util.BgzfIndex;
+import fr.ens.transcriptome.teolenn.util.BgzfRandomAccessFile;
+import fr.ens.transcriptome.teolenn.util.StringUtils;
 
 /**
  * This class allow to read fasta sequence of the oligonucleotides generated by
- * teolenn.
+ * teolenn. When the packed genome is available, as after the creation of the
+ * oligonucleotides, the sequences are directly read from the packed
+ * chromosomes. Otherwise, the position of each record in the files of the
+ * oligonucleotides is computed with an OligoFileLayout and the record is read
+ * with a single positional read, without any seek or search in the file. The
+ * last opened files are kept in a LRU cache. The fasta files can be compressed
+ * in the BGZF format, in this case the index of the blocks of the files is used
+ * to only decompress the blocks that contain the sequences. The
+ * oligonucleotides of all the chromosomes can also be in a single container
+ * file, in this case the container file is opened only once and the table of
+ * contents of the container gives the section of each chromosome. The
+ * getSequence() methods can be called by many threads at the same time.
  * @author Laurent Jourdren
  */
 public class OligoSequenceResource {
 
+  private static Logger logger = Logger.getLogger(Globals.APP_NAME);
+
   /** The name of the resource. */
   public static final String RESOURCE_NAME = "oligo";
 
-  /** The charset to use. */
-  private static final String CHARSET = "ISO-8859-1";
+  /** Maximal number of chromosomes kept in the cache. */
+  private static final int MAX_OPEN_CHROMOSOMES = 32;
 
   private File oligosDir;
-  private String chr;
-  private int chrLength = -1;
   private String oligosExtension;
   private int oligoLength;
   private int oligoIntervalLength;
   private boolean start1;
-  private int positionConstant;
-  private FileChannel inChannel;
-  private ByteBuffer bb;
+  private boolean virtualOligos;
+  private boolean compressedOligos;
+  private boolean containerOligos;
+  private volatile boolean convertXN;
+
+  private OligoFile containerFile;
+  private OligoContainer container;
+  private volatile int generation;
+
+  private final Map<String, ChromosomeEntry> entries =
+      new LinkedHashMap<String, ChromosomeEntry>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 4283625237981623154L;
+
+        @Override
+        protected boolean removeEldestEntry(
+            final Map.Entry<String, ChromosomeEntry> eldest) {
+
+          if (size() <= MAX_OPEN_CHROMOSOMES)
+            return false;
+
+          // The container file is shared by all the chromosomes
+          if (eldest.getValue().file != containerFile)
+            eldest.getValue().file.close();
+
+          return true;
+        }
+      };
+
+  private final ThreadLocal<ReaderState> states =
+      new ThreadLocal<ReaderState>() {
+
+        @Override
+        protected ReaderState initialValue() {
+          return new ReaderState();
+        }
+      };
+
+  /**
+   * This class define an oligonucleotides file opened for reading. Uncompressed
+   * files are read with the positional read of their channel, that can be
+   * used by many threads at the same time.
+   */
+  private static final class OligoFile {
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final BgzfRandomAccessFile bgzf;
+    private boolean closed;
+
+    /**
+     * Read the bytes of a record.
+     * @param offset offset of the record in the file
+     * @param bb output buffer, its position must be 0
+     * @param len length of the record
+     * @return the number of bytes read or -1 if the file has been closed
+     * @throws IOException if an error occurs while reading the file
+     */
+    public int read(final long offset, final ByteBuffer bb, final int len)
+        throws IOException {
+
+      if (this.bgzf != null)
+        synchronized (this) {
+
+          if (this.closed)
+            return -1;
+
+          return this.bgzf.read(offset, bb.array(), 0, len);
+        }
+
+      bb.clear();
+      bb.limit(len);
+
+      try {
+
+        int n;
+        do
+          n = this.channel.read(bb, offset + bb.position());
+        while (n > 0 && bb.hasRemaining());
+
+      } catch (ClosedByInterruptException e) {
+        throw e;
+      } catch (ClosedChannelException e) {
+        return -1;
+      }
+
+      final int result = bb.position();
+      bb.clear();
+
+      return result;
+    }
+
+    /**
+     * Close the file.
+     */
+    public void close() {
+
+      synchronized (this) {
+
+        if (this.closed)
+          return;
+
+        this.closed = true;
+
+        try {
+          if (this.bgzf != null)
+            this.bgzf.close();
+          else
+            this.raf.close();
+        } catch (IOException e) {
+          logger.warning("Unable to close "
+              + this.file + ": " + e.getMessage());
+        }
+      }
+    }
+
+    /**
+     * Constructor.
+     * @param file the file to open
+     * @throws IOException if an error occurs while opening the file
+     */
+    public OligoFile(final File file) throws IOException {
+
+      this.file = file;
+
+      if (BgzfIndex.getIndexFile(file).exists()) {
+
+        this.bgzf = new BgzfRandomAccessFile(file);
+        this.raf = null;
+        this.channel = null;
+        return;
+      }
+
+      this.bgzf = null;
+      this.raf = new RandomAccessFile(file, "r");
+      this.channel = this.raf.getChannel();
+    }
+  }
+
+  /**
+   * This class define the location of the oligonucleotides of a chromosome.
+   */
+  private static final class ChromosomeEntry {
+
+    private final OligoFileLayout layout;
+    private final OligoFile file;
+    private final long sectionStart;
+
+    /**
+     * Constructor.
+     * @param layout layout of the oligonucleotides of the chromosome
+     * @param file file that contains the oligonucleotides
+     * @param sectionStart offset of the oligonucleotides in the file
+     */
+    public ChromosomeEntry(final OligoFileLayout layout, final OligoFile file,
+        final long sectionStart) {
+
+      this.layout = layout;
+      this.file = file;
+      this.sectionStart = sectionStart;
+    }
+  }
+
+  /**
+   * This class define the state of a thread that read sequences, it avoid
+   * locking and allocation when consecutive sequences of the same chromosome
+   * are read.
+   */
+  private static final class ReaderState {
+
+    private int generation = -1;
+    private String chromosome;
+    private ChromosomeEntry entry;
+    private ByteBuffer buffer = ByteBuffer.allocate(1024);
+    private char[] chars = new char[1024];
+  }
 
   /**
    * Get a sequence from teolenn generated fasta file
@@ -89,209 +289,318 @@ public class OligoSequenceResource {
     if (chromosome == null || oligoStartPos < 0)
       return null;
 
-    if (!chromosome.equals(this.chr)) {
+    // Read the sequence from the packed chromosome if exists
+    final PackedChromosome packed = getPackedChromosome(chromosome);
+    if (packed != null)
+      return getPackedSequence(packed, chromosome, oligoStartPos, oligoLength,
+          sequence);
+
+    final ReaderState state = this.states.get();
+    ChromosomeEntry entry = getEntry(state, chromosome, false);
+
+    final OligoFileLayout layout = entry.layout;
+    final long offset;
+
+    try {
+      offset =
+          entry.sectionStart
+              + layout.getRecordOffset(oligoStartPos, oligoLength);
+    } catch (IndexOutOfBoundsException e) {
+      throw new TeolennException("Invalid sequence position "
+          + chromosome + "," + oligoStartPos + " oligolength=" + oligoLength);
+    }
 
-      if (this.inChannel != null)
-        this.inChannel.close();
+    final int length = layout.getRecordLength(oligoStartPos, oligoLength);
+    final int headerLength = layout.getHeaderLength(oligoStartPos, oligoLength);
 
-      this.chr = chromosome;
-      File f = new File(oligosDir, chromosome + oligosExtension);
+    if (state.buffer.capacity() < length) {
+      state.buffer = ByteBuffer.allocate(length);
+      state.chars = new char[length];
+    }
 
-      FileInputStream fis = new FileInputStream(f);
-      this.inChannel = fis.getChannel();
+    final byte[] buffer = state.buffer.array();
+    int read;
 
-      this.positionConstant = calcPositionConstant();
-      this.chrLength =
-          ChromosomeNameResource.getRessource().getChromosomeLength(chromosome);
-    }
+    // The file may have been closed by another thread, open it again
+    while ((read = entry.file.read(offset, state.buffer, length)) == -1)
+      entry = getEntry(state, chromosome, true);
 
-    if (chrLength == -1)
-      throw new TeolennException("Chromosome length not found.");
+    if (read != length
+        || buffer[0] != '>' || buffer[headerLength - 1] != '\n')
+      throw new TeolennException("Error while reading sequence "
+          + chromosome + "," + oligoStartPos + ". pos=" + offset
+          + " oligolength=" + oligoLength + " len=" + length + " read="
+          + read);
 
-    final long pos = getFilePos(oligoStartPos, oligoLength, this.start1);
-    final int length =
-        this.positionConstant + getDigits(oligoStartPos) + oligoLength;
+    return bytes2Sequence(buffer, length, headerLength, state.chars, sequence);
+  }
 
-    if (this.bb == null || this.bb.capacity() != length)
-      this.bb = ByteBuffer.allocate(length);
-    else
-      bb.clear();
+  /**
+   * Get the location of the oligonucleotides of a chromosome. The entry of the
+   * last chromosome read by the current thread is reused without locking.
+   * @param state state of the current thread
+   * @param chromosome name of the chromosome
+   * @param refresh true if the entry of the thread must not be reused
+   * @return a ChromosomeEntry object
+   * @throws IOException if an error occurs while opening the file
+   * @throws TeolennException if the chromosome is unknown
+   */
+  private ChromosomeEntry getEntry(final ReaderState state,
+      final String chromosome, final boolean refresh) throws IOException,
+      TeolennException {
 
-    final int read = this.inChannel.read(bb, pos);
+    if (!refresh
+        && chromosome.equals(state.chromosome)
+        && state.generation == this.generation)
+      return state.entry;
 
-    if (read != length)
-      throw new TeolennException("Error while reading sequence "
-          + chromosome + "," + oligoStartPos + ". pos=" + pos + " oligolengtg="
-          + oligoLength + " len=" + length + " read=" + read + " bb.capacity="
-          + this.bb.capacity());
+    synchronized (this.entries) {
 
-    return string2Sequence(new String(bb.array(), CHARSET), sequence);
+      ChromosomeEntry entry = this.entries.get(chromosome);
+
+      if (entry == null || refresh && entry == state.entry) {
+
+        entry = openEntry(chromosome);
+        this.entries.put(chromosome, entry);
+      }
+
+      state.chromosome = chromosome;
+      state.entry = entry;
+      state.generation = this.generation;
+
+      return entry;
+    }
   }
 
   /**
-   * Convert the two line (with CR) of a fasta sequence to a Sequence object
-   * @param s The String to convert
-   * @param sequence The sequence output if you want reuse it
-   * @return a Sequence object
+   * Open the file of the oligonucleotides of a chromosome. Must be called with
+   * the lock of the cache.
+   * @param chromosome name of the chromosome
+   * @return a new ChromosomeEntry object
+   * @throws IOException if an error occurs while opening the file
+   * @throws TeolennException if the chromosome is unknown
    */
-  private static final Sequence string2Sequence(final String s,
-      final Sequence sequence) {
+  private ChromosomeEntry openEntry(final String chromosome)
+      throws IOException, TeolennException {
 
-    final Sequence result;
+    final int chrLength =
+        ChromosomeNameResource.getRessource().getChromosomeLength(chromosome);
 
-    if (sequence == null)
-      result = new Sequence();
-    else
-      result = sequence;
+    if (chrLength <= 0)
+      throw new TeolennException("Chromosome length not found: " + chromosome);
 
-    final int i1 = s.indexOf('\n');
+    final OligoFileLayout layout =
+        new OligoFileLayout(chromosome, chrLength, this.oligoLength,
+            this.oligoIntervalLength, this.start1);
 
-    if (i1 == -1)
-      return null;
+    if (!this.containerOligos)
+      return new ChromosomeEntry(layout, new OligoFile(new File(
+          this.oligosDir, chromosome + this.oligosExtension)), 0);
 
-    final int i2 = s.indexOf('\n', i1 + 1);
-    if (i2 == -1)
-      return null;
+    // The container file is only opened once
+    if (this.containerFile == null) {
 
-    result.setName(s.substring(1, i1));
-    result.setSequence(s.substring(i1 + 1, i2));
+      final File f =
+          OligoContainer.getFile(this.oligosDir, this.oligosExtension);
+      this.container = OligoContainer.load(OligoContainer.getTocFile(f));
+      this.containerFile = new OligoFile(f);
+    }
 
-    return result;
+    final long sectionStart = this.container.getSectionStart(chromosome);
+
+    if (sectionStart == -1)
+      throw new TeolennException("Chromosome not found in container: "
+          + chromosome);
+
+    return new ChromosomeEntry(layout, this.containerFile, sectionStart);
   }
 
   /**
-   * Close the file.
-   * @throws IOException if an error occurs while closing file
+   * Get a sequence from a packed chromosome.
+   * @param packed the packed chromosome
+   * @param chromosome Chromosome of the sequence
+   * @param oligoStartPos the start position of the oligonucleotide in the
+   *          genome
+   * @param oligoLength the length of the oligonucleotide
+   * @param sequence the result to avoid creating a new object
+   * @return a Sequence Object
+   * @throws TeolennException if the sequence is outside the chromosome
    */
-  public void close() throws IOException {
+  private Sequence getPackedSequence(final PackedChromosome packed,
+      final String chromosome, final int oligoStartPos, final int oligoLength,
+      final Sequence sequence) throws TeolennException {
+
+    final int pos = oligoStartPos - (this.start1 ? 1 : 0);
+
+    if (pos < 0 || oligoLength < 0 || pos + oligoLength > packed.length())
+      throw new TeolennException("Invalid sequence position "
+          + chromosome + "," + oligoStartPos + " oligolength=" + oligoLength);
 
-    if (this.inChannel == null)
-      return;
+    final Sequence result = sequence == null ? new Sequence() : sequence;
 
-    this.inChannel.close();
-    this.inChannel = null;
+    result.setName(chromosome
+        + ":subseq(" + oligoStartPos + "," + oligoLength + ")");
+    result.setSequence(packed.getSequence(pos, oligoLength));
+
+    return result;
   }
 
   /**
-   * Compute the constant part of the position.
-   * @return The constant parrt of the position
+   * Get a packed chromosome if the packed genome is available.
+   * @param chromosome name of the chromosome
+   * @return a PackedChromosome object or null if not available
+   * @throws IOException if an error occurs while reading the packed chromosome
    */
-  private int calcPositionConstant() {
+  private static final PackedChromosome getPackedChromosome(
+      final String chromosome) throws IOException {
+
+    final Resources rs = Resources.getResources();
 
-    return 5 + chr.length() + ":subseq(".length() + getDigits(this.oligoLength);
+    if (!rs.isResource(PackedGenomeResource.RESOURCE_NAME))
+      return null;
+
+    final PackedGenomeResource pgr =
+        (PackedGenomeResource) rs.getResource(PackedGenomeResource.RESOURCE_NAME);
+
+    if (!pgr.isChromosome(chromosome))
+      return null;
 
+    return pgr.getChromosome(chromosome);
   }
 
   /**
-   * Compute the variable part of the position
-   * @param oligoStartPos The start of the oligonucleotide in the chormosome
-   * @param start1 if the first position in the chromosome is 1
-   * @return the
+   * Create an iterator over the oligonucleotides of a file. If the file is a
+   * packed chromosome file, the oligonucleotides are generated on demand.
+   * @param file oligonucleotides fasta file or packed chromosome file
+   * @return a SequenceIterator object
+   * @throws IOException if an error occurs while reading the file
    */
-  private static final long calcPositionVariableHeader(final int oligoStartPos,
-      final boolean start1) {
+  public SequenceIterator getSequenceIterator(final File file)
+      throws IOException {
 
-    long count = start1 ? 9 : 10;
-    long toAdd = 9;
-    long sumToAdd = 10;
-    final int digits = getDigits(oligoStartPos);
+    if (file == null)
+      throw new NullPointerException("The file is null");
 
-    if (digits == 1)
-      return oligoStartPos;
+    if (!file.getName().endsWith(DesignConstants.PACKED_CHROMOSOME_SUFFIX))
+      return new SequenceIterator(file);
 
-    for (int j = 2; j < digits; j++) {
-      toAdd *= 10;
-      count += toAdd * j;
-      sumToAdd += toAdd;
-    }
+    final String chromosome = StringUtils.basename(file.getName());
+    final PackedChromosome packed = getPackedChromosome(chromosome);
 
-    count += (oligoStartPos - sumToAdd) * digits;
+    if (packed == null)
+      throw new IOException("Packed chromosome not found: " + file);
 
-    return count;
+    return new VirtualOligoIterator(chromosome, packed, this.oligoLength,
+        this.oligoIntervalLength, this.start1);
   }
 
   /**
-   * Get the position in file of the start of the oligonucleotide.
-   * @param oligoStartPos The start of the oligonucleotide in the chormosome
-   * @param currentOligoLength The length of the oligonucleotide
-   * @param start1 if the first position in the chromosome is 1
-   * @return
+   * Test if the 'X' of the sequences must be replaced by 'N' when the
+   * sequences are computed for the virtual measurements, as the removex
+   * sequence filter does on the filtered oligonucleotides.
+   * @return true if the 'X' of the sequences must be replaced by 'N'
    */
-  private long getFilePos(final int oligoStartPos,
-      final int currentOligoLength, final boolean start1) {
+  public boolean isConvertXN() {
 
-    final int maxStdPos =
-        this.chrLength - this.oligoLength - this.oligoIntervalLength;
+    return this.convertXN;
+  }
 
-    final int repeats = 1 + this.oligoIntervalLength * 2;
+  /**
+   * Set if the 'X' of the sequences must be replaced by 'N' when the
+   * sequences are computed for the virtual measurements.
+   * @param convertXN true if the 'X' of the sequences must be replaced by 'N'
+   */
+  public void setConvertXN(final boolean convertXN) {
+
+    this.convertXN = convertXN;
+  }
 
-    if (oligoStartPos <= maxStdPos) {
+  /**
+   * Test if the oligonucleotides are generated on demand from the sequences of
+   * the chromosomes.
+   * @return true if the oligonucleotides are virtual
+   */
+  public boolean isVirtualOligos() {
 
-      // Compute position until last oligos of the chromosome
-      final int previousPositions =
-          (start1 ? oligoStartPos - 1 : oligoStartPos);
-      final long previousHeaderVariable =
-          calcPositionVariableHeader(oligoStartPos, start1);
+    return this.virtualOligos;
+  }
 
-      long result =
-          (previousPositions * (this.positionConstant + this.oligoLength) + previousHeaderVariable)
-              * repeats;
+  /**
+   * Test if the fasta files of the oligonucleotides are compressed.
+   * @return true if the fasta files of the oligonucleotides are compressed
+   */
+  public boolean isCompressedOligos() {
 
-      for (int i = this.oligoLength - this.oligoIntervalLength; i < currentOligoLength; i++)
-        result += this.positionConstant + getDigits(oligoStartPos) + i;
+    return this.compressedOligos;
+  }
 
-      return result;
-    }
+  /**
+   * Test if the oligonucleotides of all the chromosomes are in a single
+   * container file.
+   * @return true if the oligonucleotides are in a container file
+   */
+  public boolean isContainerOligos() {
 
-    // compute position ofr the last oligos of the chromosome
+    return this.containerOligos;
+  }
 
-    final int previousPositions = (start1 ? maxStdPos : maxStdPos + 1);
-    final long previousHeaderVariable =
-        calcPositionVariableHeader(previousPositions, start1);
+  /**
+   * Convert a fasta record to a Sequence object.
+   * @param buffer the bytes of the record
+   * @param length the length of the record
+   * @param headerLength the length of the header line of the record
+   * @param chars a buffer for the conversion of the bytes
+   * @param sequence The sequence output if you want reuse it
+   * @return a Sequence object
+   */
+  private static final Sequence bytes2Sequence(final byte[] buffer,
+      final int length, final int headerLength, final char[] chars,
+      final Sequence sequence) {
 
-    long result =
-        ((start1 ? previousPositions - 1 : previousPositions)
-            * (this.positionConstant + this.oligoLength) + previousHeaderVariable)
-            * repeats;
+    final Sequence result;
 
-    for (int i = previousPositions; i <= oligoStartPos; i++) {
+    if (sequence == null)
+      result = new Sequence();
+    else
+      result = sequence;
 
-      int max;
-      if (i == oligoStartPos)
-        max =
-            (currentOligoLength + this.oligoIntervalLength) - this.oligoLength;
-      else
-        max =
-            this.chrLength
-                - this.oligoLength + this.oligoIntervalLength - i + 1;
+    // Name without '>' and the end of line
+    for (int i = 1; i < headerLength - 1; i++)
+      chars[i - 1] = (char) (buffer[i] & 0xff);
+    result.setName(new String(chars, 0, headerLength - 2));
 
-      for (int j = 0; j < max; j++)
-        result +=
-            this.positionConstant
-                + getDigits(i) + this.oligoLength - this.oligoIntervalLength
-                + j;
+    // Sequence lines without the ends of line
+    int count = 0;
+    for (int i = headerLength; i < length; i++) {
 
+      final byte b = buffer[i];
+      if (b != '\n')
+        chars[count++] = (char) (b & 0xff);
     }
+    result.setSequence(new String(chars, 0, count));
 
     return result;
   }
 
   /**
-   * Get the number of digits in a number.
-   * @param n The input number
-   * @return the number of digits of the number
+   * Close the files.
+   * @throws IOException if an error occurs while closing file
    */
-  private static final int getDigits(final int n) {
+  public void close() throws IOException {
 
-    int count = 1;
-    int val = 10;
+    synchronized (this.entries) {
 
-    while (n >= val) {
-      count++;
-      val *= 10;
-    }
+      for (ChromosomeEntry entry : this.entries.values())
+        entry.file.close();
 
-    return count;
+      if (this.containerFile != null)
+        this.containerFile.close();
+
+      this.entries.clear();
+      this.containerFile = null;
+      this.container = null;
+      this.generation++;
+    }
   }
 
   /**
@@ -317,11 +626,17 @@ public class OligoSequenceResource {
    * @param oligoLength the length of the oligonucleotides
    * @param oligoIntervalLength the interval of length of the oligonucleotides
    * @param start1 if the first position in the chromosome is 1
+   * @param virtualOligos if the oligonucleotides are generated on demand
+   * @param compressedOligos if the fasta files of the oligonucleotides are
+   *          compressed
+   * @param containerOligos if the oligonucleotides of all the chromosomes
+   *          are in a single container file
    */
   public static OligoSequenceResource getRessource(final File oligosDir,
       final String extension, final int oligoLength,
-      final int oligoIntervalLength, final boolean start1)
-      throws TeolennException {
+      final int oligoIntervalLength, final boolean start1,
+      final boolean virtualOligos, final boolean compressedOligos,
+      final boolean containerOligos) throws TeolennException {
 
     final Resources rs = Resources.getResources();
 
@@ -330,7 +645,8 @@ public class OligoSequenceResource {
 
     final OligoSequenceResource result =
         new OligoSequenceResource(oligosDir, extension, oligoLength,
-            oligoIntervalLength, start1);
+            oligoIntervalLength, start1, virtualOligos, compressedOligos,
+            containerOligos);
 
     rs.setResource(RESOURCE_NAME, result);
 
@@ -348,9 +664,16 @@ public class OligoSequenceResource {
    * @param oligoLength the length of the oligonucleotides
    * @param oligoIntervalLength the interval of length of the oligonucleotides
    * @param start1 if the first position in the chromosome is 1
+   * @param virtualOligos if the oligonucleotides are generated on demand
+   * @param compressedOligos if the fasta files of the oligonucleotides are
+   *          compressed
+   * @param containerOligos if the oligonucleotides of all the chromosomes
+   *          are in a single container file
    */
   private OligoSequenceResource(final File oligosDir, final String extension,
-      final int oligoLength, final int oligoIntervalLength, final boolean start1)
+      final int oligoLength, final int oligoIntervalLength,
+      final boolean start1, final boolean virtualOligos,
+      final boolean compressedOligos, final boolean containerOligos)
       throws TeolennException {
 
     if (oligosDir == null)
@@ -375,7 +698,9 @@ public class OligoSequenceResource {
     this.oligoLength = oligoLength;
     this.oligoIntervalLength = oligoIntervalLength;
     this.start1 = start1;
-
+    this.virtualOligos = virtualOligos;
+    this.compressedOligos = compressedOligos;
+    this.containerOligos = containerOligos;
   }
 
 }
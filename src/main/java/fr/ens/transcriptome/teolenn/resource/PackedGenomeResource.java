@@ -0,0 +1,206 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+package fr.ens.transcriptome.teolenn.resource;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import fr.ens.transcriptome.teolenn.DesignConstants;
+import fr.ens.transcriptome.teolenn.TeolennException;
+import fr.ens.transcriptome.teolenn.sequence.PackedChromosome;
+
+/**
+ * This class allow to share the packed chromosomes files between all the
+ * phases of the design. The chromosomes are memory mapped when first used.
+ * @author Laurent Jourdren
+ */
+public class PackedGenomeResource {
+
+  /** The name of the resource. */
+  public static final String RESOURCE_NAME = "packedgenome";
+
+  private final File directory;
+  private final Map<String, PackedChromosome> chromosomes =
+      new HashMap<String, PackedChromosome>();
+
+  /**
+   * Get the file of a packed chromosome.
+   * @param chromosome name of the chromosome
+   * @return the file of the packed chromosome
+   */
+  public File getFile(final String chromosome) {
+
+    return new File(this.directory, chromosome
+        + DesignConstants.PACKED_CHROMOSOME_SUFFIX);
+  }
+
+  /**
+   * Test if a packed chromosome exists.
+   * @param chromosome name of the chromosome
+   * @return true if the packed chromosome exists
+   */
+  public boolean isChromosome(final String chromosome) {
+
+    if (chromosome == null)
+      return false;
+
+    synchronized (this.chromosomes) {
+      if (this.chromosomes.containsKey(chromosome))
+        return true;
+    }
+
+    return getFile(chromosome).isFile();
+  }
+
+  /**
+   * Get a packed chromosome.
+   * @param chromosome name of the chromosome
+   * @return a PackedChromosome object
+   * @throws IOException if an error occurs while reading the packed chromosome
+   */
+  public PackedChromosome getChromosome(final String chromosome)
+      throws IOException {
+
+    if (chromosome == null)
+      throw new NullPointerException("The chromosome is null");
+
+    synchronized (this.chromosomes) {
+
+      PackedChromosome result = this.chromosomes.get(chromosome);
+
+      if (result == null) {
+        result = PackedChromosome.load(getFile(chromosome));
+        this.chromosomes.put(chromosome, result);
+      }
+
+      return result;
+    }
+  }
+
+  /**
+   * Test if the mask of the genome is available in the packed chromosomes.
+   * @return true if the mask of the genome is available
+   * @throws TeolennException if an error occurs while reading the chromosomes
+   */
+  public boolean isMask() throws TeolennException {
+
+    try {
+
+      for (String chr : ChromosomeNameResource.getRessource()
+          .getChromosomesNames())
+        if (!isChromosome(chr) || !getChromosome(chr).isMask())
+          return false;
+
+    } catch (IOException e) {
+      throw new TeolennException("Error while reading packed chromosome: "
+          + e.getMessage());
+    }
+
+    return true;
+  }
+
+  /**
+   * Test if all the chromosomes of the genome are available as packed
+   * chromosomes.
+   * @return true if all the chromosomes are available
+   * @throws TeolennException if the chromosome names resource is not available
+   */
+  public boolean isAvailable() throws TeolennException {
+
+    for (String chr : ChromosomeNameResource.getRessource()
+        .getChromosomesNames())
+      if (!isChromosome(chr))
+        return false;
+
+    return true;
+  }
+
+  /**
+   * Forget the chromosomes already loaded. This method must be called when
+   * the packed chromosome files are rewritten.
+   */
+  public void clear() {
+
+    synchronized (this.chromosomes) {
+      this.chromosomes.clear();
+    }
+  }
+
+  //
+  // Static methods
+  //
+
+  /**
+   * Get the resource.
+   * @return a PackedGenomeResource Object if it has been already created
+   * @throws TeolennException if the resource doesn't exists
+   */
+  public static PackedGenomeResource getRessource() throws TeolennException {
+
+    final Resources rs = Resources.getResources();
+
+    if (rs.isResource(RESOURCE_NAME))
+      return (PackedGenomeResource) rs.getResource(RESOURCE_NAME);
+
+    throw new TeolennException(
+        "PackedGenomeResource has not been initialized.");
+  }
+
+  /**
+   * Create the resource.
+   * @param directory the directory of the packed chromosomes
+   * @return a PackedGenomeResource object
+   */
+  public static PackedGenomeResource getRessource(final File directory) {
+
+    final Resources rs = Resources.getResources();
+
+    if (rs.isResource(RESOURCE_NAME))
+      return (PackedGenomeResource) rs.getResource(RESOURCE_NAME);
+
+    final PackedGenomeResource result = new PackedGenomeResource(directory);
+
+    rs.setResource(RESOURCE_NAME, result);
+
+    return result;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Private constructor.
+   * @param directory the directory of the packed chromosomes
+   */
+  private PackedGenomeResource(final File directory) {
+
+    if (directory == null)
+      throw new NullPointerException("The directory is null");
+
+    this.directory = directory;
+  }
+
+}
@@ -0,0 +1,333 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+package fr.ens.transcriptome.teolenn.resource;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import fr.ens.transcriptome.teolenn.Globals;
+import fr.ens.transcriptome.teolenn.TeolennException;
+import fr.ens.transcriptome.teolenn.resource.ORFResource.ORF;
+import fr.ens.transcriptome.teolenn.sequence.GapIndex;
+import fr.ens.transcriptome.teolenn.util.FileUtils;
+
+/**
+ * This class define a resource that contains the target regions of the
+ * design. Only the oligonucleotides fully contained in a target region are
+ * created. The target regions can be the ORFs of the ORFResource or the
+ * regions of a BED file. For each chromosome, the regions outside the merged
+ * target regions are stored as a GapIndex.
+ * @author Laurent Jourdren
+ */
+public class RegionResource {
+
+  /** The name of the resource. */
+  public static final String RESOURCE_NAME = "regions";
+
+  private static Logger logger = Logger.getLogger(Globals.APP_NAME);
+
+  /** Gap index of the chromosomes without target region. */
+  private static final GapIndex NO_REGION =
+      GapIndex.createOutsideRegions(new int[0], new int[0], 0);
+
+  private final Map<String, GapIndex> indexes;
+
+  /**
+   * Get the gap index of the regions of a chromosome that are outside the
+   * target regions.
+   * @param chromosome name of the chromosome
+   * @return a GapIndex object
+   */
+  public GapIndex getGapIndex(final String chromosome) {
+
+    final GapIndex result = this.indexes.get(chromosome);
+
+    return result == null ? NO_REGION : result;
+  }
+
+  /**
+   * Get the total length of the merged target regions.
+   * @return the length of the target regions
+   */
+  public long getRegionsLength() {
+
+    long result = 0;
+
+    for (GapIndex index : this.indexes.values()) {
+
+      final int n = index.getGapCount();
+      result += index.getGapStart(0);
+
+      for (int i = 1; i < n; i++)
+        result += index.getGapStart(i) - index.getGapEnd(i - 1);
+    }
+
+    return result;
+  }
+
+  /**
+   * Create the intersection of these target regions and other target regions.
+   * The new regions are not set as the resource of the design.
+   * @param regions the other target regions
+   * @return a new RegionResource object
+   */
+  public RegionResource intersect(final RegionResource regions) {
+
+    if (regions == null)
+      return this;
+
+    final Map<String, GapIndex> result = new HashMap<String, GapIndex>();
+
+    for (Map.Entry<String, GapIndex> e : this.indexes.entrySet())
+      if (regions.indexes.containsKey(e.getKey()))
+        result.put(e.getKey(), e.getValue().union(
+            regions.indexes.get(e.getKey())));
+
+    return new RegionResource(result);
+  }
+
+  //
+  // Internal class
+  //
+
+  /**
+   * This class allow to collect the regions of the chromosomes.
+   */
+  private static final class RegionsBuilder {
+
+    private final Map<String, Regions> regions = new HashMap<String, Regions>();
+
+    private static final class Regions {
+
+      int[] starts = new int[16];
+      int[] ends = new int[16];
+      int count;
+    }
+
+    /**
+     * Add a region.
+     * @param chromosome name of the chromosome
+     * @param start start of the region (0 based, inclusive)
+     * @param end end of the region (0 based, exclusive)
+     */
+    void add(final String chromosome, final int start, final int end) {
+
+      if (end <= start)
+        return;
+
+      Regions r = this.regions.get(chromosome);
+
+      if (r == null) {
+        r = new Regions();
+        this.regions.put(chromosome, r);
+      }
+
+      if (r.count == r.starts.length) {
+        r.starts = Arrays.copyOf(r.starts, r.count * 2);
+        r.ends = Arrays.copyOf(r.ends, r.count * 2);
+      }
+
+      r.starts[r.count] = start;
+      r.ends[r.count] = end;
+      r.count++;
+    }
+
+    /**
+     * Create the gap indexes of the chromosomes.
+     * @return a map with the gap indexes
+     */
+    Map<String, GapIndex> build() {
+
+      final Map<String, GapIndex> result = new HashMap<String, GapIndex>();
+
+      for (Map.Entry<String, Regions> e : this.regions.entrySet()) {
+
+        final Regions r = e.getValue();
+        result.put(e.getKey(), GapIndex.createOutsideRegions(r.starts,
+            r.ends, r.count));
+      }
+
+      return result;
+    }
+  }
+
+  //
+  // Static methods
+  //
+
+  /**
+   * Get the resource.
+   * @return a RegionResource Object if it has been already created
+   * @throws TeolennException if the resource doesn't exists
+   */
+  public static RegionResource getRessource() throws TeolennException {
+
+    final Resources rs = Resources.getResources();
+
+    if (rs.isResource(RESOURCE_NAME))
+      return (RegionResource) rs.getResource(RESOURCE_NAME);
+
+    throw new TeolennException("RegionResource has not been initialized.");
+  }
+
+  /**
+   * Create the resource from the ORFs.
+   * @param orfs the ORFs resource
+   * @param start1 true if the first position on sequence is 1
+   * @return a RegionResource object
+   */
+  public static RegionResource getRessource(final ORFResource orfs,
+      final boolean start1) {
+
+    final Resources rs = Resources.getResources();
+
+    if (rs.isResource(RESOURCE_NAME))
+      return (RegionResource) rs.getResource(RESOURCE_NAME);
+
+    if (orfs == null)
+      throw new NullPointerException("The ORF resource is null");
+
+    final int firstPosition = start1 ? 1 : 0;
+    final RegionsBuilder builder = new RegionsBuilder();
+
+    for (String chr : orfs.getChromosomesNames())
+      for (ORF orf : orfs.getChromosomeORFs(chr))
+        builder.add(chr, orf.start - firstPosition, orf.end - firstPosition);
+
+    final RegionResource result = new RegionResource(builder.build());
+
+    rs.setResource(RESOURCE_NAME, result);
+
+    return result;
+  }
+
+  /**
+   * Create the resource from a BED file. Only the first three fields of the
+   * BED file are used.
+   * @param bedFile the BED file
+   * @return a RegionResource object
+   * @throws IOException if an error occurs while reading the BED file
+   */
+  public static RegionResource getRessource(final File bedFile)
+      throws IOException {
+
+    final Resources rs = Resources.getResources();
+
+    if (rs.isResource(RESOURCE_NAME))
+      return (RegionResource) rs.getResource(RESOURCE_NAME);
+
+    if (bedFile == null)
+      throw new NullPointerException("The BED file is null");
+
+    final BufferedReader br = FileUtils.createBufferedReader(bedFile);
+    final Pattern p = Pattern.compile("\\s+");
+    final RegionsBuilder builder = new RegionsBuilder();
+
+    String line = null;
+    int count = 0;
+
+    while ((line = br.readLine()) != null) {
+
+      final String lineTrimed = line.trim();
+
+      // Handle empty lines, comments and header lines
+      if ("".equals(lineTrimed)
+          || lineTrimed.startsWith("#") || lineTrimed.startsWith("track")
+          || lineTrimed.startsWith("browser"))
+        continue;
+
+      final String[] fields = p.split(lineTrimed);
+
+      if (fields.length < 3)
+        throw new IOException("Invalid BED line: " + line);
+
+      try {
+        builder.add(fields[0], Integer.parseInt(fields[1]), Integer
+            .parseInt(fields[2]));
+      } catch (NumberFormatException e) {
+        throw new IOException("Invalid BED line: " + line);
+      }
+
+      count++;
+    }
+
+    br.close();
+
+    logger.fine("Regions readed: " + count);
+
+    final RegionResource result = new RegionResource(builder.build());
+
+    rs.setResource(RESOURCE_NAME, result);
+
+    return result;
+  }
+
+  /**
+   * Create target regions around start positions of oligonucleotides. For
+   * each start position, the region contains all the oligonucleotides that
+   * start at less than radius bases of the position. The new regions are not
+   * set as the resource of the design.
+   * @param positions start positions (0 based) of the oligonucleotides for
+   *          each chromosome
+   * @param radius the radius of the regions
+   * @param maxSize maximal size of the oligonucleotides
+   * @return a new RegionResource object
+   */
+  public static RegionResource createNeighbourhoods(
+      final Map<String, List<Integer>> positions, final int radius,
+      final int maxSize) {
+
+    if (positions == null)
+      throw new NullPointerException("The positions are null");
+
+    final RegionsBuilder builder = new RegionsBuilder();
+
+    for (Map.Entry<String, List<Integer>> e : positions.entrySet())
+      for (int pos : e.getValue())
+        builder.add(e.getKey(), Math.max(0, pos - radius + 1), pos
+            + radius - 1 + maxSize);
+
+    return new RegionResource(builder.build());
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Private constructor.
+   * @param indexes the gap indexes of the chromosomes
+   */
+  private RegionResource(final Map<String, GapIndex> indexes) {
+
+    this.indexes = indexes;
+  }
+
+}
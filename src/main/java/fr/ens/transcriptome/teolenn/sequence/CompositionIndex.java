@@ -0,0 +1,208 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+package fr.ens.transcriptome.teolenn.sequence;
+
+/**
+ * This class define an index of the composition of a chromosome. For each
+ * class of bases ('G' or 'C', gaps and masked bases), the index contains a
+ * bit per base and the cumulative count of the bases of the class at the
+ * start of each block of 64 bases. The number of bases of a class in any
+ * region is so computed with two array reads at each end of the region. The
+ * index use 1.5 bit per base and per class. As for the GC measurement and the
+ * gap index, only the upper case 'G', 'C', 'N' and 'X' bases are counted.
+ * @author Laurent Jourdren
+ */
+public class CompositionIndex {
+
+  private static final int BLOCK_SHIFT = 6;
+  private static final int BLOCK_MASK = (1 << BLOCK_SHIFT) - 1;
+  private static final int READ_SIZE = 1024 * 1024;
+
+  private static final int GC = 0;
+  private static final int GAPS = 1;
+  private static final int MASKED = 2;
+
+  private final int length;
+  private final long[][] bits = new long[3][];
+  private final int[][] counts = new int[3][];
+
+  /**
+   * Get the length of the indexed chromosome.
+   * @return the length of the chromosome
+   */
+  public int getLength() {
+
+    return this.length;
+  }
+
+  /**
+   * Test if the mask of the chromosome is available in the index.
+   * @return true if the masked bases can be counted
+   */
+  public boolean isMask() {
+
+    return this.bits[MASKED] != null;
+  }
+
+  /**
+   * Count the number of 'G' and 'C' bases in a region of the chromosome.
+   * @param start start of the region (0 based)
+   * @param len length of the region
+   * @return the number of 'G' and 'C' bases
+   */
+  public int countGC(final int start, final int len) {
+
+    return count(GC, start, len);
+  }
+
+  /**
+   * Count the number of 'N' and 'X' bases in a region of the chromosome.
+   * @param start start of the region (0 based)
+   * @param len length of the region
+   * @return the number of 'N' and 'X' bases
+   */
+  public int countGaps(final int start, final int len) {
+
+    return count(GAPS, start, len);
+  }
+
+  /**
+   * Count the number of masked bases in a region of the chromosome.
+   * @param start start of the region (0 based)
+   * @param len length of the region
+   * @return the number of masked bases
+   */
+  public int countMasked(final int start, final int len) {
+
+    if (!isMask())
+      throw new IllegalStateException(
+          "The mask of the chromosome is not available");
+
+    return count(MASKED, start, len);
+  }
+
+  //
+  // Internal methods
+  //
+
+  private int count(final int type, final int start, final int len) {
+
+    if (start < 0 || len < 0 || start + len > this.length)
+      throw new IndexOutOfBoundsException("Invalid region: "
+          + start + "," + len);
+
+    return rank(type, start + len) - rank(type, start);
+  }
+
+  /**
+   * Get the number of bases of a class before a position.
+   * @param type class of the bases
+   * @param pos position (0 based)
+   * @return the number of bases of the class in [0, pos[
+   */
+  private int rank(final int type, final int pos) {
+
+    final int block = pos >>> BLOCK_SHIFT;
+
+    return this.counts[type][block]
+        + Long.bitCount(this.bits[type][block]
+            & ((1L << (pos & BLOCK_MASK)) - 1));
+  }
+
+  private void set(final int type, final int pos) {
+
+    this.bits[type][pos >>> BLOCK_SHIFT] |= 1L << (pos & BLOCK_MASK);
+  }
+
+  private void computeCounts(final int type) {
+
+    final long[] bits = this.bits[type];
+    final int[] counts = new int[bits.length];
+
+    for (int i = 1; i < bits.length; i++)
+      counts[i] = counts[i - 1] + Long.bitCount(bits[i - 1]);
+
+    this.counts[type] = counts;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Public constructor.
+   * @param chromosome the packed chromosome to index
+   */
+  public CompositionIndex(final PackedChromosome chromosome) {
+
+    if (chromosome == null)
+      throw new NullPointerException("The chromosome is null");
+
+    final int len = chromosome.length();
+    final int blocks = (len >>> BLOCK_SHIFT) + 1;
+    final boolean mask = chromosome.isMask();
+
+    this.length = len;
+    this.bits[GC] = new long[blocks];
+    this.bits[GAPS] = new long[blocks];
+    if (mask)
+      this.bits[MASKED] = new long[blocks];
+
+    for (int start = 0; start < len; start += READ_SIZE) {
+
+      final String s =
+          chromosome.getSequence(start, Math.min(READ_SIZE, len - start));
+      final int n = s.length();
+
+      for (int i = 0; i < n; i++) {
+
+        final int pos = start + i;
+
+        switch (s.charAt(i)) {
+
+        case 'G':
+        case 'C':
+          set(GC, pos);
+          break;
+
+        case 'N':
+        case 'X':
+          set(GAPS, pos);
+          break;
+
+        default:
+          break;
+        }
+
+        if (mask && chromosome.isMasked(pos))
+          set(MASKED, pos);
+      }
+    }
+
+    computeCounts(GC);
+    computeCounts(GAPS);
+    if (mask)
+      computeCounts(MASKED);
+  }
+
+}
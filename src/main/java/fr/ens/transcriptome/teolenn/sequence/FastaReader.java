@@ -0,0 +1,227 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+package fr.ens.transcriptome.teolenn.sequence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+import fr.ens.transcriptome.teolenn.util.FileUtils;
+
+/**
+ * This class define a byte level reader for fasta files. The lines of the
+ * file are parsed in place in the buffer of the reader and exposed as slices
+ * of this buffer, so no object is created while reading the sequences. The
+ * content of a slice is only valid until the next call to readLine().
+ * @author Laurent Jourdren
+ */
+public class FastaReader {
+
+  private static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+  private static final String CHARSET = "ISO-8859-1";
+
+  private final ReadableByteChannel channel;
+  private ByteBuffer buffer;
+  private boolean eof;
+
+  private int lineStart;
+  private int lineLength;
+  private boolean header;
+
+  /**
+   * Read the next line of the file. Leading and trailing whitespaces of the
+   * line are removed.
+   * @return false if the end of the file has been reached
+   * @throws IOException if an error occurs while reading the file
+   */
+  public boolean readLine() throws IOException {
+
+    final ByteBuffer bb = this.buffer;
+
+    while (true) {
+
+      final byte[] array = bb.array();
+      final int limit = bb.limit();
+      final int start = bb.position();
+
+      // Search the end of the line
+      int end = start;
+      while (end < limit && array[end] != '\n')
+        end++;
+
+      if (end < limit || (this.eof && start < limit)) {
+
+        bb.position(end < limit ? end + 1 : limit);
+        setLine(array, start, end);
+
+        return true;
+      }
+
+      if (this.eof)
+        return false;
+
+      fill();
+    }
+  }
+
+  /**
+   * Test if the current line is a header line.
+   * @return true if the current line is a header
+   */
+  public boolean isHeader() {
+
+    return this.header;
+  }
+
+  /**
+   * Get the buffer that contains the current line.
+   * @return the buffer of the reader
+   */
+  public byte[] getBuffer() {
+
+    return this.buffer.array();
+  }
+
+  /**
+   * Get the position of the current line in the buffer. For header lines, the
+   * '>' character is not included.
+   * @return the position of the current line
+   */
+  public int getLineStart() {
+
+    return this.lineStart;
+  }
+
+  /**
+   * Get the length of the current line.
+   * @return the length of the current line
+   */
+  public int getLineLength() {
+
+    return this.lineLength;
+  }
+
+  /**
+   * Get the current line as a String. For header lines, the '>' character is
+   * not included.
+   * @return a String with the current line
+   */
+  public String getLine() {
+
+    try {
+      return new String(this.buffer.array(), this.lineStart, this.lineLength,
+          CHARSET);
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Close the reader.
+   * @throws IOException if an error occurs while closing the file
+   */
+  public void close() throws IOException {
+
+    this.channel.close();
+  }
+
+  //
+  // Internal methods
+  //
+
+  private void setLine(final byte[] array, final int start, final int end) {
+
+    int s = start;
+    int e = end;
+
+    while (s < e && (array[s] & 0xff) <= ' ')
+      s++;
+    while (e > s && (array[e - 1] & 0xff) <= ' ')
+      e--;
+
+    this.header = s < e && array[s] == '>';
+    if (this.header)
+      s++;
+
+    this.lineStart = s;
+    this.lineLength = e - s;
+  }
+
+  /**
+   * Read more data from the file. The unread data is moved at the beginning of
+   * the buffer and the buffer is enlarged if it is full.
+   * @throws IOException if an error occurs while reading the file
+   */
+  private void fill() throws IOException {
+
+    ByteBuffer bb = this.buffer;
+    bb.compact();
+
+    if (!bb.hasRemaining()) {
+
+      final ByteBuffer newBuffer = ByteBuffer.allocate(bb.capacity() * 2);
+      bb.flip();
+      newBuffer.put(bb);
+      bb = newBuffer;
+      this.buffer = bb;
+    }
+
+    final int read = this.channel.read(bb);
+    if (read == -1)
+      this.eof = true;
+
+    bb.flip();
+  }
+
+  //
+  // Constructors
+  //
+
+  /**
+   * Public constructor.
+   * @param channel channel to read
+   */
+  public FastaReader(final ReadableByteChannel channel) {
+
+    if (channel == null)
+      throw new NullPointerException("The channel is null");
+
+    this.channel = channel;
+    this.buffer = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE);
+    this.buffer.flip();
+  }
+
+  /**
+   * Public constructor. Gzip and BGZF files are decompressed on the fly.
+   * @param file fasta file to read
+   * @throws IOException if an error occurs while opening the file
+   */
+  public FastaReader(final File file) throws IOException {
+
+    this(Channels.newChannel(FileUtils.createInputStream(file)));
+  }
+
+}
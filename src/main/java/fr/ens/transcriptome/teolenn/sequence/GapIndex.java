@@ -0,0 +1,249 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+package fr.ens.transcriptome.teolenn.sequence;
+
+import java.util.Arrays;
+
+/**
+ * This class define an index of the gaps of a chromosome. A gap is a region
+ * of the chromosome where no oligonucleotide can be created, like a run of
+ * 'N' or 'X' bases between the contigs of a scaffold or a region outside the
+ * target regions of the design. The gaps are sorted and never adjacent, so
+ * all the queries are resolved with a binary search.
+ * @author Laurent Jourdren
+ */
+public class GapIndex {
+
+  private final int[] starts;
+  private final int[] ends;
+
+  /**
+   * Get the number of gaps.
+   * @return the number of gaps
+   */
+  public int getGapCount() {
+
+    return this.starts.length;
+  }
+
+  /**
+   * Get the start of a gap.
+   * @param index index of the gap
+   * @return the start of the gap (0 based, inclusive)
+   */
+  public int getGapStart(final int index) {
+
+    return this.starts[index];
+  }
+
+  /**
+   * Get the end of a gap.
+   * @param index index of the gap
+   * @return the end of the gap (0 based, exclusive)
+   */
+  public int getGapEnd(final int index) {
+
+    return this.ends[index];
+  }
+
+  /**
+   * Find the first gap that ends after a position.
+   * @param pos position (0 based)
+   * @return the index of the gap or the number of gaps if not found
+   */
+  public int findGap(final int pos) {
+
+    final int[] ends = this.ends;
+
+    int low = 0;
+    int high = ends.length;
+
+    while (low < high) {
+
+      final int mid = (low + high) >>> 1;
+
+      if (ends[mid] <= pos)
+        low = mid + 1;
+      else
+        high = mid;
+    }
+
+    return low;
+  }
+
+  /**
+   * Test if a region of the chromosome overlaps a gap.
+   * @param start start of the region (0 based)
+   * @param len length of the region
+   * @return true if the region overlaps a gap
+   */
+  public boolean overlaps(final int start, final int len) {
+
+    final int i = findGap(start);
+
+    return i < this.starts.length && this.starts[i] < start + len;
+  }
+
+  /**
+   * Get the start of the next gap.
+   * @param pos position (0 based)
+   * @return pos if the position is in a gap, the start of the next gap or
+   *         Integer.MAX_VALUE if there is no more gap
+   */
+  public int getNextGapStart(final int pos) {
+
+    final int i = findGap(pos);
+
+    return i < this.starts.length
+        ? Math.max(pos, this.starts[i]) : Integer.MAX_VALUE;
+  }
+
+  /**
+   * Get the first position of a region of a given length that does not
+   * overlap a gap.
+   * @param pos minimal position of the region (0 based)
+   * @param len length of the region
+   * @return the first position of the region
+   */
+  public int getNextStart(final int pos, final int len) {
+
+    int result = pos;
+
+    for (int i = findGap(pos); i < this.starts.length
+        && this.starts[i] < result + len; i++)
+      result = this.ends[i];
+
+    return result;
+  }
+
+  /**
+   * Create the union of this index and another gap index.
+   * @param index the other gap index (can be null)
+   * @return a new GapIndex object
+   */
+  public GapIndex union(final GapIndex index) {
+
+    if (index == null)
+      return this;
+
+    final int n1 = this.starts.length;
+    final int n2 = index.starts.length;
+    final int[] starts = new int[n1 + n2];
+    final int[] ends = new int[n1 + n2];
+    int count = 0;
+    int i = 0;
+    int j = 0;
+
+    while (i < n1 || j < n2) {
+
+      final int start;
+      final int end;
+
+      if (j == n2 || (i < n1 && this.starts[i] <= index.starts[j])) {
+        start = this.starts[i];
+        end = this.ends[i++];
+      } else {
+        start = index.starts[j];
+        end = index.ends[j++];
+      }
+
+      if (count > 0 && start <= ends[count - 1])
+        ends[count - 1] = Math.max(ends[count - 1], end);
+      else {
+        starts[count] = start;
+        ends[count] = end;
+        count++;
+      }
+    }
+
+    return new GapIndex(Arrays.copyOf(starts, count), Arrays.copyOf(ends,
+        count));
+  }
+
+  //
+  // Static methods
+  //
+
+  /**
+   * Create the gap index of the regions that are outside of target regions.
+   * The target regions can overlap and are not required to be sorted.
+   * @param regionStarts starts of the target regions (0 based, inclusive)
+   * @param regionEnds ends of the target regions (0 based, exclusive)
+   * @param count number of target regions
+   * @return a new GapIndex object
+   */
+  public static GapIndex createOutsideRegions(final int[] regionStarts,
+      final int[] regionEnds, final int count) {
+
+    // Sort the regions by start position
+    final long[] regions = new long[count];
+    for (int i = 0; i < count; i++)
+      regions[i] =
+          ((long) regionStarts[i] << 32) | (regionEnds[i] & 0xffffffffL);
+    Arrays.sort(regions);
+
+    final int[] starts = new int[count + 1];
+    final int[] ends = new int[count + 1];
+    int n = 0;
+    int pos = 0;
+
+    for (int i = 0; i < count; i++) {
+
+      final int start = Math.max(0, (int) (regions[i] >> 32));
+      final int end = (int) regions[i];
+
+      if (end <= pos)
+        continue;
+
+      if (start > pos) {
+        starts[n] = pos;
+        ends[n] = start;
+        n++;
+      }
+
+      pos = end;
+    }
+
+    starts[n] = pos;
+    ends[n] = Integer.MAX_VALUE;
+    n++;
+
+    return new GapIndex(Arrays.copyOf(starts, n), Arrays.copyOf(ends, n));
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Package constructor.
+   * @param starts starts of the gaps
+   * @param ends ends of the gaps
+   */
+  GapIndex(final int[] starts, final int[] ends) {
+
+    this.starts = starts;
+    this.ends = ends;
+  }
+
+}
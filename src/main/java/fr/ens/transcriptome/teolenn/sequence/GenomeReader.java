@@ -0,0 +1,67 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+package fr.ens.transcriptome.teolenn.sequence;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * This interface defines a reader for genome files that allow a random access
+ * to the sequences of the chromosomes, without reading the previous
+ * chromosomes of the file. The implementations must be thread safe.
+ * @author Laurent Jourdren
+ */
+public interface GenomeReader {
+
+  /**
+   * Get the names of the chromosomes of the genome, in the order of the file.
+   * @return an unmodifiable list with the names of the chromosomes
+   */
+  List<String> getChromosomesNames();
+
+  /**
+   * Get the length of a chromosome.
+   * @param chromosome name of the chromosome
+   * @return the length of the chromosome
+   * @throws IOException if the chromosome does not exist
+   */
+  int getChromosomeLength(String chromosome) throws IOException;
+
+  /**
+   * Get a sub sequence of a chromosome.
+   * @param chromosome name of the chromosome
+   * @param start start of the sub sequence (0 based)
+   * @param length length of the sub sequence
+   * @return a String with the sub sequence
+   * @throws IOException if an error occurs while reading the sequence
+   */
+  String getSequence(String chromosome, int start, int length)
+      throws IOException;
+
+  /**
+   * Close the reader.
+   * @throws IOException if an error occurs while closing the reader
+   */
+  void close() throws IOException;
+
+}
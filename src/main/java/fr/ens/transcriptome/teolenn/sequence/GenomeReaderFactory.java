@@ -0,0 +1,89 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+package fr.ens.transcriptome.teolenn.sequence;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * This class allow to create the GenomeReader to use for a genome file.
+ * @author Laurent Jourdren
+ */
+public class GenomeReaderFactory {
+
+  /** Extension of the UCSC .2bit files. */
+  public static final String TWO_BIT_EXTENSION = ".2bit";
+
+  /**
+   * Test if a genome file can be read with a GenomeReader.
+   * @param file the genome file
+   * @return true if the genome file can be read with random access
+   * @throws IOException if an error occurs while reading the genome file
+   */
+  public static boolean isGenomeReader(final File file) throws IOException {
+
+    if (file == null)
+      return false;
+
+    if (isTwoBitFile(file))
+      return true;
+
+    return IndexedFastaGenomeReader.isIndexed(file);
+  }
+
+  /**
+   * Test if a file is a UCSC .2bit file.
+   * @param file the file to test
+   * @return true if the file is a .2bit file
+   */
+  public static boolean isTwoBitFile(final File file) {
+
+    return file != null
+        && file.getName().toLowerCase().endsWith(TWO_BIT_EXTENSION);
+  }
+
+  /**
+   * Create a GenomeReader for a genome file. The file is read as a .2bit file
+   * if its extension is ".2bit" or as an indexed fasta file if a ".fai" index
+   * exists (and a ".gzi" index for bgzip compressed files).
+   * @param file the genome file
+   * @return a new GenomeReader or null if the file is a fasta file without
+   *         index that can only be read sequentially
+   * @throws IOException if an error occurs while opening the genome file
+   */
+  public static GenomeReader createGenomeReader(final File file)
+      throws IOException {
+
+    if (file == null)
+      throw new NullPointerException("The file is null");
+
+    if (isTwoBitFile(file))
+      return new TwoBitGenomeReader(file);
+
+    if (IndexedFastaGenomeReader.isIndexed(file))
+      return new IndexedFastaGenomeReader(file);
+
+    return null;
+  }
+
+}
@@ -0,0 +1,435 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+package fr.ens.transcriptome.teolenn.sequence;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fr.ens.transcriptome.teolenn.util.BgzfUtils;
+import fr.ens.transcriptome.teolenn.util.FileUtils;
+
+/**
+ * This class define a reader for fasta genome files indexed with a samtools
+ * faidx index (.fai file). The position of the bases in the file are computed
+ * with the index, so any part of a chromosome can be read without reading the
+ * rest of the file. Fasta files compressed with bgzip are also supported if
+ * the index of their blocks (.gzi file) exists.
+ * @author Laurent Jourdren
+ */
+public class IndexedFastaGenomeReader implements GenomeReader {
+
+  /** Extension of the index files. */
+  public static final String INDEX_EXTENSION = ".fai";
+
+  /** Extension of the index of the blocks of the bgzip files. */
+  public static final String BGZF_INDEX_EXTENSION = ".gzi";
+
+  private final File file;
+  private final RandomAccessFile raf;
+  private final FileChannel channel;
+
+  private final List<String> names = new ArrayList<String>();
+  private final Map<String, IndexEntry> entries =
+      new HashMap<String, IndexEntry>();
+
+  // Offsets of the blocks of bgzip files
+  private long[] compressedOffsets;
+  private long[] uncompressedOffsets;
+
+  /**
+   * This class define an entry of the index.
+   */
+  private static final class IndexEntry {
+
+    private int length;
+    private long offset;
+    private int lineBases;
+    private int lineWidth;
+
+    /**
+     * Get the position of a base in the file.
+     * @param pos position of the base in the chromosome
+     * @return the position of the base in the file
+     */
+    private long getFilePosition(final int pos) {
+
+      return this.offset
+          + (long) (pos / this.lineBases) * this.lineWidth
+          + (pos % this.lineBases);
+    }
+  }
+
+  /**
+   * Get the names of the chromosomes of the genome, in the order of the file.
+   * @return an unmodifiable list with the names of the chromosomes
+   */
+  public List<String> getChromosomesNames() {
+
+    return Collections.unmodifiableList(this.names);
+  }
+
+  /**
+   * Get the length of a chromosome.
+   * @param chromosome name of the chromosome
+   * @return the length of the chromosome
+   * @throws IOException if the chromosome does not exist
+   */
+  public int getChromosomeLength(final String chromosome) throws IOException {
+
+    return getEntry(chromosome).length;
+  }
+
+  /**
+   * Get a sub sequence of a chromosome.
+   * @param chromosome name of the chromosome
+   * @param start start of the sub sequence (0 based)
+   * @param length length of the sub sequence
+   * @return a String with the sub sequence
+   * @throws IOException if an error occurs while reading the sequence
+   */
+  public String getSequence(final String chromosome, final int start,
+      final int length) throws IOException {
+
+    final IndexEntry entry = getEntry(chromosome);
+
+    if (start < 0 || length < 0 || start + length > entry.length)
+      throw new IndexOutOfBoundsException("Invalid sub sequence: "
+          + chromosome + ":" + start + "," + length);
+
+    if (length == 0)
+      return "";
+
+    final long from = entry.getFilePosition(start);
+    final long to = entry.getFilePosition(start + length - 1) + 1;
+
+    final byte[] array =
+        this.compressedOffsets == null ? read(from, to) : readBgzf(from, to);
+    final char[] result = new char[length];
+    int count = 0;
+
+    for (int i = 0; i < array.length && count < length; i++) {
+
+      final int c = array[i] & 0xff;
+      if (c > ' ')
+        result[count++] = (char) c;
+    }
+
+    if (count != length)
+      throw new IOException("Invalid index for chromosome "
+          + chromosome + ": " + this.file);
+
+    return new String(result);
+  }
+
+  /**
+   * Close the reader.
+   * @throws IOException if an error occurs while closing the reader
+   */
+  public void close() throws IOException {
+
+    this.raf.close();
+  }
+
+  //
+  // Internal methods
+  //
+
+  /**
+   * Read a part of the file.
+   * @param from start of the part in the file
+   * @param to end of the part in the file
+   * @return an array with the content of the part of the file
+   * @throws IOException if an error occurs while reading the file
+   */
+  private byte[] read(final long from, final long to) throws IOException {
+
+    final ByteBuffer bb = ByteBuffer.allocate((int) (to - from));
+
+    while (bb.hasRemaining())
+      if (this.channel.read(bb, from + bb.position()) == -1)
+        throw new IOException("Unexpected end of file: " + this.file);
+
+    return bb.array();
+  }
+
+  /**
+   * Read a part of the uncompressed data of a bgzip file.
+   * @param from start of the part in the uncompressed data
+   * @param to end of the part in the uncompressed data
+   * @return an array with the content of the part of the uncompressed data
+   * @throws IOException if an error occurs while reading the file
+   */
+  private byte[] readBgzf(final long from, final long to) throws IOException {
+
+    final byte[] result = new byte[(int) (to - from)];
+
+    // Find the last block that starts before the part
+    int i =
+        Arrays.binarySearch(this.uncompressedOffsets, 0,
+            this.uncompressedOffsets.length, from);
+    if (i < 0)
+      i = -i - 2;
+
+    long cPos = this.compressedOffsets[i];
+    long uPos = this.uncompressedOffsets[i];
+    final ByteBuffer bb = ByteBuffer.allocate(BgzfUtils.MAX_BLOCK_SIZE);
+
+    while (uPos < to) {
+
+      bb.clear();
+      while (bb.hasRemaining()
+          && this.channel.read(bb, cPos + bb.position()) > 0)
+        continue;
+
+      final int blockSize = BgzfUtils.getBlockSize(bb.array(), bb.position());
+      if (blockSize == -1 || blockSize > bb.position())
+        throw new IOException("Invalid bgzip block at "
+            + cPos + ": " + this.file);
+
+      final byte[] data = BgzfUtils.inflateBlock(bb.array(), blockSize);
+
+      if (data.length == 0)
+        throw new IOException("Unexpected end of file: " + this.file);
+
+      // Copy the part of the block in the result
+      final long start = Math.max(from, uPos);
+      final long end = Math.min(to, uPos + data.length);
+
+      if (start < end)
+        System.arraycopy(data, (int) (start - uPos), result,
+            (int) (start - from), (int) (end - start));
+
+      cPos += blockSize;
+      uPos += data.length;
+    }
+
+    return result;
+  }
+
+  /**
+   * Read the index of the blocks of a bgzip file.
+   * @param indexFile the index file
+   * @throws IOException if an error occurs while reading the index
+   */
+  private void readBgzfIndex(final File indexFile) throws IOException {
+
+    final RandomAccessFile indexRaf = new RandomAccessFile(indexFile, "r");
+
+    try {
+
+      final FileChannel indexChannel = indexRaf.getChannel();
+      final ByteBuffer bb =
+          indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel
+              .size());
+      bb.order(ByteOrder.LITTLE_ENDIAN);
+
+      final int count = (int) bb.getLong();
+
+      // The first block is not in the index
+      this.compressedOffsets = new long[count + 1];
+      this.uncompressedOffsets = new long[count + 1];
+
+      for (int i = 1; i <= count; i++) {
+        this.compressedOffsets[i] = bb.getLong();
+        this.uncompressedOffsets[i] = bb.getLong();
+      }
+
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Invalid bgzip index: " + indexFile);
+    } finally {
+      indexRaf.close();
+    }
+  }
+
+  /**
+   * Get the entry of the index for a chromosome.
+   * @param chromosome name of the chromosome
+   * @return the entry of the index
+   * @throws IOException if the chromosome does not exist
+   */
+  private IndexEntry getEntry(final String chromosome) throws IOException {
+
+    final IndexEntry result = this.entries.get(chromosome);
+
+    if (result == null)
+      throw new IOException("Unknown chromosome in "
+          + this.file + ": " + chromosome);
+
+    return result;
+  }
+
+  /**
+   * Read the index file.
+   * @param indexFile the index file
+   * @throws IOException if an error occurs while reading the index
+   */
+  private void readIndex(final File indexFile) throws IOException {
+
+    final BufferedReader br = FileUtils.createBufferedReader(indexFile);
+
+    try {
+
+      String line;
+
+      while ((line = br.readLine()) != null) {
+
+        final String lineTrimed = line.trim();
+        if (lineTrimed.length() == 0)
+          continue;
+
+        final String[] fields = lineTrimed.split("\t");
+        if (fields.length < 5)
+          throw new IOException("Invalid fasta index line: " + line);
+
+        final IndexEntry entry = new IndexEntry();
+
+        try {
+          entry.length = Integer.parseInt(fields[1]);
+          entry.offset = Long.parseLong(fields[2]);
+          entry.lineBases = Integer.parseInt(fields[3]);
+          entry.lineWidth = Integer.parseInt(fields[4]);
+        } catch (NumberFormatException e) {
+          throw new IOException("Invalid fasta index line: " + line);
+        }
+
+        if (entry.lineBases <= 0 || entry.lineWidth < entry.lineBases)
+          throw new IOException("Invalid fasta index line: " + line);
+
+        this.names.add(fields[0]);
+        this.entries.put(fields[0], entry);
+      }
+
+    } finally {
+      br.close();
+    }
+  }
+
+  //
+  // Static methods
+  //
+
+  /**
+   * Get the index file of a fasta file.
+   * @param file the fasta file
+   * @return the index file
+   */
+  public static File getIndexFile(final File file) {
+
+    return new File(file.getPath() + INDEX_EXTENSION);
+  }
+
+  /**
+   * Get the index file of the blocks of a bgzip file.
+   * @param file the bgzip file
+   * @return the index file
+   */
+  public static File getBgzfIndexFile(final File file) {
+
+    return new File(file.getPath() + BGZF_INDEX_EXTENSION);
+  }
+
+  /**
+   * Test if a fasta file can be read with this class.
+   * @param file the fasta file
+   * @return true if the file is indexed
+   * @throws IOException if an error occurs while reading the file
+   */
+  public static boolean isIndexed(final File file) throws IOException {
+
+    if (!getIndexFile(file).isFile())
+      return false;
+
+    final byte[] header = readHeader(file);
+
+    if (!BgzfUtils.isGzip(header, header.length))
+      return true;
+
+    return BgzfUtils.isBgzf(header, header.length)
+        && getBgzfIndexFile(file).isFile();
+  }
+
+  /**
+   * Read the first bytes of a file.
+   * @param file the file
+   * @return an array with the first bytes of the file
+   * @throws IOException if an error occurs while reading the file
+   */
+  private static byte[] readHeader(final File file) throws IOException {
+
+    final RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+    try {
+      final byte[] result = new byte[(int) Math.min(raf.length(), 18)];
+      raf.readFully(result);
+
+      return result;
+    } finally {
+      raf.close();
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Public constructor.
+   * @param file the fasta file
+   * @throws IOException if an error occurs while reading the index of the file
+   */
+  public IndexedFastaGenomeReader(final File file) throws IOException {
+
+    if (file == null)
+      throw new NullPointerException("The file is null");
+
+    this.file = file;
+    readIndex(getIndexFile(file));
+
+    final byte[] header = readHeader(file);
+
+    if (BgzfUtils.isGzip(header, header.length)) {
+
+      if (!BgzfUtils.isBgzf(header, header.length))
+        throw new IOException(
+            "Only bgzip compressed fasta files can be indexed: " + file);
+
+      readBgzfIndex(getBgzfIndexFile(file));
+    }
+
+    this.raf = new RandomAccessFile(file, "r");
+    this.channel = this.raf.getChannel();
+  }
+
+}
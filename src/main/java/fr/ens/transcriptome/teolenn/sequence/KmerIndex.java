@@ -0,0 +1,442 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+package fr.ens.transcriptome.teolenn.sequence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fr.ens.transcriptome.teolenn.resource.PackedGenomeResource;
+
+/**
+ * This class define an index of the k-mers of a genome, used to find the
+ * occurrences of oligonucleotides in the genome. The chromosomes are
+ * concatenated (separated by an invalid base) and stored with 2 bits per base.
+ * The positions of the k-mers are sorted by k-mer with a counting sort. All
+ * the data of the index are stored outside the heap in direct buffers and are
+ * only read after the creation of the index, so the index can be used by many
+ * threads at the same time. The index uses about 4.4 bytes per base of the
+ * genome plus 4 bytes per possible k-mer, and the length of the genome must
+ * be lower than 2^32.
+ * @author Laurent Jourdren
+ */
+public class KmerIndex {
+
+  /** Maximal length of the k-mers. */
+  public static final int MAX_K = 14;
+
+  private static final int CHUNK_SHIFT = 28;
+  private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+  private static final int READ_SIZE = 1024 * 1024;
+  private static final long MAX_LENGTH = 0xffffffffL;
+
+  private final int k;
+  private final int kMask;
+  private final Map<String, Integer> chromosomes =
+      new HashMap<String, Integer>();
+  private final long[] chromosomeStarts;
+  private final long length;
+
+  private final ByteBuffer bases;
+  private final ByteBuffer invalid;
+  private final IntBuffer offsets;
+  private final IntBuffer[] positions;
+
+  /**
+   * Get the length of the k-mers of the index.
+   * @return the length of the k-mers
+   */
+  public int getK() {
+
+    return this.k;
+  }
+
+  /**
+   * Test if an oligonucleotide is unique in the genome: its sequence must be
+   * found exactly once, at its own position on the forward strand, and no
+   * other occurrence with at most a number of mismatches must exist on both
+   * strands.
+   * @param chromosome chromosome of the oligonucleotide
+   * @param start start of the oligonucleotide (0 based)
+   * @param sequence sequence of the oligonucleotide
+   * @param mismatches maximal number of mismatches of the other occurrences
+   * @return true if the oligonucleotide is unique
+   */
+  public boolean isUnique(final String chromosome, final int start,
+      final CharSequence sequence, final int mismatches) {
+
+    final Integer index = this.chromosomes.get(chromosome);
+    final int len = sequence.length();
+
+    if (index == null || len == 0)
+      return false;
+
+    if (len / (mismatches + 1) < this.k)
+      throw new IllegalArgumentException("The oligonucleotide is too short ("
+          + len + ") for the index (k=" + this.k + ") and " + mismatches
+          + " mismatches");
+
+    final byte[] forward = new byte[len];
+    final byte[] reverse = new byte[len];
+
+    for (int i = 0; i < len; i++) {
+
+      final int code = encode(sequence.charAt(i));
+      if (code == -1)
+        return false;
+
+      forward[i] = (byte) code;
+      reverse[len - 1 - i] = (byte) (3 - code);
+    }
+
+    return search(forward, this.chromosomeStarts[index] + start, mismatches)
+        && search(reverse, -1, mismatches);
+  }
+
+  //
+  // Internal methods
+  //
+
+  /**
+   * Search the occurrences of a sequence. The sequence is split in
+   * (mismatches + 1) segments, an occurrence with at most mismatches
+   * mismatches contains at least a segment without mismatch, so the
+   * occurrences are found with the positions of the rarest k-mer of each
+   * segment.
+   * @param codes codes of the bases of the sequence
+   * @param own the only allowed position of an exact occurrence or -1 if no
+   *          occurrence is allowed
+   * @param mismatches maximal number of mismatches
+   * @return true if the only occurrence found is the exact occurrence at the
+   *         own position
+   */
+  private boolean search(final byte[] codes, final long own,
+      final int mismatches) {
+
+    final int len = codes.length;
+    final int segments = mismatches + 1;
+    boolean ownFound = false;
+
+    for (int s = 0; s < segments; s++) {
+
+      final int segmentStart = s * len / segments;
+      final int segmentEnd = (s + 1) * len / segments;
+
+      // Find the rarest k-mer of the segment
+      int bestOffset = -1;
+      long bestStart = 0;
+      long bestEnd = 0;
+      int code = 0;
+
+      for (int i = segmentStart; i < segmentEnd; i++) {
+
+        code = ((code << 2) | codes[i]) & this.kMask;
+
+        if (i - segmentStart + 1 < this.k)
+          continue;
+
+        final long start = getOffset(code);
+        final long end = getOffset(code + 1);
+
+        if (bestOffset == -1 || end - start < bestEnd - bestStart) {
+          bestOffset = i - this.k + 1;
+          bestStart = start;
+          bestEnd = end;
+        }
+      }
+
+      for (long e = bestStart; e < bestEnd; e++) {
+
+        final long pos = getPosition(e) - bestOffset;
+
+        if (pos < 0 || pos + len > this.length)
+          continue;
+
+        final int d = distance(codes, pos, mismatches);
+
+        if (d == -1)
+          continue;
+
+        // The own position is found once per segment
+        if (d == 0 && pos == own) {
+          ownFound = true;
+          continue;
+        }
+
+        return false;
+      }
+    }
+
+    return own == -1 || ownFound;
+  }
+
+  /**
+   * Get the number of mismatches between a sequence and the genome.
+   * @param codes codes of the bases of the sequence
+   * @param pos position in the genome
+   * @param mismatches maximal number of mismatches
+   * @return the number of mismatches or -1 if there are more than mismatches
+   *         mismatches or if the region contains an invalid base
+   */
+  private int distance(final byte[] codes, final long pos,
+      final int mismatches) {
+
+    int result = 0;
+
+    for (int i = 0; i < codes.length; i++) {
+
+      final long p = pos + i;
+
+      if (isInvalid(p))
+        return -1;
+
+      if (getBase(p) != codes[i] && ++result > mismatches)
+        return -1;
+    }
+
+    return result;
+  }
+
+  private int getBase(final long pos) {
+
+    return (this.bases.get((int) (pos >>> 2)) >> ((int) (pos & 3) << 1)) & 3;
+  }
+
+  private boolean isInvalid(final long pos) {
+
+    return (this.invalid.get((int) (pos >>> 3)) & (1 << (pos & 7))) != 0;
+  }
+
+  private long getOffset(final int code) {
+
+    return this.offsets.get(code) & 0xffffffffL;
+  }
+
+  private long getPosition(final long index) {
+
+    return this.positions[(int) (index >>> CHUNK_SHIFT)]
+        .get((int) (index & CHUNK_MASK)) & 0xffffffffL;
+  }
+
+  private static int encode(final char c) {
+
+    switch (c) {
+
+    case 'A':
+    case 'a':
+      return 0;
+    case 'C':
+    case 'c':
+      return 1;
+    case 'G':
+    case 'g':
+      return 2;
+    case 'T':
+    case 't':
+      return 3;
+
+    default:
+      return -1;
+    }
+  }
+
+  /**
+   * Read the bases of the chromosomes.
+   * @param genome the packed genome
+   * @param names names of the chromosomes
+   * @throws IOException if an error occurs while reading the chromosomes
+   */
+  private void readBases(final PackedGenomeResource genome,
+      final List<String> names) throws IOException {
+
+    for (int i = 0; i < names.size(); i++) {
+
+      final PackedChromosome chr = genome.getChromosome(names.get(i));
+      final int len = chr.length();
+      final long chrStart = this.chromosomeStarts[i];
+
+      for (int start = 0; start < len; start += READ_SIZE) {
+
+        final String s =
+            chr.getSequence(start, Math.min(READ_SIZE, len - start));
+
+        for (int j = 0; j < s.length(); j++) {
+
+          final long pos = chrStart + start + j;
+          final int code = encode(s.charAt(j));
+
+          if (code == -1)
+            setInvalid(pos);
+          else if (code != 0) {
+            final int index = (int) (pos >>> 2);
+            this.bases.put(index, (byte) (this.bases.get(index) | code
+                << ((int) (pos & 3) << 1)));
+          }
+        }
+      }
+
+      // Separator between the chromosomes
+      setInvalid(chrStart + len);
+    }
+  }
+
+  private void setInvalid(final long pos) {
+
+    final int index = (int) (pos >>> 3);
+    this.invalid.put(index, (byte) (this.invalid.get(index) | 1 << (pos & 7)));
+  }
+
+  /**
+   * Count the k-mers of the genome or add their positions to the index.
+   * @param fill true if the positions must be added to the index
+   */
+  private void scanKmers(final boolean fill) {
+
+    int code = 0;
+    int valid = 0;
+
+    for (long pos = 0; pos < this.length; pos++) {
+
+      if (isInvalid(pos)) {
+        valid = 0;
+        continue;
+      }
+
+      code = ((code << 2) | getBase(pos)) & this.kMask;
+
+      if (++valid < this.k)
+        continue;
+
+      if (fill) {
+
+        // The offsets are the ends of the buckets, they become the starts
+        final long index = getOffset(code) - 1;
+        this.offsets.put(code, (int) index);
+        this.positions[(int) (index >>> CHUNK_SHIFT)].put(
+            (int) (index & CHUNK_MASK), (int) (pos - this.k + 1));
+      } else
+        this.offsets.put(code, this.offsets.get(code) + 1);
+    }
+  }
+
+  private static ByteBuffer allocate(final long size) throws IOException {
+
+    if (size > Integer.MAX_VALUE)
+      throw new IOException("The genome is too large for the index");
+
+    return ByteBuffer.allocateDirect((int) size).order(ByteOrder.nativeOrder());
+  }
+
+  //
+  // Static methods
+  //
+
+  /**
+   * Get the length of the k-mers for a genome. The number of possible k-mers
+   * is at least the length of the genome, so most of the k-mers are found a
+   * few times in the genome.
+   * @param genomeLength length of the genome
+   * @return the length of the k-mers
+   */
+  public static int getDefaultK(final long genomeLength) {
+
+    int k = 1;
+    while (k < MAX_K && 1L << (2 * k) < genomeLength)
+      k++;
+
+    return k;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Public constructor.
+   * @param genome the packed genome
+   * @param names names of the chromosomes to index
+   * @param k length of the k-mers
+   * @throws IOException if an error occurs while reading the chromosomes
+   */
+  public KmerIndex(final PackedGenomeResource genome, final List<String> names,
+      final int k) throws IOException {
+
+    if (genome == null)
+      throw new NullPointerException("The packed genome is null");
+    if (names == null)
+      throw new NullPointerException("The chromosome names are null");
+    if (k < 1 || k > MAX_K)
+      throw new IllegalArgumentException("Invalid k-mer length: " + k);
+
+    this.k = k;
+    this.kMask = (1 << (2 * k)) - 1;
+
+    // Compute the position of the chromosomes
+    this.chromosomeStarts = new long[names.size()];
+    long len = 0;
+
+    for (int i = 0; i < names.size(); i++) {
+
+      this.chromosomes.put(names.get(i), i);
+      this.chromosomeStarts[i] = len;
+      len += genome.getChromosome(names.get(i)).length() + 1;
+    }
+
+    if (len > MAX_LENGTH)
+      throw new IOException("The genome is too large for the index: " + len);
+
+    this.length = len;
+    this.bases = allocate((len + 3) / 4);
+    this.invalid = allocate((len + 7) / 8);
+    readBases(genome, names);
+
+    // Count the k-mers
+    final int buckets = 1 << (2 * k);
+    this.offsets = allocate(((long) buckets + 1) * 4).asIntBuffer();
+    scanKmers(false);
+
+    // Compute the ends of the buckets
+    long total = 0;
+    for (int i = 0; i < buckets; i++) {
+      total += getOffset(i);
+      this.offsets.put(i, (int) total);
+    }
+    this.offsets.put(buckets, (int) total);
+
+    // Sort the positions of the k-mers
+    this.positions =
+        new IntBuffer[(int) ((total + CHUNK_MASK) >>> CHUNK_SHIFT)];
+    for (int i = 0; i < this.positions.length; i++)
+      this.positions[i] =
+          allocate(
+              Math.min(CHUNK_MASK + 1, total - ((long) i << CHUNK_SHIFT)) * 4)
+              .asIntBuffer();
+
+    scanKmers(true);
+  }
+
+}
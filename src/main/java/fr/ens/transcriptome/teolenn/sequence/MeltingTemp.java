@@ -32,6 +32,14 @@ public class MeltingTemp {
   // universal gas constant in Cal/degrees C*Mol
   private static final float R = 1.987f;
 
+  /** Indexes of the dinucleotides in the dinucleotides counts. */
+  private static final int AA = 0, AC = 1, AG = 2, AT = 3, CA = 4, CC = 5,
+      CG = 6, CT = 7, GA = 8, GC = 9, GG = 10, GT = 11, TA = 12, TC = 13,
+      TG = 14, TT = 15;
+
+  /** Number of dinucleotides. */
+  public static final int DINUCLEOTIDES_COUNT = 16;
+
   /**
    * Returns DNA tm using nearest neighbor thermodynamics. This method is
    * adapted from bioPython MeltingTemp script.
@@ -44,12 +52,39 @@ public class MeltingTemp {
   public static final float tmstalucDNA(final String s, final float dnac,
       final float saltc) {
 
+    final int len = s.length();
+    final int[] dinucleotides = new int[DINUCLEOTIDES_COUNT];
+    countDinucleotides(s, 0, len, dinucleotides);
+
+    return tmstalucDNA(dinucleotides, len == 0 ? 0 : Character.toUpperCase(s
+        .charAt(0)), len == 0 ? 0 : Character.toUpperCase(s.charAt(len - 1)),
+        len, dnac, saltc);
+  }
+
+  /**
+   * Returns DNA tm using nearest neighbor thermodynamics from the
+   * dinucleotides counts of a sequence. As the counts can be updated when
+   * bases are appended to the sequence, this method allow to compute the tm of
+   * many oligonucleotides that share the same start without reading all their
+   * bases.
+   * @param dinucleotides the dinucleotides counts of the sequence
+   * @param first first base of the sequence in upper case
+   * @param last last base of the sequence in upper case
+   * @param length length of the sequence
+   * @param dnac DNA concentration [nM]
+   * @param saltc salt concentration [mM]
+   * @return the tm of the sequence
+   */
+  public static final float tmstalucDNA(final int[] dinucleotides,
+      final char first, final char last, final int length, final float dnac,
+      final float saltc) {
+
     float dh = 0; // DeltaH. Enthalpy
     float ds = 0; // deltaS Entropy
 
-    final String sup = s.toUpperCase();
+    final int[] n = dinucleotides;
+    final float[] tcRes = tercorrDNA(first, last, ds, dh);
 
-    final float[] tcRes = tercorrDNA(sup, ds, dh);
     // double vsTC = tcRes[0];
     float vs = tcRes[0];
     float vh = tcRes[1];
@@ -58,43 +93,95 @@ public class MeltingTemp {
     // Allawi and SantaLucia (1997). Biochemistry 36 : 10581-10594
     vh =
         vh
-            + (overcount(sup, "AA")) * 7.9f + (overcount(sup, "TT")) * 7.9f
-            + (overcount(sup, "AT")) * 7.2f + (overcount(sup, "TA")) * 7.2f
-            + (overcount(sup, "CA")) * 8.5f + (overcount(sup, "TG")) * 8.5f
-            + (overcount(sup, "GT")) * 8.4f + (overcount(sup, "AC")) * 8.4f;
+            + (n[AA]) * 7.9f + (n[TT]) * 7.9f
+            + (n[AT]) * 7.2f + (n[TA]) * 7.2f
+            + (n[CA]) * 8.5f + (n[TG]) * 8.5f
+            + (n[GT]) * 8.4f + (n[AC]) * 8.4f;
     vh =
         vh
-            + (overcount(sup, "CT")) * 7.8f + (overcount(sup, "AG")) * 7.8f
-            + (overcount(sup, "GA")) * 8.2f + (overcount(sup, "TC")) * 8.2f;
+            + (n[CT]) * 7.8f + (n[AG]) * 7.8f
+            + (n[GA]) * 8.2f + (n[TC]) * 8.2f;
     vh =
         vh
-            + (overcount(sup, "CG")) * 10.6f + (overcount(sup, "GC")) * 9.8f
-            + (overcount(sup, "GG")) * 8f + (overcount(sup, "CC")) * 8f;
+            + (n[CG]) * 10.6f + (n[GC]) * 9.8f
+            + (n[GG]) * 8f + (n[CC]) * 8f;
     vs =
         vs
-            + (overcount(sup, "AA")) * 22.2f + (overcount(sup, "TT")) * 22.2f
-            + (overcount(sup, "AT")) * 20.4f + (overcount(sup, "TA")) * 21.3f;
+            + (n[AA]) * 22.2f + (n[TT]) * 22.2f
+            + (n[AT]) * 20.4f + (n[TA]) * 21.3f;
     vs =
         vs
-            + (overcount(sup, "CA")) * 22.7f + (overcount(sup, "TG")) * 22.7f
-            + (overcount(sup, "GT")) * 22.4f + (overcount(sup, "AC")) * 22.4f;
+            + (n[CA]) * 22.7f + (n[TG]) * 22.7f
+            + (n[GT]) * 22.4f + (n[AC]) * 22.4f;
     vs =
         vs
-            + (overcount(sup, "CT")) * 21.0f + (overcount(sup, "AG")) * 21.0f
-            + (overcount(sup, "GA")) * 22.2f + (overcount(sup, "TC")) * 22.2f;
+            + (n[CT]) * 21.0f + (n[AG]) * 21.0f
+            + (n[GA]) * 22.2f + (n[TC]) * 22.2f;
     vs =
         vs
-            + (overcount(sup, "CG")) * 27.2f + (overcount(sup, "GC")) * 24.4f
-            + (overcount(sup, "GG")) * 19.9f + (overcount(sup, "CC")) * 19.9f;
+            + (n[CG]) * 27.2f + (n[GC]) * 24.4f
+            + (n[GG]) * 19.9f + (n[CC]) * 19.9f;
+
     ds = vs;
     dh = vh;
 
-    ds = ds - 0.368f * (s.length() - 1f) * (float) Math.log(saltc / 1e3f);
+    ds = ds - 0.368f * (length - 1f) * (float) Math.log(saltc / 1e3f);
+
     final float k = (dnac / 4.0f) * 1e-9f;
 
     return ((1000f * (-dh)) / (-ds + (R * ((float) Math.log(k))))) - 273.15f;
   }
 
+  /**
+   * Add the dinucleotides that end in a region of a sequence to dinucleotides
+   * counts. The case of the bases is ignored.
+   * @param s sequence
+   * @param from start of the region (inclusive)
+   * @param to end of the region (exclusive)
+   * @param dinucleotides dinucleotides counts to update
+   */
+  public static final void countDinucleotides(final CharSequence s,
+      final int from, final int to, final int[] dinucleotides) {
+
+    int previous = from == 0 ? -1 : getBaseIndex(s.charAt(from - 1));
+
+    for (int i = from; i < to; i++) {
+
+      final int current = getBaseIndex(s.charAt(i));
+
+      if (previous != -1 && current != -1)
+        dinucleotides[(previous << 2) | current]++;
+
+      previous = current;
+    }
+  }
+
+  /**
+   * Get the index of a base.
+   * @param c the base
+   * @return the index of the base or -1 if the base is not A, C, G or T
+   */
+  private static final int getBaseIndex(final char c) {
+
+    switch (c) {
+
+    case 'A':
+    case 'a':
+      return 0;
+    case 'C':
+    case 'c':
+      return 1;
+    case 'G':
+    case 'g':
+      return 2;
+    case 'T':
+    case 't':
+      return 3;
+    default:
+      return -1;
+    }
+  }
+
   /**
    * Returns RNA tm using nearest neighbor thermodynamics. This method is
    * adapted from bioPython MeltingTemp script.
@@ -160,8 +247,8 @@ public class MeltingTemp {
 
   }
 
-  private static final float[] tercorrDNA(final String stri, final float ds,
-      final float dh) {
+  private static final float[] tercorrDNA(final char first, final char last,
+      final float ds, final float dh) {
 
     float deltah = 0;
     float deltas = 0;
@@ -169,17 +256,18 @@ public class MeltingTemp {
     // DNA/DNA
     // Allawi and SantaLucia (1997). Biochemistry 36 : 10581-10594
 
-    if (stri.startsWith("G") || stri.startsWith("C")) {
+    if (first == 'G' || first == 'C') {
       deltah = deltah - 0.1f;
       deltas = deltas + 2.8f;
-    } else if (stri.startsWith("A") || stri.startsWith("T")) {
+    } else if (first == 'A' || first == 'T') {
       deltah = deltah - 2.3f;
       deltas = deltas - 4.1f;
     }
-    if (stri.endsWith("G") || stri.endsWith("C")) {
+
+    if (last == 'G' || last == 'C') {
       deltah = deltah - 0.1f;
       deltas = deltas + 2.8f;
-    } else if (stri.endsWith("A") || stri.endsWith("T")) {
+    } else if (last == 'A' || last == 'T') {
       deltah = deltah - 2.3f;
       deltas = deltas - 4.1f;
     }
@@ -188,7 +276,6 @@ public class MeltingTemp {
     final float dsL = ds + deltas;
 
     return new float[] {dsL, dhL};
-
   }
 
   private static final float[] tercorrRNA(final String stri, final float ds,
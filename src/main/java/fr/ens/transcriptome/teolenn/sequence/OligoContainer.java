@@ -0,0 +1,254 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+package fr.ens.transcriptome.teolenn.sequence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class define the table of contents of an oligonucleotides container
+ * file. A container file is a fasta file (that can be compressed in the BGZF
+ * format) that contains the oligonucleotides of all the chromosomes, one
+ * chromosome after the other in the order of the list of the chromosomes.
+ * For each chromosome, the table of contents gives the section of the
+ * container file that contains its oligonucleotides (the offsets of the
+ * section in the uncompressed data). The table of contents is stored in a
+ * file with the same name as the container file and the ".toc" extension.
+ * @author Laurent Jourdren
+ */
+public class OligoContainer {
+
+  /** Name of the container files without their extension. */
+  public static final String CONTAINER_NAME = "oligos";
+
+  /** Extension of the table of contents files. */
+  public static final String TOC_EXTENSION = ".toc";
+
+  private static final int MAGIC = 0x4F544F43;
+
+  private final List<String> chromosomes = new ArrayList<String>();
+  private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+  private long[] starts = new long[16];
+  private long[] ends = new long[16];
+
+  /**
+   * Get the names of the chromosomes of the container.
+   * @return an unmodifiable list with the names of the chromosomes
+   */
+  public List<String> getChromosomes() {
+
+    return Collections.unmodifiableList(this.chromosomes);
+  }
+
+  /**
+   * Test if the container contains a section for a chromosome.
+   * @param chromosome name of the chromosome
+   * @return true if the container contains a section for the chromosome
+   */
+  public boolean isSection(final String chromosome) {
+
+    return this.indexes.containsKey(chromosome);
+  }
+
+  /**
+   * Get the offset of the section of a chromosome.
+   * @param chromosome name of the chromosome
+   * @return the offset of the section in the uncompressed data or -1 if the
+   *         container has no section for the chromosome
+   */
+  public long getSectionStart(final String chromosome) {
+
+    final Integer index = this.indexes.get(chromosome);
+
+    return index == null ? -1 : this.starts[index];
+  }
+
+  /**
+   * Get the offset of the end of the section of a chromosome.
+   * @param chromosome name of the chromosome
+   * @return the offset of the end of the section in the uncompressed data or
+   *         -1 if the container has no section for the chromosome
+   */
+  public long getSectionEnd(final String chromosome) {
+
+    final Integer index = this.indexes.get(chromosome);
+
+    return index == null ? -1 : this.ends[index];
+  }
+
+  /**
+   * Get the size of the uncompressed data of the container.
+   * @return the size of the uncompressed data in bytes
+   */
+  public long getSize() {
+
+    final int n = this.chromosomes.size();
+
+    return n == 0 ? 0 : this.ends[n - 1];
+  }
+
+  /**
+   * Add a section at the end of the container.
+   * @param chromosome name of the chromosome
+   * @param start offset of the section in the uncompressed data
+   * @param end offset of the end of the section in the uncompressed data
+   */
+  public void addSection(final String chromosome, final long start,
+      final long end) {
+
+    if (chromosome == null)
+      throw new NullPointerException("The chromosome is null");
+
+    if (this.indexes.containsKey(chromosome))
+      throw new IllegalArgumentException("The container already contains "
+          + chromosome);
+
+    if (start < getSize() || end < start)
+      throw new IllegalArgumentException("Invalid section for "
+          + chromosome + ": " + start + "-" + end);
+
+    final int n = this.chromosomes.size();
+
+    if (n == this.starts.length) {
+      this.starts = Arrays.copyOf(this.starts, n * 2);
+      this.ends = Arrays.copyOf(this.ends, n * 2);
+    }
+
+    this.starts[n] = start;
+    this.ends[n] = end;
+    this.chromosomes.add(chromosome);
+    this.indexes.put(chromosome, n);
+  }
+
+  /**
+   * Write the table of contents.
+   * @param file the output file
+   * @throws IOException if an error occurs while writing the table of
+   *           contents
+   */
+  public void write(final File file) throws IOException {
+
+    final DataOutputStream dos =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+            file)));
+
+    try {
+      dos.writeInt(MAGIC);
+      dos.writeInt(this.chromosomes.size());
+
+      for (int i = 0; i < this.chromosomes.size(); i++) {
+        dos.writeUTF(this.chromosomes.get(i));
+        dos.writeLong(this.starts[i]);
+        dos.writeLong(this.ends[i]);
+      }
+    } finally {
+      dos.close();
+    }
+  }
+
+  //
+  // Static methods
+  //
+
+  /**
+   * Get the container file of a type of oligonucleotides files.
+   * @param dir directory of the oligonucleotides files
+   * @param extension extension of the oligonucleotides files
+   * @return the container file
+   */
+  public static File getFile(final File dir, final String extension) {
+
+    return new File(dir, CONTAINER_NAME + extension);
+  }
+
+  /**
+   * Get the table of contents file of a container file.
+   * @param file the container file
+   * @return the table of contents file
+   */
+  public static File getTocFile(final File file) {
+
+    return new File(file.getPath() + TOC_EXTENSION);
+  }
+
+  /**
+   * Get the chromosome of an oligonucleotide from its name
+   * ("chr:subseq(start,length)").
+   * @param sequenceName name of the oligonucleotide
+   * @return the name of the chromosome
+   */
+  public static String getChromosome(final String sequenceName) {
+
+    final int pos = sequenceName.indexOf(':');
+
+    return pos == -1 ? sequenceName : sequenceName.substring(0, pos);
+  }
+
+  /**
+   * Load the table of contents of a container file.
+   * @param file the table of contents file
+   * @return a new OligoContainer object
+   * @throws IOException if an error occurs while reading the table of
+   *           contents
+   */
+  public static OligoContainer load(final File file) throws IOException {
+
+    if (file == null)
+      throw new NullPointerException("The file is null");
+
+    final DataInputStream dis =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+    try {
+      if (dis.readInt() != MAGIC)
+        throw new IOException("Invalid table of contents file: " + file);
+
+      final OligoContainer result = new OligoContainer();
+      final int n = dis.readInt();
+
+      for (int i = 0; i < n; i++) {
+
+        final String chromosome = dis.readUTF();
+        final long start = dis.readLong();
+        result.addSection(chromosome, start, dis.readLong());
+      }
+
+      return result;
+    } finally {
+      dis.close();
+    }
+  }
+
+}
@@ -0,0 +1,276 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+package fr.ens.transcriptome.teolenn.sequence;
+
+/**
+ * This class compute the position of the records in an oligonucleotides
+ * fasta file of a chromosome. The records are sorted by start position and
+ * then by length, the name of each record is "chr:subseq(start,length)" and
+ * the sequences are written on lines of 70 characters.
+ * @author Laurent Jourdren
+ */
+public class OligoFileLayout {
+
+  /** Maximal length of the lines of sequence. */
+  public static final int FASTA_MAX_LEN = 70;
+
+  private final int chromosomeLength;
+  private final int minSize;
+  private final int maxSize;
+  private final int firstPosition;
+  private final int headerConstant;
+  private final int fullPositions;
+  private final int startPositions;
+
+  // Size of the records of a start position without the start digits
+  // (prefix sum by length)
+  private final long[] sizeSums;
+  private final long fullSize;
+
+  // Offsets of the start positions at the end of the chromosome
+  private final long[] tailOffsets;
+
+  /**
+   * Get the number of start positions of oligonucleotides.
+   * @return the number of start positions
+   */
+  public int getStartPositionCount() {
+
+    return this.startPositions;
+  }
+
+  /**
+   * Get the number of oligonucleotides at a start position.
+   * @param startIndex index of the start position (0 based)
+   * @return the number of oligonucleotides
+   */
+  public int getOligoCount(final int startIndex) {
+
+    if (startIndex < 0 || startIndex >= this.startPositions)
+      return 0;
+
+    return Math.min(this.maxSize, this.chromosomeLength - startIndex)
+        - this.minSize + 1;
+  }
+
+  /**
+   * Get the offset of the first record of a start position.
+   * @param startIndex index of the start position (0 based)
+   * @return the offset in the file
+   */
+  public long getStartOffset(final int startIndex) {
+
+    if (startIndex < 0 || startIndex > this.startPositions)
+      throw new IndexOutOfBoundsException("Invalid start position: "
+          + startIndex);
+
+    if (startIndex <= this.fullPositions)
+      return startIndex
+          * this.fullSize + (long) (this.maxSize - this.minSize + 1)
+          * sumDigits(this.firstPosition, startIndex + this.firstPosition);
+
+    return this.tailOffsets[startIndex - this.fullPositions];
+  }
+
+  /**
+   * Get the offset of a record.
+   * @param oligoStartPos the start position of the oligonucleotide in the
+   *          chromosome
+   * @param oligoLength the length of the oligonucleotide
+   * @return the offset in the file
+   */
+  public long getRecordOffset(final int oligoStartPos, final int oligoLength) {
+
+    final int startIndex = oligoStartPos - this.firstPosition;
+
+    if (oligoLength < this.minSize
+        || oligoLength >= this.minSize + getOligoCount(startIndex))
+      throw new IndexOutOfBoundsException("Invalid oligonucleotide: "
+          + oligoStartPos + "," + oligoLength);
+
+    return getStartOffset(startIndex)
+        + this.sizeSums[oligoLength - this.minSize] + (long) getDigits(oligoStartPos)
+        * (oligoLength - this.minSize);
+  }
+
+  /**
+   * Get the length of a record.
+   * @param oligoStartPos the start position of the oligonucleotide in the
+   *          chromosome
+   * @param oligoLength the length of the oligonucleotide
+   * @return the length of the record in bytes
+   */
+  public int getRecordLength(final int oligoStartPos, final int oligoLength) {
+
+    return getSizeConstant(oligoLength) + getDigits(oligoStartPos);
+  }
+
+  /**
+   * Get the length of the header line of a record (with the end of line).
+   * @param oligoStartPos the start position of the oligonucleotide in the
+   *          chromosome
+   * @param oligoLength the length of the oligonucleotide
+   * @return the length of the header in bytes
+   */
+  public int getHeaderLength(final int oligoStartPos, final int oligoLength) {
+
+    return this.headerConstant + getDigits(oligoStartPos)
+        + getDigits(oligoLength);
+  }
+
+  /**
+   * Get the size of the file.
+   * @return the size of the file in bytes
+   */
+  public long getFileSize() {
+
+    return getStartOffset(this.startPositions);
+  }
+
+  //
+  // Internal methods
+  //
+
+  /**
+   * Get the length of a record without the digits of its start position.
+   * @param size length of the oligonucleotide
+   * @return the length in bytes
+   */
+  private int getSizeConstant(final int size) {
+
+    return this.headerConstant
+        + getDigits(size) + size + (size + FASTA_MAX_LEN - 1) / FASTA_MAX_LEN;
+  }
+
+  /**
+   * Get the number of digits in a number.
+   * @param n The input number
+   * @return the number of digits of the number
+   */
+  public static final int getDigits(final int n) {
+
+    int count = 1;
+    long val = 10;
+
+    while (n >= val) {
+      count++;
+      val *= 10;
+    }
+
+    return count;
+  }
+
+  /**
+   * Get the sum of the digits count of the numbers of a range.
+   * @param from first number of the range (inclusive)
+   * @param to last number of the range (exclusive)
+   * @return the sum of the digits count
+   */
+  private static final long sumDigits(final int from, final int to) {
+
+    return sumDigits(to) - sumDigits(from);
+  }
+
+  /**
+   * Get the sum of the digits count of the numbers from 0 to n (exclusive).
+   * @param n upper bound of the range
+   * @return the sum of the digits count
+   */
+  private static final long sumDigits(final int n) {
+
+    long result = 0;
+    long low = 0;
+    long high = 10;
+    int digits = 1;
+
+    while (low < n) {
+
+      result += (Math.min(high, n) - low) * digits;
+      low = high;
+      high *= 10;
+      digits++;
+    }
+
+    return result;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Public constructor.
+   * @param chromosome name of the chromosome
+   * @param chromosomeLength length of the chromosome
+   * @param oligoLength length of the oligonucleotides
+   * @param oligoIntervalLength interval of length of the oligonucleotides
+   * @param start1 true if the first position on sequence is 1
+   */
+  public OligoFileLayout(final String chromosome, final int chromosomeLength,
+      final int oligoLength, final int oligoIntervalLength,
+      final boolean start1) {
+
+    if (chromosome == null)
+      throw new NullPointerException("Chromosome is null");
+
+    this.chromosomeLength = chromosomeLength;
+    this.minSize =
+        oligoLength - oligoIntervalLength <= 0 ? 1 : oligoLength
+            - oligoIntervalLength;
+    this.maxSize = oligoLength + oligoIntervalLength;
+    this.firstPosition = start1 ? 1 : 0;
+
+    // ">" + chr + ":subseq(" + "," + ")\n"
+    this.headerConstant = 1 + chromosome.length() + 8 + 1 + 2;
+
+    this.startPositions = Math.max(0, chromosomeLength - this.minSize + 1);
+    this.fullPositions =
+        Math.min(this.startPositions, Math.max(0, chromosomeLength
+            - this.maxSize + 1));
+
+    this.sizeSums = new long[this.maxSize - this.minSize + 2];
+    for (int s = this.minSize; s <= this.maxSize; s++)
+      this.sizeSums[s - this.minSize + 1] =
+          this.sizeSums[s - this.minSize] + getSizeConstant(s);
+    this.fullSize = this.sizeSums[this.maxSize - this.minSize + 1];
+
+    // Compute the offsets of the last start positions
+    this.tailOffsets = new long[this.startPositions - this.fullPositions + 1];
+
+    long offset =
+        this.fullPositions
+            * this.fullSize + (long) (this.maxSize - this.minSize + 1)
+            * sumDigits(this.firstPosition, this.fullPositions
+                + this.firstPosition);
+
+    for (int i = this.fullPositions; i <= this.startPositions; i++) {
+
+      this.tailOffsets[i - this.fullPositions] = offset;
+
+      final int count = getOligoCount(i);
+      offset +=
+          this.sizeSums[count] + (long) count * getDigits(i + this.firstPosition);
+    }
+  }
+
+}
@@ -0,0 +1,411 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+package fr.ens.transcriptome.teolenn.sequence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * This class define the read only view of a packed chromosome file. The bases
+ * are stored on 2 bits, the non ACGT bases are stored as a list of runs and
+ * the case and the mask of each base are stored as bitplanes. The file is
+ * memory mapped, so the object can be shared by many threads.
+ * @author Laurent Jourdren
+ */
+public class PackedChromosome implements CharSequence {
+
+  /** Magic number of the packed chromosome files. */
+  static final int MAGIC = 0x54504B31;
+
+  /** Size of the header of the file. */
+  static final int HEADER_SIZE = 16;
+
+  /** Size of an entry of the exceptions list. */
+  static final int EXCEPTION_SIZE = 12;
+
+  /** Flag set if the mask bitplane has been filled. */
+  static final int FLAG_MASK = 1;
+
+  /** Bases coded on 2 bits. */
+  static final char[] BASES = {'A', 'C', 'G', 'T'};
+
+  private final File file;
+  private final ByteBuffer buffer;
+  private final int length;
+  private final boolean mask;
+  private final int[] exceptionStarts;
+  private final int[] exceptionEnds;
+  private final char[] exceptionChars;
+  private final int basesOffset;
+  private final int lowerCaseOffset;
+  private final int maskOffset;
+  private GapIndex gaps;
+
+  /**
+   * Get the length of the chromosome.
+   * @return the length of the chromosome
+   */
+  public int length() {
+
+    return this.length;
+  }
+
+  /**
+   * Get a base of the chromosome.
+   * @param index position of the base (0 based)
+   * @return the base
+   */
+  public char charAt(final int index) {
+
+    if (index < 0 || index >= this.length)
+      throw new IndexOutOfBoundsException("Invalid position: " + index);
+
+    final int e = findException(index);
+
+    final char c;
+    if (e != -1 && index < this.exceptionEnds[e])
+      c = this.exceptionChars[e];
+    else
+      c = getBase(index);
+
+    return isBitSet(this.lowerCaseOffset, index)
+        ? Character.toLowerCase(c) : c;
+  }
+
+  /**
+   * Get a sub sequence of the chromosome.
+   * @param start start of the sub sequence (inclusive)
+   * @param end end of the sub sequence (exclusive)
+   * @return a String with the sub sequence
+   */
+  public CharSequence subSequence(final int start, final int end) {
+
+    return getSequence(start, end - start);
+  }
+
+  /**
+   * Get a sub sequence of the chromosome.
+   * @param start start of the sub sequence (0 based)
+   * @param len length of the sub sequence
+   * @return a String with the sub sequence
+   */
+  public String getSequence(final int start, final int len) {
+
+    if (start < 0 || len < 0 || start + len > this.length)
+      throw new IndexOutOfBoundsException("Invalid sub sequence: "
+          + start + "," + len);
+
+    final char[] result = new char[len];
+    final int end = start + len;
+
+    for (int i = start; i < end; i++)
+      result[i - start] = getBase(i);
+
+    // Set the non ACGT bases
+    int e = findException(start);
+    if (e == -1)
+      e = 0;
+
+    final int[] starts = this.exceptionStarts;
+    final int[] ends = this.exceptionEnds;
+
+    for (; e < starts.length && starts[e] < end; e++) {
+
+      final int from = Math.max(start, starts[e]);
+      final int to = Math.min(end, ends[e]);
+      final char c = this.exceptionChars[e];
+
+      for (int i = from; i < to; i++)
+        result[i - start] = c;
+    }
+
+    // Set the case of the bases
+    for (int i = start; i < end; i++)
+      if (isBitSet(this.lowerCaseOffset, i))
+        result[i - start] = Character.toLowerCase(result[i - start]);
+
+    return new String(result);
+  }
+
+  /**
+   * Test if the mask of the chromosome is available.
+   * @return true if the mask of the chromosome is available
+   */
+  public boolean isMask() {
+
+    return this.mask;
+  }
+
+  /**
+   * Test if a base is masked.
+   * @param index position of the base (0 based)
+   * @return true if the base is masked
+   */
+  public boolean isMasked(final int index) {
+
+    if (index < 0 || index >= this.length)
+      throw new IndexOutOfBoundsException("Invalid position: " + index);
+
+    return isBitSet(this.maskOffset, index);
+  }
+
+  /**
+   * Count the number of masked bases in a region of the chromosome.
+   * @param start start of the region (0 based)
+   * @param len length of the region
+   * @return the number of masked bases
+   */
+  public int countMasked(final int start, final int len) {
+
+    if (start < 0 || len < 0 || start + len > this.length)
+      throw new IndexOutOfBoundsException("Invalid region: "
+          + start + "," + len);
+
+    final int end = start + len;
+    int count = 0;
+
+    for (int i = start; i < end; i++)
+      if (isBitSet(this.maskOffset, i))
+        count++;
+
+    return count;
+  }
+
+  /**
+   * Get the index of the gaps of the chromosome. The gaps are the runs of
+   * upper case 'N' or 'X' bases, they are found in the list of the non ACGT
+   * bases of the file.
+   * @return a GapIndex object
+   */
+  public synchronized GapIndex getGapIndex() {
+
+    if (this.gaps != null)
+      return this.gaps;
+
+    final int n = this.exceptionStarts.length;
+    int[] starts = new int[16];
+    int[] ends = new int[16];
+    int count = 0;
+
+    for (int e = 0; e < n; e++) {
+
+      final char c = this.exceptionChars[e];
+      if (c != 'N' && c != 'X')
+        continue;
+
+      // Lower case bases are not gaps
+      for (int i = this.exceptionStarts[e]; i < this.exceptionEnds[e]; i++) {
+
+        if (isBitSet(this.lowerCaseOffset, i))
+          continue;
+
+        if (count > 0 && ends[count - 1] == i) {
+          ends[count - 1]++;
+          continue;
+        }
+
+        if (count == starts.length) {
+          starts = Arrays.copyOf(starts, count * 2);
+          ends = Arrays.copyOf(ends, count * 2);
+        }
+
+        starts[count] = i;
+        ends[count] = i + 1;
+        count++;
+      }
+    }
+
+    this.gaps =
+        new GapIndex(Arrays.copyOf(starts, count), Arrays.copyOf(ends, count));
+
+    return this.gaps;
+  }
+
+  /**
+   * Get the packed chromosome file.
+   * @return the packed chromosome file
+   */
+  public File getFile() {
+
+    return this.file;
+  }
+
+  /**
+   * Get the sequence of the whole chromosome.
+   * @return the sequence of the chromosome
+   */
+  @Override
+  public String toString() {
+
+    return getSequence(0, this.length);
+  }
+
+  //
+  // Internal methods
+  //
+
+  private final char getBase(final int index) {
+
+    final int b = this.buffer.get(this.basesOffset + (index >> 2));
+
+    return BASES[(b >> ((index & 3) << 1)) & 3];
+  }
+
+  private final boolean isBitSet(final int offset, final int index) {
+
+    return (this.buffer.get(offset + (index >> 3)) & (1 << (index & 7))) != 0;
+  }
+
+  /**
+   * Find the last exception run that starts before or at a position.
+   * @param index position
+   * @return the index of the run or -1 if not found
+   */
+  private final int findException(final int index) {
+
+    final int[] starts = this.exceptionStarts;
+
+    int low = 0;
+    int high = starts.length - 1;
+    int result = -1;
+
+    while (low <= high) {
+
+      final int mid = (low + high) >>> 1;
+
+      if (starts[mid] <= index) {
+        result = mid;
+        low = mid + 1;
+      } else
+        high = mid - 1;
+    }
+
+    return result;
+  }
+
+  //
+  // Static methods
+  //
+
+  /**
+   * Get the offset of the bases in a packed chromosome file.
+   * @param nbExceptions number of exceptions
+   * @return the offset of the bases
+   */
+  static final long getBasesOffset(final int nbExceptions) {
+
+    return HEADER_SIZE + (long) nbExceptions * EXCEPTION_SIZE;
+  }
+
+  /**
+   * Get the size of the bases in a packed chromosome file.
+   * @param length length of the chromosome
+   * @return the size in bytes of the bases
+   */
+  static final long getBasesSize(final int length) {
+
+    return (length + 3L) / 4;
+  }
+
+  /**
+   * Get the size of a bitplane in a packed chromosome file.
+   * @param length length of the chromosome
+   * @return the size in bytes of a bitplane
+   */
+  static final long getBitplaneSize(final int length) {
+
+    return (length + 7L) / 8;
+  }
+
+  /**
+   * Load a packed chromosome file.
+   * @param file the file to load
+   * @return a new PackedChromosome object
+   * @throws IOException if an error occurs while reading the file
+   */
+  public static PackedChromosome load(final File file) throws IOException {
+
+    if (file == null)
+      throw new NullPointerException("The file is null");
+
+    final RandomAccessFile raf = new RandomAccessFile(file, "r");
+    final FileChannel channel = raf.getChannel();
+
+    if (channel.size() > Integer.MAX_VALUE)
+      throw new IOException("Packed chromosome file too large: " + file);
+
+    final ByteBuffer buffer =
+        channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    raf.close();
+
+    return new PackedChromosome(file, buffer);
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Private constructor.
+   * @param file the packed chromosome file
+   * @param buffer the content of the file
+   * @throws IOException if the file is not a valid packed chromosome file
+   */
+  private PackedChromosome(final File file, final ByteBuffer buffer)
+      throws IOException {
+
+    if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+      throw new IOException("Invalid packed chromosome file: " + file);
+
+    this.file = file;
+    this.buffer = buffer;
+    this.length = buffer.getInt(4);
+    this.mask = (buffer.getInt(8) & FLAG_MASK) != 0;
+
+    final int nbExceptions = buffer.getInt(12);
+
+    this.exceptionStarts = new int[nbExceptions];
+    this.exceptionEnds = new int[nbExceptions];
+    this.exceptionChars = new char[nbExceptions];
+
+    for (int i = 0; i < nbExceptions; i++) {
+
+      final int pos = HEADER_SIZE + i * EXCEPTION_SIZE;
+      this.exceptionStarts[i] = buffer.getInt(pos);
+      this.exceptionEnds[i] = buffer.getInt(pos + 4);
+      this.exceptionChars[i] = (char) buffer.getInt(pos + 8);
+    }
+
+    this.basesOffset = (int) getBasesOffset(nbExceptions);
+    this.lowerCaseOffset = this.basesOffset + (int) getBasesSize(this.length);
+    this.maskOffset = this.lowerCaseOffset + (int) getBitplaneSize(this.length);
+
+    if (buffer.capacity() < this.maskOffset + getBitplaneSize(this.length))
+      throw new IOException("Truncated packed chromosome file: " + file);
+  }
+
+}
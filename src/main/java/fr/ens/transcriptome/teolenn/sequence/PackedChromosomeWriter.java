@@ -0,0 +1,291 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+package fr.ens.transcriptome.teolenn.sequence;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * This class allow to create packed chromosome files. The bases of the
+ * chromosome are first appended and the file is written on close. The mask of
+ * the chromosome can be added later to an existing file with the
+ * writeMask() method.
+ * @author Laurent Jourdren
+ */
+public class PackedChromosomeWriter {
+
+  /* The list that contain the bases count as masked */
+  private static final String MASK_BASES = "acgtnNxX";
+
+  private final File file;
+  private final boolean maskMode;
+  private int length;
+
+  private byte[] bases = new byte[1024];
+  private byte[] bitplane = new byte[1024];
+
+  private int[] exceptionStarts = new int[16];
+  private int[] exceptionEnds = new int[16];
+  private char[] exceptionChars = new char[16];
+  private int nbExceptions;
+
+  /**
+   * Append bases to the chromosome.
+   * @param s bases to append
+   */
+  public void append(final CharSequence s) {
+
+    if (s == null)
+      return;
+
+    final int len = s.length();
+    ensureCapacity(this.length + len);
+
+    for (int i = 0; i < len; i++)
+      appendBase(s.charAt(i));
+  }
+
+  /**
+   * Append bases to the chromosome.
+   * @param array array that contains the bases to append
+   * @param start position of the first base in the array
+   * @param len number of bases to append
+   */
+  public void append(final byte[] array, final int start, final int len) {
+
+    if (array == null)
+      return;
+
+    ensureCapacity(this.length + len);
+
+    final int end = start + len;
+    for (int i = start; i < end; i++)
+      appendBase((char) (array[i] & 0xff));
+  }
+
+  /**
+   * Append a base to the chromosome. The capacity of the arrays must have
+   * been checked before.
+   * @param c base to append
+   */
+  private void appendBase(final char c) {
+
+    final int index = this.length++;
+
+    if (this.maskMode) {
+
+      if (MASK_BASES.indexOf(c) != -1)
+        setBit(this.bitplane, index);
+      return;
+    }
+
+    if (Character.isLowerCase(c))
+      setBit(this.bitplane, index);
+
+    final int code;
+    switch (Character.toUpperCase(c)) {
+
+    case 'A':
+      code = 0;
+      break;
+    case 'C':
+      code = 1;
+      break;
+    case 'G':
+      code = 2;
+      break;
+    case 'T':
+      code = 3;
+      break;
+
+    default:
+      code = 0;
+      addException(index, Character.toUpperCase(c));
+      break;
+    }
+
+    this.bases[index >> 2] |= code << ((index & 3) << 1);
+  }
+
+  /**
+   * Get the number of bases appended.
+   * @return the length of the chromosome
+   */
+  public int getLength() {
+
+    return this.length;
+  }
+
+  /**
+   * Write the packed chromosome file (or its mask).
+   * @throws IOException if an error occurs while writing the file
+   */
+  public void close() throws IOException {
+
+    if (this.maskMode)
+      writeMask();
+    else
+      writeFile();
+  }
+
+  //
+  // Internal methods
+  //
+
+  private void addException(final int index, final char c) {
+
+    final int n = this.nbExceptions;
+
+    // Extend the last run if possible
+    if (n > 0
+        && this.exceptionEnds[n - 1] == index
+        && this.exceptionChars[n - 1] == c) {
+      this.exceptionEnds[n - 1]++;
+      return;
+    }
+
+    if (n == this.exceptionStarts.length) {
+      this.exceptionStarts = Arrays.copyOf(this.exceptionStarts, n * 2);
+      this.exceptionEnds = Arrays.copyOf(this.exceptionEnds, n * 2);
+      this.exceptionChars = Arrays.copyOf(this.exceptionChars, n * 2);
+    }
+
+    this.exceptionStarts[n] = index;
+    this.exceptionEnds[n] = index + 1;
+    this.exceptionChars[n] = c;
+    this.nbExceptions++;
+  }
+
+  private void ensureCapacity(final int newLength) {
+
+    final int basesSize = (int) PackedChromosome.getBasesSize(newLength);
+    if (!this.maskMode && basesSize > this.bases.length)
+      this.bases =
+          Arrays.copyOf(this.bases, Math.max(basesSize,
+              this.bases.length * 2));
+
+    final int bitplaneSize = (int) PackedChromosome.getBitplaneSize(newLength);
+    if (bitplaneSize > this.bitplane.length)
+      this.bitplane =
+          Arrays.copyOf(this.bitplane, Math.max(bitplaneSize,
+              this.bitplane.length * 2));
+  }
+
+  private static final void setBit(final byte[] array, final int index) {
+
+    array[index >> 3] |= 1 << (index & 7);
+  }
+
+  private void writeFile() throws IOException {
+
+    final int len = this.length;
+    final int bitplaneSize = (int) PackedChromosome.getBitplaneSize(len);
+
+    final DataOutputStream dos =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+            this.file)));
+
+    dos.writeInt(PackedChromosome.MAGIC);
+    dos.writeInt(len);
+    dos.writeInt(0);
+    dos.writeInt(this.nbExceptions);
+
+    for (int i = 0; i < this.nbExceptions; i++) {
+      dos.writeInt(this.exceptionStarts[i]);
+      dos.writeInt(this.exceptionEnds[i]);
+      dos.writeInt(this.exceptionChars[i]);
+    }
+
+    dos.write(this.bases, 0, (int) PackedChromosome.getBasesSize(len));
+    dos.write(this.bitplane, 0, bitplaneSize);
+
+    // Empty mask
+    dos.write(new byte[bitplaneSize]);
+
+    dos.close();
+  }
+
+  private void writeMask() throws IOException {
+
+    final RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+    final FileChannel channel = raf.getChannel();
+
+    try {
+      final ByteBuffer header = ByteBuffer.allocate(PackedChromosome.HEADER_SIZE);
+      channel.read(header, 0);
+
+      if (header.getInt(0) != PackedChromosome.MAGIC)
+        throw new IOException("Invalid packed chromosome file: " + this.file);
+
+      final int len = header.getInt(4);
+
+      if (len != this.length)
+        throw new IOException("The length of the mask ("
+            + this.length + ") is not the same as the length of the chromosome ("
+            + len + "): " + this.file);
+
+      final long maskOffset =
+          PackedChromosome.getBasesOffset(header.getInt(12))
+              + PackedChromosome.getBasesSize(len)
+              + PackedChromosome.getBitplaneSize(len);
+
+      channel.write(ByteBuffer.wrap(this.bitplane, 0,
+          (int) PackedChromosome.getBitplaneSize(len)), maskOffset);
+
+      // Set the mask flag
+      header.putInt(8, header.getInt(8) | PackedChromosome.FLAG_MASK);
+      header.clear();
+      channel.write(header, 0);
+
+    } finally {
+      raf.close();
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Public constructor.
+   * @param file the packed chromosome file
+   * @param maskMode true if only the mask of an existing packed chromosome
+   *          file must be written
+   */
+  public PackedChromosomeWriter(final File file, final boolean maskMode) {
+
+    if (file == null)
+      throw new NullPointerException("The file is null");
+
+    this.file = file;
+    this.maskMode = maskMode;
+  }
+
+}
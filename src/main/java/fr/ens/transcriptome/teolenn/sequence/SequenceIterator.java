@@ -22,13 +22,11 @@
 
 package fr.ens.transcriptome.teolenn.sequence;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.util.logging.Logger;
 
 import fr.ens.transcriptome.teolenn.Globals;
-import fr.ens.transcriptome.teolenn.util.FileUtils;
 
 /**
  * This class define a iterator over sequence stored in a fasta file.
@@ -40,7 +38,7 @@ public class SequenceIterator extends Sequence {
 
   private File inputFile;
   private final StringBuilder sequence = new StringBuilder();
-  private final BufferedReader br;
+  private final FastaReader reader;
   private String nextSequenceName;
 
   /**
@@ -58,14 +56,16 @@ public class SequenceIterator extends Sequence {
    */
   public String next() {
 
-    String line;
+    if (this.reader == null)
+      return null;
+
     try {
-      while ((line = br.readLine()) != null) {
+      while (this.reader.readLine()) {
 
-        if (line.startsWith(">")) {
+        if (this.reader.isHeader()) {
 
           setName(this.nextSequenceName);
-          this.nextSequenceName = extractSequenceName(line);
+          this.nextSequenceName = this.reader.getLine();
           final String result = sequence.toString();
           this.sequence.setLength(0);
 
@@ -75,9 +75,13 @@ public class SequenceIterator extends Sequence {
           return result;
         }
 
-        sequence.append(line.trim());
+        final byte[] buffer = this.reader.getBuffer();
+        final int end = this.reader.getLineStart() + this.reader.getLineLength();
+
+        for (int i = this.reader.getLineStart(); i < end; i++)
+          sequence.append((char) (buffer[i] & 0xff));
       }
-      br.close();
+      this.reader.close();
       setName(this.nextSequenceName);
       this.nextSequenceName = null;
 
@@ -97,18 +101,18 @@ public class SequenceIterator extends Sequence {
     return result;
   }
 
-  private static final String extractSequenceName(final String line) {
+  //
+  // Constructors
+  //
 
-    if (line == null)
-      return null;
+  /**
+   * Protected constructor for iterators that do not read a fasta file.
+   */
+  protected SequenceIterator() {
 
-    return line.trim().substring(1);
+    this.reader = null;
   }
 
-  //
-  // Constructor
-  //
-
   /**
    * Public constructor.
    * @param inputFile Fasta file to read
@@ -117,10 +121,13 @@ public class SequenceIterator extends Sequence {
   public SequenceIterator(final File inputFile) throws IOException {
 
     this.inputFile = inputFile;
-    this.br = FileUtils.createBufferedReader(inputFile);
+    this.reader = new FastaReader(inputFile);
 
     try {
-      this.nextSequenceName = extractSequenceName(br.readLine());
+      if (this.reader.readLine())
+        this.nextSequenceName =
+            this.reader.isHeader() ? this.reader.getLine() : this.reader
+                .getLine().substring(1);
     } catch (IOException e) {
       System.err.println("Error while reading first line of the fasta file ("
           + inputFile + "): " + e.getMessage());
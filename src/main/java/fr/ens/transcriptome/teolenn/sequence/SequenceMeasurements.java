@@ -22,13 +22,19 @@
 
 package fr.ens.transcriptome.teolenn.sequence;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import fr.ens.transcriptome.teolenn.measurement.ChromosomeMeasurement;
+import fr.ens.transcriptome.teolenn.measurement.LengthFamilyMeasurement;
 import fr.ens.transcriptome.teolenn.measurement.Measurement;
+import fr.ens.transcriptome.teolenn.measurement.OligoLengthMeasurement;
+import fr.ens.transcriptome.teolenn.measurement.OligoStartMeasurement;
+import fr.ens.transcriptome.teolenn.measurement.VirtualMeasurement;
 
 /**
  * This class define a sequence measurement.
@@ -45,6 +51,10 @@ public class SequenceMeasurements {
   private Measurement[] arrayMeasurements;
   private Map<Measurement, Float> weights = new HashMap<Measurement, Float>();
 
+  // The last measured oligonucleotide
+  private String lastName;
+  private int lastLength;
+
   //
   // Getters
   //
@@ -139,20 +149,106 @@ public class SequenceMeasurements {
   }
 
   /**
-   * Calc all the measurements for the sequence.
+   * Calc all the measurements for the sequence. If the sequence extends the
+   * last measured oligonucleotide (same chromosome, same start position and
+   * greater length), the measurements that allow it are computed
+   * incrementally.
    */
   public void calcMesurements() {
 
-    if (this.arrayMeasurements == null) {
+    if (this.arrayMeasurements == null || this.measurementValues == null) {
       this.arrayMeasurements = this.measurements.toArray(new Measurement[0]);
       this.measurementValues = new Object[this.arrayMeasurements.length];
     }
 
+    final int previousLength = getPreviousLength();
+
     for (int i = 0; i < arrayMeasurements.length; i++) {
-      this.measurementValues[i] =
-          this.arrayMeasurements[i].calcMesurement(this.sequence);
+
+      final Measurement m = this.arrayMeasurements[i];
+
+      if (previousLength > 0 && m instanceof LengthFamilyMeasurement)
+        this.measurementValues[i] =
+            ((LengthFamilyMeasurement) m).calcExtendedMesurement(
+                this.sequence, previousLength);
+      else
+        this.measurementValues[i] = m.calcMesurement(this.sequence);
+    }
+
+  }
+
+  /**
+   * Calc the values of the virtual measurements that are not set (e.g. after
+   * reading a measurement file). The values are computed from the chromosome,
+   * the start and the length of the oligonucleotide.
+   * @throws IOException if an error occurs while computing the values
+   */
+  public void calcVirtualMesurements() throws IOException {
+
+    final Object[] values = this.measurementValues;
+
+    if (values == null)
+      return;
+
+    int indexChr = -1;
+    int indexStart = -1;
+    int indexLength = -1;
+
+    for (int i = 0; i < values.length; i++) {
+
+      final Measurement m = this.measurements.get(i);
+
+      if (values[i] != null || !(m instanceof VirtualMeasurement))
+        continue;
+
+      if (indexChr == -1) {
+
+        indexChr = getIndexMeasurment(ChromosomeMeasurement.MEASUREMENT_NAME);
+        indexStart = getIndexMeasurment(OligoStartMeasurement.MEASUREMENT_NAME);
+        indexLength =
+            getIndexMeasurment(OligoLengthMeasurement.MEASUREMENT_NAME);
+
+        if (indexChr == -1 || indexStart == -1 || indexLength == -1)
+          throw new IOException("Unable to compute virtual measurement "
+              + m.getName() + " without the position of the oligonucleotide.");
+      }
+
+      values[i] =
+          ((VirtualMeasurement) m).calcVirtualMeasurement(
+              (String) values[indexChr], (Integer) values[indexStart],
+              (Integer) values[indexLength]);
     }
+  }
+
+  /**
+   * Get the length of the last measured oligonucleotide if the current
+   * sequence extends it. The names of the oligonucleotides
+   * ("chr:subseq(start,length)") are compared until the length.
+   * @return the length of the last measured oligonucleotide or 0 if the
+   *         current sequence does not extend it
+   */
+  private int getPreviousLength() {
+
+    final String name = this.sequence.getName();
+    final String s = this.sequence.getSequence();
+    final String lastName = this.lastName;
+    final int lastLength = this.lastLength;
+
+    this.lastName = name;
+    this.lastLength = s == null ? 0 : s.length();
+
+    if (name == null || lastName == null || this.lastLength <= lastLength)
+      return 0;
+
+    final int comma = name.lastIndexOf(',');
+
+    if (comma == -1
+        || comma != lastName.lastIndexOf(',')
+        || !name.regionMatches(0, lastName, 0, comma)
+        || name.indexOf(":subseq(") == -1)
+      return 0;
 
+    return lastLength;
   }
 
   /**
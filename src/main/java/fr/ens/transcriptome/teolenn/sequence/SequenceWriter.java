@@ -23,21 +23,40 @@
 package fr.ens.transcriptome.teolenn.sequence;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.zip.Deflater;
 
+import fr.ens.transcriptome.teolenn.Settings;
+import fr.ens.transcriptome.teolenn.util.BgzfIndex;
+import fr.ens.transcriptome.teolenn.util.BgzfOutputStream;
 import fr.ens.transcriptome.teolenn.util.FileUtils;
 
 /**
- * This class allow to write sequence in an output file.
+ * This class allow to write sequence in an output file. The output file can
+ * be compressed in the BGZF format. In this case, the index of the blocks of
+ * the file is written with the file. The output file can also be an
+ * oligonucleotides container file, the sequences of each chromosome must then
+ * be written one after the other and the table of contents of the container
+ * is written with the file.
  * @author Laurent Jourdren
  */
 public class SequenceWriter {
 
   private static final int FASTA_MAX_LEN = 70;
+  private static final String CHARSET = "ISO-8859-1";
+  private final File outputFile;
   private Writer writer;
+  private BgzfOutputStream bgzf;
   private final StringBuffer sb = new StringBuffer();
 
+  // Table of contents of the container
+  private OligoContainer container;
+  private String sectionChromosome;
+  private long sectionStart;
+  private long position;
+
   /**
    * Write a sequence in the output file.
    * @param sequence Sequence to write
@@ -45,6 +64,9 @@ public class SequenceWriter {
    */
   public void write(final Sequence sequence) throws IOException {
 
+    if (this.container != null)
+      startSection(OligoContainer.getChromosome(sequence.getName()));
+
     this.sb.append(">");
     this.sb.append(sequence.getName());
     this.sb.append("\n");
@@ -64,17 +86,57 @@ public class SequenceWriter {
       pos = newPos;
     }
 
-    this.writer.write(sb.toString());
+    if (this.bgzf != null)
+      this.bgzf.write(sb.toString().getBytes(CHARSET));
+    else
+      this.writer.write(sb.toString());
+    this.position += this.sb.length();
     this.sb.setLength(0);
   }
 
+  /**
+   * Start the section of a chromosome in the container if the chromosome is
+   * not the chromosome of the current section.
+   * @param chromosome name of the chromosome
+   */
+  private void startSection(final String chromosome) {
+
+    if (chromosome.equals(this.sectionChromosome))
+      return;
+
+    endSection();
+    this.sectionChromosome = chromosome;
+    this.sectionStart = this.position;
+  }
+
+  /**
+   * Add the current section to the table of contents of the container.
+   */
+  private void endSection() {
+
+    if (this.sectionChromosome != null)
+      this.container.addSection(this.sectionChromosome, this.sectionStart,
+          this.position);
+  }
+
   /**
    * Close the file.
    * @throws IOException if an error occurs while closing the file
    */
   public void close() throws IOException {
 
-    this.writer.close();
+    if (this.container != null) {
+      endSection();
+      this.container.write(OligoContainer.getTocFile(this.outputFile));
+    }
+
+    if (this.bgzf == null) {
+      this.writer.close();
+      return;
+    }
+
+    this.bgzf.close();
+    this.bgzf.getIndex().write(BgzfIndex.getIndexFile(this.outputFile));
   }
 
   //
@@ -87,7 +149,55 @@ public class SequenceWriter {
    */
   public SequenceWriter(final File outputFile) throws IOException {
 
-    this.writer = FileUtils.createBufferedWriter(outputFile);
+    this(outputFile, false);
+  }
+
+  /**
+   * Public constructor.
+   * @param outputFile The output file
+   * @param compress true if the output file must be compressed
+   */
+  public SequenceWriter(final File outputFile, final boolean compress)
+      throws IOException {
+
+    this(outputFile, compress, false);
+  }
+
+  /**
+   * Public constructor.
+   * @param outputFile The output file
+   * @param compress true if the output file must be compressed
+   * @param container true if the output file is an oligonucleotides
+   *          container file
+   */
+  public SequenceWriter(final File outputFile, final boolean compress,
+      final boolean container) throws IOException {
+
+    this.outputFile = outputFile;
+
+    // Remove the table of contents of a previous container file
+    final File tocFile = OligoContainer.getTocFile(outputFile);
+    if (tocFile.exists())
+      tocFile.delete();
+
+    if (container)
+      this.container = new OligoContainer();
+
+    // Remove the index of a previous compressed file
+    final File indexFile = BgzfIndex.getIndexFile(outputFile);
+    if (indexFile.exists())
+      indexFile.delete();
+
+    if (compress) {
+
+      if (outputFile.exists())
+        outputFile.delete();
+
+      this.bgzf =
+          new BgzfOutputStream(new FileOutputStream(outputFile), Settings
+              .getMaxThreads(), Deflater.DEFAULT_COMPRESSION, '>');
+    } else
+      this.writer = FileUtils.createBufferedWriter(outputFile);
   }
 
 }
@@ -0,0 +1,354 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+package fr.ens.transcriptome.teolenn.sequence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class define a reader for the UCSC .2bit genome files. The records of
+ * the chromosomes are memory mapped when first used, so any chromosome can be
+ * read without reading the others.
+ * @author Laurent Jourdren
+ */
+public class TwoBitGenomeReader implements GenomeReader {
+
+  /** Signature of the .2bit files. */
+  private static final int SIGNATURE = 0x1A412743;
+
+  /** Bases coded on 2 bits in .2bit files. */
+  private static final char[] BASES = {'T', 'C', 'A', 'G'};
+
+  private final File file;
+  private final RandomAccessFile raf;
+  private final FileChannel channel;
+  private final ByteOrder order;
+
+  private final List<String> names = new ArrayList<String>();
+  private final Map<String, Long> offsets = new HashMap<String, Long>();
+  private final Map<String, TwoBitChromosome> chromosomes =
+      new HashMap<String, TwoBitChromosome>();
+
+  /**
+   * This class define a chromosome of a .2bit file.
+   */
+  private static final class TwoBitChromosome {
+
+    private int length;
+    private int[] nBlockStarts;
+    private int[] nBlockEnds;
+    private int[] maskBlockStarts;
+    private int[] maskBlockEnds;
+    private ByteBuffer bases;
+  }
+
+  /**
+   * Get the names of the chromosomes of the genome, in the order of the file.
+   * @return an unmodifiable list with the names of the chromosomes
+   */
+  public List<String> getChromosomesNames() {
+
+    return Collections.unmodifiableList(this.names);
+  }
+
+  /**
+   * Get the length of a chromosome.
+   * @param chromosome name of the chromosome
+   * @return the length of the chromosome
+   * @throws IOException if the chromosome does not exist
+   */
+  public int getChromosomeLength(final String chromosome) throws IOException {
+
+    return getChromosome(chromosome).length;
+  }
+
+  /**
+   * Get a sub sequence of a chromosome.
+   * @param chromosome name of the chromosome
+   * @param start start of the sub sequence (0 based)
+   * @param length length of the sub sequence
+   * @return a String with the sub sequence
+   * @throws IOException if an error occurs while reading the sequence
+   */
+  public String getSequence(final String chromosome, final int start,
+      final int length) throws IOException {
+
+    final TwoBitChromosome chr = getChromosome(chromosome);
+
+    if (start < 0 || length < 0 || start + length > chr.length)
+      throw new IndexOutOfBoundsException("Invalid sub sequence: "
+          + chromosome + ":" + start + "," + length);
+
+    final char[] result = new char[length];
+    final ByteBuffer bases = chr.bases;
+    final int end = start + length;
+
+    for (int i = start; i < end; i++) {
+
+      final int b = bases.get(i >> 2) & 0xff;
+      result[i - start] = BASES[(b >> ((3 - (i & 3)) << 1)) & 3];
+    }
+
+    // Set the N blocks
+    final int[] nStarts = chr.nBlockStarts;
+    for (int i = findBlock(chr.nBlockEnds, start); i < nStarts.length
+        && nStarts[i] < end; i++) {
+
+      final int s = Math.max(start, nStarts[i]);
+      final int e = Math.min(end, chr.nBlockEnds[i]);
+
+      for (int j = s; j < e; j++)
+        result[j - start] = 'N';
+    }
+
+    // Set the soft masked blocks
+    final int[] maskStarts = chr.maskBlockStarts;
+    for (int i = findBlock(chr.maskBlockEnds, start); i < maskStarts.length
+        && maskStarts[i] < end; i++) {
+
+      final int s = Math.max(start, maskStarts[i]);
+      final int e = Math.min(end, chr.maskBlockEnds[i]);
+
+      for (int j = s; j < e; j++)
+        result[j - start] = Character.toLowerCase(result[j - start]);
+    }
+
+    return new String(result);
+  }
+
+  /**
+   * Close the reader.
+   * @throws IOException if an error occurs while closing the reader
+   */
+  public void close() throws IOException {
+
+    this.raf.close();
+  }
+
+  //
+  // Internal methods
+  //
+
+  /**
+   * Get the index of the first block that ends after a position.
+   * @param ends ends of the blocks (sorted)
+   * @param pos the position
+   * @return the index of the first block that ends after the position
+   */
+  private static final int findBlock(final int[] ends, final int pos) {
+
+    int low = 0;
+    int high = ends.length;
+
+    while (low < high) {
+
+      final int mid = (low + high) >>> 1;
+
+      if (ends[mid] <= pos)
+        low = mid + 1;
+      else
+        high = mid;
+    }
+
+    return low;
+  }
+
+  /**
+   * Read a part of the file.
+   * @param position position in the file
+   * @param size size of the part to read
+   * @return a ByteBuffer with the content of the part of the file
+   * @throws IOException if an error occurs while reading the file
+   */
+  private ByteBuffer read(final long position, final int size)
+      throws IOException {
+
+    final ByteBuffer result = ByteBuffer.allocate(size);
+    result.order(this.order);
+
+    while (result.hasRemaining())
+      if (this.channel.read(result, position + result.position()) == -1)
+        throw new IOException("Unexpected end of file: " + this.file);
+
+    result.flip();
+
+    return result;
+  }
+
+  /**
+   * Read the blocks of a chromosome.
+   * @param position position of the blocks in the file
+   * @param starts array for the starts of the blocks
+   * @param ends array for the ends of the blocks
+   * @throws IOException if an error occurs while reading the file
+   */
+  private void readBlocks(final long position, final int[] starts,
+      final int[] ends) throws IOException {
+
+    final int count = starts.length;
+    final ByteBuffer bb = read(position, count * 8);
+
+    for (int i = 0; i < count; i++)
+      starts[i] = bb.getInt();
+    for (int i = 0; i < count; i++)
+      ends[i] = starts[i] + bb.getInt();
+  }
+
+  /**
+   * Get a chromosome.
+   * @param chromosome name of the chromosome
+   * @return a TwoBitChromosome object
+   * @throws IOException if an error occurs while reading the chromosome
+   */
+  private TwoBitChromosome getChromosome(final String chromosome)
+      throws IOException {
+
+    synchronized (this.chromosomes) {
+
+      TwoBitChromosome result = this.chromosomes.get(chromosome);
+      if (result != null)
+        return result;
+
+      final Long offset = this.offsets.get(chromosome);
+      if (offset == null)
+        throw new IOException("Unknown chromosome in "
+            + this.file + ": " + chromosome);
+
+      result = new TwoBitChromosome();
+      long pos = offset;
+
+      ByteBuffer bb = read(pos, 8);
+      result.length = bb.getInt();
+      final int nBlockCount = bb.getInt();
+      pos += 8;
+
+      result.nBlockStarts = new int[nBlockCount];
+      result.nBlockEnds = new int[nBlockCount];
+      readBlocks(pos, result.nBlockStarts, result.nBlockEnds);
+      pos += nBlockCount * 8L;
+
+      bb = read(pos, 4);
+      final int maskBlockCount = bb.getInt();
+      pos += 4;
+
+      result.maskBlockStarts = new int[maskBlockCount];
+      result.maskBlockEnds = new int[maskBlockCount];
+      readBlocks(pos, result.maskBlockStarts, result.maskBlockEnds);
+      pos += maskBlockCount * 8L + 4;
+
+      result.bases =
+          this.channel.map(FileChannel.MapMode.READ_ONLY, pos,
+              (result.length + 3) / 4);
+
+      this.chromosomes.put(chromosome, result);
+
+      return result;
+    }
+  }
+
+  /**
+   * Read the header and the index of the file.
+   * @throws IOException if an error occurs while reading the file
+   */
+  private void readIndex() throws IOException {
+
+    final ByteBuffer header = read(0, 16);
+    final int version = header.getInt(4);
+    final int count = header.getInt(8);
+
+    if (version != 0 && version != 1)
+      throw new IOException("Unsupported .2bit file version ("
+          + version + "): " + this.file);
+
+    final int offsetSize = version == 0 ? 4 : 8;
+
+    // Map the index, its size is at most count * (1 + 255 + offsetSize)
+    final ByteBuffer bb =
+        this.channel.map(FileChannel.MapMode.READ_ONLY, 16, Math.min(
+            this.channel.size() - 16, (long) count * (1 + 255 + offsetSize)));
+    bb.order(this.order);
+
+    final byte[] nameBytes = new byte[255];
+
+    for (int i = 0; i < count; i++) {
+
+      final int nameSize = bb.get() & 0xff;
+      bb.get(nameBytes, 0, nameSize);
+
+      final String name = new String(nameBytes, 0, nameSize, "ISO-8859-1");
+      final long offset =
+          version == 0 ? bb.getInt() & 0xffffffffL : bb.getLong();
+
+      this.names.add(name);
+      this.offsets.put(name, offset);
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Public constructor.
+   * @param file the .2bit file
+   * @throws IOException if an error occurs while reading the index of the file
+   */
+  public TwoBitGenomeReader(final File file) throws IOException {
+
+    if (file == null)
+      throw new NullPointerException("The file is null");
+
+    this.file = file;
+    this.raf = new RandomAccessFile(file, "r");
+    this.channel = this.raf.getChannel();
+
+    final ByteBuffer bb = ByteBuffer.allocate(4);
+    this.channel.read(bb, 0);
+
+    if (bb.order(ByteOrder.LITTLE_ENDIAN).getInt(0) == SIGNATURE)
+      this.order = ByteOrder.LITTLE_ENDIAN;
+    else if (bb.order(ByteOrder.BIG_ENDIAN).getInt(0) == SIGNATURE)
+      this.order = ByteOrder.BIG_ENDIAN;
+    else {
+      this.raf.close();
+      throw new IOException("Invalid .2bit file: " + file);
+    }
+
+    try {
+      readIndex();
+    } catch (IOException e) {
+      this.raf.close();
+      throw e;
+    }
+  }
+
+}
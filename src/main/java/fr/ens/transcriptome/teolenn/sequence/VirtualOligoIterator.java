@@ -0,0 +1,126 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+package fr.ens.transcriptome.teolenn.sequence;
+
+/**
+ * This class define an iterator over the oligonucleotides of a chromosome.
+ * The oligonucleotides are not read from a file but generated on demand from
+ * the sequence of the chromosome, in the same order and with the same names
+ * as the oligonucleotides files created by SequenceCore.fastaOverlap().
+ * @author Laurent Jourdren
+ */
+public class VirtualOligoIterator extends SequenceIterator {
+
+  private final String chromosome;
+  private final CharSequence chromosomeSequence;
+  private final int chromosomeLength;
+  private final int minSize;
+  private final int maxSize;
+  private final int firstPosition;
+
+  private final StringBuilder sb = new StringBuilder();
+
+  private int index;
+  private int size;
+
+  /**
+   * Test if the chromosome contains another oligonucleotide.
+   * @return true if the chromosome contains another oligonucleotide
+   */
+  public boolean hasNext() {
+
+    return this.index + this.size <= this.chromosomeLength;
+  }
+
+  /**
+   * Get the next oligonucleotide and set the sequence fields.
+   * @return the sequence of the next oligonucleotide
+   */
+  public String next() {
+
+    if (!hasNext())
+      return null;
+
+    final int start = this.index;
+    final int end = start + this.size;
+
+    final StringBuilder sb = this.sb;
+    sb.setLength(0);
+    sb.append(this.chromosome);
+    sb.append(":subseq(");
+    sb.append(start + this.firstPosition);
+    sb.append(',');
+    sb.append(this.size);
+    sb.append(')');
+
+    final String result =
+        this.chromosomeSequence.subSequence(start, end).toString();
+
+    setName(sb.toString());
+    setSequence(result);
+
+    // Compute the position of the next oligonucleotide
+    if (this.size < this.maxSize && end < this.chromosomeLength)
+      this.size++;
+    else {
+      this.index++;
+      this.size = this.minSize;
+    }
+
+    return result;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Public constructor.
+   * @param chromosome name of the chromosome
+   * @param chromosomeSequence sequence of the chromosome
+   * @param oligoLength length of the oligonucleotides
+   * @param oligoIntervalLength interval of length of the oligonucleotides
+   * @param start1 true if the first position on sequence is 1
+   */
+  public VirtualOligoIterator(final String chromosome,
+      final CharSequence chromosomeSequence, final int oligoLength,
+      final int oligoIntervalLength, final boolean start1) {
+
+    if (chromosome == null)
+      throw new NullPointerException("Chromosome is null");
+
+    if (chromosomeSequence == null)
+      throw new NullPointerException("Chromosome sequence is null");
+
+    this.chromosome = chromosome;
+    this.chromosomeSequence = chromosomeSequence;
+    this.chromosomeLength = chromosomeSequence.length();
+    this.minSize =
+        oligoLength - oligoIntervalLength <= 0 ? 1 : oligoLength
+            - oligoIntervalLength;
+    this.maxSize = oligoLength + oligoIntervalLength;
+    this.firstPosition = start1 ? 1 : 0;
+    this.size = this.minSize;
+  }
+
+}
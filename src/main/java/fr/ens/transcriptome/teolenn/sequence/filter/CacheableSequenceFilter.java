@@ -0,0 +1,45 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+package fr.ens.transcriptome.teolenn.sequence.filter;
+
+/**
+ * This interface define a sequence filter which verdicts can be saved and
+ * reused by a later design on the same oligonucleotides. The filter must not
+ * modify the sequences and its verdicts must only depend on the
+ * oligonucleotides and on the parameters described by its cache key. For the
+ * same reasons, the filter can be executed in any order with the other
+ * cacheable filters.
+ * @author Laurent Jourdren
+ */
+public interface CacheableSequenceFilter extends SequenceFilter {
+
+  /**
+   * Get the key of the verdicts of the filter. The key must contain the name
+   * of the filter and all the parameters and input files that change its
+   * verdicts. This method is called before the initialization of the filter.
+   * @return a String with the key or null if the verdicts of the filter can't
+   *         be cached
+   */
+  String getCacheKey();
+
+}
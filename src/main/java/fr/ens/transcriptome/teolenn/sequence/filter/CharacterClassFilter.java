@@ -0,0 +1,241 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+
+package fr.ens.transcriptome.teolenn.sequence.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import fr.ens.transcriptome.teolenn.TeolennException;
+import fr.ens.transcriptome.teolenn.sequence.Sequence;
+
+/**
+ * This class define a filter that execute many character class filters in a
+ * single pass over the sequence. The actions of the filters are merged in a
+ * table of 256 entries, so each character of the sequence is rejected or
+ * rewritten with a single lookup. A new sequence string is only created if a
+ * character has been rewritten.
+ * @author Laurent Jourdren
+ */
+public final class CharacterClassFilter implements ThreadSafeSequenceFilter,
+    CacheableSequenceFilter {
+
+  private static final int TABLE_SIZE = 256;
+  private static final int REJECT = CharacterClassSequenceFilter.REJECT;
+
+  private final CharacterClassSequenceFilter[] filters;
+  private final int[] table = new int[TABLE_SIZE];
+  private final String name;
+
+  /**
+   * Get the name of the filter.
+   * @return the name of the module
+   */
+  public String getName() {
+
+    return this.name;
+  }
+
+  /**
+   * Get the description of the filter.
+   * @return the description of the filter
+   */
+  public String getDescription() {
+
+    return "Execute the character class filters " + this.name + " at once";
+  }
+
+  /**
+   * Tests whether or not the specified sequence should be accepted. The
+   * characters of the sequence are rewritten if needed.
+   * @param sequence Sequence to test
+   * @return true if and only if the specified sequence should be accepted
+   */
+  public boolean accept(final Sequence sequence) {
+
+    if (sequence == null)
+      return false;
+
+    final String s = sequence.getSequence();
+
+    if (s == null)
+      return true;
+
+    final int[] table = this.table;
+    final int len = s.length();
+    char[] rewritten = null;
+
+    for (int i = 0; i < len; i++) {
+
+      final char c = s.charAt(i);
+      final int r = c < TABLE_SIZE ? table[c] : classify(c);
+
+      if (r == REJECT)
+        return false;
+
+      if (r != c) {
+
+        if (rewritten == null)
+          rewritten = s.toCharArray();
+        rewritten[i] = (char) r;
+      }
+    }
+
+    if (rewritten != null)
+      sequence.setSequence(new String(rewritten));
+
+    return true;
+  }
+
+  /**
+   * Get the merged action of the filters for a character.
+   * @param c the character
+   * @return the character to write or REJECT
+   */
+  private int classify(final char c) {
+
+    char result = c;
+
+    for (CharacterClassSequenceFilter f : this.filters) {
+
+      final int r = f.classify(result);
+
+      if (r == REJECT)
+        return REJECT;
+
+      result = (char) r;
+    }
+
+    return result;
+  }
+
+  /**
+   * Set a parameter for the filter.
+   * @param key key for the parameter
+   * @param value value of the parameter
+   */
+  public void setInitParameter(final String key, final String value) {
+  }
+
+  /**
+   * Get the key of the verdicts of the filter.
+   * @return the keys of the filters merged or null if a filter merged can't
+   *         be cached
+   */
+  public String getCacheKey() {
+
+    final StringBuilder sb = new StringBuilder();
+
+    for (CharacterClassSequenceFilter f : this.filters) {
+
+      if (!(f instanceof CacheableSequenceFilter))
+        return null;
+
+      final String key = ((CacheableSequenceFilter) f).getCacheKey();
+      if (key == null)
+        return null;
+
+      if (sb.length() > 0)
+        sb.append('+');
+      sb.append(key);
+    }
+
+    return sb.toString();
+  }
+
+  /**
+   * Run the initialization phase of the parameter. The filters merged are
+   * initialized.
+   * @throws TeolennException if an error occurs while initializing a filter
+   */
+  public void init() throws TeolennException {
+
+    for (CharacterClassSequenceFilter f : this.filters)
+      f.init();
+  }
+
+  /**
+   * Replace the consecutive character class filters of a list of filters by
+   * CharacterClassFilter objects. The order of the other filters is kept.
+   * @param filters filters to merge
+   * @return a new list of filters
+   */
+  public static List<SequenceFilter> merge(final List<SequenceFilter> filters) {
+
+    final List<SequenceFilter> result = new ArrayList<SequenceFilter>();
+    final List<CharacterClassSequenceFilter> run =
+        new ArrayList<CharacterClassSequenceFilter>();
+
+    for (SequenceFilter sf : filters) {
+
+      if (sf instanceof CharacterClassSequenceFilter) {
+        run.add((CharacterClassSequenceFilter) sf);
+        continue;
+      }
+
+      if (run.size() > 0) {
+        result.add(new CharacterClassFilter(run));
+        run.clear();
+      }
+
+      result.add(sf);
+    }
+
+    if (run.size() > 0)
+      result.add(new CharacterClassFilter(run));
+
+    return result;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Public constructor.
+   * @param filters character class filters to execute, in the order of
+   *          execution
+   */
+  public CharacterClassFilter(
+      final List<CharacterClassSequenceFilter> filters) {
+
+    if (filters == null)
+      throw new NullPointerException("The list of filters is null");
+
+    this.filters =
+        filters.toArray(new CharacterClassSequenceFilter[filters.size()]);
+
+    final StringBuilder sb = new StringBuilder();
+    for (CharacterClassSequenceFilter f : this.filters) {
+
+      if (sb.length() > 0)
+        sb.append('+');
+      sb.append(f.getName());
+    }
+    this.name = sb.toString();
+
+    for (int i = 0; i < TABLE_SIZE; i++)
+      this.table[i] = classify((char) i);
+  }
+
+}
@@ -0,0 +1,47 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+
+package fr.ens.transcriptome.teolenn.sequence.filter;
+
+/**
+ * This interface define a sequence filter that only depends on the characters
+ * of the sequence, each character being tested (or rewritten) independently
+ * of the others. The consecutive character class filters of a design are
+ * executed in a single pass over the sequence by a CharacterClassFilter.
+ * @author Laurent Jourdren
+ */
+public interface CharacterClassSequenceFilter extends ThreadSafeSequenceFilter {
+
+  /** Value returned by classify() for the rejected characters. */
+  int REJECT = -1;
+
+  /**
+   * Get the action of the filter for a character.
+   * @param c the character to test
+   * @return REJECT if the sequences that contain the character must be
+   *         rejected, otherwise the character to write in place of c (c if
+   *         the character is unchanged)
+   */
+  int classify(char c);
+
+}
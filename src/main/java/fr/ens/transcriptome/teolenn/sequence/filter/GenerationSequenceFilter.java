@@ -0,0 +1,47 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+package fr.ens.transcriptome.teolenn.sequence.filter;
+
+/**
+ * This interface define a sequence filter that can be applied while the
+ * oligonucleotides are created, so the rejected oligonucleotides are never
+ * written. The result of the filter must only depend on the position and on
+ * the original sequence of the oligonucleotide, and the filter must be thread
+ * safe.
+ * @author Laurent Jourdren
+ */
+public interface GenerationSequenceFilter extends ThreadSafeSequenceFilter {
+
+  /**
+   * Tests whether or not an oligonucleotide should be accepted.
+   * @param chromosome name of the chromosome of the oligonucleotide
+   * @param start start position of the oligonucleotide in the chromosome
+   * @param text text that contains the sequence of the oligonucleotide
+   * @param textStart position of the oligonucleotide in the text
+   * @param length length of the oligonucleotide
+   * @return true if and only if the oligonucleotide should be accepted
+   */
+  boolean accept(String chromosome, int start, CharSequence text,
+      int textStart, int length);
+
+}
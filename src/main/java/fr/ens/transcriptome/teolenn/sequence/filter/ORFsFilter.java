@@ -22,8 +22,10 @@
 
 package fr.ens.transcriptome.teolenn.sequence.filter;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Properties;
+import java.util.TreeSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -35,7 +37,8 @@ import fr.ens.transcriptome.teolenn.sequence.Sequence;
  * This class test if a sequence in an ORF.
  * @author Laurent Jourdren
  */
-public class ORFsFilter implements SequenceFilter {
+public class ORFsFilter implements GenerationSequenceFilter,
+    CacheableSequenceFilter {
 
   /** Sequence filter name. */
   public static final String SEQUENCE_FILTER_NAME = "orfs";
@@ -87,7 +90,52 @@ public class ORFsFilter implements SequenceFilter {
     final int start = Integer.parseInt(m.group(2));
     final int len = Integer.parseInt(m.group(3));
 
-    return this.ressource.getORF(chr, start, len) != null;
+    // getORF() depends on the previous calls and can not be used by many
+    // threads
+    return this.ressource.isOligoInsideORF(chr, start, len);
+  }
+
+  /**
+   * Tests whether or not an oligonucleotide should be accepted.
+   * @param chromosome name of the chromosome of the oligonucleotide
+   * @param start start position of the oligonucleotide in the chromosome
+   * @param text text that contains the sequence of the oligonucleotide
+   * @param textStart position of the oligonucleotide in the text
+   * @param length length of the oligonucleotide
+   * @return true if and only if the oligonucleotide should be accepted
+   */
+  public boolean accept(final String chromosome, final int start,
+      final CharSequence text, final int textStart, final int length) {
+
+    return this.ressource.isOligoInsideORF(chromosome, start, length);
+  }
+
+  /**
+   * Get the key of the verdicts of the filter.
+   * @return the name and the parameters of the filter with the fingerprint of
+   *         the files used as parameters
+   */
+  public String getCacheKey() {
+
+    final StringBuilder sb = new StringBuilder(SEQUENCE_FILTER_NAME);
+
+    for (String key : new TreeSet<String>(this.ressourceProperties
+        .stringPropertyNames())) {
+
+      final String value = this.ressourceProperties.getProperty(key);
+      sb.append(',');
+      sb.append(key);
+      sb.append('=');
+      sb.append(value);
+
+      final File f = new File(value);
+      if (f.isFile()) {
+        sb.append(',');
+        sb.append(VerdictCache.getFingerprint(f));
+      }
+    }
+
+    return sb.toString();
   }
 
   /**
@@ -27,7 +27,10 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -37,18 +40,39 @@ import fr.ens.transcriptome.teolenn.DesignConstants;
 import fr.ens.transcriptome.teolenn.Globals;
 import fr.ens.transcriptome.teolenn.Settings;
 import fr.ens.transcriptome.teolenn.TeolennException;
+import fr.ens.transcriptome.teolenn.resource.ChromosomeNameResource;
+import fr.ens.transcriptome.teolenn.resource.OligoSequenceResource;
+import fr.ens.transcriptome.teolenn.resource.PackedGenomeResource;
+import fr.ens.transcriptome.teolenn.sequence.GenomeReaderFactory;
+import fr.ens.transcriptome.teolenn.sequence.KmerIndex;
+import fr.ens.transcriptome.teolenn.sequence.OligoContainer;
+import fr.ens.transcriptome.teolenn.sequence.PackedChromosome;
 import fr.ens.transcriptome.teolenn.sequence.Sequence;
+import fr.ens.transcriptome.teolenn.sequence.SequenceIterator;
+import fr.ens.transcriptome.teolenn.sequence.SequenceWriter;
 import fr.ens.transcriptome.teolenn.util.BinariesInstaller;
 import fr.ens.transcriptome.teolenn.util.FileUtils;
 import fr.ens.transcriptome.teolenn.util.ProcessUtils;
 import fr.ens.transcriptome.teolenn.util.StringUtils;
+import fr.ens.transcriptome.teolenn.util.UnSynchronizedBufferedWriter;
 
 /**
- * This class test the redundancy of oligos using SOAP.
+ * This class test the redundancy of oligos. By default, the oligos are
+ * searched in an index of the k-mers of the packed genome, an oligo is
+ * accepted if it is found exactly once in the genome, at its own position on
+ * the forward strand. With the "mismatches" parameter, the oligos that have
+ * other occurrences with at most this number of mismatches on both strands
+ * are rejected too. The "engine" parameter set to "soap" allow to use SOAP
+ * instead of the index. When SOAP is used, its results are converted once in
+ * a binary index file with a section for each chromosome (see
+ * SoapResultIndex). The index is mapped only once and shared by all the
+ * threads, so the filter can be used to filter many chromosomes at the same
+ * time.
  * @author Stéphane Le Crom
  * @author Laurent Jourdren
  */
-public class RedundancyFilter implements SequenceFilter {
+public class RedundancyFilter implements ThreadSafeSequenceFilter,
+    CacheableSequenceFilter {
 
   private static Logger logger = Logger.getLogger(Globals.APP_NAME);
 
@@ -56,6 +80,16 @@ public class RedundancyFilter implements SequenceFilter {
   public static final String SEQUENCE_FILTER_NAME = "redundancy";
 
   private static final String SOAP_ARGS = " -s 12 -v 5 -r 1 -w 1000 -p ";
+  private static final String SOAP_EXTENSION = ".sop";
+  private static final String SOAP_INDEX_FILE = "soap-results.sopidx";
+  private static final String SOAP_REFERENCE_FILE = "soap-reference.fasta";
+  private static final int FASTA_LINE_LENGTH = 70;
+  private static final int FASTA_LINES_READ = 10000;
+
+  private static final String ENGINE_PARAMETER_NAME = "engine";
+  private static final String MISMATCHES_PARAMETER_NAME = "mismatches";
+  private static final String SOAP_ENGINE = "soap";
+  private static final String INDEX_ENGINE = "index";
 
   // Parameters
   private File referenceFile;
@@ -63,14 +97,23 @@ public class RedundancyFilter implements SequenceFilter {
 
   private File oligosDir;
   private File tempDir;
-  private BufferedReader br;
-  private String currentChr;
   private int startOffset;
   private String extensionFilter;
-
-  // Soap results for current chromosome (Len,pos,Len)
-  private final Map<Integer, Map<Integer, Integer>> currentChrResult =
-      new HashMap<Integer, Map<Integer, Integer>>();
+  private boolean virtualOligos;
+  private boolean compressedOligos;
+  private boolean containerOligos;
+  private int firstPosition;
+  private int oligoLength;
+  private int oligoIntervalLength;
+  private boolean soapEngine;
+  private int mismatches;
+
+  // Index of the genome, kept for the next initializations
+  private KmerIndex index;
+
+  // Soap results loaded by each thread
+  private SoapResultIndex results;
+  private Map<String, Integer> sections;
 
   // Regex to retrieve chromosome, startPos and len of a sequence from its name
   private static final Pattern seqNamePattern =
@@ -91,7 +134,7 @@ public class RedundancyFilter implements SequenceFilter {
    */
   public String getDescription() {
 
-    return "Filter the redundancy of oligos using SOAP";
+    return "Filter the redundancy of oligos";
   }
 
   /**
@@ -116,108 +159,168 @@ public class RedundancyFilter implements SequenceFilter {
     final int startPos = Integer.parseInt(m.group(2));
     final int len = Integer.parseInt(m.group(3));
 
-    try {
+    if (this.index != null)
+      return this.index.isUnique(chr, startPos - this.firstPosition, sequence
+          .getSequence(), this.mismatches);
 
-      // If the sequence to test is not on the current chromosome, load results
-      // for the sequence chromosome
-      if (!chr.equals(this.currentChr)) {
-        parseResultFile(chr);
-        this.currentChr = chr;
-      }
+    // Return true if the oligo match only once at its position on its whole
+    // length
+    final Integer section = this.sections.get(chr);
 
-      // Get the length of the match of the soap result
-      final Map<Integer, Integer> map = this.currentChrResult.get(len);
+    return section != null
+        && this.results.isAccepted(section, startPos - this.firstPosition,
+            len);
+  }
 
-      if (map == null)
-        return false;
-      final Integer result = map.get(startPos);
+  /**
+   * Convert the ".sop" files in an index file, with a section for each
+   * chromosome in the order of the chromosome names resource. The ".sop" files
+   * are removed after the conversion. The index is written in the file once
+   * all the results are converted, then it is mapped again read only to be
+   * shared by the threads.
+   * @param resultFiles the ".sop" files
+   * @throws IOException if an error occurs while converting the files
+   * @throws TeolennException if the chromosome names resource is not
+   *           available
+   */
+  private void indexResultFiles(final List<File> resultFiles)
+      throws IOException, TeolennException {
 
-      // Return true if the result exists and if its length is equals to the
-      // oligo length
-      return result != null && result == len;
+    final ChromosomeNameResource cnr = ChromosomeNameResource.getRessource();
+    final List<String> names = cnr.getChromosomesNames();
 
-    } catch (IOException e) {
-      throw new RuntimeException("Error while reading Soap results: "
-          + e.getMessage());
+    final int minLength =
+        Math.max(1, this.oligoLength - this.oligoIntervalLength);
+    final int maxLength = this.oligoLength + this.oligoIntervalLength;
+
+    final Map<String, Integer> sections = new HashMap<String, Integer>();
+    final int[] positions = new int[names.size()];
+
+    for (int i = 0; i < positions.length; i++) {
+
+      final String chr = names.get(i);
+      sections.put(chr, i);
+      positions[i] =
+          Math.max(0, cnr.getChromosomeLength(chr) - minLength + 1);
+    }
+
+    final File file = new File(this.tempDir, SOAP_INDEX_FILE);
+    final SoapResultIndex index =
+        SoapResultIndex.create(file, positions, minLength, maxLength
+            - minLength + 1);
+
+    for (File resultFile : resultFiles) {
+
+      final BufferedReader reader = FileUtils.createBufferedReader(resultFile);
+      String line = null;
+
+      while ((line = reader.readLine()) != null)
+        parseResultLine(line, index, sections);
+
+      reader.close();
+
+      if (!Globals.DEBUG && !resultFile.delete())
+        logger.warning("Can't remove redundancy result file: "
+            + resultFile.getAbsolutePath());
     }
+
+    index.force();
+
+    this.sections = sections;
+    this.results = SoapResultIndex.load(file);
   }
 
   /**
-   * Parse a ".sop" file and store its data in memory.
-   * @param chrSequence chromosome to parse
-   * @throws IOException if an error occurs while reading soap results
+   * Parse a line of a ".sop" file and store its data in the section of its
+   * chromosome in the index.
+   * @param line line to parse
+   * @param index the index of the results
+   * @param sections the sections of the chromosomes in the index
    */
-  private final void parseResultFile(final String chrSequence)
-      throws IOException {
+  private final void parseResultLine(final String line,
+      final SoapResultIndex index, final Map<String, Integer> sections) {
 
-    if (this.br != null)
-      this.br.close();
+    final int startOffset = this.startOffset;
 
-    this.br =
-        FileUtils.createBufferedReader(new File(this.tempDir, chrSequence
-            .replace(' ', '_')
-            + ".sop"));
+    final int subSeqPos = indexOf(line, ':', 0);
+    final int commaPos = indexOf(line, ',', subSeqPos);
+    final int bracketPos = indexOf(line, ')', commaPos);
+    final int posTabSeq = indexOf(line, '\t', bracketPos);
+    final int posTabUnknown1 = indexOf(line, '\t', posTabSeq);
+    final int posTabNbMatches = indexOf(line, '\t', posTabUnknown1);
+    final int posTabUnknown2 = indexOf(line, '\t', posTabNbMatches);
+    final int posTabLen = indexOf(line, '\t', posTabUnknown2);
+    final int posTabStrand = indexOf(line, '\t', posTabLen);
+    final int posTabChr = indexOf(line, '\t', posTabStrand);
+    final int posTabMatchStart = indexOf(line, '\t', posTabChr);
+    final int posTabMatchType = indexOf(line, '\t', posTabMatchStart);
+    final int posTabNucleotideModifs = indexOf(line, '\t', posTabMatchType);
+
+    if (posTabMatchType == -1)
+      return;
+
+    final int oligoPos = parseInt(line, subSeqPos + 8, commaPos);
+    final int oligoLen = parseInt(line, commaPos + 1, bracketPos);
+    final int nbMatches = parseInt(line, posTabNbMatches + 1, posTabUnknown2);
+    final int matchLen = parseInt(line, posTabLen + 1, posTabStrand);
+    final char matchStrand = line.charAt(posTabStrand + 1);
+    final boolean sameChr =
+        posTabMatchStart - posTabChr - 1 == subSeqPos
+            && line.regionMatches(posTabChr + 1, line, 0, subSeqPos);
+    final int matchStart =
+        parseInt(line, posTabMatchStart + 1, posTabMatchType) + startOffset;
+    final int matchType =
+        parseInt(line, posTabMatchType + 1,
+            posTabNucleotideModifs == -1 ? line.length()
+                : posTabNucleotideModifs);
+
+    // add result in the index only if oligo match at the right position
+    if (nbMatches == 1
+        && matchType == 0 && matchStrand == '+' && sameChr
+        && oligoPos == matchStart) {
+
+      final Integer section = sections.get(line.substring(0, subSeqPos));
+
+      if (section != null)
+        index.setAccepted(section, oligoPos - this.firstPosition, oligoLen,
+            matchLen == oligoLen);
+    }
+  }
 
-    // Clear current results
-    this.currentChrResult.clear();
+  /**
+   * Parse a decimal integer in a part of a string without creating a new
+   * string.
+   * @param s the string
+   * @param start start of the integer in the string (inclusive)
+   * @param end end of the integer in the string (exclusive)
+   * @return the value of the integer
+   * @throws NumberFormatException if the part of the string is not an integer
+   */
+  private static final int parseInt(final String s, final int start,
+      final int end) {
 
-    final int startOffset = this.startOffset;
-    String l = null;
-
-    while ((l = br.readLine()) != null) {
-
-      final String line = l;
-
-      final int subSeqPos = indexOf(line, ':', 0);
-      final int commaPos = indexOf(line, ',', subSeqPos);
-      final int bracketPos = indexOf(line, ')', commaPos);
-      final int posTabSeq = indexOf(line, '\t', bracketPos);
-      final int posTabUnknown1 = indexOf(line, '\t', posTabSeq);
-      final int posTabNbMatches = indexOf(line, '\t', posTabUnknown1);
-      final int posTabUnknown2 = indexOf(line, '\t', posTabNbMatches);
-      final int posTabLen = indexOf(line, '\t', posTabUnknown2);
-      final int posTabStrand = indexOf(line, '\t', posTabLen);
-      final int posTabChr = indexOf(line, '\t', posTabStrand);
-      final int posTabMatchStart = indexOf(line, '\t', posTabChr);
-      final int posTabMatchType = indexOf(line, '\t', posTabMatchStart);
-      final int posTabNucleotideModifs = indexOf(line, '\t', posTabMatchType);
-
-      if (posTabMatchType == -1)
-        continue;
-
-      final String chr = line.substring(0, subSeqPos);
-      final int oligoPos =
-          Integer.parseInt(line.substring(subSeqPos + 8, commaPos));
-      final int oligoLen =
-          Integer.parseInt(line.substring(commaPos + 1, bracketPos));
-      final int nbMatches =
-          Integer.parseInt(line.substring(posTabNbMatches + 1, posTabUnknown2));
-      final int matchLen =
-          Integer.parseInt(line.substring(posTabLen + 1, posTabStrand));
-      final char matchStrand = line.charAt(posTabStrand + 1);
-      final String matchChr = line.substring(posTabChr + 1, posTabMatchStart);
-      final int matchStart =
-          Integer.parseInt(line
-              .substring(posTabMatchStart + 1, posTabMatchType))
-              + startOffset;
-      final int matchType =
-          posTabNucleotideModifs == -1 ? Integer.parseInt(line
-              .substring(posTabMatchType + 1)) : Integer.parseInt(line
-              .substring(posTabMatchType + 1, posTabNucleotideModifs));
-
-      // add result in memory only if oligo match at the right position
-      if (nbMatches == 1
-          && matchType == 0 && matchStrand == '+' && chr.equals(matchChr)
-          && oligoPos == matchStart) {
-
-        if (!this.currentChrResult.containsKey(oligoLen))
-          this.currentChrResult.put(oligoLen, new HashMap<Integer, Integer>());
-
-        this.currentChrResult.get(oligoLen).put(oligoPos, matchLen);
-      }
+    if (start >= end)
+      throw new NumberFormatException("Empty integer in: " + s);
+
+    final boolean negative = s.charAt(start) == '-';
+    int i = negative ? start + 1 : start;
+
+    if (i == end)
+      throw new NumberFormatException("Invalid integer in: " + s);
+
+    int result = 0;
+
+    for (; i < end; i++) {
+
+      final int digit = s.charAt(i) - '0';
+
+      if (digit < 0 || digit > 9)
+        throw new NumberFormatException("Invalid integer in: " + s);
 
+      result = result * 10 + digit;
     }
 
+    return negative ? -result : result;
   }
 
   private static final int indexOf(final String ch, final char character,
@@ -230,7 +333,7 @@ public class RedundancyFilter implements SequenceFilter {
     final int len = ch.length();
 
     while (++p < len)
-      if (ch.codePointAt(p) == character)
+      if (ch.charAt(p) == character)
         return p;
 
     return -1;
@@ -255,7 +358,8 @@ public class RedundancyFilter implements SequenceFilter {
       fw.append(" -o ");
       fw.append(this.tempDir.getAbsolutePath());
       fw.append(File.separatorChar);
-      fw.append(StringUtils.basename(oligosFiles[i].getName()) + ".sop");
+      fw.append(StringUtils.basename(oligosFiles[i].getName())
+          + SOAP_EXTENSION);
       fw.append(SOAP_ARGS + Settings.getMaxThreads());
       fw.append("\n");
 
@@ -264,6 +368,100 @@ public class RedundancyFilter implements SequenceFilter {
     fw.close();
   }
 
+  /**
+   * Write the virtual or compressed oligonucleotides of each chromosome (or of
+   * the container) in uncompressed fasta files of the temporary directory as
+   * Soap needs fasta files as input. The whole oligonucleotides files are
+   * written, so the disk space saved by the virtual or compressed
+   * oligonucleotides is needed in the temporary directory while Soap runs.
+   * @param suffix suffix of the input files of the chromosomes
+   * @throws IOException if an error occurs while writing the files
+   * @throws TeolennException if the resources are not available
+   */
+  private void createTemporaryOligosFiles(final String suffix)
+      throws IOException, TeolennException {
+
+    final OligoSequenceResource osr = OligoSequenceResource.getRessource();
+    final List<String> names =
+        this.containerOligos ? Collections
+            .singletonList(OligoContainer.CONTAINER_NAME)
+            : ChromosomeNameResource.getRessource().getChromosomesNames();
+
+    for (String name : names) {
+
+      final SequenceIterator si =
+          osr.getSequenceIterator(new File(this.oligosDir, name + suffix));
+      final SequenceWriter sw =
+          new SequenceWriter(new File(this.tempDir, name
+              + this.extensionFilter));
+
+      while (si.hasNext()) {
+        si.next();
+        sw.write(si);
+      }
+
+      sw.close();
+    }
+  }
+
+  /**
+   * Test if the genome file can be used as reference by Soap. Soap only reads
+   * uncompressed fasta files.
+   * @return true if the genome file is an uncompressed fasta file
+   * @throws IOException if an error occurs while reading the genome file
+   */
+  private boolean isSoapReference() throws IOException {
+
+    return !GenomeReaderFactory.isTwoBitFile(this.referenceFile)
+        && !FileUtils.isGzipFile(this.referenceFile);
+  }
+
+  /**
+   * Write the chromosomes of the packed genome in an uncompressed fasta file
+   * of the temporary directory, to use as reference by Soap when the genome
+   * file is a .2bit or a compressed file. The names of the chromosomes are the
+   * names used in the names of the oligonucleotides.
+   * @return the reference file
+   * @throws IOException if an error occurs while writing the file
+   * @throws TeolennException if the resources are not available
+   */
+  private File createTemporaryReferenceFile() throws IOException,
+      TeolennException {
+
+    final PackedGenomeResource pgr = PackedGenomeResource.getRessource();
+    final File file = new File(this.tempDir, SOAP_REFERENCE_FILE);
+    final UnSynchronizedBufferedWriter writer =
+        FileUtils.createBufferedWriter(file);
+    final int readSize = FASTA_LINE_LENGTH * FASTA_LINES_READ;
+
+    try {
+
+      for (String chr : ChromosomeNameResource.getRessource()
+          .getChromosomesNames()) {
+
+        final PackedChromosome packed = pgr.getChromosome(chr);
+        final int len = packed.length();
+
+        writer.write(">" + chr + "\n");
+
+        for (int start = 0; start < len; start += readSize) {
+
+          final String s =
+              packed.getSequence(start, Math.min(readSize, len - start));
+
+          for (int pos = 0; pos < s.length(); pos += FASTA_LINE_LENGTH) {
+            writer.write(s, pos, Math.min(FASTA_LINE_LENGTH, s.length() - pos));
+            writer.write('\n');
+          }
+        }
+      }
+    } finally {
+      writer.close();
+    }
+
+    return file;
+  }
+
   /**
    * Set a parameter for the filter.
    * @param key key for the parameter
@@ -274,6 +472,7 @@ public class RedundancyFilter implements SequenceFilter {
     if (DesignConstants.START_1_PARAMETER_NAME.equals(key)) {
 
       final boolean start1 = Boolean.parseBoolean(value);
+      this.firstPosition = start1 ? 1 : 0;
       if (start1)
         this.startOffset = 0;
       else
@@ -286,7 +485,90 @@ public class RedundancyFilter implements SequenceFilter {
       this.oligosDir = new File(value);
     else if (DesignConstants.EXTENSION_FILTER_PARAMETER_NAME.equals(key))
       this.extensionFilter = value;
+    else if (DesignConstants.VIRTUAL_OLIGOS_PARAMETER_NAME.equals(key))
+      this.virtualOligos = Boolean.parseBoolean(value);
+    else if (DesignConstants.COMPRESSED_OLIGOS_PARAMETER_NAME.equals(key))
+      this.compressedOligos = Boolean.parseBoolean(value);
+    else if (DesignConstants.CONTAINER_OLIGOS_PARAMETER_NAME.equals(key))
+      this.containerOligos = Boolean.parseBoolean(value);
+    else if (DesignConstants.OLIGO_LENGTH_PARAMETER_NAME.equals(key))
+      this.oligoLength = Integer.parseInt(value);
+    else if (DesignConstants.OLIGO_INTERVAL_LENGTH_PARAMETER_NAME.equals(key))
+      this.oligoIntervalLength = Integer.parseInt(value);
+    else if (ENGINE_PARAMETER_NAME.equals(key))
+      this.soapEngine = SOAP_ENGINE.equals(value.trim().toLowerCase());
+    else if (MISMATCHES_PARAMETER_NAME.equals(key))
+      this.mismatches = Integer.parseInt(value.trim());
+
+  }
 
+  /**
+   * Get the key of the verdicts of the filter.
+   * @return the name of the filter, the engine and its arguments and the
+   *         fingerprint of the genome file
+   */
+  public String getCacheKey() {
+
+    if (this.referenceFile == null)
+      return null;
+
+    final String engine =
+        this.soapEngine ? SOAP_ENGINE + "," + SOAP_ARGS.trim() : INDEX_ENGINE
+            + ",mismatches=" + this.mismatches;
+
+    return SEQUENCE_FILTER_NAME
+        + "," + engine + "," + VerdictCache.getFingerprint(this.referenceFile);
+  }
+
+  /**
+   * Create the index of the genome. The length of the k-mers of the index
+   * depends on the length of the genome, on the length of the shortest
+   * oligonucleotides and on the number of mismatches.
+   * @throws TeolennException if an error occurs while creating the index
+   */
+  private void initIndex() throws TeolennException {
+
+    if (this.mismatches < 0)
+      throw new TeolennException("Invalid number of mismatches: "
+          + this.mismatches);
+
+    final ChromosomeNameResource cnr = ChromosomeNameResource.getRessource();
+    final List<String> chromosomes = cnr.getChromosomesNames();
+
+    long genomeLength = 0;
+    for (String chr : chromosomes)
+      genomeLength += cnr.getChromosomeLength(chr);
+
+    final int minLength =
+        Math.max(1, this.oligoLength - this.oligoIntervalLength);
+    final int k =
+        Math.min(KmerIndex.getDefaultK(genomeLength), minLength
+            / (this.mismatches + 1));
+
+    if (k < 1)
+      throw new TeolennException("The oligonucleotides are too short for "
+          + this.mismatches + " mismatches.");
+
+    if (this.index != null && this.index.getK() == k)
+      return;
+
+    // Release the previous index before creating the new one
+    this.index = null;
+
+    final long startTime = System.currentTimeMillis();
+
+    try {
+      this.index =
+          new KmerIndex(PackedGenomeResource.getRessource(), chromosomes, k);
+    } catch (IOException e) {
+      throw new TeolennException("Unable to create the genome index: "
+          + e.getMessage(), e);
+    }
+
+    logger.info("Genome index of the "
+        + SEQUENCE_FILTER_NAME + " filter created (k=" + k + ") in "
+        + StringUtils.toTimeHumanReadable(System.currentTimeMillis()
+            - startTime));
   }
 
   /**
@@ -295,18 +577,45 @@ public class RedundancyFilter implements SequenceFilter {
    */
   public void init() throws TeolennException {
 
+    if (!this.soapEngine) {
+      initIndex();
+      return;
+    }
+
+    this.index = null;
+
     if (this.extensionFilter == null || "".equals(extensionFilter))
       throw new TeolennException("No extension filter set.");
 
-    this.oligosFiles = this.oligosDir.listFiles(new FilenameFilter() {
+    // The results of a previous initialization are obsolete
+    this.results = null;
+    this.sections = null;
 
-      public boolean accept(File dir, String name) {
+    try {
 
-        return name.endsWith(extensionFilter);
-      }
-    });
+      // Soap can't read virtual or compressed oligos
+      final boolean tempFiles = this.virtualOligos || this.compressedOligos;
 
-    try {
+      if (tempFiles)
+        logger.warning("The "
+            + SOAP_ENGINE + " engine of the " + SEQUENCE_FILTER_NAME
+            + " filter needs uncompressed oligos files, they are written in "
+            + this.tempDir);
+
+      if (this.virtualOligos)
+        createTemporaryOligosFiles(DesignConstants.PACKED_CHROMOSOME_SUFFIX);
+      else if (this.compressedOligos)
+        createTemporaryOligosFiles(this.extensionFilter);
+
+      final File dir = tempFiles ? this.tempDir : this.oligosDir;
+
+      this.oligosFiles = dir.listFiles(new FilenameFilter() {
+
+        public boolean accept(File dir, String name) {
+
+          return name.endsWith(extensionFilter);
+        }
+      });
 
       // Install soap if needed
       if (Settings.getSoapPath() == null)
@@ -316,19 +625,42 @@ public class RedundancyFilter implements SequenceFilter {
       File paramFile = File.createTempFile("soap-", ".param");
       createParameterFile(paramFile, this.oligosFiles);
 
+      // Soap can't read .2bit or compressed genome files
+      final boolean tempReference = !isSoapReference();
+      final File reference =
+          tempReference ? createTemporaryReferenceFile() : this.referenceFile;
+
       // Define the commande line
       final String cmd =
           Settings.getSoapPath()
-              + " -d " + this.referenceFile.getAbsolutePath() + " "
+              + " -d " + reference.getAbsolutePath() + " "
               + paramFile.getAbsolutePath();
 
       // Execute Soap
       ProcessUtils.exec(cmd, Settings.isStandardOutputForExecutable());
 
+      // Convert the results in an index file
+      final List<File> resultFiles = new ArrayList<File>();
+      for (File f : this.oligosFiles)
+        resultFiles.add(new File(this.tempDir, StringUtils.basename(f
+            .getName())
+            + SOAP_EXTENSION));
+
+      indexResultFiles(resultFiles);
+
       // remove the parameter file
       if (!Globals.DEBUG && !paramFile.delete())
         logger.warning("Can't remove redundancy parameter file: "
             + paramFile.getAbsolutePath());
+
+      // remove the temporary oligos files
+      if (!Globals.DEBUG && tempFiles)
+        FileUtils.removeFiles(this.oligosFiles, false);
+
+      // remove the temporary reference file
+      if (!Globals.DEBUG && tempReference && !reference.delete())
+        logger.warning("Can't remove redundancy reference file: "
+            + reference.getAbsolutePath());
     } catch (IOException e) {
 
       throw new TeolennException("Error while initialize "
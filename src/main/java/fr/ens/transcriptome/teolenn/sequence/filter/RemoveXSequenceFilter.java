@@ -29,7 +29,7 @@ import fr.ens.transcriptome.teolenn.sequence.Sequence;
  * sequences by 'N'.
  * @author Laurent Jourdren
  */
-public class RemoveXSequenceFilter implements SequenceFilter {
+public class RemoveXSequenceFilter implements CharacterClassSequenceFilter {
 
   /** Sequence filter name. */
   public static final String SEQUENCE_FILTER_NAME = "removex";
@@ -69,6 +69,16 @@ public class RemoveXSequenceFilter implements SequenceFilter {
     return true;
   }
 
+  /**
+   * Get the action of the filter for a character.
+   * @param c the character to test
+   * @return 'N' if the character is 'X', c otherwise
+   */
+  public int classify(final char c) {
+
+    return c == 'X' ? 'N' : c;
+  }
+
   /**
    * Set a parameter for the filter.
    * @param key key for the parameter
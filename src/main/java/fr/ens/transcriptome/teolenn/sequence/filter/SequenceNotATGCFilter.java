@@ -29,7 +29,8 @@ import fr.ens.transcriptome.teolenn.sequence.Sequence;
  * character than 'A','a','T','t','G','g','C','c'.
  * @author Laurent Jourdren
  */
-public class SequenceNotATGCFilter implements SequenceFilter {
+public class SequenceNotATGCFilter implements GenerationSequenceFilter,
+    CharacterClassSequenceFilter, CacheableSequenceFilter {
 
   /** Sequence filter name. */
   public static final String SEQUENCE_FILTER_NAME = "notatgc";
@@ -60,10 +61,26 @@ public class SequenceNotATGCFilter implements SequenceFilter {
   public boolean accept(final Sequence sequence) {
 
     final String s = sequence.getSequence();
-    final int len = s.length();
 
-    for (int i = 0; i < len; i++)
-      switch (s.charAt(i)) {
+    return accept(null, 0, s, 0, s.length());
+  }
+
+  /**
+   * Tests whether or not an oligonucleotide should be accepted.
+   * @param chromosome name of the chromosome of the oligonucleotide
+   * @param start start position of the oligonucleotide in the chromosome
+   * @param text text that contains the sequence of the oligonucleotide
+   * @param textStart position of the oligonucleotide in the text
+   * @param length length of the oligonucleotide
+   * @return true if and only if the oligonucleotide should be accepted
+   */
+  public boolean accept(final String chromosome, final int start,
+      final CharSequence text, final int textStart, final int length) {
+
+    final int end = textStart + length;
+
+    for (int i = textStart; i < end; i++)
+      switch (text.charAt(i)) {
 
       case 'A':
       case 'a':
@@ -82,6 +99,39 @@ public class SequenceNotATGCFilter implements SequenceFilter {
     return true;
   }
 
+  /**
+   * Get the action of the filter for a character.
+   * @param c the character to test
+   * @return REJECT if the character is not a base, c otherwise
+   */
+  public int classify(final char c) {
+
+    switch (c) {
+
+    case 'A':
+    case 'a':
+    case 'T':
+    case 't':
+    case 'G':
+    case 'g':
+    case 'C':
+    case 'c':
+      return c;
+
+    default:
+      return REJECT;
+    }
+  }
+
+  /**
+   * Get the key of the verdicts of the filter.
+   * @return the name of the filter as the filter has no parameter
+   */
+  public String getCacheKey() {
+
+    return SEQUENCE_FILTER_NAME;
+  }
+
   /**
    * Set a parameter for the filter.
    * @param key key for the parameter
@@ -22,17 +22,26 @@
 
 package fr.ens.transcriptome.teolenn.sequence.filter;
 
+import fr.ens.transcriptome.teolenn.resource.CompositionResource;
+import fr.ens.transcriptome.teolenn.resource.GapResource;
+import fr.ens.transcriptome.teolenn.resource.Resources;
+import fr.ens.transcriptome.teolenn.sequence.CompositionIndex;
+import fr.ens.transcriptome.teolenn.sequence.GapIndex;
 import fr.ens.transcriptome.teolenn.sequence.Sequence;
 
 /**
  * This class define a filter to remove all sequence that contains 'N' or 'X'.
  * @author Laurent Jourdren
  */
-public class SequenceXNFilter implements SequenceFilter {
+public class SequenceXNFilter implements GenerationSequenceFilter,
+    CharacterClassSequenceFilter, CacheableSequenceFilter {
 
   /** Sequence filter name. */
   public static final String SEQUENCE_FILTER_NAME = "sequencexn";
 
+  private CompositionResource composition;
+  private GapResource gaps;
+
   /**
    * Get the name of the filter.
    * @return the name of the module
@@ -63,6 +72,65 @@ public class SequenceXNFilter implements SequenceFilter {
     return !(s.indexOf('N') != -1 || s.indexOf('X') != -1);
   }
 
+  /**
+   * Tests whether or not an oligonucleotide should be accepted. If the
+   * composition index or the gap index of the chromosome is available, the
+   * sequence is not read.
+   * @param chromosome name of the chromosome of the oligonucleotide
+   * @param start start position of the oligonucleotide in the chromosome
+   * @param text text that contains the sequence of the oligonucleotide
+   * @param textStart position of the oligonucleotide in the text
+   * @param length length of the oligonucleotide
+   * @return true if and only if the oligonucleotide should be accepted
+   */
+  public boolean accept(final String chromosome, final int start,
+      final CharSequence text, final int textStart, final int length) {
+
+    final CompositionIndex composition =
+        this.composition == null ? null : this.composition
+            .getCompositionIndex(chromosome);
+
+    if (composition != null)
+      return composition.countGaps(start
+          - this.composition.getFirstPosition(), length) == 0;
+
+    final GapIndex index =
+        this.gaps == null ? null : this.gaps.getGapIndex(chromosome);
+
+    if (index != null)
+      return !index.overlaps(start - this.gaps.getFirstPosition(), length);
+
+    final int end = textStart + length;
+
+    for (int i = textStart; i < end; i++) {
+
+      final char c = text.charAt(i);
+      if (c == 'N' || c == 'X')
+        return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Get the action of the filter for a character.
+   * @param c the character to test
+   * @return REJECT if the character is 'N' or 'X', c otherwise
+   */
+  public int classify(final char c) {
+
+    return c == 'N' || c == 'X' ? REJECT : c;
+  }
+
+  /**
+   * Get the key of the verdicts of the filter.
+   * @return the name of the filter as the filter has no parameter
+   */
+  public String getCacheKey() {
+
+    return SEQUENCE_FILTER_NAME;
+  }
+
   /**
    * Set a parameter for the filter.
    * @param key key for the parameter
@@ -75,6 +143,14 @@ public class SequenceXNFilter implements SequenceFilter {
    * Run the initialization phase of the parameter.
    */
   public void init() {
+
+    // The indexes are only available if the packed genome has been created
+    this.composition =
+        (CompositionResource) Resources.getResources().getResource(
+            CompositionResource.RESOURCE_NAME);
+    this.gaps =
+        (GapResource) Resources.getResources().getResource(
+            GapResource.RESOURCE_NAME);
   }
 
   //
@@ -0,0 +1,313 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+package fr.ens.transcriptome.teolenn.sequence.filter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class define a binary index of the Soap results of a genome. The index
+ * is a bitset with a bit for each oligonucleotide of the genome that is set if
+ * the oligonucleotide is accepted by the redundancy filter. The bitset has a
+ * section for each chromosome, where the oligonucleotides are ordered by start
+ * position and then by length. The index of all the chromosomes is stored in a
+ * single memory mapped file, so the index is mapped only once and testing an
+ * oligonucleotide does not create any object.
+ * @author Laurent Jourdren
+ */
+public class SoapResultIndex {
+
+  private static final int MAGIC = 0x534f5032;
+  private static final int HEADER_SIZE = 16;
+  private static final int REGION_SHIFT = 30;
+  private static final int REGION_MASK = (1 << REGION_SHIFT) - 1;
+
+  private final int[] positions;
+  private final long[] offsets;
+  private final int minLength;
+  private final int lengths;
+  private final MappedByteBuffer[] regions;
+
+  /**
+   * Get the number of sections of the index.
+   * @return the number of sections
+   */
+  public int getSectionCount() {
+
+    return this.positions.length;
+  }
+
+  /**
+   * Test if an oligonucleotide is accepted.
+   * @param section section of the chromosome of the oligonucleotide
+   * @param startIndex index of the start position of the oligonucleotide (0
+   *          based)
+   * @param length length of the oligonucleotide
+   * @return true if the oligonucleotide is accepted
+   */
+  public boolean isAccepted(final int section, final int startIndex,
+      final int length) {
+
+    final long bit = getBit(section, startIndex, length);
+
+    if (bit == -1)
+      return false;
+
+    final long offset = bit >>> 3;
+
+    return (this.regions[(int) (offset >>> REGION_SHIFT)]
+        .get((int) (offset & REGION_MASK)) & (1 << (bit & 7))) != 0;
+  }
+
+  /**
+   * Set if an oligonucleotide is accepted. Oligonucleotides outside the
+   * chromosome are ignored.
+   * @param section section of the chromosome of the oligonucleotide
+   * @param startIndex index of the start position of the oligonucleotide (0
+   *          based)
+   * @param length length of the oligonucleotide
+   * @param accepted true if the oligonucleotide is accepted
+   */
+  public void setAccepted(final int section, final int startIndex,
+      final int length, final boolean accepted) {
+
+    final long bit = getBit(section, startIndex, length);
+
+    if (bit == -1)
+      return;
+
+    final long offset = bit >>> 3;
+    final ByteBuffer region = this.regions[(int) (offset >>> REGION_SHIFT)];
+    final int index = (int) (offset & REGION_MASK);
+    final int mask = 1 << (bit & 7);
+    final int value = region.get(index);
+
+    region.put(index, (byte) (accepted ? value | mask : value & ~mask));
+  }
+
+  /**
+   * Write the changes of the index in the file.
+   */
+  public void force() {
+
+    for (MappedByteBuffer region : this.regions)
+      region.force();
+  }
+
+  //
+  // Internal methods
+  //
+
+  private long getBit(final int section, final int startIndex,
+      final int length) {
+
+    final int lengthIndex = length - this.minLength;
+
+    if (section < 0
+        || section >= this.positions.length || startIndex < 0
+        || startIndex >= this.positions[section] || lengthIndex < 0
+        || lengthIndex >= this.lengths)
+      return -1;
+
+    return this.offsets[section]
+        + (long) startIndex * this.lengths + lengthIndex;
+  }
+
+  /**
+   * Get the offsets of the sections in the bitset.
+   * @param positions number of start positions of each section
+   * @param lengths number of lengths of the oligonucleotides
+   * @return an array with the offset of each section and the size of the
+   *         bitset at the end
+   */
+  private static long[] getOffsets(final int[] positions, final int lengths) {
+
+    final long[] result = new long[positions.length + 1];
+
+    for (int i = 0; i < positions.length; i++)
+      result[i + 1] = result[i] + (long) positions[i] * lengths;
+
+    return result;
+  }
+
+  private static long getDataStart(final int sections) {
+
+    return HEADER_SIZE + 4L * sections;
+  }
+
+  private static long getDataSize(final long[] offsets) {
+
+    return (offsets[offsets.length - 1] + 7) / 8;
+  }
+
+  //
+  // Static methods
+  //
+
+  /**
+   * Create a new index file where no oligonucleotide is accepted.
+   * @param file the index file
+   * @param positions number of start positions of the oligonucleotides of
+   *          each section
+   * @param minLength minimal length of the oligonucleotides
+   * @param lengths number of lengths of the oligonucleotides
+   * @return a new SoapResultIndex object
+   * @throws IOException if an error occurs while creating the file
+   */
+  public static SoapResultIndex create(final File file, final int[] positions,
+      final int minLength, final int lengths) throws IOException {
+
+    if (file == null)
+      throw new NullPointerException("The file is null");
+    if (positions == null)
+      throw new NullPointerException("The positions are null");
+
+    final long[] offsets = getOffsets(positions, lengths);
+    final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+    try {
+      raf.setLength(0);
+      raf.setLength(getDataStart(positions.length) + getDataSize(offsets));
+
+      final ByteBuffer header =
+          ByteBuffer.allocate((int) getDataStart(positions.length));
+      header.putInt(MAGIC);
+      header.putInt(minLength);
+      header.putInt(lengths);
+      header.putInt(positions.length);
+      for (int p : positions)
+        header.putInt(p);
+      header.flip();
+
+      final FileChannel channel = raf.getChannel();
+      while (header.hasRemaining())
+        channel.write(header);
+
+      return new SoapResultIndex(channel, FileChannel.MapMode.READ_WRITE,
+          positions.clone(), offsets, minLength, lengths);
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * Load an index file.
+   * @param file the index file
+   * @return a new SoapResultIndex object
+   * @throws IOException if an error occurs while reading the file or if the
+   *           file is not a valid index file
+   */
+  public static SoapResultIndex load(final File file) throws IOException {
+
+    if (file == null)
+      throw new NullPointerException("The file is null");
+
+    final RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+    try {
+
+      final long fileLength = raf.length();
+
+      if (fileLength < HEADER_SIZE || raf.readInt() != MAGIC)
+        throw new IOException("Invalid Soap result index file: " + file);
+
+      final int minLength = raf.readInt();
+      final int lengths = raf.readInt();
+      final int sections = raf.readInt();
+
+      if (lengths < 0
+          || sections < 0 || fileLength < getDataStart(sections))
+        throw new IOException("Invalid Soap result index file: " + file);
+
+      final FileChannel channel = raf.getChannel();
+      final ByteBuffer header = ByteBuffer.allocate(4 * sections);
+      while (header.hasRemaining())
+        if (channel.read(header, HEADER_SIZE + header.position()) == -1)
+          throw new IOException("Invalid Soap result index file: " + file);
+      header.flip();
+
+      final int[] positions = new int[sections];
+      for (int i = 0; i < sections; i++) {
+
+        positions[i] = header.getInt();
+        if (positions[i] < 0)
+          throw new IOException("Invalid Soap result index file: " + file);
+      }
+
+      final long[] offsets = getOffsets(positions, lengths);
+
+      if (fileLength != getDataStart(sections) + getDataSize(offsets))
+        throw new IOException("Invalid Soap result index file: " + file);
+
+      return new SoapResultIndex(channel, FileChannel.MapMode.READ_ONLY,
+          positions, offsets, minLength, lengths);
+    } finally {
+      raf.close();
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Private constructor. The channel can be closed after the call of the
+   * constructor.
+   * @param channel channel of the index file
+   * @param mode mode of the mapping of the file
+   * @param positions number of start positions of each section
+   * @param offsets offsets of the sections in the bitset
+   * @param minLength minimal length of the oligonucleotides
+   * @param lengths number of lengths of the oligonucleotides
+   * @throws IOException if an error occurs while mapping the file
+   */
+  private SoapResultIndex(final FileChannel channel,
+      final FileChannel.MapMode mode, final int[] positions,
+      final long[] offsets, final int minLength, final int lengths)
+      throws IOException {
+
+    this.positions = positions;
+    this.offsets = offsets;
+    this.minLength = minLength;
+    this.lengths = lengths;
+
+    final long dataStart = getDataStart(positions.length);
+    final long size = getDataSize(offsets);
+    final int count = (int) ((size + REGION_MASK) >>> REGION_SHIFT);
+
+    this.regions = new MappedByteBuffer[count];
+
+    for (int i = 0; i < count; i++) {
+
+      final long start = (long) i << REGION_SHIFT;
+      this.regions[i] =
+          channel.map(mode, dataStart + start, Math.min(size - start,
+              1L << REGION_SHIFT));
+    }
+  }
+
+}
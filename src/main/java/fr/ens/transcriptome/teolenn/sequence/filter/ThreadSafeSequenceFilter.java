@@ -0,0 +1,34 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+
+package fr.ens.transcriptome.teolenn.sequence.filter;
+
+/**
+ * This interface define a sequence filter that can be used by many threads at
+ * the same time. The oligonucleotides of different chromosomes are filtered
+ * concurrently, so the filter must not keep the state of a chromosome in its
+ * fields.
+ * @author Laurent Jourdren
+ */
+public interface ThreadSafeSequenceFilter extends SequenceFilter {
+}
@@ -0,0 +1,510 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+package fr.ens.transcriptome.teolenn.sequence.filter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.BitSet;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import fr.ens.transcriptome.teolenn.DesignConstants;
+import fr.ens.transcriptome.teolenn.Globals;
+import fr.ens.transcriptome.teolenn.util.StringUtils;
+
+/**
+ * This class allow to save and reuse the verdicts of the sequence filters. The
+ * verdicts of a filter on the oligonucleotides of a file are saved as a
+ * compressed bitset (the lengths of the runs of rejected and accepted
+ * oligonucleotides) in a file of the cache directory. As the oligonucleotides
+ * files are created again by each design, the verdicts are not attached to
+ * these files but to the key of the design, that contains the genome and the
+ * parameters used to create the oligonucleotides. The name of the file is the
+ * name of the oligonucleotides file and the hash of the cache key of the
+ * filter, the file also contains the whole key to check that the verdicts are
+ * up to date. As the filters stop at the first rejection, a filter is not
+ * evaluated on all the oligonucleotides, so the evaluated oligonucleotides are
+ * saved with the verdicts and the other oligonucleotides are cache misses.
+ * @author Laurent Jourdren
+ */
+public class VerdictCache {
+
+  private static Logger logger = Logger.getLogger(Globals.APP_NAME);
+
+  private static final String MAGIC = "TEOLENN_VERDICTS_3";
+  private static final String CHARSET = "UTF-8";
+
+  private final File directory;
+  private final String designKey;
+
+  /**
+   * This class define the verdicts of a filter on the oligonucleotides of a
+   * file.
+   * @author Laurent Jourdren
+   */
+  public static final class Verdicts {
+
+    private final BitSet accepted = new BitSet();
+    private final BitSet evaluated = new BitSet();
+    private int count = -1;
+    private boolean modified;
+
+    /**
+     * Get the number of oligonucleotides of the file of the verdicts.
+     * @return the number of oligonucleotides or -1 if the verdicts have not
+     *         been read from the cache
+     */
+    public int getCount() {
+
+      return this.count;
+    }
+
+    /**
+     * Test if the filter has been evaluated on an oligonucleotide.
+     * @param index index of the oligonucleotide
+     * @return true if the verdict of the filter is known
+     */
+    public boolean isEvaluated(final int index) {
+
+      return this.evaluated.get(index);
+    }
+
+    /**
+     * Test if an oligonucleotide has been accepted by the filter.
+     * @param index index of the oligonucleotide
+     * @return true if the oligonucleotide has been evaluated and accepted
+     */
+    public boolean isAccepted(final int index) {
+
+      return this.accepted.get(index);
+    }
+
+    /**
+     * Set the verdict of the filter on an oligonucleotide.
+     * @param index index of the oligonucleotide
+     * @param accepted true if the oligonucleotide is accepted
+     */
+    public void set(final int index, final boolean accepted) {
+
+      this.evaluated.set(index);
+      this.accepted.set(index, accepted);
+      this.modified = true;
+    }
+
+    /**
+     * Test if new verdicts have been set since the verdicts have been loaded.
+     * @return true if the verdicts must be saved
+     */
+    public boolean isModified() {
+
+      return this.modified;
+    }
+
+    /**
+     * Get the oligonucleotides rejected by the filter.
+     * @return a new BitSet with the evaluated and not accepted
+     *         oligonucleotides
+     */
+    public BitSet getRejected() {
+
+      final BitSet result = (BitSet) this.evaluated.clone();
+      result.andNot(this.accepted);
+
+      return result;
+    }
+
+    /**
+     * Test if the filter has been evaluated on all the oligonucleotides that
+     * have not been rejected by another filter.
+     * @param rejected the oligonucleotides rejected by the filters
+     * @param count number of oligonucleotides in the file
+     * @return true if no other verdict of the filter is needed
+     */
+    public boolean isComplete(final BitSet rejected, final int count) {
+
+      final BitSet known = (BitSet) this.evaluated.clone();
+      known.or(rejected);
+
+      return known.nextClearBit(0) >= count;
+    }
+  }
+
+  /**
+   * Get the cache keys of filters. Only the filters that are executed after
+   * cacheable filters can be cached, as the other filters may modify the
+   * sequences. No filter can be cached without design key.
+   * @param filters filters in the order of execution
+   * @return an array with the key of each filter or null if the verdicts of
+   *         the filter can't be cached
+   */
+  public String[] getKeys(final SequenceFilter[] filters) {
+
+    final String[] result = new String[filters.length];
+
+    if (this.designKey == null)
+      return result;
+
+    for (int i = 0; i < filters.length; i++) {
+
+      if (!(filters[i] instanceof CacheableSequenceFilter))
+        break;
+
+      final String key = ((CacheableSequenceFilter) filters[i]).getCacheKey();
+      if (key == null)
+        break;
+
+      result[i] = key + '\t' + this.designKey;
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the filters which verdicts are in the cache for all the files. The
+   * verdicts of a filter are complete if the filter has been evaluated on all
+   * the oligonucleotides that are not rejected by the cached verdicts of the
+   * other filters.
+   * @param oligoFiles the oligonucleotides files
+   * @param keys the cache keys of the filters
+   * @return an array with true for the filters that don't need to be executed
+   */
+  public boolean[] getCachedFilters(final List<File> oligoFiles,
+      final String[] keys) {
+
+    final int n = keys.length;
+    final boolean[] result = new boolean[n];
+    boolean any = false;
+
+    for (int i = 0; i < n; i++) {
+      result[i] = keys[i] != null;
+      any |= result[i];
+    }
+
+    for (File oligoFile : oligoFiles) {
+
+      if (!any)
+        break;
+
+      final Verdicts[] verdicts = new Verdicts[n];
+      final BitSet rejected = new BitSet();
+      int count = -1;
+
+      for (int i = 0; i < n; i++)
+        if (keys[i] != null) {
+          verdicts[i] = load(oligoFile, keys[i]);
+          rejected.or(verdicts[i].getRejected());
+          count = Math.max(count, verdicts[i].getCount());
+        }
+
+      any = false;
+      for (int i = 0; i < n; i++)
+        if (result[i]) {
+          result[i] =
+              count != -1 && verdicts[i].isComplete(rejected, count);
+          any |= result[i];
+        }
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the file of the verdicts of a filter.
+   * @param oligoFile the oligonucleotides file
+   * @param key the cache key of the filter
+   * @return the file of the verdicts
+   */
+  public File getFile(final File oligoFile, final String key) {
+
+    return new File(this.directory, StringUtils.basename(oligoFile.getName())
+        + "." + hash(key) + DesignConstants.VERDICTS_SUFFIX);
+  }
+
+  /**
+   * Load the verdicts of a filter.
+   * @param oligoFile the oligonucleotides file
+   * @param key the cache key of the filter
+   * @return the verdicts of the filter, without any evaluated
+   *         oligonucleotide if the verdicts are not available
+   */
+  public Verdicts load(final File oligoFile, final String key) {
+
+    if (key == null)
+      return new Verdicts();
+
+    try {
+
+      final DataInputStream dis = open(oligoFile, key);
+      if (dis == null)
+        return new Verdicts();
+
+      try {
+
+        final int count = dis.readInt();
+        final Verdicts result = new Verdicts();
+        result.count = count;
+
+        readRuns(dis, result.accepted, count);
+        readRuns(dis, result.evaluated, count);
+
+        return result;
+
+      } finally {
+        dis.close();
+      }
+
+    } catch (IOException e) {
+
+      logger.warning("Unable to read the verdicts file "
+          + getFile(oligoFile, key).getName() + ": " + e.getMessage());
+      return new Verdicts();
+    }
+  }
+
+  /**
+   * Save the verdicts of a filter. The verdicts are first written in a
+   * temporary file, so an incomplete file is never used.
+   * @param oligoFile the oligonucleotides file
+   * @param key the cache key of the filter
+   * @param verdicts the verdicts of the filter
+   * @param count number of oligonucleotides in the file
+   * @throws IOException if an error occurs while writing the file
+   */
+  public void save(final File oligoFile, final String key,
+      final Verdicts verdicts, final int count) throws IOException {
+
+    if (!this.directory.isDirectory() && !this.directory.mkdirs())
+      throw new IOException("Unable to create the verdicts directory: "
+          + this.directory);
+
+    final File file = getFile(oligoFile, key);
+    final File tmpFile = new File(file.getPath() + ".tmp");
+
+    final DataOutputStream dos =
+        new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(
+            new FileOutputStream(tmpFile))));
+
+    try {
+
+      dos.writeUTF(MAGIC);
+      writeString(dos, key);
+      dos.writeInt(count);
+
+      writeRuns(dos, verdicts.accepted, count);
+      writeRuns(dos, verdicts.evaluated, count);
+
+    } finally {
+      dos.close();
+    }
+
+    if (file.exists() && !file.delete())
+      throw new IOException("Unable to remove the verdicts file: " + file);
+
+    if (!tmpFile.renameTo(file))
+      throw new IOException("Unable to rename the verdicts file: " + tmpFile);
+  }
+
+  //
+  // Internal methods
+  //
+
+  /**
+   * Open a verdicts file and check its header.
+   * @param oligoFile the oligonucleotides file
+   * @param key the cache key of the filter
+   * @return a DataInputStream positioned after the header or null if the file
+   *         doesn't exists or is obsolete
+   * @throws IOException if an error occurs while reading the file
+   */
+  private DataInputStream open(final File oligoFile, final String key)
+      throws IOException {
+
+    final File file = getFile(oligoFile, key);
+
+    if (!file.isFile())
+      return null;
+
+    final DataInputStream dis =
+        new DataInputStream(new GZIPInputStream(new BufferedInputStream(
+            new FileInputStream(file))));
+
+    try {
+
+      if (MAGIC.equals(dis.readUTF()) && key.equals(readString(dis)))
+        return dis;
+
+    } catch (EOFException e) {
+      // An incomplete file is obsolete
+    }
+
+    dis.close();
+    return null;
+  }
+
+  /**
+   * Write a bitset as the lengths of its runs, the first run contains cleared
+   * bits.
+   * @param dos output stream
+   * @param bs the bitset
+   * @param count number of bits to write
+   * @throws IOException if an error occurs while writing the bitset
+   */
+  private static void writeRuns(final DataOutputStream dos, final BitSet bs,
+      final int count) throws IOException {
+
+    int pos = 0;
+    boolean set = false;
+
+    while (pos < count) {
+
+      int end = set ? bs.nextClearBit(pos) : bs.nextSetBit(pos);
+      if (end == -1 || end > count)
+        end = count;
+
+      dos.writeInt(end - pos);
+      pos = end;
+      set = !set;
+    }
+  }
+
+  /**
+   * Read a bitset written as the lengths of its runs.
+   * @param dis input stream
+   * @param bs the bitset to fill
+   * @param count number of bits to read
+   * @throws IOException if an error occurs while reading the bitset
+   */
+  private static void readRuns(final DataInputStream dis, final BitSet bs,
+      final int count) throws IOException {
+
+    int pos = 0;
+    boolean set = false;
+
+    while (pos < count) {
+
+      final int run = dis.readInt();
+      if (run < 0 || run > count - pos)
+        throw new IOException("Invalid run length: " + run);
+
+      if (set)
+        bs.set(pos, pos + run);
+
+      pos += run;
+      set = !set;
+    }
+  }
+
+  private static void writeString(final DataOutputStream dos, final String s)
+      throws IOException {
+
+    final byte[] bytes = s.getBytes(CHARSET);
+    dos.writeInt(bytes.length);
+    dos.write(bytes);
+  }
+
+  private static String readString(final DataInputStream dis)
+      throws IOException {
+
+    final int len = dis.readInt();
+    if (len < 0)
+      throw new IOException("Invalid string length: " + len);
+
+    final byte[] bytes = new byte[len];
+    dis.readFully(bytes);
+
+    return new String(bytes, CHARSET);
+  }
+
+  /**
+   * Get the fingerprint of a file.
+   * @param file the file
+   * @return a String with the path, the length and the date of the file
+   */
+  public static String getFingerprint(final File file) {
+
+    if (file == null)
+      return "none";
+
+    return file.getAbsolutePath()
+        + ',' + file.length() + ',' + file.lastModified();
+  }
+
+  /**
+   * Get the hash of a key.
+   * @param key the key
+   * @return an hexadecimal String with the MD5 hash of the key
+   */
+  private static String hash(final String key) {
+
+    try {
+
+      final byte[] digest =
+          MessageDigest.getInstance("MD5").digest(key.getBytes(CHARSET));
+      final StringBuilder sb = new StringBuilder();
+
+      for (byte b : digest) {
+        sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+        sb.append(Character.forDigit(b & 0xf, 16));
+      }
+
+      return sb.toString();
+
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Public constructor.
+   * @param directory directory of the verdicts files
+   * @param designKey key of the genome and of the parameters used to create
+   *          the oligonucleotides, null if the verdicts can't be cached
+   */
+  public VerdictCache(final File directory, final String designKey) {
+
+    if (directory == null)
+      throw new NullPointerException("The directory is null");
+
+    this.directory = directory;
+    this.designKey = designKey;
+  }
+
+}
@@ -0,0 +1,257 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+package fr.ens.transcriptome.teolenn.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Logger;
+
+import fr.ens.transcriptome.teolenn.Globals;
+
+/**
+ * This class compute the order of execution of a chain of filters. During the
+ * first part of the run, the cost and the reject rate of each filter are
+ * sampled, then the filters are sorted by increasing cost per rejected entry,
+ * which minimize the expected cost of the chain for independent filters. Only
+ * the consecutive filters that can be reordered are sorted, the other filters
+ * keep their position, so the accepted entries are the same in any order.
+ * @author Laurent Jourdren
+ */
+public final class AdaptiveFilterOrder {
+
+  private static Logger logger = Logger.getLogger(Globals.APP_NAME);
+
+  private static final int SAMPLE_SIZE = 10000;
+
+  private final String description;
+  private final String[] names;
+  private final boolean[] reorderable;
+
+  private final long[] times;
+  private final int[] evaluations;
+  private final int[] rejects;
+  private int samples;
+
+  private volatile int[] order;
+
+  /**
+   * Test if the costs of the filters are being sampled. While sampling, the
+   * filters that can be reordered must be evaluated on all the entries and the
+   * other filters only on the entries accepted by the previous filters.
+   * @return true if the order of the filters is not yet computed
+   */
+  public boolean isSampling() {
+
+    return this.order == null;
+  }
+
+  /**
+   * Test if a filter can be reordered.
+   * @param index index of the filter in the original order
+   * @return true if the filter can be reordered
+   */
+  public boolean isReorderable(final int index) {
+
+    return this.reorderable[index];
+  }
+
+  /**
+   * Get the order of the filters.
+   * @return an array with the indexes of the filters in the order of execution
+   *         or null if the costs of the filters are being sampled
+   */
+  public int[] getOrder() {
+
+    return this.order;
+  }
+
+  /**
+   * Add the result of the execution of the filters on an entry.
+   * @param times time of the execution of each filter in nanoseconds or -1 if
+   *          the filter has not been evaluated
+   * @param accepted result of each filter
+   */
+  public synchronized void addSample(final long[] times,
+      final boolean[] accepted) {
+
+    if (this.order != null)
+      return;
+
+    for (int i = 0; i < this.names.length; i++)
+      if (times[i] >= 0) {
+
+        this.times[i] += times[i];
+        this.evaluations[i]++;
+        if (!accepted[i])
+          this.rejects[i]++;
+      }
+
+    if (++this.samples == SAMPLE_SIZE)
+      this.order = computeOrder();
+  }
+
+  /**
+   * Tell that all the entries have been filtered. If there was too few entries
+   * to end the sampling, the order is computed with the available samples, so
+   * the order of the filters is always logged.
+   */
+  public synchronized void end() {
+
+    if (this.order == null)
+      this.order = computeOrder();
+  }
+
+  //
+  // Internal methods
+  //
+
+  /**
+   * Get the rank of a filter in its run of filters that can be reordered.
+   * @param index index of the filter
+   * @return the mean cost of the filter per rejected entry
+   */
+  private double getRank(final int index) {
+
+    if (this.rejects[index] == 0)
+      return Double.POSITIVE_INFINITY;
+
+    return (double) this.times[index] / (double) this.rejects[index];
+  }
+
+  private int[] computeOrder() {
+
+    final int n = this.names.length;
+    final int[] result = new int[n];
+    final List<Integer> run = new ArrayList<Integer>();
+
+    // The sort is stable, the filters with the same rank keep their order
+    final Comparator<Integer> comparator = new Comparator<Integer>() {
+
+      public int compare(final Integer i1, final Integer i2) {
+
+        return Double.compare(getRank(i1), getRank(i2));
+      }
+    };
+
+    int i = 0;
+    while (i < n) {
+
+      if (!this.reorderable[i]) {
+        result[i] = i;
+        i++;
+        continue;
+      }
+
+      run.clear();
+      while (i < n && this.reorderable[i])
+        run.add(i++);
+
+      Collections.sort(run, comparator);
+
+      final int runStart = i - run.size();
+      for (int j = 0; j < run.size(); j++)
+        result[runStart + j] = run.get(j);
+    }
+
+    log(result);
+
+    return result;
+  }
+
+  /**
+   * Log the order of the filters with their cost and their reject rate.
+   * @param order order of the filters
+   */
+  private void log(final int[] order) {
+
+    final StringBuilder sb = new StringBuilder();
+
+    for (int j = 0; j < order.length; j++) {
+
+      final int f = order[j];
+      final int evals = this.evaluations[f];
+
+      if (j > 0)
+        sb.append(", ");
+      sb.append(this.names[f]);
+
+      if (evals == 0)
+        sb.append(" (not sampled)");
+      else {
+        sb.append(" (");
+        sb.append(this.times[f] / evals);
+        sb.append(" ns, ");
+        sb.append(this.rejects[f] * 100 / evals);
+        sb.append("% rejected)");
+      }
+    }
+
+    logger.info("Order of the " + this.description + ": " + sb);
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Public constructor.
+   * @param description description of the chain of filters for the log
+   * @param names names of the filters
+   * @param reorderable filters that can be reordered
+   */
+  public AdaptiveFilterOrder(final String description, final String[] names,
+      final boolean[] reorderable) {
+
+    if (names == null)
+      throw new NullPointerException("The names of the filters are null");
+    if (reorderable == null || reorderable.length != names.length)
+      throw new IllegalArgumentException("Invalid reorderable filters");
+
+    this.description = description;
+    this.names = names;
+    this.reorderable = reorderable;
+
+    final int n = names.length;
+    this.times = new long[n];
+    this.evaluations = new int[n];
+    this.rejects = new int[n];
+
+    // Nothing to sort
+    int count = 0;
+    for (boolean r : reorderable)
+      if (r)
+        count++;
+
+    if (count < 2) {
+      final int[] identity = new int[n];
+      for (int i = 0; i < n; i++)
+        identity[i] = i;
+      this.order = identity;
+      if (n > 0)
+        log(identity);
+    }
+  }
+
+}
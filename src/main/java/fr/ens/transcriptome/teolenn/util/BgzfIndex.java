@@ -0,0 +1,293 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+package fr.ens.transcriptome.teolenn.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * This class define the index of the blocks of a BGZF file. For each block,
+ * the index contains the offset of the block in the file, the offset of its
+ * data in the uncompressed data and the ordinal of the first record that
+ * starts in the block or after. The index is stored in a file with the same
+ * name as the BGZF file and the ".bgzi" extension.
+ * @author Laurent Jourdren
+ */
+public class BgzfIndex {
+
+  /** Extension of the index files. */
+  public static final String INDEX_EXTENSION = ".bgzi";
+
+  private static final int MAGIC = 0x42475A49;
+
+  private long[] compressedOffsets = new long[16];
+  private long[] uncompressedOffsets = new long[16];
+  private long[] firstRecords = new long[16];
+  private int count;
+  private long uncompressedSize;
+  private long recordCount;
+
+  /**
+   * Get the number of blocks.
+   * @return the number of blocks
+   */
+  public int getBlockCount() {
+
+    return this.count;
+  }
+
+  /**
+   * Get the offset of a block in the BGZF file.
+   * @param block index of the block
+   * @return the offset of the block
+   */
+  public long getCompressedOffset(final int block) {
+
+    return this.compressedOffsets[block];
+  }
+
+  /**
+   * Get the offset of the data of a block in the uncompressed data.
+   * @param block index of the block
+   * @return the offset of the data of the block
+   */
+  public long getUncompressedOffset(final int block) {
+
+    return this.uncompressedOffsets[block];
+  }
+
+  /**
+   * Get the ordinal of the first record that starts in a block or after.
+   * @param block index of the block
+   * @return the ordinal of the first record (0 based)
+   */
+  public long getFirstRecord(final int block) {
+
+    return this.firstRecords[block];
+  }
+
+  /**
+   * Get the size of the uncompressed data.
+   * @return the size of the uncompressed data
+   */
+  public long getUncompressedSize() {
+
+    return this.uncompressedSize;
+  }
+
+  /**
+   * Get the number of records.
+   * @return the number of records
+   */
+  public long getRecordCount() {
+
+    return this.recordCount;
+  }
+
+  /**
+   * Find the block that contains a position of the uncompressed data.
+   * @param offset the position in the uncompressed data
+   * @return the index of the block or -1 if the position is outside the data
+   */
+  public int findBlock(final long offset) {
+
+    if (offset < 0 || offset >= this.uncompressedSize)
+      return -1;
+
+    return lastLowerOrEqual(this.uncompressedOffsets, offset);
+  }
+
+  /**
+   * Find the block where a record starts.
+   * @param record the ordinal of the record (0 based)
+   * @return the index of the block or -1 if the record does not exist
+   */
+  public int findRecordBlock(final long record) {
+
+    if (record < 0 || record >= this.recordCount)
+      return -1;
+
+    return lastLowerOrEqual(this.firstRecords, record);
+  }
+
+  /**
+   * Add a block to the index. The blocks must be added in the order of the
+   * file.
+   * @param compressedOffset offset of the block in the file
+   * @param dataLength length of the uncompressed data of the block
+   * @param records number of records that start in the block
+   */
+  public void addBlock(final long compressedOffset, final int dataLength,
+      final int records) {
+
+    if (this.count == this.compressedOffsets.length) {
+
+      final int newLength = this.count * 2;
+      this.compressedOffsets = Arrays.copyOf(this.compressedOffsets, newLength);
+      this.uncompressedOffsets =
+          Arrays.copyOf(this.uncompressedOffsets, newLength);
+      this.firstRecords = Arrays.copyOf(this.firstRecords, newLength);
+    }
+
+    this.compressedOffsets[this.count] = compressedOffset;
+    this.uncompressedOffsets[this.count] = this.uncompressedSize;
+    this.firstRecords[this.count] = this.recordCount;
+    this.count++;
+
+    this.uncompressedSize += dataLength;
+    this.recordCount += records;
+  }
+
+  /**
+   * Append the blocks of the index of a BGZF file concatenated after the file
+   * of this index.
+   * @param index index to append
+   * @param compressedShift size of the file of this index
+   */
+  public void append(final BgzfIndex index, final long compressedShift) {
+
+    for (int i = 0; i < index.count; i++) {
+
+      final long nextData =
+          i + 1 < index.count
+              ? index.uncompressedOffsets[i + 1] : index.uncompressedSize;
+      final long nextRecord =
+          i + 1 < index.count ? index.firstRecords[i + 1] : index.recordCount;
+
+      addBlock(compressedShift + index.compressedOffsets[i],
+          (int) (nextData - index.uncompressedOffsets[i]),
+          (int) (nextRecord - index.firstRecords[i]));
+    }
+  }
+
+  /**
+   * Write the index.
+   * @param file the output file
+   * @throws IOException if an error occurs while writing the index
+   */
+  public void write(final File file) throws IOException {
+
+    final DataOutputStream dos =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+            file)));
+
+    try {
+      dos.writeInt(MAGIC);
+      dos.writeInt(this.count);
+      dos.writeLong(this.uncompressedSize);
+      dos.writeLong(this.recordCount);
+
+      for (int i = 0; i < this.count; i++) {
+        dos.writeLong(this.compressedOffsets[i]);
+        dos.writeLong(this.uncompressedOffsets[i]);
+        dos.writeLong(this.firstRecords[i]);
+      }
+    } finally {
+      dos.close();
+    }
+  }
+
+  //
+  // Internal methods
+  //
+
+  private int lastLowerOrEqual(final long[] values, final long value) {
+
+    int low = 0;
+    int high = this.count - 1;
+
+    while (low < high) {
+
+      final int mid = (low + high + 1) >>> 1;
+
+      if (values[mid] <= value)
+        low = mid;
+      else
+        high = mid - 1;
+    }
+
+    return low;
+  }
+
+  //
+  // Static methods
+  //
+
+  /**
+   * Get the index file of a BGZF file.
+   * @param file the BGZF file
+   * @return the index file
+   */
+  public static File getIndexFile(final File file) {
+
+    return new File(file.getPath() + INDEX_EXTENSION);
+  }
+
+  /**
+   * Load an index.
+   * @param file the index file
+   * @return a new BgzfIndex object
+   * @throws IOException if an error occurs while reading the index
+   */
+  public static BgzfIndex load(final File file) throws IOException {
+
+    if (file == null)
+      throw new NullPointerException("The file is null");
+
+    final DataInputStream dis =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+    try {
+      if (dis.readInt() != MAGIC)
+        throw new IOException("Invalid BGZF index file: " + file);
+
+      final BgzfIndex result = new BgzfIndex();
+      final int n = dis.readInt();
+
+      result.count = n;
+      result.uncompressedSize = dis.readLong();
+      result.recordCount = dis.readLong();
+      result.compressedOffsets = new long[Math.max(1, n)];
+      result.uncompressedOffsets = new long[Math.max(1, n)];
+      result.firstRecords = new long[Math.max(1, n)];
+
+      for (int i = 0; i < n; i++) {
+        result.compressedOffsets[i] = dis.readLong();
+        result.uncompressedOffsets[i] = dis.readLong();
+        result.firstRecords[i] = dis.readLong();
+      }
+
+      return result;
+    } finally {
+      dis.close();
+    }
+  }
+
+}
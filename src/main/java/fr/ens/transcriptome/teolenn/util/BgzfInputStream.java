@@ -0,0 +1,167 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+package fr.ens.transcriptome.teolenn.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * This class define an InputStream that read BGZF files. The blocks are read
+ * ahead and decompressed in parallel, and their data are returned in the order
+ * of the file.
+ * @author Laurent Jourdren
+ */
+public class BgzfInputStream extends InputStream {
+
+  private final InputStream in;
+  private final ExecutorService pool;
+  private final int readAhead;
+  private final LinkedList<Future<byte[]>> pending =
+      new LinkedList<Future<byte[]>>();
+  private final byte[] header = new byte[12];
+  private boolean eof;
+
+  private byte[] buffer = new byte[0];
+  private int pos;
+
+  @Override
+  public int read() throws IOException {
+
+    if (this.pos == this.buffer.length && !nextBlock())
+      return -1;
+
+    return this.buffer[this.pos++] & 0xff;
+  }
+
+  @Override
+  public int read(final byte[] b, final int off, final int len)
+      throws IOException {
+
+    if (len == 0)
+      return 0;
+
+    if (this.pos == this.buffer.length && !nextBlock())
+      return -1;
+
+    final int n = Math.min(len, this.buffer.length - this.pos);
+    System.arraycopy(this.buffer, this.pos, b, off, n);
+    this.pos += n;
+
+    return n;
+  }
+
+  @Override
+  public int available() throws IOException {
+
+    return this.buffer.length - this.pos;
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    for (Future<byte[]> f : this.pending)
+      f.cancel(false);
+    this.pending.clear();
+
+    this.in.close();
+  }
+
+  //
+  // Internal methods
+  //
+
+  /**
+   * Get the next non empty block.
+   * @return false if the end of the stream has been reached
+   * @throws IOException if an error occurs while reading the block
+   */
+  private boolean nextBlock() throws IOException {
+
+    do {
+
+      fill();
+
+      if (this.pending.isEmpty())
+        return false;
+
+      try {
+        this.buffer = this.pending.removeFirst().get();
+      } catch (InterruptedException e) {
+        throw new IOException("Interrupted while decompressing BGZF block");
+      } catch (ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof IOException)
+          throw (IOException) cause;
+        throw new IOException("Error while decompressing BGZF block: "
+            + cause);
+      }
+      this.pos = 0;
+
+    } while (this.buffer.length == 0);
+
+    return true;
+  }
+
+  /**
+   * Read blocks and submit them for decompression.
+   * @throws IOException if an error occurs while reading the blocks
+   */
+  private void fill() throws IOException {
+
+    while (!this.eof && this.pending.size() < this.readAhead) {
+
+      final byte[] block = BgzfUtils.readBlock(this.in, this.header);
+
+      if (block == null)
+        this.eof = true;
+      else
+        this.pending.add(this.pool.submit(BgzfUtils.createInflateTask(block)));
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Public constructor.
+   * @param in input stream to read
+   * @param threads number of threads to use to decompress the blocks
+   */
+  public BgzfInputStream(final InputStream in, final int threads) {
+
+    if (in == null)
+      throw new NullPointerException("The input stream is null");
+
+    final int t = Math.max(1, threads);
+
+    this.in = in;
+    this.pool = BgzfUtils.getThreadPool(t);
+    this.readAhead = t * 4;
+  }
+
+}
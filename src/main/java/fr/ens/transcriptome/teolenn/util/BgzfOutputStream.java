@@ -0,0 +1,239 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+package fr.ens.transcriptome.teolenn.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+/**
+ * This class define an OutputStream that write BGZF files. The blocks are
+ * compressed in parallel and written in order. As BGZF files are gzip files,
+ * the files can be read by any gzip reader. If a record start byte is set,
+ * the index of the blocks is built while writing the file.
+ * @author Laurent Jourdren
+ */
+public class BgzfOutputStream extends OutputStream {
+
+  private final OutputStream out;
+  private final ExecutorService pool;
+  private final int maxPending;
+  private final int level;
+  private final LinkedList<Future<byte[]>> pending =
+      new LinkedList<Future<byte[]>>();
+  private final int recordStart;
+  private final BgzfIndex index;
+  private final LinkedList<int[]> pendingSizes = new LinkedList<int[]>();
+  private long written;
+
+  private byte[] buffer = new byte[BgzfUtils.MAX_DATA_SIZE];
+  private int count;
+  private boolean closed;
+
+  @Override
+  public void write(final int b) throws IOException {
+
+    if (this.count == this.buffer.length)
+      submitBlock();
+
+    this.buffer[this.count++] = (byte) b;
+  }
+
+  @Override
+  public void write(final byte[] b, final int off, final int len)
+      throws IOException {
+
+    int o = off;
+    int l = len;
+
+    while (l > 0) {
+
+      if (this.count == this.buffer.length)
+        submitBlock();
+
+      final int n = Math.min(l, this.buffer.length - this.count);
+      System.arraycopy(b, o, this.buffer, this.count, n);
+      this.count += n;
+      o += n;
+      l -= n;
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+
+    submitBlock();
+
+    while (!this.pending.isEmpty())
+      writeFirstBlock();
+
+    this.out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    if (this.closed)
+      return;
+
+    flush();
+    this.out.write(BgzfUtils.EOF_BLOCK);
+    this.written += BgzfUtils.EOF_BLOCK.length;
+    this.out.close();
+    this.closed = true;
+  }
+
+  /**
+   * Get the index of the blocks written.
+   * @return the index of the blocks or null if no record start byte has been
+   *         set
+   */
+  public BgzfIndex getIndex() {
+
+    return this.index;
+  }
+
+  /**
+   * Get the number of bytes written in the underlying stream.
+   * @return the number of bytes written
+   */
+  public long getWrittenBytes() {
+
+    return this.written;
+  }
+
+  //
+  // Internal methods
+  //
+
+  /**
+   * Submit the current buffer for compression.
+   * @throws IOException if an error occurs while writing the blocks
+   */
+  private void submitBlock() throws IOException {
+
+    if (this.count == 0)
+      return;
+
+    this.pending.add(this.pool.submit(BgzfUtils.createDeflateTask(this.buffer,
+        this.count, this.level)));
+
+    if (this.index != null) {
+
+      final byte[] b = this.buffer;
+      final byte rs = (byte) this.recordStart;
+      int records = 0;
+
+      for (int i = 0; i < this.count; i++)
+        if (b[i] == rs)
+          records++;
+
+      this.pendingSizes.add(new int[] {this.count, records});
+    }
+
+    this.buffer = new byte[BgzfUtils.MAX_DATA_SIZE];
+    this.count = 0;
+
+    while (this.pending.size() > this.maxPending)
+      writeFirstBlock();
+  }
+
+  /**
+   * Write the first pending block.
+   * @throws IOException if an error occurs while writing the block
+   */
+  private void writeFirstBlock() throws IOException {
+
+    try {
+      final byte[] block = this.pending.removeFirst().get();
+
+      if (this.index != null) {
+        final int[] sizes = this.pendingSizes.removeFirst();
+        this.index.addBlock(this.written, sizes[0], sizes[1]);
+      }
+
+      this.out.write(block);
+      this.written += block.length;
+    } catch (InterruptedException e) {
+      throw new IOException("Interrupted while compressing BGZF block");
+    } catch (ExecutionException e) {
+      throw new IOException("Error while compressing BGZF block: "
+          + e.getCause());
+    }
+  }
+
+  //
+  // Constructors
+  //
+
+  /**
+   * Public constructor.
+   * @param out output stream to write
+   * @param threads number of threads to use to compress the blocks
+   */
+  public BgzfOutputStream(final OutputStream out, final int threads) {
+
+    this(out, threads, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * Public constructor.
+   * @param out output stream to write
+   * @param threads number of threads to use to compress the blocks
+   * @param level compression level
+   */
+  public BgzfOutputStream(final OutputStream out, final int threads,
+      final int level) {
+
+    this(out, threads, level, -1);
+  }
+
+  /**
+   * Public constructor.
+   * @param out output stream to write
+   * @param threads number of threads to use to compress the blocks
+   * @param level compression level
+   * @param recordStart the byte that starts the records of the data (-1 if
+   *          the index of the blocks must not be built)
+   */
+  public BgzfOutputStream(final OutputStream out, final int threads,
+      final int level, final int recordStart) {
+
+    if (out == null)
+      throw new NullPointerException("The output stream is null");
+
+    final int t = Math.max(1, threads);
+
+    this.out = out;
+    this.pool = BgzfUtils.getThreadPool(t);
+    this.maxPending = t * 4;
+    this.level = level;
+    this.recordStart = recordStart;
+    this.index = recordStart < 0 ? null : new BgzfIndex();
+  }
+
+}
@@ -0,0 +1,168 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+package fr.ens.transcriptome.teolenn.util;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class allow to read the uncompressed data of an indexed BGZF file at
+ * any position. Only the blocks that contain the data are decompressed and
+ * the last block decompressed is kept, so consecutive reads in the same block
+ * are fast.
+ * @author Laurent Jourdren
+ */
+public class BgzfRandomAccessFile {
+
+  /** Number of bytes read to get the size of a block. */
+  private static final int BLOCK_HEADER_SIZE = 18;
+
+  private final File file;
+  private final FileChannel channel;
+  private final BgzfIndex index;
+
+  private int currentBlock = -1;
+  private byte[] data;
+
+  /**
+   * Get the index of the file.
+   * @return the index of the file
+   */
+  public BgzfIndex getIndex() {
+
+    return this.index;
+  }
+
+  /**
+   * Read uncompressed data.
+   * @param offset position of the data in the uncompressed data
+   * @param b the output array
+   * @param off offset in the output array
+   * @param len number of bytes to read
+   * @return the number of bytes read (lower than len if the end of the data
+   *         has been reached)
+   * @throws IOException if an error occurs while reading the data
+   */
+  public int read(final long offset, final byte[] b, final int off,
+      final int len) throws IOException {
+
+    int count = 0;
+
+    while (count < len) {
+
+      final long pos = offset + count;
+      final int block = this.index.findBlock(pos);
+
+      if (block == -1)
+        break;
+
+      if (block != this.currentBlock) {
+        this.data = readBlock(block);
+        this.currentBlock = block;
+      }
+
+      final int start = (int) (pos - this.index.getUncompressedOffset(block));
+      final int n = Math.min(len - count, this.data.length - start);
+
+      // Empty block
+      if (n <= 0)
+        break;
+
+      System.arraycopy(this.data, start, b, off + count, n);
+      count += n;
+    }
+
+    return count;
+  }
+
+  /**
+   * Close the file.
+   * @throws IOException if an error occurs while closing the file
+   */
+  public void close() throws IOException {
+
+    this.channel.close();
+  }
+
+  //
+  // Internal methods
+  //
+
+  /**
+   * Read and decompress a block.
+   * @param block index of the block
+   * @return the uncompressed data of the block
+   * @throws IOException if an error occurs while reading the block
+   */
+  private byte[] readBlock(final int block) throws IOException {
+
+    final long pos = this.index.getCompressedOffset(block);
+
+    final ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+    readFully(header, pos);
+
+    final int size =
+        BgzfUtils.getBlockSize(header.array(), BLOCK_HEADER_SIZE);
+
+    if (size < BLOCK_HEADER_SIZE)
+      throw new IOException("Invalid BGZF block in " + this.file);
+
+    final ByteBuffer bb = ByteBuffer.allocate(size);
+    readFully(bb, pos);
+
+    return BgzfUtils.inflateBlock(bb.array(), size);
+  }
+
+  private void readFully(final ByteBuffer bb, final long position)
+      throws IOException {
+
+    while (bb.hasRemaining())
+      if (this.channel.read(bb, position + bb.position()) == -1)
+        throw new EOFException("Truncated BGZF file: " + this.file);
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Public constructor. The index of the file must exist.
+   * @param file the BGZF file to read
+   * @throws IOException if an error occurs while opening the file or its
+   *           index
+   */
+  public BgzfRandomAccessFile(final File file) throws IOException {
+
+    if (file == null)
+      throw new NullPointerException("The file is null");
+
+    this.file = file;
+    this.index = BgzfIndex.load(BgzfIndex.getIndexFile(file));
+    this.channel = new FileInputStream(file).getChannel();
+  }
+
+}
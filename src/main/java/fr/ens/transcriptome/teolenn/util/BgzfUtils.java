@@ -0,0 +1,376 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+package fr.ens.transcriptome.teolenn.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * This class contains utility methods for the BGZF format. A BGZF file is a
+ * gzip file made of independent gzip members (blocks) of at most 64KB, so the
+ * blocks can be compressed and decompressed in parallel.
+ * @author Laurent Jourdren
+ */
+public class BgzfUtils {
+
+  /** Maximal size of a compressed block. */
+  public static final int MAX_BLOCK_SIZE = 65536;
+
+  /** Maximal size of the uncompressed data of a block. */
+  public static final int MAX_DATA_SIZE = 65280;
+
+  /** Size of the header of the blocks written by this class. */
+  private static final int HEADER_SIZE = 18;
+
+  /** Size of the footer of the blocks (CRC32 and uncompressed size). */
+  private static final int FOOTER_SIZE = 8;
+
+  /** Size of the fixed part of a gzip header. */
+  private static final int GZIP_HEADER_SIZE = 12;
+
+  /** The empty block that ends the BGZF files. */
+  static final byte[] EOF_BLOCK =
+      {0x1f, (byte) 0x8b, 0x08, 0x04, 0x00, 0x00, 0x00, 0x00, 0x00,
+          (byte) 0xff, 0x06, 0x00, 0x42, 0x43, 0x02, 0x00, 0x1b, 0x00, 0x03,
+          0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00};
+
+  private static ThreadPoolExecutor threadpool;
+  private static int maxThreads;
+
+  private static class BgzfThreadFactory implements ThreadFactory {
+
+    public Thread newThread(final Runnable r) {
+
+      final Thread t = new Thread(r);
+      t.setDaemon(true);
+      return t;
+    }
+  }
+
+  /**
+   * Get the thread pool used to compress and decompress the blocks.
+   * @param threads number of threads required
+   * @return the thread pool
+   */
+  static synchronized ExecutorService getThreadPool(final int threads) {
+
+    if (threadpool == null) {
+      threadpool =
+          new ThreadPoolExecutor(1, 1, 50000L, TimeUnit.MILLISECONDS,
+              new LinkedBlockingQueue<Runnable>(), new BgzfThreadFactory());
+      maxThreads = 1;
+    }
+
+    if (threads > maxThreads) {
+      maxThreads = threads;
+      threadpool.setMaximumPoolSize(maxThreads);
+      threadpool.setCorePoolSize(maxThreads);
+    }
+
+    return threadpool;
+  }
+
+  /**
+   * Test if the first bytes of a file are the header of a gzip file.
+   * @param header the first bytes of the file
+   * @param len number of bytes in the header array
+   * @return true if the file is a gzip file
+   */
+  public static boolean isGzip(final byte[] header, final int len) {
+
+    return len >= 2 && (header[0] & 0xff) == 0x1f && (header[1] & 0xff) == 0x8b;
+  }
+
+  /**
+   * Test if the first bytes of a file are the header of a BGZF file.
+   * @param header the first bytes of the file
+   * @param len number of bytes in the header array
+   * @return true if the file is a BGZF file
+   */
+  public static boolean isBgzf(final byte[] header, final int len) {
+
+    if (!isGzip(header, len) || len < HEADER_SIZE || (header[3] & 4) == 0)
+      return false;
+
+    return getBlockSize(header, Math.min(len, HEADER_SIZE)) != -1;
+  }
+
+  /**
+   * Get the size of a block from its header.
+   * @param header the header of the block
+   * @param len number of bytes in the header array
+   * @return the size of the block or -1 if the header is not a BGZF header
+   */
+  public static int getBlockSize(final byte[] header, final int len) {
+
+    if (len < GZIP_HEADER_SIZE)
+      return -1;
+
+    final int xlen = getShort(header, 10);
+    final int end = Math.min(len, GZIP_HEADER_SIZE + xlen);
+    int pos = GZIP_HEADER_SIZE;
+
+    // Search the "BC" subfield
+    while (pos + 4 <= end) {
+
+      final int slen = getShort(header, pos + 2);
+
+      if (header[pos] == 'B' && header[pos + 1] == 'C' && slen == 2)
+        return pos + 6 <= end ? getShort(header, pos + 4) + 1 : -1;
+
+      pos += 4 + slen;
+    }
+
+    return -1;
+  }
+
+  /**
+   * Read a block.
+   * @param is input stream
+   * @param header array of at least GZIP_HEADER_SIZE bytes to use
+   * @return an array with the block or null if the end of the stream has been
+   *         reached
+   * @throws IOException if an error occurs while reading the block
+   */
+  static byte[] readBlock(final InputStream is, final byte[] header)
+      throws IOException {
+
+    final int n = readFully(is, header, 0, GZIP_HEADER_SIZE);
+    if (n == 0)
+      return null;
+    if (n < GZIP_HEADER_SIZE || !isGzip(header, n))
+      throw new IOException("Invalid BGZF block header");
+
+    final int xlen = getShort(header, 10);
+    final byte[] extra = new byte[GZIP_HEADER_SIZE + xlen];
+    System.arraycopy(header, 0, extra, 0, GZIP_HEADER_SIZE);
+
+    if (readFully(is, extra, GZIP_HEADER_SIZE, xlen) < xlen)
+      throw new EOFException("Truncated BGZF block");
+
+    final int blockSize = getBlockSize(extra, extra.length);
+    if (blockSize < extra.length + FOOTER_SIZE)
+      throw new IOException("Invalid BGZF block header");
+
+    final byte[] result = new byte[blockSize];
+    System.arraycopy(extra, 0, result, 0, extra.length);
+
+    final int remaining = blockSize - extra.length;
+    if (readFully(is, result, extra.length, remaining) < remaining)
+      throw new EOFException("Truncated BGZF block");
+
+    return result;
+  }
+
+  /**
+   * Decompress a block.
+   * @param block the block
+   * @param len length of the block
+   * @return an array with the uncompressed data of the block
+   * @throws IOException if the block is invalid
+   */
+  public static byte[] inflateBlock(final byte[] block, final int len)
+      throws IOException {
+
+    final int dataStart = GZIP_HEADER_SIZE + getShort(block, 10);
+    final int isize = getInt(block, len - 4);
+    final byte[] result = new byte[isize];
+
+    final Inflater inflater = new Inflater(true);
+
+    try {
+      inflater.setInput(block, dataStart, len - dataStart - FOOTER_SIZE);
+
+      int count = 0;
+      while (count < isize && !inflater.finished()) {
+
+        final int n = inflater.inflate(result, count, isize - count);
+        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+          break;
+        count += n;
+      }
+
+      if (count != isize)
+        throw new IOException("Invalid BGZF block size");
+
+    } catch (DataFormatException e) {
+      throw new IOException("Invalid BGZF block: " + e.getMessage());
+    } finally {
+      inflater.end();
+    }
+
+    final CRC32 crc = new CRC32();
+    crc.update(result, 0, isize);
+
+    if ((int) crc.getValue() != getInt(block, len - FOOTER_SIZE))
+      throw new IOException("Invalid CRC32 of BGZF block");
+
+    return result;
+  }
+
+  /**
+   * Compress data in a block.
+   * @param data array with the data to compress
+   * @param off offset of the data in the array
+   * @param len length of the data (at most MAX_DATA_SIZE)
+   * @param level compression level
+   * @return an array with the block
+   */
+  public static byte[] deflateBlock(final byte[] data, final int off,
+      final int len, final int level) {
+
+    final byte[] buffer = new byte[MAX_BLOCK_SIZE];
+
+    int size = deflate(data, off, len, level, buffer);
+
+    // Store the data if the compressed data is larger than the block
+    if (size == -1)
+      size = deflate(data, off, len, Deflater.NO_COMPRESSION, buffer);
+
+    final int blockSize = HEADER_SIZE + size + FOOTER_SIZE;
+    final byte[] result = new byte[blockSize];
+
+    System.arraycopy(EOF_BLOCK, 0, result, 0, HEADER_SIZE);
+    putShort(result, 16, blockSize - 1);
+    System.arraycopy(buffer, 0, result, HEADER_SIZE, size);
+
+    final CRC32 crc = new CRC32();
+    crc.update(data, off, len);
+    putInt(result, blockSize - 8, (int) crc.getValue());
+    putInt(result, blockSize - 4, len);
+
+    return result;
+  }
+
+  /**
+   * Create a task that decompress a block.
+   * @param block the block to decompress
+   * @return a Callable object
+   */
+  static Callable<byte[]> createInflateTask(final byte[] block) {
+
+    return new Callable<byte[]>() {
+
+      public byte[] call() throws IOException {
+
+        return inflateBlock(block, block.length);
+      }
+    };
+  }
+
+  /**
+   * Create a task that compress a block.
+   * @param data array with the data to compress
+   * @param len length of the data
+   * @param level compression level
+   * @return a Callable object
+   */
+  static Callable<byte[]> createDeflateTask(final byte[] data, final int len,
+      final int level) {
+
+    return new Callable<byte[]>() {
+
+      public byte[] call() {
+
+        return deflateBlock(data, 0, len, level);
+      }
+    };
+  }
+
+  //
+  // Internal methods
+  //
+
+  private static int deflate(final byte[] data, final int off, final int len,
+      final int level, final byte[] output) {
+
+    final int maxSize = MAX_BLOCK_SIZE - HEADER_SIZE - FOOTER_SIZE;
+    final Deflater deflater = new Deflater(level, true);
+
+    try {
+      deflater.setInput(data, off, len);
+      deflater.finish();
+
+      final int size = deflater.deflate(output, 0, maxSize);
+
+      return deflater.finished() ? size : -1;
+
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static int readFully(final InputStream is, final byte[] b,
+      final int off, final int len) throws IOException {
+
+    int count = 0;
+
+    while (count < len) {
+
+      final int n = is.read(b, off + count, len - count);
+      if (n == -1)
+        break;
+      count += n;
+    }
+
+    return count;
+  }
+
+  private static int getShort(final byte[] b, final int pos) {
+
+    return (b[pos] & 0xff) | (b[pos + 1] & 0xff) << 8;
+  }
+
+  private static int getInt(final byte[] b, final int pos) {
+
+    return (b[pos] & 0xff)
+        | (b[pos + 1] & 0xff) << 8 | (b[pos + 2] & 0xff) << 16
+        | (b[pos + 3] & 0xff) << 24;
+  }
+
+  private static void putShort(final byte[] b, final int pos, final int value) {
+
+    b[pos] = (byte) value;
+    b[pos + 1] = (byte) (value >> 8);
+  }
+
+  private static void putInt(final byte[] b, final int pos, final int value) {
+
+    b[pos] = (byte) value;
+    b[pos + 1] = (byte) (value >> 8);
+    b[pos + 2] = (byte) (value >> 16);
+    b[pos + 3] = (byte) (value >> 24);
+  }
+
+}
@@ -22,6 +22,7 @@
 
 package fr.ens.transcriptome.teolenn.util;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
@@ -35,11 +36,14 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.util.List;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.GZIPInputStream;
+
+import fr.ens.transcriptome.teolenn.Settings;
 
 /**
  * This class contains utilty methods.
@@ -51,24 +55,110 @@ public final class FileUtils {
   private static final int DEFAULT_BUFFER_SIZE = 1024 * 4;
   /** The charset to use. */
   private static final String CHARSET = "ISO-8859-1";
+  /** The number of bytes read to detect the format of compressed files. */
+  private static final int GZIP_HEADER_SIZE = 18;
 
   /**
-   * Utility method to create fast BufferedReader.
+   * Utility method to create an InputStream. Gzip files are decompressed on
+   * the fly, and BGZF files are decompressed in parallel.
    * @param file File to read
-   * @return a BufferedReader
-   * @throws FileNotFoundException if the file is not found
+   * @return an InputStream
+   * @throws IOException if an error occurs while opening the file
    */
-  public static final BufferedReader createBufferedReader(final File file)
-      throws FileNotFoundException {
+  public static final InputStream createInputStream(final File file)
+      throws IOException {
 
     if (file == null)
       return null;
 
     final FileInputStream inFile = new FileInputStream(file);
-    final FileChannel inChannel = inFile.getChannel();
+    boolean success = false;
+
+    try {
+
+      final FileChannel inChannel = inFile.getChannel();
+
+      // Read the header of the file without moving the position of the
+      // channel
+      final ByteBuffer header = ByteBuffer.allocate(GZIP_HEADER_SIZE);
+      int n;
+      do
+        n = inChannel.read(header, header.position());
+      while (n > 0 && header.hasRemaining());
+
+      final byte[] array = header.array();
+      final int len = header.position();
+      final InputStream result;
+
+      if (BgzfUtils.isBgzf(array, len))
+        result =
+            new BgzfInputStream(new BufferedInputStream(Channels
+                .newInputStream(inChannel), BgzfUtils.MAX_BLOCK_SIZE),
+                Settings.getMaxThreads());
+      else if (BgzfUtils.isGzip(array, len))
+        result =
+            new GZIPInputStream(Channels.newInputStream(inChannel),
+                BgzfUtils.MAX_BLOCK_SIZE);
+      else
+        result = inFile;
+
+      success = true;
+
+      return result;
+    } finally {
+
+      // Do not leak the file descriptor if the stream can not be created
+      if (!success)
+        try {
+          inFile.close();
+        } catch (IOException e) {
+          // Keep the exception that has caused the failure
+        }
+    }
+  }
+
+  /**
+   * Test if a file is compressed with gzip (or in the BGZF format).
+   * @param file File to test
+   * @return true if the file is compressed
+   * @throws IOException if an error occurs while reading the file
+   */
+  public static final boolean isGzipFile(final File file) throws IOException {
+
+    if (file == null)
+      return false;
+
+    final FileInputStream inFile = new FileInputStream(file);
 
-    return new BufferedReader(new InputStreamReader(Channels
-        .newInputStream(inChannel)));
+    try {
+
+      final byte[] header = new byte[2];
+      int len = 0;
+      int n;
+      while (len < header.length
+          && (n = inFile.read(header, len, header.length - len)) != -1)
+        len += n;
+
+      return BgzfUtils.isGzip(header, len);
+    } finally {
+      inFile.close();
+    }
+  }
+
+  /**
+   * Utility method to create fast BufferedReader. Gzip files are decompressed
+   * on the fly.
+   * @param file File to read
+   * @return a BufferedReader
+   * @throws IOException if an error occurs while opening the file
+   */
+  public static final BufferedReader createBufferedReader(final File file)
+      throws IOException {
+
+    if (file == null)
+      return null;
+
+    return new BufferedReader(new InputStreamReader(createInputStream(file)));
   }
 
   /**
@@ -95,8 +185,9 @@ public final class FileUtils {
   }
 
   /**
-   * Utility method to create fast BufferedWriter. Warning the buffer is not
-   * safe-thread. The created file use ISO-8859-1 encoding.
+   * Utility method to create fast BufferedWriter that compress data. The
+   * created file is a BGZF file (a gzip file compressed in parallel) and use
+   * ISO-8859-1 encoding. Warning the buffer is not safe-thread.
    * @param file File to write
    * @return a BufferedWriter
    * @throws IOException if an error occurs while creating the Writer
@@ -114,8 +205,9 @@ public final class FileUtils {
     final FileOutputStream outFile = new FileOutputStream(file);
     final FileChannel outChannel = outFile.getChannel();
 
-    final GZIPOutputStream gzos =
-        new GZIPOutputStream(Channels.newOutputStream(outChannel));
+    final BgzfOutputStream gzos =
+        new BgzfOutputStream(Channels.newOutputStream(outChannel), Settings
+            .getMaxThreads());
 
     return new UnSynchronizedBufferedWriter(new OutputStreamWriter(gzos,
         Charset.forName(CHARSET)));
@@ -0,0 +1,225 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+
+package fr.ens.transcriptome.teolenn.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import fr.ens.transcriptome.teolenn.resource.PackedGenomeResource;
+import fr.ens.transcriptome.teolenn.resource.Resources;
+import fr.ens.transcriptome.teolenn.sequence.OligoContainer;
+
+/**
+ * This class test the creation of the oligonucleotides from the packed
+ * genome, with chromosomes whose lengths are around the length of the chunks.
+ * @author Laurent Jourdren
+ */
+public class SequenceCoreTest extends TestCase {
+
+  private static final int CHUNK_LENGTH = 100;
+  private static final int WINDOW_SIZE = 25;
+  private static final int INTERVAL = 2;
+
+  // Lengths of the chromosomes around the multiples of the chunk length. The
+  // oligos have at least 23 bases, so a chromosome of 122 bases has exactly
+  // 100 start positions and its last chunk contains no start position
+  private static final int[] LENGTHS =
+      {1, 22, 23, 99, 100, 101, 122, 123, 124, 200, 222, 223, 250};
+
+  private File dir;
+  private File genomeFile;
+  private List<String> chromosomes;
+  private List<String> sequences;
+
+  @Override
+  protected void setUp() throws Exception {
+
+    this.dir = File.createTempFile("teolenn-test", "");
+    this.dir.delete();
+    this.dir.mkdir();
+
+    final Random random = new Random(1);
+    this.genomeFile = new File(this.dir, "genome.fa");
+    this.chromosomes = new ArrayList<String>();
+    this.sequences = new ArrayList<String>();
+
+    final FileWriter fw = new FileWriter(this.genomeFile);
+
+    for (int i = 0; i < LENGTHS.length; i++) {
+
+      final String chr = "chr" + i;
+      this.chromosomes.add(chr);
+      fw.write(">" + chr + "\n");
+
+      final StringBuilder sb = new StringBuilder();
+      for (int j = 0; j < LENGTHS[i]; j++) {
+        sb.append("ACGTNacgt".charAt(random.nextInt(9)));
+        fw.write(sb.charAt(j));
+        if (j % 60 == 59)
+          fw.write('\n');
+      }
+      fw.write('\n');
+      this.sequences.add(sb.toString());
+    }
+
+    fw.close();
+
+    Resources.getResources().clear();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+
+    Resources.getResources().clear();
+    delete(this.dir);
+  }
+
+  public void testWriteInPlace() throws IOException {
+
+    for (int threads = 1; threads <= 4; threads += 3)
+      for (int start1 = 0; start1 < 2; start1++)
+        checkWriteInPlace(threads, start1 == 1, false);
+  }
+
+  public void testWriteInPlaceContainer() throws IOException {
+
+    for (int threads = 1; threads <= 4; threads += 3)
+      checkWriteInPlace(threads, true, true);
+  }
+
+  /**
+   * Create the oligos in small chunks written at their place in the output
+   * files and compare the files to the oligos of all the start positions and
+   * lengths.
+   */
+  private void checkWriteInPlace(final int threads, final boolean start1,
+      final boolean container) throws IOException {
+
+    final File packedDir = mkdir("packed");
+    final File outputDir = mkdir("output");
+
+    SequenceCore.fastaPack(this.genomeFile, packedDir, ".pck", false);
+
+    final OverlapSettings settings =
+        new OverlapSettings(WINDOW_SIZE, INTERVAL, start1, threads);
+    settings.setContainer(container);
+    settings.setChunkLength(CHUNK_LENGTH);
+    assertFalse(settings.isFiltered());
+
+    SequenceCore.packedOverlap(PackedGenomeResource.getRessource(packedDir),
+        this.chromosomes, outputDir, ".oligo", settings);
+
+    final ByteArrayOutputStream all = new ByteArrayOutputStream();
+
+    for (int i = 0; i < this.chromosomes.size(); i++) {
+
+      final String chr = this.chromosomes.get(i);
+      final byte[] expected =
+          getOligos(chr, this.sequences.get(i), start1).getBytes("ISO-8859-1");
+
+      if (container)
+        all.write(expected);
+      else
+        assertTrue("Invalid oligos for "
+            + chr + " (threads=" + threads + ", start1=" + start1 + ")",
+            Arrays.equals(expected, read(new File(outputDir, chr + ".oligo"))));
+    }
+
+    if (container)
+      assertTrue("Invalid container (threads=" + threads + ")", Arrays.equals(
+          all.toByteArray(), read(OligoContainer.getFile(outputDir,
+              ".oligo"))));
+
+    Resources.getResources().clear();
+    delete(packedDir);
+    delete(outputDir);
+  }
+
+  /**
+   * Get the fasta records of all the oligos of a chromosome, in the order of
+   * their start positions and lengths.
+   */
+  private static String getOligos(final String chr, final String sequence,
+      final boolean start1) {
+
+    final int minSize = WINDOW_SIZE - INTERVAL;
+    final int maxSize = WINDOW_SIZE + INTERVAL;
+    final StringBuilder sb = new StringBuilder();
+
+    for (int start = 0; start + minSize <= sequence.length(); start++)
+      for (int size = minSize; size <= maxSize
+          && start + size <= sequence.length(); size++) {
+
+        sb.append(">" + chr + ":subseq(");
+        sb.append(start1 ? start + 1 : start);
+        sb.append("," + size + ")\n");
+        sb.append(sequence.substring(start, start + size));
+        sb.append('\n');
+      }
+
+    return sb.toString();
+  }
+
+  private File mkdir(final String name) {
+
+    final File result = new File(this.dir, name);
+    result.mkdir();
+
+    return result;
+  }
+
+  private static byte[] read(final File file) throws IOException {
+
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    final InputStream is = new FileInputStream(file);
+    final byte[] buffer = new byte[4096];
+    int n;
+
+    while ((n = is.read(buffer)) != -1)
+      baos.write(buffer, 0, n);
+    is.close();
+
+    return baos.toByteArray();
+  }
+
+  private static void delete(final File file) {
+
+    final File[] files = file.listFiles();
+    if (files != null)
+      for (File f : files)
+        delete(f);
+
+    file.delete();
+  }
+
+}
@@ -0,0 +1,293 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+
+package fr.ens.transcriptome.teolenn.sequence;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import fr.ens.transcriptome.teolenn.core.SequenceCore;
+import fr.ens.transcriptome.teolenn.resource.PackedGenomeResource;
+import fr.ens.transcriptome.teolenn.resource.Resources;
+
+/**
+ * This class test the lookups of the oligonucleotides in the k-mer index of
+ * the genome against a brute force search of the genome.
+ * @author Laurent Jourdren
+ */
+public class KmerIndexTest extends TestCase {
+
+  private static final int[] LENGTHS = {3000, 2500, 40, 1};
+  private static final int QUERIES = 200;
+
+  private File dir;
+  private PackedGenomeResource genome;
+  private List<String> chromosomes;
+  private List<String> sequences;
+  private List<String> upperSequences;
+
+  @Override
+  protected void setUp() throws Exception {
+
+    this.dir = File.createTempFile("teolenn-test", "");
+    this.dir.delete();
+    this.dir.mkdir();
+
+    final Random random = new Random(1);
+    this.chromosomes = new ArrayList<String>();
+    this.sequences = new ArrayList<String>();
+
+    for (int i = 0; i < LENGTHS.length; i++) {
+
+      final StringBuilder sb = new StringBuilder();
+      for (int j = 0; j < LENGTHS[i]; j++)
+        sb.append("ACGT".charAt(random.nextInt(4)));
+
+      this.chromosomes.add("chr" + i);
+      this.sequences.add(sb.toString());
+    }
+
+    // Add copies of segments with 0 to 3 mismatches on both strands, gaps
+    // and lower case bases
+    for (int i = 0; i < 60; i++) {
+
+      final int from = random.nextInt(this.sequences.size() - 2);
+      final int to = random.nextInt(this.sequences.size() - 2);
+      final String s = this.sequences.get(from);
+      final int len = 10 + random.nextInt(30);
+      final int start = random.nextInt(s.length() - len);
+      final char[] copy = s.substring(start, start + len).toCharArray();
+
+      for (int j = random.nextInt(4); j > 0; j--)
+        copy[random.nextInt(len)] = "ACGT".charAt(random.nextInt(4));
+
+      String segment = new String(copy);
+      if (random.nextBoolean())
+        segment = reverseComplement(segment);
+      if (i % 10 == 0)
+        segment =
+            segment.substring(0, len / 2) + 'N'
+                + segment.substring(len / 2 + 1);
+      if (i % 7 == 0)
+        segment = segment.toLowerCase();
+
+      final StringBuilder sb = new StringBuilder(this.sequences.get(to));
+      final int pos = random.nextInt(sb.length() - len);
+      sb.replace(pos, pos + len, segment);
+      this.sequences.set(to, sb.toString());
+    }
+
+    this.upperSequences = new ArrayList<String>();
+    for (String s : this.sequences)
+      this.upperSequences.add(s.toUpperCase());
+
+    final File genomeFile = new File(this.dir, "genome.fa");
+    final FileWriter fw = new FileWriter(genomeFile);
+
+    for (int i = 0; i < this.chromosomes.size(); i++)
+      fw.write(">"
+          + this.chromosomes.get(i) + "\n" + this.sequences.get(i) + "\n");
+    fw.close();
+
+    Resources.getResources().clear();
+    SequenceCore.fastaPack(genomeFile, this.dir, ".pck", false);
+    this.genome = PackedGenomeResource.getRessource(this.dir);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+
+    Resources.getResources().clear();
+
+    for (File f : this.dir.listFiles())
+      f.delete();
+    this.dir.delete();
+  }
+
+  public void testNoMismatch() throws IOException {
+
+    checkLookups(0);
+  }
+
+  public void testOneMismatch() throws IOException {
+
+    checkLookups(1);
+  }
+
+  public void testTwoMismatches() throws IOException {
+
+    checkLookups(2);
+  }
+
+  /**
+   * Compare the lookups in the index with the brute force search for
+   * oligonucleotides of many lengths, and for k-mers shorter than the default
+   * length.
+   */
+  private void checkLookups(final int mismatches) throws IOException {
+
+    final Random random = new Random(mismatches);
+    long genomeLength = 0;
+    for (String s : this.sequences)
+      genomeLength += s.length();
+
+    int unique = 0;
+    int notUnique = 0;
+
+    for (int length : new int[] {9, 12, 20, 25}) {
+
+      final int maxK =
+          Math.min(KmerIndex.getDefaultK(genomeLength), length
+              / (mismatches + 1));
+
+      for (int k = maxK; k >= Math.max(1, maxK - 1); k--) {
+
+        final KmerIndex index =
+            new KmerIndex(this.genome, this.chromosomes, k);
+        assertEquals(k, index.getK());
+
+        for (int i = 0; i < QUERIES; i++) {
+
+          final int c = random.nextInt(2);
+          final String chr = this.chromosomes.get(c);
+          final String s = this.sequences.get(c);
+          final int start = random.nextInt(s.length() - length + 1);
+
+          // Query the sequence of the position or a mutated sequence
+          final char[] query = s.substring(start, start + length).toCharArray();
+          if (random.nextInt(5) == 0)
+            query[random.nextInt(length)] = "ACGTN".charAt(random.nextInt(5));
+          final String sequence = new String(query);
+
+          final boolean expected =
+              isUnique(c, start, sequence.toUpperCase(), mismatches);
+          if (expected)
+            unique++;
+          else
+            notUnique++;
+
+          assertEquals("Invalid lookup of "
+              + sequence + " at " + chr + ":" + start + " (k=" + k
+              + ", mismatches=" + mismatches + ")", expected, index.isUnique(
+              chr, start, sequence, mismatches));
+        }
+      }
+    }
+
+    // The queries must test both results
+    assertTrue(unique > 0);
+    assertTrue(notUnique > 0);
+  }
+
+  /**
+   * Test if an oligonucleotide is unique by searching all its occurrences in
+   * the genome.
+   */
+  private boolean isUnique(final int chromosome, final int start,
+      final String sequence, final int mismatches) {
+
+    for (int i = 0; i < sequence.length(); i++)
+      if ("ACGT".indexOf(sequence.charAt(i)) == -1)
+        return false;
+
+    final String reverse = reverseComplement(sequence);
+    boolean found = false;
+
+    for (int c = 0; c < this.sequences.size(); c++) {
+
+      final String s = this.upperSequences.get(c);
+
+      for (int pos = 0; pos + sequence.length() <= s.length(); pos++) {
+
+        final int d = distance(s, pos, sequence, mismatches);
+
+        if (c == chromosome && pos == start && d == 0)
+          found = true;
+        else if (d <= mismatches)
+          return false;
+
+        if (distance(s, pos, reverse, mismatches) <= mismatches)
+          return false;
+      }
+    }
+
+    return found;
+  }
+
+  /**
+   * Get the number of mismatches between a sequence and a position of a
+   * chromosome. The regions that contain other bases than A, C, G and T are
+   * not occurrences.
+   * @return the number of mismatches or a greater number if there is more
+   *         mismatches than the maximal number of mismatches or if the region
+   *         contains an invalid base
+   */
+  private static int distance(final String chromosome, final int pos,
+      final String sequence, final int mismatches) {
+
+    int result = 0;
+
+    for (int i = 0; i < sequence.length(); i++) {
+
+      final char c = chromosome.charAt(pos + i);
+      if ("ACGT".indexOf(c) == -1)
+        return mismatches + 1;
+
+      if (c != sequence.charAt(i) && ++result > mismatches)
+        return result;
+    }
+
+    return result;
+  }
+
+  private static String reverseComplement(final String sequence) {
+
+    final StringBuilder sb = new StringBuilder();
+
+    for (int i = sequence.length() - 1; i >= 0; i--)
+      switch (sequence.charAt(i)) {
+      case 'A':
+        sb.append('T');
+        break;
+      case 'C':
+        sb.append('G');
+        break;
+      case 'G':
+        sb.append('C');
+        break;
+      case 'T':
+        sb.append('A');
+        break;
+      default:
+        sb.append('N');
+      }
+
+    return sb.toString();
+  }
+
+}
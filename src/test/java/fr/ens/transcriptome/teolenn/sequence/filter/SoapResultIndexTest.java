@@ -0,0 +1,196 @@
+/*
+ *                  Teolenn development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU General Public License version 2 or later. This
+ * should be distributed with the code. If you do not have a copy,
+ * see:
+ *
+ *      http://www.gnu.org/licenses/gpl-2.0.txt
+ *
+ * Copyright for this code is held jointly by the microarray platform
+ * of the École Normale Supérieure and the individual authors.
+ * These should be listed in @author doc comments.
+ *
+ * For more information on the Teolenn project and its aims,
+ * or to join the Teolenn Google group, visit the home page
+ * at:
+ *
+ *      http://www.transcriptome.ens.fr/teolenn
+ *
+ */
+
+
+package fr.ens.transcriptome.teolenn.sequence.filter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.BitSet;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * This class test the writing and the reading of the index files of the Soap
+ * results.
+ * @author Laurent Jourdren
+ */
+public class SoapResultIndexTest extends TestCase {
+
+  private File file;
+
+  @Override
+  protected void setUp() throws Exception {
+
+    this.file = File.createTempFile("teolenn-test", ".sopidx");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+
+    this.file.delete();
+  }
+
+  public void testRoundTrip() throws IOException {
+
+    // The number of bits of the sections are not multiples of 8
+    final int[] positions = {1001, 0, 17, 433};
+    final int minLength = 23;
+    final int lengths = 7;
+    final Random random = new Random(1);
+    final BitSet[] expected = new BitSet[positions.length];
+
+    final SoapResultIndex created =
+        SoapResultIndex.create(this.file, positions, minLength, lengths);
+    assertEquals(positions.length, created.getSectionCount());
+
+    // Set and clear random oligonucleotides
+    for (int s = 0; s < positions.length; s++) {
+
+      expected[s] = new BitSet();
+
+      for (int i = 0; positions[s] > 0 && i < 5 * positions[s]; i++) {
+
+        final int start = random.nextInt(positions[s]);
+        final int length = minLength + random.nextInt(lengths);
+        final boolean accepted = random.nextInt(3) != 0;
+
+        created.setAccepted(s, start, length, accepted);
+        expected[s].set(start * lengths + length - minLength, accepted);
+        assertEquals(accepted, created.isAccepted(s, start, length));
+      }
+    }
+
+    // The oligonucleotides outside the index are ignored
+    created.setAccepted(0, -1, minLength, true);
+    created.setAccepted(0, positions[0], minLength, true);
+    created.setAccepted(0, 0, minLength - 1, true);
+    created.setAccepted(0, 0, minLength + lengths, true);
+    created.setAccepted(1, 0, minLength, true);
+    created.setAccepted(-1, 0, minLength, true);
+    created.setAccepted(positions.length, 0, minLength, true);
+    created.force();
+
+    final SoapResultIndex loaded = SoapResultIndex.load(this.file);
+    final int maxLength = minLength + lengths;
+    assertEquals(positions.length, loaded.getSectionCount());
+
+    for (int s = -1; s <= positions.length; s++) {
+
+      final int sectionPositions =
+          s >= 0 && s < positions.length ? positions[s] : 1;
+
+      for (int start = -1; start <= sectionPositions; start++)
+        for (int length = minLength - 1; length <= maxLength; length++) {
+
+          final boolean inside =
+              s >= 0
+                  && s < positions.length && start >= 0
+                  && start < positions[s] && length >= minLength
+                  && length < maxLength;
+          final boolean accepted =
+              inside
+                  && expected[s].get(start * lengths + length - minLength);
+          final String oligo =
+              "Invalid oligo " + s + "," + start + "," + length;
+
+          assertEquals(oligo, accepted, created.isAccepted(s, start, length));
+          assertEquals(oligo, accepted, loaded.isAccepted(s, start, length));
+        }
+    }
+  }
+
+  public void testCreateClearsPreviousFile() throws IOException {
+
+    final SoapResultIndex index =
+        SoapResultIndex.create(this.file, new int[] {10}, 20, 3);
+    for (int i = 0; i < 10; i++)
+      index.setAccepted(0, i, 21, true);
+    index.force();
+
+    SoapResultIndex.create(this.file, new int[] {10}, 20, 3);
+    for (int i = 0; i < 10; i++)
+      assertFalse(SoapResultIndex.load(this.file).isAccepted(0, i, 21));
+  }
+
+  public void testEmptyIndex() throws IOException {
+
+    SoapResultIndex.create(this.file, new int[] {0}, 20, 3);
+    assertFalse(SoapResultIndex.load(this.file).isAccepted(0, 0, 20));
+
+    SoapResultIndex.create(this.file, new int[0], 20, 3);
+    assertEquals(0, SoapResultIndex.load(this.file).getSectionCount());
+  }
+
+  public void testInvalidFile() throws IOException {
+
+    SoapResultIndex.create(this.file, new int[] {100, 50}, 20, 3);
+
+    // Truncated file
+    RandomAccessFile raf = new RandomAccessFile(this.file, "rw");
+    raf.setLength(raf.length() - 1);
+    raf.close();
+    checkInvalidFile();
+
+    // Invalid magic number
+    SoapResultIndex.create(this.file, new int[] {100, 50}, 20, 3);
+    raf = new RandomAccessFile(this.file, "rw");
+    raf.writeInt(0);
+    raf.close();
+    checkInvalidFile();
+
+    // Invalid number of positions of a section
+    SoapResultIndex.create(this.file, new int[] {100, 50}, 20, 3);
+    raf = new RandomAccessFile(this.file, "rw");
+    raf.seek(20);
+    raf.writeInt(-1);
+    raf.close();
+    checkInvalidFile();
+
+    // Header shorter than the number of sections
+    SoapResultIndex.create(this.file, new int[] {100, 50}, 20, 3);
+    raf = new RandomAccessFile(this.file, "rw");
+    raf.seek(12);
+    raf.writeInt(1000);
+    raf.close();
+    checkInvalidFile();
+
+    // File shorter than the header
+    raf = new RandomAccessFile(this.file, "rw");
+    raf.setLength(3);
+    raf.close();
+    checkInvalidFile();
+  }
+
+  private void checkInvalidFile() {
+
+    try {
+      SoapResultIndex.load(this.file);
+      fail("The invalid file has been loaded");
+    } catch (IOException e) {
+      // Expected exception
+    }
+  }
+
+}